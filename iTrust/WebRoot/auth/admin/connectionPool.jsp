@@ -0,0 +1,57 @@
+<%@page errorPage="/auth/exceptionHandler.jsp" %>
+<%@page import="java.util.List"%>
+<%@page import="edu.ncsu.csc.itrust.model.old.dao.ConnectionPool"%>
+
+<%@include file="/global.jsp" %>
+
+<%
+pageTitle = "iTrust - Connection Pool";
+%>
+
+<%@include file="/header.jsp" %>
+
+<%
+	ConnectionPool pool = ConnectionPool.getProductionPool();
+	long[] waits = pool.getWaitHistogram();
+%>
+<h3>Connection Pool <%= StringEscapeUtils.escapeHtml(pool.getName()) %></h3>
+<table class="fTable">
+	<tr><td>Active</td><td><%= pool.getActiveCount() %></td></tr>
+	<tr><td>Idle</td><td><%= pool.getIdleCount() < 0 ? "unknown" : "" + pool.getIdleCount() %></td></tr>
+	<tr><td>Most active at once</td><td><%= pool.getPeakActiveCount() %></td></tr>
+	<tr><td>Maximum size</td><td><%= pool.getMaxTotal() < 0 ? "unknown" : "" + pool.getMaxTotal() %></td></tr>
+	<tr><td>Borrows</td><td><%= pool.getBorrowCount() %></td></tr>
+	<tr><td>Timeouts</td><td><%= pool.getTimeoutCount() %></td></tr>
+	<tr><td>Failures</td><td><%= pool.getFailureCount() %></td></tr>
+	<tr><td>Leaks reported</td><td><%= pool.getLeakCount() %></td></tr>
+</table>
+<br />
+<h3>Time Waited to Borrow</h3>
+<table class="fTable">
+<%
+	for (int i = 0; i < waits.length; i++) {
+		String bucket = i < ConnectionPool.WAIT_BUCKETS_MILLIS.length ? "up to " + ConnectionPool.WAIT_BUCKETS_MILLIS[i]
+				: "over " + ConnectionPool.WAIT_BUCKETS_MILLIS[i - 1];
+%>
+	<tr><td><%= bucket %> ms</td><td><%= waits[i] %></td></tr>
+<%
+	}
+%>
+</table>
+<br />
+<h3>Connections Held Too Long</h3>
+<%
+	List<String> leaks = pool.findLeaks();
+	if (leaks.isEmpty()) {
+%>
+None
+<%
+	}
+	for (String leak : leaks) {
+%>
+<pre><%= StringEscapeUtils.escapeHtml(leak) %></pre>
+<%
+	}
+%>
+
+<%@include file="/footer.jsp" %>
@@ -53,6 +53,7 @@
 				<li><a href="/iTrust/auth/admin/manageWards.jsp">Manage Wards</a></li>
 				<li><a href="/iTrust/auth/admin/hospitalListing.jsp">Manage Hospital Listing </a></li>
 				<li><a href="/iTrust/auth/admin/sessionTimeout.jsp">Change Global Session Timeout </a></li>
+				<li><a href="/iTrust/auth/admin/connectionPool.jsp">Connection Pool</a></li>
 				<li><a href="/iTrust/auth/surveyResults.jsp">Satisfaction Survey Results</a></li>
 				<li><a href="/iTrust/auth/admin/activatePatient.jsp">Activate Patient</a></li>
 			</ul>
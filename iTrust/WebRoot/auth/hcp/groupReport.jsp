@@ -110,6 +110,12 @@
 	</fieldset>
 	<input class="clear_button" type="submit" name="generate" value="Generate Report" onclick="return generateReport();"/>
 	<input class="clear_button" type="submit" name="download" value="Download Report" onclick="return downloadReport();"/>
+	<input class="clear_button" type="submit" name="background" value="Run in Background" onclick="return backgroundReport();"/>
+	<select name="format">
+		<option value="xml">XML</option>
+		<option value="csv">CSV</option>
+		<option value="json">JSON</option>
+	</select>
 </form>
 <%
 	} else {
@@ -155,6 +161,12 @@ function downloadReport()
     return true;
 }
 
+function backgroundReport()
+{
+    document.reportForm.action = "reportJobs"
+    return true;
+}
+
 function generateReport()
 {
     document.reportForm.action = "viewReport.jsp"
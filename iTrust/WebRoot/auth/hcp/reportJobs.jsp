@@ -0,0 +1,93 @@
+<%@page errorPage="/auth/exceptionHandler.jsp"%>
+
+<%@page import="java.util.List"%>
+<%@page import="edu.ncsu.csc.itrust.model.old.beans.ReportJobBean"%>
+<%@page import="edu.ncsu.csc.itrust.report.ReportJobManager"%>
+
+<%@include file="/global.jsp" %>
+
+<%
+pageTitle = "iTrust - Background Reports";
+%>
+
+<%@include file="/header.jsp" %>
+<h1>Background Reports</h1>
+<%
+	ReportJobManager manager = ReportJobManager.getShared();
+	if (request.getParameter("error") != null) {
+%>
+	<h3 style="color: red;"><%= StringEscapeUtils.escapeHtml(request.getParameter("error")) %></h3>
+<%
+	}
+	String submitted = request.getParameter("job");
+	if (submitted != null && submitted.matches("\\d+")) {
+%>
+	<div class="iTrustMessage">Report <%= submitted %> has been queued.</div>
+<%
+	}
+	if (manager == null) {
+%>
+	<p>Background reports aren't running. <a href="groupReport.jsp">Generate a report</a> instead.</p>
+<%
+	} else {
+		List<ReportJobBean> jobs = manager.getJobs(loggedInMID);
+		boolean active = false;
+%>
+<table class="fTable">
+	<tr>
+		<th>Report</th>
+		<th>Submitted</th>
+		<th>Format</th>
+		<th>Status</th>
+		<th>Progress</th>
+		<th></th>
+	</tr>
+<%
+		for (ReportJobBean job : jobs) {
+			active |= !job.getStatus().isFinished();
+%>
+	<tr>
+		<td><%= job.getJobID() %></td>
+		<td><%= job.getCreatedAt() == null ? "" : job.getCreatedAt() %></td>
+		<td><%= StringEscapeUtils.escapeHtml(job.getFormat().toUpperCase()) %></td>
+		<td><%= job.getStatus() %>
+			<%= job.getMessage() == null || job.getMessage().isEmpty() ? "" : " (" + StringEscapeUtils.escapeHtml(job.getMessage()) + ")" %></td>
+		<td><%= job.getRowsDone() %> of <%= job.getRowsEstimated() %> patients</td>
+		<td>
+<%
+			if (!job.getStatus().isFinished()) {
+%>
+			<form method="post" action="reportJobs">
+				<input type="hidden" name="action" value="cancel" />
+				<input type="hidden" name="job" value="<%= job.getJobID() %>" />
+				<input type="submit" value="Cancel" />
+			</form>
+<%
+			} else if (manager.getOutput(job) != null) {
+%>
+			<a href="reportJobs?job=<%= job.getJobID() %>&amp;download=true">Download</a>
+<%
+			}
+%>
+		</td>
+	</tr>
+<%
+		}
+		if (jobs.isEmpty()) {
+%>
+	<tr><td colspan="6">You have no background reports. <a href="groupReport.jsp">Generate a report</a></td></tr>
+<%
+		}
+%>
+</table>
+<%
+		if (active) {
+%>
+<script type="text/javascript">
+setTimeout(function() { window.location.replace("reportJobs.jsp"); }, 5000);
+</script>
+<%
+		}
+	}
+%>
+<%@include file="/footer.jsp" %>
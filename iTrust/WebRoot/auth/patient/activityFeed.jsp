@@ -1,9 +1,7 @@
 <%@page import="edu.ncsu.csc.itrust.action.ActivityFeedAction"%>
 <%@page import="java.util.List"%>
-<%@page import="edu.ncsu.csc.itrust.action.EditPatientAction"%>
 <%@page import="edu.ncsu.csc.itrust.action.ViewPersonnelAction"%>
 <%@page import="edu.ncsu.csc.itrust.action.ViewPatientAction"%>
-<%@page import="edu.ncsu.csc.itrust.model.old.beans.TransactionBean"%>
 <%@page import="edu.ncsu.csc.itrust.exception.FormValidationException"%>
 <%@page import="edu.ncsu.csc.itrust.model.old.enums.TransactionType"%>
 <%@page import="edu.ncsu.csc.itrust.model.old.beans.PersonnelBean"%>
@@ -13,28 +11,26 @@
 <%@page import="edu.ncsu.csc.itrust.exception.ITrustException"%>
 <%@page errorPage="/auth/exceptionHandler.jsp" %>
 <%@page import="java.util.ArrayList"%>
-<%@page import="java.util.Date"%>
+<%@page import="edu.ncsu.csc.itrust.model.old.beans.ActivityBean"%>
+<%@page import="edu.ncsu.csc.itrust.model.old.beans.ActivityPage"%>
+<%@page import="java.util.HashMap"%>
+<%@page import="java.util.Map"%>
 
 <%
 		
 	pageTitle = "iTrust - View My Access Log";
 	ViewPatientAction vpa = new ViewPatientAction(prodDAO, loggedInMID, "" + loggedInMID);
 	List<PatientBean> viewable = vpa.getViewablePatients();
-	List<TransactionBean> accesses;
-	Date viewTime = new Date();
+	ActivityPage accesses;
 
-	int pageNumber = 1;
-	
-	if (request.getParameter("date") != null && request.getParameter("page") != null) {
+	/* only the feed being paged through moves past its first page */
+	int pagedFeed = 0;
+	String pageToken = request.getParameter("after");
+	if (request.getParameter("feed") != null) {
 		try {
-	viewTime = new Date(Long.parseLong(request.getParameter("date")));
+	pagedFeed = Integer.parseInt(request.getParameter("feed"));
 		} catch (NumberFormatException e) {
-	viewTime = new Date();
-		}
-		try {
-	pageNumber = Integer.parseInt(request.getParameter("page"));
-		} catch (NumberFormatException e) {
-	pageNumber = 1;
+	pageToken = null;
 		}
 	}
 	
@@ -47,10 +43,12 @@
 <%
 	for(int k = 0; k < viewable.size(); k++) {
 		ActivityFeedAction action = new ActivityFeedAction(prodDAO, viewable.get(k).getMID());
-		accesses = action.getTransactions(viewTime, pageNumber);
-		boolean more = false;
-		if(accesses.size() == 21) {
-			more = true;
+		String feedToken = k == pagedFeed ? pageToken : null;
+		try {
+			accesses = action.getActivityPage(feedToken);
+		} catch (FormValidationException e) {
+			feedToken = null;
+			accesses = action.getActivityPage(null);
 		}
 %>
 <div class="panel-heading accordion-heading">
@@ -73,96 +71,57 @@ if(k == 0){
         <div class="panel-body">
           <ul>
 <%
-	if (pageNumber > 1) {
-%>
-	<li style="width: 100%;">
-		<span style="float: left;"><a href="home.jsp?page=1">Refresh</a></span>
-		<%
-			if(accesses.size() == pageNumber * 20 + 1) {
-		%>
-			<span style="float: right;"><a href="home.jsp?date=<%=StringEscapeUtils.escapeHtml("" + ( viewTime.getTime()))%>&page=<%=StringEscapeUtils.escapeHtml("" + (pageNumber + 1 ))%>">Older Activities</a></span>
-		<%
-			}
-		%>
-		<br />
-	</li>
-<%
-	}
 	ViewPersonnelAction personnels = new ViewPersonnelAction(prodDAO, loggedInMID);
-	EditPatientAction patients;
-	
-	String name = "";
-	int zebraStripes = 0;
-	int hcpCount = 0;
+	/* actor MID -> link, so each personnel is looked up once per feed */
+	Map<Long, String> links = new HashMap<Long, String>();
 	
-	if (pageNumber == 1) {
-		if(accesses.isEmpty()) {
+	if (accesses.getActivities().isEmpty() && feedToken == null) {
 %>
 			<li>
 				<%=StringEscapeUtils.escapeHtml("" + ( "No recent activity" ))%>
 			</li>
-			<%
-				} else {
-									/* getTransactions() returns one more than necessary */
-				for(int i=0; i < (more ? accesses.size() - 1 : accesses.size()); i++) { 
-					TransactionBean t = accesses.get(i);
-					
-					try {
-						PersonnelBean hcp = personnels.getPersonnel(t.getLoggedInMID() + "");
-						if (hcp != null) {
-							name = "<a href=\"/iTrust/auth/viewPersonnel.jsp?personnel=" + hcpCount++ + "\">" +
-								StringEscapeUtils.escapeHtml(hcp.getFullName()) + "</a>";
-							hcpList.add(hcp);
-						}
-					} catch (ITrustException e) {
-						patients = new EditPatientAction(prodDAO, loggedInMID, t.getLoggedInMID() + "");
-						PatientBean eventPatient = patients.getPatient();
-						name = eventPatient.getFullName();
-						StringEscapeUtils.escapeHtml(name);
-					}
-			%>
-				<li>
-					<%=action.getMessageAsSentence(name, t.getTimeLogged(), t.getTransactionType())%>
-				</li>
-	<%
-		}
-			}
-			if(accesses.size() == 21) {
-	%>
-		<a href="home.jsp?date=<%=StringEscapeUtils.escapeHtml("" + ( viewTime.getTime() ))%>&page=2">Older Activities</a>
-	<%
-		}
-		} else {
-			for(int i=0; i < (more ? accesses.size() - 1 : accesses.size()); i++) { 
-		TransactionBean t = accesses.get(i);
-		try {
-			PersonnelBean hcp = personnels.getPersonnel(t.getLoggedInMID() + "");
-			if (hcp != null) {
-				name = "<a href=\"/iTrust/auth/viewPersonnel.jsp?personnel=" + hcpCount++ + "\">" +
-					StringEscapeUtils.escapeHtml(hcp.getFullName()) + "</a>";
-				hcpList.add(hcp);
+<%
+	}
+	for (ActivityBean a : accesses.getActivities()) {
+		String name = StringEscapeUtils.escapeHtml(a.getActorName());
+		if (a.getActorMID() >= 9000000000L && !"You".equals(a.getActorName())) {
+			name = links.get(a.getActorMID());
+			if (name == null) {
+				try {
+					PersonnelBean hcp = personnels.getPersonnel(a.getActorMID() + "");
+					name = "<a href=\"/iTrust/auth/viewPersonnel.jsp?personnel=" + hcpList.size() + "\">" +
+						StringEscapeUtils.escapeHtml(hcp.getFullName()) + "</a>";
+					hcpList.add(hcp);
+				} catch (ITrustException e) {
+					name = StringEscapeUtils.escapeHtml(a.getActorName());
+				}
+				links.put(a.getActorMID(), name);
 			}
-		} catch (ITrustException e) {
-			patients = new EditPatientAction(prodDAO, loggedInMID, t.getLoggedInMID() + "");
-			PatientBean eventPatient = patients.getPatient();
-			name = StringEscapeUtils.escapeHtml(eventPatient.getFullName());
 		}
-	%>
+%>
 			<li>
-				<%= action.getMessageAsSentence(name, t.getTimeLogged(), t.getTransactionType()) %>
+				<%= action.getMessageAsSentence(name, a.getTimeLogged(), a.getTransactionType()) %>
 			</li>
-	<%
+<%
+	}
+	if (feedToken == null) {
+		if (accesses.hasMore()) {
+%>
+		<a href="home.jsp?feed=<%= StringEscapeUtils.escapeHtml("" + k) %>&after=<%= StringEscapeUtils.escapeHtml(accesses.getNextToken()) %>">Older Activities</a>
+<%
 		}
-	%>
+	} else {
+%>
 	<li style="width: 100%;">
-		<span style="float: left;"><a href="home.jsp?page=1">Refresh</a></span>
-	<%
-	if(accesses.size() == pageNumber * 20 + 1) {
-	%>
-		<span style="float: right;"><a href="home.jsp?date=<%= StringEscapeUtils.escapeHtml("" + ( viewTime.getTime())) %>&page=<%= StringEscapeUtils.escapeHtml("" + (pageNumber + 1 )) %>">Older Activities</a></span>
-	<%
-	}
-	%>
+		<span style="float: left;"><a href="home.jsp">Refresh</a></span>
+<%
+		if (accesses.hasMore()) {
+%>
+		<span style="float: right;"><a href="home.jsp?feed=<%= StringEscapeUtils.escapeHtml("" + k) %>&after=<%= StringEscapeUtils.escapeHtml(accesses.getNextToken()) %>">Older Activities</a></span>
+<%
+		}
+%>
+		<br />
 	</li>
 <%
 	}
@@ -177,4 +136,4 @@ if(k == 0){
 </div>
 </div>
 <!-- close the panel div -->
-</div>
+</div>
\ No newline at end of file
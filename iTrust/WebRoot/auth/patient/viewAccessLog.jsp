@@ -1,6 +1,7 @@
 <%@page import="edu.ncsu.csc.itrust.action.ViewMyAccessLogAction"%>
 <%@page import="java.util.List"%>
 <%@page import="edu.ncsu.csc.itrust.model.old.beans.TransactionBean"%>
+<%@page import="edu.ncsu.csc.itrust.model.old.beans.TransactionPage"%>
 <%@page import="edu.ncsu.csc.itrust.exception.FormValidationException"%>
 <%@page import="edu.ncsu.csc.itrust.model.old.beans.PersonnelBean"%>
 <%@page import="edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelDAO"%>
@@ -8,6 +9,7 @@
 <%@page import="edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDAO"%>
 <%@page errorPage="/auth/exceptionHandler.jsp" %>
 <%@page import="java.util.ArrayList"%>
+<%@page import="java.net.URLEncoder"%>
 <%@page import="edu.ncsu.csc.itrust.action.GetUserNameAction"%>
 
 <%@include file="/global.jsp"%>
@@ -33,16 +35,26 @@ session.removeAttribute("personnelList");
 	}
 	
 	String logMIDSess = (String) session.getAttribute("currentLogMID");
+	boolean byRole = "role".equals(request.getParameter("sortBy"));
+	String pageToken = request.getParameter("after");
+	String startDate = request.getParameter("startDate"); //the form keeps the range asked for, if any
+	String endDate = request.getParameter("endDate");
+	TransactionPage accessPage;
 	if (logMIDSess != null && !logMIDSess.equals(mid)) { //If the requested user is different than the last log, reset date filter
-		accesses = action.getAccesses(null,null,mid,false);
-	} else { //otherwise, run the action with the requested dates
+		startDate = null;
+		endDate = null;
+		accessPage = action.getAccessPage(null,null,mid,null,byRole);
+	} else { //otherwise, show one page of the requested dates, newest first or by role
 		try{
-			accesses = action.getAccesses(request.getParameter("startDate"), request.getParameter("endDate"), mid, "role".equals(request.getParameter("sortBy")));
+			accessPage = action.getAccessPage(startDate, endDate, mid, pageToken, byRole);
 		} catch(FormValidationException e){
 			e.printHTML(pageContext.getOut());
-			accesses = action.getAccesses(null,null,mid,false); 
+			startDate = null;
+			endDate = null;
+			accessPage = action.getAccessPage(null,null,mid,null,byRole); 
 		}	
 	}
+	accesses = accessPage.getTransactions();
 	session.setAttribute("currentLogMID", mid); //set the currently viewed MID so it can be seen later in the session
 
 	List<PatientBean> patientRelatives = action.getRepresented(loggedInMID); //get list of medical dependents for user
@@ -102,15 +114,23 @@ session.removeAttribute("personnelList");
 	</tr>
 <%
 	}
-	
-	String startDate = action.getDefaultStart(accesses);
-	String endDate = action.getDefaultEnd(accesses);
-	if("role".equals(request.getParameter("sortBy"))) {
-		startDate = request.getParameter("startDate");
-		endDate = request.getParameter("endDate");
-	}
 %>
 </table>
+<%
+	String range = "logMID=" + URLEncoder.encode(mid, "UTF-8")
+			+ (startDate == null ? "" : "&startDate=" + URLEncoder.encode(startDate, "UTF-8"))
+			+ (endDate == null ? "" : "&endDate=" + URLEncoder.encode(endDate, "UTF-8"));
+	if (accessPage.hasMore()) {
+%>
+<div align=center>
+	<a href="viewAccessLog.jsp?<%= StringEscapeUtils.escapeHtml(range + (byRole ? "&sortBy=role" : "") + "&after=" + accessPage.getNextToken()) %>"><%= byRole ? "More Accesses" : "Older Accesses" %></a>
+</div>
+<%
+	}
+%>
+<div align=center>
+	<a href="accessLogExport?<%= StringEscapeUtils.escapeHtml(range) %>">Download as CSV</a>
+</div>
 <br />
 <br />
 
@@ -145,12 +165,12 @@ session.removeAttribute("personnelList");
 	<tr class="subHeader">
 		<td>Start Date:</td>
 		<td>
-			<input name="startDate" value="<%= StringEscapeUtils.escapeHtml("" + (startDate)) %>" size="10">
+			<input name="startDate" value="<%= StringEscapeUtils.escapeHtml(startDate == null ? "" : startDate) %>" size="10">
 			<input type=button value="Select Date" onclick="displayDatePicker('startDate');">
 		</td>
 		<td>End Date:</td>
 		<td>
-			<input name="endDate" value="<%= StringEscapeUtils.escapeHtml("" + (endDate)) %>">
+			<input name="endDate" value="<%= StringEscapeUtils.escapeHtml(endDate == null ? "" : endDate) %>">
 			<input type=button value="Select Date" onclick="displayDatePicker('endDate');">
 		</td>
 	</tr>
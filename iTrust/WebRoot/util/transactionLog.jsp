@@ -1,6 +1,7 @@
 <%@page import="edu.ncsu.csc.itrust.model.old.enums.TransactionType"%>
 <%@page import="edu.ncsu.csc.itrust.model.old.dao.DAOFactory"%>
-<%@page import="java.util.List"%>
+<%@page import="java.io.IOException"%>
+<%@page import="edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCallback"%>
 <%@page import="edu.ncsu.csc.itrust.model.old.beans.TransactionBean"%>
 <%@page import="org.apache.commons.lang.StringEscapeUtils"%>
 
@@ -34,22 +35,28 @@ A few clarifications:
 		<th>Extra Info</th>
 	</tr>
 	<%
-		
-		List<TransactionBean> list = DAOFactory.getProductionInstance().getTransactionDAO().getAllTransactions();
-		for (TransactionBean t : list) {
-	%>
-	<tr>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getTransactionID())) %></td>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getTimeLogged())) %></td>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getTransactionType().name())) %></td>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getTransactionType().getCode())) %></td>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getTransactionType().getDescription())) %></td>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getLoggedInMID())) %></td>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getSecondaryMID())) %></td>
-		<td><%= StringEscapeUtils.escapeHtml("" + (t.getAddedInfo())) %></td>
-	</tr>
-	<%
-	}
+		// rows are written as they stream out of the database, however long the log is
+		final JspWriter rows = out;
+		final IOException[] failure = { null };
+		DAOFactory.getProductionInstance().getTransactionDAO().streamAllTransactions(new TransactionCallback() {
+			public boolean handle(TransactionBean t) {
+				try {
+					rows.print("<tr><td>" + StringEscapeUtils.escapeHtml("" + t.getTransactionID()) + "</td><td>"
+							+ StringEscapeUtils.escapeHtml("" + t.getTimeLogged()) + "</td><td>"
+							+ StringEscapeUtils.escapeHtml(t.getTransactionType().name()) + "</td><td>"
+							+ t.getTransactionType().getCode() + "</td><td>"
+							+ StringEscapeUtils.escapeHtml(t.getTransactionType().getDescription()) + "</td><td>"
+							+ t.getLoggedInMID() + "</td><td>" + t.getSecondaryMID() + "</td><td>"
+							+ StringEscapeUtils.escapeHtml("" + t.getAddedInfo()) + "</td></tr>\n");
+					return true;
+				} catch (IOException e) {
+					failure[0] = e;
+					return false;
+				}
+			}
+		});
+		if (failure[0] != null)
+			throw failure[0];
 	%>
 </table>
 <h1><a href="/iTrust">Back to iTrust</a></h1>
@@ -90,7 +90,9 @@ CREATE TABLE patients(
 	SpiritualPractices varchar(512) default '',
 	AlternateName varchar(32) default '',
 	DateOfDeactivation DATE default NULL,
-	PRIMARY KEY (MID)
+	PRIMARY KEY (MID),
+	KEY MotherMID (MotherMID),
+	KEY FatherMID (FatherMID)
 ) ENGINE=MyISAM;
 
 CREATE TABLE flags(
@@ -169,7 +171,46 @@ CREATE TABLE transactionlog(
 	transactionCode int(10) UNSIGNED NOT NULL default '0', 
 	timeLogged timestamp NOT NULL default CURRENT_TIMESTAMP on update CURRENT_TIMESTAMP, 
 	addedInfo VARCHAR(255) default '',
-	PRIMARY KEY (transactionID)
+	spoolID BIGINT unsigned default NULL,
+	spoolSeq BIGINT unsigned default NULL,
+	PRIMARY KEY (transactionID),
+	UNIQUE KEY spoolRecord (spoolID, spoolSeq),
+	KEY secondaryTime (secondaryMID, timeLogged, transactionID),
+	KEY loggedInTime (loggedInMID, timeLogged, transactionID),
+	KEY timeLogged (timeLogged, transactionID)
+) ENGINE=MyISAM;
+
+CREATE TABLE activityfeed(
+	patientMID BIGINT unsigned NOT NULL,
+	timeLogged DATETIME NOT NULL,
+	transactionID int(10) unsigned NOT NULL,
+	actorMID BIGINT unsigned NOT NULL default '0',
+	transactionCode int(10) unsigned NOT NULL default '0',
+	PRIMARY KEY (patientMID, timeLogged, transactionID)
+) ENGINE=MyISAM;
+
+CREATE TABLE activityfeedstate(
+	patientMID BIGINT unsigned NOT NULL,
+	builtTime DATETIME NOT NULL,
+	entries int(10) unsigned NOT NULL default '0',
+	trimmedBeforeTime DATETIME NULL,
+	trimmedBeforeID int(10) unsigned NULL,
+	PRIMARY KEY (patientMID)
+) ENGINE=MyISAM;
+
+CREATE TABLE transactioncounts(
+	transactionCode int(10) UNSIGNED NOT NULL default '0',
+	patientCount BIGINT unsigned NOT NULL default '0',
+	personnelCount BIGINT unsigned NOT NULL default '0',
+	PRIMARY KEY (transactionCode)
+) ENGINE=MyISAM;
+
+CREATE TABLE transactioncountsbyhour(
+	transactionCode int(10) UNSIGNED NOT NULL default '0',
+	hourStart DATETIME NOT NULL,
+	patientCount BIGINT unsigned NOT NULL default '0',
+	personnelCount BIGINT unsigned NOT NULL default '0',
+	PRIMARY KEY (hourStart, transactionCode)
 ) ENGINE=MyISAM;
 
 CREATE TABLE hcprelations(
@@ -245,8 +286,9 @@ CREATE TABLE allergies(
 	PatientID BIGINT unsigned NOT NULL COMMENT 'MID of the Patient',
 	Description VARCHAR( 50 ) NOT NULL COMMENT 'Description of the allergy',
 	FirstFound TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-	Code varchar(10) COMMENT 'NDCode of drug that patient is allergic to'
+	Code varchar(10) COMMENT 'NDCode of drug that patient is allergic to',
 	/*NEW, Added Code, so that we could pass the NDCode of the drug when adding allergy.*/
+	KEY PatientID (PatientID)
 ) ENGINE=MyISAM;
 
 CREATE TABLE globalvariables (
@@ -277,6 +319,22 @@ CREATE TABLE reportrequests (
 	Comment TEXT
 ) ENGINE=MyISAM;
 
+CREATE TABLE reportjobs (
+	jobID BIGINT unsigned auto_increment,
+	ownerMID BIGINT unsigned NOT NULL,
+	status VARCHAR(10) NOT NULL default 'QUEUED',
+	format VARCHAR(4) NOT NULL default 'xml',
+	definition TEXT NOT NULL COMMENT 'The report form parameters, URL-encoded',
+	rowsDone INT unsigned NOT NULL default 0,
+	rowsEstimated INT unsigned NOT NULL default 0,
+	message VARCHAR(200) NOT NULL default '',
+	createdAt DATETIME NOT NULL,
+	finishedAt DATETIME default NULL,
+	PRIMARY KEY (jobID),
+	KEY ownerMID (ownerMID, jobID),
+	KEY status (status, finishedAt)
+) ENGINE=MyISAM;
+
 CREATE TABLE message (
 	message_id          INT UNSIGNED AUTO_INCREMENT,
 	parent_msg_id       INT UNSIGNED,
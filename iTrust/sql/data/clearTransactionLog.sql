@@ -1 +1,5 @@
-DELETE FROM transactionlog;
\ No newline at end of file
+DELETE FROM transactionlog;
+DELETE FROM activityfeed;
+DELETE FROM activityfeedstate;
+DELETE FROM transactioncounts;
+DELETE FROM transactioncountsbyhour;
\ No newline at end of file
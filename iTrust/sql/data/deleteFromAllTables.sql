@@ -20,10 +20,16 @@ DELETE FROM message;
 ALTER TABLE message AUTO_INCREMENT = 0;
 DELETE FROM reportrequests;
 ALTER TABLE reportrequests AUTO_INCREMENT = 0;
+DELETE FROM reportjobs;
+ALTER TABLE reportjobs AUTO_INCREMENT = 0;
 DELETE FROM representatives;
 DELETE FROM resetpasswordfailures;
 DELETE FROM transactionlog;
 ALTER TABLE transactionlog AUTO_INCREMENT = 0;
+DELETE FROM activityfeed;
+DELETE FROM activityfeedstate;
+DELETE FROM transactioncounts;
+DELETE FROM transactioncountsbyhour;
 DELETE FROM billing;
 ALTER TABLE billing AUTO_INCREMENT = 0;
 DELETE FROM reviews;
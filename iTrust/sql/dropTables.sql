@@ -39,6 +39,7 @@ DROP TABLE IF EXISTS recordsrelease;
 DROP TABLE IF EXISTS remotemonitoringdata;
 DROP TABLE IF EXISTS remotemonitoringlists;
 DROP TABLE IF EXISTS reportrequests;
+DROP TABLE IF EXISTS reportjobs;
 DROP TABLE IF EXISTS representatives;
 DROP TABLE IF EXISTS requiredprocedures;
 DROP TABLE IF EXISTS resetpasswordfailures;
@@ -46,6 +47,10 @@ DROP TABLE IF EXISTS reviews;
 DROP TABLE IF EXISTS reviews;
 DROP TABLE IF EXISTS transactionfailureattempts;
 DROP TABLE IF EXISTS transactionlog;
+DROP TABLE IF EXISTS activityfeed;
+DROP TABLE IF EXISTS activityfeedstate;
+DROP TABLE IF EXISTS transactioncounts;
+DROP TABLE IF EXISTS transactioncountsbyhour;
 DROP TABLE IF EXISTS userprefs;
 DROP TABLE IF EXISTS users;
 DROP TABLE IF EXISTS WardRoomCheckout;
@@ -9,6 +9,8 @@ import org.w3c.dom.Element;
 
 import java.util.ArrayList;
 
+import edu.ncsu.csc.itrust.report.XmlReportWriter;
+
 
 /**
  * XmlGenerator is a class that takes headers and data and converts them into a xml compliant document.
@@ -63,7 +65,7 @@ public class XmlGenerator{
 	 * @return - The xml compliant string
 	 */
 	private static String parse(String s){
-		return s.replaceAll(" ", "_").replaceAll("#", "NUMBER").replaceAll("'", "");
+		return XmlReportWriter.sanitize(s);
 	}
 	
 }
\ No newline at end of file
@@ -8,9 +8,12 @@ import java.util.List;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.old.beans.ActivityPage;
 import edu.ncsu.csc.itrust.model.old.beans.PersonnelBean;
 import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.ActivityFeedDAO;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.AuthDAO;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDAO;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
@@ -20,10 +23,16 @@ import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
  * Handles retrieving the log of record accesses for a given user Used by viewAccessLog.jsp
  */
 public class ActivityFeedAction {
+	/** Transactions shown per page of the activity feed */
+	public static final int PAGE_SIZE = 20;
+
 	private TransactionDAO transDAO;
 	private PatientDAO patientDAO;
 	private AuthDAO authDAO;
+	private ActivityFeedDAO feedDAO;
 	private long loggedInMID;
+	/** looked up the first time a sentence needs it */
+	private String userName;
 
 	/**
 	 * Set up
@@ -36,6 +45,7 @@ public class ActivityFeedAction {
 		this.transDAO = factory.getTransactionDAO();
 		this.authDAO = factory.getAuthDAO();
 		this.patientDAO = factory.getPatientDAO();
+		this.feedDAO = factory.getActivityFeedDAO();
 	}
 
 	/**
@@ -61,6 +71,34 @@ public class ActivityFeedAction {
 		return fullList;
 	}
 	
+	/**
+	 * Returns one page of the activity feed, newest first, from the feed kept
+	 * up to date as transactions are logged. Each page is a single range read
+	 * however far back the user has scrolled.
+	 * 
+	 * @param pageToken The token of the page to show, or null for the newest page
+	 * @return The page of at most {@link #PAGE_SIZE} activities
+	 * @throws DBException
+	 * @throws FormValidationException If the page token is not valid
+	 */
+	public ActivityPage getActivityPage(String pageToken) throws DBException, FormValidationException {
+		TransactionCursor after;
+		try {
+			after = TransactionCursor.parse(pageToken);
+		} catch (IllegalArgumentException e) {
+			throw new FormValidationException("Page of the activity feed.");
+		}
+
+		List<PersonnelBean> dlhcps =  patientDAO.getDeclaredHCPs(loggedInMID);
+		
+		//user has either 0 or 1 DLHCP's. Get one if exists so it can be filtered from results
+		long dlhcpID = -1;
+		if(!dlhcps.isEmpty())
+			dlhcpID = dlhcps.get(0).getMID();
+		
+		return feedDAO.getFeedPage(loggedInMID, dlhcpID, after, PAGE_SIZE);
+	}
+	
 	/**
 	 * Returns an indicator of the number of days between the current date and the date passed
 	 * as a parameter. Returns 0 if the dates are on the same day, 1 if the date passed in is
@@ -91,13 +129,8 @@ public class ActivityFeedAction {
 	 */
 	public String getMessageAsSentence(String actor, Timestamp timestamp, TransactionType code) {
 		String result = actor + " ";
-		StringBuffer buf = new StringBuffer();
-	
-		for (TransactionType type : TransactionType.values()) {
-			if (code.getCode() == type.getCode() && type.isPatientViewable())
-				buf.append(type.getActionPhrase());
-		}
-		result += buf.toString();
+		if (code.isPatientViewable())
+			result += code.getActionPhrase();
 		
 		SimpleDateFormat formatter = new SimpleDateFormat("h:mma.");
 		switch(recent(new Date(timestamp.getTime()))) {
@@ -124,11 +157,14 @@ public class ActivityFeedAction {
 	
 	private String replaceNameWithYou(String activity)
 	{
-		try{
-			return activity.replace(authDAO.getUserName(loggedInMID), "You");
-		} catch(Exception e)
-		{
-			return activity;
+		if (userName == null) {
+			try{
+				userName = authDAO.getUserName(loggedInMID);
+			} catch(Exception e)
+			{
+				return activity;
+			}
 		}
+		return activity.replace(userName, "You");
 	}
 }
@@ -1,6 +1,11 @@
 package edu.ncsu.csc.itrust.action;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.logger.TransactionLogger;
@@ -18,6 +23,8 @@ import edu.ncsu.csc.itrust.report.DemographicReportFilter.DemographicReportFilte
 import edu.ncsu.csc.itrust.report.MedicalReportFilter.MedicalReportFilterType;
 import edu.ncsu.csc.itrust.report.PersonnelReportFilter.PersonnelReportFilterType;
 import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.report.ReportQuery;
+import edu.ncsu.csc.itrust.report.ReportResultCache;
 
 /**
  * 
@@ -28,6 +35,36 @@ public class GroupReportAction {
 	private PatientDAO pDAO;
 	private AllergyDAO aDAO;
 	private FamilyDAO fDAO;
+	private volatile Prefetched prefetched;
+
+	/**
+	 * The related records of a report's patients, loaded by
+	 * {@link GroupReportAction#prefetch(List)}.
+	 */
+	private static class Prefetched {
+		final Set<Long> mids;
+		final Map<Long, List<FamilyMemberBean>> parents;
+		final Map<Long, List<FamilyMemberBean>> children;
+		final Map<Long, List<FamilyMemberBean>> siblings;
+		final Map<Long, List<AllergyBean>> allergies;
+		final Map<Long, List<PersonnelBean>> declaredHCPs;
+
+		Prefetched(Set<Long> mids, Map<Long, List<FamilyMemberBean>> parents,
+				Map<Long, List<FamilyMemberBean>> children, Map<Long, List<FamilyMemberBean>> siblings,
+				Map<Long, List<AllergyBean>> allergies, Map<Long, List<PersonnelBean>> declaredHCPs) {
+			this.mids = mids;
+			this.parents = parents;
+			this.children = children;
+			this.siblings = siblings;
+			this.allergies = allergies;
+			this.declaredHCPs = declaredHCPs;
+		}
+
+		static <T> List<T> get(Map<Long, List<T>> records, long mid) {
+			List<T> found = records.get(mid);
+			return found == null ? Collections.<T> emptyList() : found;
+		}
+	}
 
 	/**
 	 * 
@@ -42,26 +79,101 @@ public class GroupReportAction {
 	}
 
 	/**
+	 * Finds the patients matching every filter. The filters are compiled into
+	 * one query (see {@link ReportQuery}), or answered from the report cache or
+	 * the demographic index, and any that can't be are applied to the
+	 * results.
 	 * 
 	 * @param filters
 	 * @return
 	 */
 	public GroupReportBean generateReport(List<ReportFilter> filters) {
 		List<PatientBean> patients;
+		ReportQuery query = ReportQuery.compile(filters);
 
 		try {
-			patients = getAllPatients();
+			if (ReportResultCache.getShared() != null)
+				patients = pDAO.getPatients(getMatchingMIDs(query));
+			else {
+				List<Long> mids = pDAO.getIndexedPatientMIDs(query.getCompiledFilters());
+				if (mids != null)
+					patients = pDAO.getPatients(mids);
+				else
+					patients = pDAO.getPatientsWhere(query.getCondition(), query.getParams());
+			}
 		} catch (DBException e) {
 			return null;
 		}
 
-		for (ReportFilter filter : filters) {
+		for (ReportFilter filter : query.getRemainingFilters()) {
 			patients = filter.filter(patients);
 		}
 
 		return new GroupReportBean(patients, filters);
 	}
 
+	/**
+	 * Finds the MIDs of the patients matched by the compiled part of a report
+	 * query, for a report that's loaded a batch at a time with
+	 * {@link #getMatchingPatients(ReportQuery, List)}. They're looked up in the
+	 * report cache first, if there is one (see {@link ReportResultCache}).
+	 * 
+	 * @param query
+	 *            The report's compiled filters
+	 * @return The MIDs, in report order
+	 * @throws DBException
+	 */
+	public List<Long> getMatchingMIDs(ReportQuery query) throws DBException {
+		ReportResultCache cache = ReportResultCache.getShared();
+		if (cache == null)
+			return findMatchingMIDs(query);
+		return cache.getMIDs(query.getCompiledFilters(), () -> findMatchingMIDs(query));
+	}
+
+	private List<Long> findMatchingMIDs(ReportQuery query) throws DBException {
+		List<Long> mids = pDAO.getIndexedPatientMIDs(query.getCompiledFilters());
+		return mids != null ? mids : pDAO.getPatientMIDsWhere(query.getCondition(), query.getParams());
+	}
+
+	/**
+	 * Loads a batch of the patients found by {@link #getMatchingMIDs(ReportQuery)}
+	 * and applies the filters that couldn't be compiled to them.
+	 * 
+	 * @param query
+	 *            The report's compiled filters
+	 * @param mids
+	 *            The batch of MIDs
+	 * @return The batch's patients that match every filter, in report order
+	 * @throws DBException
+	 */
+	public List<PatientBean> getMatchingPatients(ReportQuery query, List<Long> mids) throws DBException {
+		List<PatientBean> patients = pDAO.getPatients(mids);
+		for (ReportFilter filter : query.getRemainingFilters()) {
+			patients = filter.filter(patients);
+		}
+		return patients;
+	}
+
+	/**
+	 * Loads the parents, children, siblings, allergies and declared HCPs of
+	 * every one of the patients in a few batched queries, instead of the
+	 * getComprehensive*Info methods querying for them one patient at a time.
+	 * Once it's returned, those methods may be called from several threads at
+	 * once.
+	 * 
+	 * @param patients
+	 *            The patients in the report
+	 * @throws DBException
+	 */
+	public void prefetch(List<PatientBean> patients) throws DBException {
+		Set<Long> mids = new LinkedHashSet<Long>();
+		for (PatientBean patient : patients)
+			mids.add(patient.getMID());
+		List<Long> midList = new ArrayList<Long>(mids);
+		prefetched = new Prefetched(mids, fDAO.getParents(midList), fDAO.getChildren(midList),
+				fDAO.getSiblings(midList), aDAO.getAllergies(midList), pDAO.getDeclaredHCPs(midList));
+	}
+
 	/**
 	 * 
 	 * @param patient
@@ -110,7 +222,7 @@ public class GroupReportAction {
 			return patient.getIcID();
 		case PARENT_FIRST_NAME:
 			try {
-				List<FamilyMemberBean> parents = fDAO.getParents(patient.getMID());
+				List<FamilyMemberBean> parents = getParents(patient.getMID());
 				StringBuffer buff = new StringBuffer();
 				for (FamilyMemberBean parent : parents) {
 					buff.append(parent.getFirstName());
@@ -123,7 +235,7 @@ public class GroupReportAction {
 			}
 		case PARENT_LAST_NAME:
 			try {
-				List<FamilyMemberBean> parents = fDAO.getParents(patient.getMID());
+				List<FamilyMemberBean> parents = getParents(patient.getMID());
 				StringBuffer buff = new StringBuffer();
 				for (FamilyMemberBean parent : parents) {
 					buff.append(parent.getLastName());
@@ -136,7 +248,7 @@ public class GroupReportAction {
 			}
 		case CHILD_FIRST_NAME:
 			try {
-				List<FamilyMemberBean> children = fDAO.getChildren(patient.getMID());
+				List<FamilyMemberBean> children = getChildren(patient.getMID());
 				StringBuffer buff = new StringBuffer();
 				for (FamilyMemberBean child : children) {
 					buff.append(child.getFirstName());
@@ -149,7 +261,7 @@ public class GroupReportAction {
 			}
 		case CHILD_LAST_NAME:
 			try {
-				List<FamilyMemberBean> children = fDAO.getChildren(patient.getMID());
+				List<FamilyMemberBean> children = getChildren(patient.getMID());
 				StringBuffer buff = new StringBuffer();
 				for (FamilyMemberBean child : children) {
 					buff.append(child.getLastName());
@@ -162,7 +274,7 @@ public class GroupReportAction {
 			}
 		case SIBLING_FIRST_NAME:
 			try {
-				List<FamilyMemberBean> siblings = fDAO.getSiblings(patient.getMID());
+				List<FamilyMemberBean> siblings = getSiblings(patient.getMID());
 				StringBuffer buff = new StringBuffer();
 				for (FamilyMemberBean sibling : siblings) {
 					buff.append(sibling.getFirstName());
@@ -175,7 +287,7 @@ public class GroupReportAction {
 			}
 		case SIBLING_LAST_NAME:
 			try {
-				List<FamilyMemberBean> siblings = fDAO.getSiblings(patient.getMID());
+				List<FamilyMemberBean> siblings = getSiblings(patient.getMID());
 				StringBuffer buff = new StringBuffer();
 				for (FamilyMemberBean sibling : siblings) {
 					buff.append(sibling.getLastName());
@@ -206,7 +318,7 @@ public class GroupReportAction {
 			StringBuffer buff = new StringBuffer();
 			switch (filterType) {
 			case ALLERGY:
-				List<AllergyBean> allergies = aDAO.getAllergies(patient.getMID());
+				List<AllergyBean> allergies = getAllergies(patient.getMID());
 				for (AllergyBean allergy : allergies) {
 					buff.append(allergy.getNDCode());
 					buff.append("\n");
@@ -233,7 +345,7 @@ public class GroupReportAction {
 		switch (filterType) {
 		case DLHCP:
 			try {
-				List<PersonnelBean> dlhcps = pDAO.getDeclaredHCPs(patient.getMID());
+				List<PersonnelBean> dlhcps = getDeclaredHCPs(patient.getMID());
 				StringBuffer buff = new StringBuffer();
 				for (PersonnelBean dlhcp : dlhcps) {
 					buff.append(dlhcp.getFullName());
@@ -250,12 +362,28 @@ public class GroupReportAction {
 		return null;
 	}
 
-	/**
-	 * 
-	 * @return
-	 * @throws DBException
-	 */
-	private List<PatientBean> getAllPatients() throws DBException {
-		return pDAO.getAllPatients();
+	private List<FamilyMemberBean> getParents(long mid) throws DBException {
+		Prefetched p = prefetched;
+		return p != null && p.mids.contains(mid) ? Prefetched.get(p.parents, mid) : fDAO.getParents(mid);
+	}
+
+	private List<FamilyMemberBean> getChildren(long mid) throws DBException {
+		Prefetched p = prefetched;
+		return p != null && p.mids.contains(mid) ? Prefetched.get(p.children, mid) : fDAO.getChildren(mid);
+	}
+
+	private List<FamilyMemberBean> getSiblings(long mid) throws DBException {
+		Prefetched p = prefetched;
+		return p != null && p.mids.contains(mid) ? Prefetched.get(p.siblings, mid) : fDAO.getSiblings(mid);
+	}
+
+	private List<AllergyBean> getAllergies(long mid) throws DBException {
+		Prefetched p = prefetched;
+		return p != null && p.mids.contains(mid) ? Prefetched.get(p.allergies, mid) : aDAO.getAllergies(mid);
+	}
+
+	private List<PersonnelBean> getDeclaredHCPs(long mid) throws DBException {
+		Prefetched p = prefetched;
+		return p != null && p.mids.contains(mid) ? Prefetched.get(p.declaredHCPs, mid) : pDAO.getDeclaredHCPs(mid);
 	}
 }
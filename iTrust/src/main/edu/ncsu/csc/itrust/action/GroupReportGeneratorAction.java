@@ -1,7 +1,13 @@
 package edu.ncsu.csc.itrust.action;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
 import javax.servlet.http.HttpServletRequest;
 
 import edu.ncsu.csc.itrust.exception.DBException;
@@ -17,6 +23,8 @@ import edu.ncsu.csc.itrust.report.MedicalReportFilter.MedicalReportFilterType;
 import edu.ncsu.csc.itrust.report.PersonnelReportFilter;
 import edu.ncsu.csc.itrust.report.PersonnelReportFilter.PersonnelReportFilterType;
 import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.report.ReportQuery;
+import edu.ncsu.csc.itrust.report.ReportWriter;
 
 /**
  * Generates group reports, producing ArrayLists containing
@@ -24,6 +32,21 @@ import edu.ncsu.csc.itrust.report.ReportFilter;
  */
 public class GroupReportGeneratorAction {
 	
+	/**
+	 * Shared by every report for building records in parallel
+	 */
+	private static final ForkJoinPool ASSEMBLY_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * Most records a thread builds without splitting them up further
+	 */
+	private static final int ASSEMBLY_BATCH = 256;
+	
+	/**
+	 * Patients loaded at a time when writing a report out
+	 */
+	private static final int STREAM_BATCH = 2000;
+	
 	/**
 	 * DAOFactory for database operations
 	 */
@@ -82,7 +105,22 @@ public class GroupReportGeneratorAction {
 	public GroupReportGeneratorAction(DAOFactory factory, HttpServletRequest request, long mid) throws DBException{
 		this.factory=factory;
 		this.filters = new ArrayList<ReportFilter>();
-		parseFilters(request);
+		parseFilters(request::getParameter, request::getParameterValues);
+		action = new GroupReportAction(factory, mid);
+	}
+	
+	/**
+	 * Initializes the group report generator with a list of filters after parsing them
+	 * from the report form's parameters, e.g. those saved with a background report job
+	 * 
+	 * @param params The form's parameters, each name with its values
+	 * @throws DBException 
+	 */
+	public GroupReportGeneratorAction(DAOFactory factory, Map<String, String[]> params, long mid) throws DBException{
+		this.factory=factory;
+		this.filters = new ArrayList<ReportFilter>();
+		parseFilters(name -> params.containsKey(name) && params.get(name).length > 0 ? params.get(name)[0] : null,
+				params::get);
 		action = new GroupReportAction(factory, mid);
 	}
 	
@@ -131,6 +169,55 @@ public class GroupReportGeneratorAction {
 		//Initialize the GroupReportBean
 		GroupReportBean report = action.generateReport(filters);
 		
+		populateHeaders();
+		
+		reportData.addAll(assembleRecords(report.getPatients()));
+		
+		//Remove MID from report
+		int midIndex = reportHeaders.indexOf("MID");
+		reportHeaders.remove(midIndex);
+		for(ArrayList<String> patients : reportData){
+			patients.remove(midIndex);
+		}
+	}
+	
+	/**
+	 * Generates the report a batch of patients at a time, handing each record
+	 * to the writer as soon as it's built rather than keeping them in
+	 * {@link #getReportData()}. Only the matching MIDs are held for the whole
+	 * report.
+	 * 
+	 * @param writer Where to write the report
+	 * @throws DBException
+	 * @throws IOException
+	 */
+	public void writeReport(ReportWriter writer) throws DBException, IOException {
+		ReportQuery query = ReportQuery.compile(filters);
+		
+		populateHeaders();
+		
+		//Leave MID out of the report
+		int midIndex = reportHeaders.indexOf("MID");
+		reportHeaders.remove(midIndex);
+		writer.writeHeaders(reportHeaders);
+		
+		List<Long> mids = action.getMatchingMIDs(query);
+		writer.expectRecords(mids.size());
+		for (int start = 0; start < mids.size(); start += STREAM_BATCH) {
+			List<PatientBean> patients = action.getMatchingPatients(query,
+					mids.subList(start, Math.min(mids.size(), start + STREAM_BATCH)));
+			for (ArrayList<String> record : assembleRecords(patients)) {
+				record.remove(midIndex);
+				writer.writeRecord(record);
+			}
+		}
+		writer.finish();
+	}
+	
+	/**
+	 * Populates the filter lists and the headers.
+	 */
+	private void populateHeaders() {
 		//Populate the filter lists
 		for (ReportFilter filter : filters) {
 			reportFilterTypes.add(filter.getFilterTypeString());
@@ -158,76 +245,129 @@ public class GroupReportGeneratorAction {
 		for (PersonnelReportFilterType type : PersonnelReportFilterType.values()) {
 			reportHeaders.add(type.toString());
 		}
-		
-		//Loop through all the patients in the report
-		for (PatientBean patient : report.getPatients()) {
-			
-			//Create a temporary ArrayList for the current patient's data
-			ArrayList<String> currentPatientData = new ArrayList<String>();
-			
-			//Populate the current record with Demographic data
-			for (DemographicReportFilterType type : DemographicReportFilterType.values()) {
-				if (type != DemographicReportFilterType.LOWER_AGE_LIMIT && type != DemographicReportFilterType.UPPER_AGE_LIMIT) {
-					String val = action.getComprehensiveDemographicInfo(patient, type);
-					if (val != null) {
-						currentPatientData.add(val);
-					} else {
-						currentPatientData.add("");
-					}
-				}
+	}
+	
+	/**
+	 * Builds the patients' records, fetching every patient's related records
+	 * at once and then building the records in parallel.
+	 * 
+	 * @param patients The patients in the report
+	 * @return Their records, in the same order
+	 */
+	private ArrayList<ArrayList<String>> assembleRecords(List<PatientBean> patients) {
+		try {
+			action.prefetch(patients);
+			ArrayList<ArrayList<String>> records = new ArrayList<ArrayList<String>>(
+					Collections.<ArrayList<String>> nCopies(patients.size(), null));
+			ASSEMBLY_POOL.invoke(new AssembleRecords(patients, records, 0, patients.size()));
+			return records;
+		} catch (DBException e) {
+			//Query for each patient's records as they're built instead
+			ArrayList<ArrayList<String>> records = new ArrayList<ArrayList<String>>(patients.size());
+			for (PatientBean patient : patients) {
+				records.add(assembleRecord(patient));
 			}
-			
-			//Populate the current record with Medical data
-			for (MedicalReportFilterType type : MedicalReportFilterType.values()) {
-				if (type != MedicalReportFilterType.UPPER_OFFICE_VISIT_DATE) {
-					String val = action.getComprehensiveMedicalInfo(patient, type);
-					if (val != null) {
-						currentPatientData.add(val);
-					} else {
-						currentPatientData.add("");
-					}
+			return records;
+		}
+	}
+	
+	/**
+	 * Builds one patient's record, a value for each header.
+	 * 
+	 * @param patient The patient
+	 * @return The patient's record
+	 */
+	private ArrayList<String> assembleRecord(PatientBean patient) {
+		//Create a temporary ArrayList for the current patient's data
+		ArrayList<String> currentPatientData = new ArrayList<String>();
+		
+		//Populate the current record with Demographic data
+		for (DemographicReportFilterType type : DemographicReportFilterType.values()) {
+			if (type != DemographicReportFilterType.LOWER_AGE_LIMIT && type != DemographicReportFilterType.UPPER_AGE_LIMIT) {
+				String val = action.getComprehensiveDemographicInfo(patient, type);
+				if (val != null) {
+					currentPatientData.add(val);
+				} else {
+					currentPatientData.add("");
 				}
 			}
-			
-			//Populate the current record with Personnel data
-			for (PersonnelReportFilterType type : PersonnelReportFilterType.values()) {
-				String val = action.getComprehensivePersonnelInfo(patient, type);
+		}
+		
+		//Populate the current record with Medical data
+		for (MedicalReportFilterType type : MedicalReportFilterType.values()) {
+			if (type != MedicalReportFilterType.UPPER_OFFICE_VISIT_DATE) {
+				String val = action.getComprehensiveMedicalInfo(patient, type);
 				if (val != null) {
 					currentPatientData.add(val);
 				} else {
 					currentPatientData.add("");
 				}
 			}
-			
-			//Add the current record to the list of records
-			reportData.add(currentPatientData);
 		}
 		
-		//Remove MID from report
-		int midIndex = reportHeaders.indexOf("MID");
-		reportHeaders.remove(midIndex);
-		for(ArrayList<String> patients : reportData){
-			patients.remove(midIndex);
+		//Populate the current record with Personnel data
+		for (PersonnelReportFilterType type : PersonnelReportFilterType.values()) {
+			String val = action.getComprehensivePersonnelInfo(patient, type);
+			if (val != null) {
+				currentPatientData.add(val);
+			} else {
+				currentPatientData.add("");
+			}
+		}
+		
+		return currentPatientData;
+	}
+	
+	/**
+	 * Builds the records of a range of patients, splitting the range between
+	 * threads while it's larger than {@link #ASSEMBLY_BATCH}.
+	 */
+	private class AssembleRecords extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<PatientBean> patients;
+		private final List<ArrayList<String>> records;
+		private final int from;
+		private final int to;
+
+		AssembleRecords(List<PatientBean> patients, List<ArrayList<String>> records, int from, int to) {
+			this.patients = patients;
+			this.records = records;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= ASSEMBLY_BATCH) {
+				for (int i = from; i < to; i++) {
+					records.set(i, assembleRecord(patients.get(i)));
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new AssembleRecords(patients, records, from, mid),
+						new AssembleRecords(patients, records, mid, to));
+			}
 		}
 	}
 	
 	/**
 	 * Method that parses the request parameters to create the filter list in order to run report.
 	 * 
-	 * @param request with form parameters to create the filter list
+	 * @param parameter gets a form parameter's value
+	 * @param parameterValues gets all of a form parameter's values
 	 */
-	private void parseFilters(HttpServletRequest request){
+	private void parseFilters(Function<String, String> parameter, Function<String, String[]> parameterValues){
 		boolean hasDeactivatedFilter = false;
-		if (request.getParameter("demoparams") != null && !request.getParameter("demoparams").isEmpty()) {
-			String demoparams = request.getParameter("demoparams");
+		if (parameter.apply("demoparams") != null && !parameter.apply("demoparams").isEmpty()) {
+			String demoparams = parameter.apply("demoparams");
 			String demoFilters[] = demoparams.split(" ");
 			for (String filter : demoFilters) {
-				if (request.getParameter(filter) != null && !request.getParameter(filter).isEmpty()) {
+				if (parameter.apply(filter) != null && !parameter.apply(filter).isEmpty()) {
 					DemographicReportFilterType filterType = DemographicReportFilter.filterTypeFromString(filter);
 					if(filterType.toString().equals("DEACTIVATED")){
 						hasDeactivatedFilter=true;
 					}
-					DemographicReportFilter fil = new DemographicReportFilter(filterType, request.getParameter(filter), factory);
+					DemographicReportFilter fil = new DemographicReportFilter(filterType, parameter.apply(filter), factory);
 					filters.add(fil);
 				}
 			}
@@ -235,11 +375,11 @@ public class GroupReportGeneratorAction {
 		if(!hasDeactivatedFilter){
 			filters.add(new DemographicReportFilter(DemographicReportFilter.filterTypeFromString("DEACTIVATED"), "exclude", factory));
 		}
-		if (request.getParameter("medparams") != null && !request.getParameter("medparams").isEmpty()) {
-			String medparams = request.getParameter("medparams");
+		if (parameter.apply("medparams") != null && !parameter.apply("medparams").isEmpty()) {
+			String medparams = parameter.apply("medparams");
 			String medFilters[] = medparams.split(" ");
 			for (String filter : medFilters) {
-				if (request.getParameter(filter) != null && !request.getParameter(filter).isEmpty()) {
+				if (parameter.apply(filter) != null && !parameter.apply(filter).isEmpty()) {
 					MedicalReportFilterType filterType = MedicalReportFilter.filterTypeFromString(filter);
 					if (filterType == MedicalReportFilterType.DIAGNOSIS_ICD_CODE
 							|| filterType == MedicalReportFilterType.MISSING_DIAGNOSIS_ICD_CODE
@@ -247,32 +387,32 @@ public class GroupReportGeneratorAction {
 							|| filterType == MedicalReportFilterType.CURRENT_PRESCRIPTIONS
 							|| filterType == MedicalReportFilterType.PASTCURRENT_PRESCRIPTIONS
 							|| filterType == MedicalReportFilterType.PROCEDURE) {
-						String[] vals = request.getParameterValues(filter);
+						String[] vals = parameterValues.apply(filter);
 						for (String val : vals) {
 							MedicalReportFilter fil = new MedicalReportFilter(filterType, val, factory);
 							filters.add(fil);
 						}
 					} else {
-						MedicalReportFilter fil = new MedicalReportFilter(filterType, request.getParameter(filter), factory);
+						MedicalReportFilter fil = new MedicalReportFilter(filterType, parameter.apply(filter), factory);
 						filters.add(fil);
 					}
 				}
 			}
 		}
-		if (request.getParameter("persparams") != null && !request.getParameter("persparams").isEmpty()) {
-			String persparams = request.getParameter("persparams");
+		if (parameter.apply("persparams") != null && !parameter.apply("persparams").isEmpty()) {
+			String persparams = parameter.apply("persparams");
 			String personnelFilters[] = persparams.split(" ");
 			for (String filter : personnelFilters) {
-				if (request.getParameter(filter) != null && !request.getParameter(filter).isEmpty()) {
+				if (parameter.apply(filter) != null && !parameter.apply(filter).isEmpty()) {
 					PersonnelReportFilterType filterType = PersonnelReportFilter.filterTypeFromString(filter);
 					if (filterType == PersonnelReportFilterType.DLHCP) {
-						String[] vals = request.getParameterValues(filter);
+						String[] vals = parameterValues.apply(filter);
 						for (String val : vals) {
 							PersonnelReportFilter fil = new PersonnelReportFilter(filterType, val, factory);
 							filters.add(fil);
 						}
 					} else {
-						PersonnelReportFilter fil = new PersonnelReportFilter(filterType, request.getParameter(filter), factory);
+						PersonnelReportFilter fil = new PersonnelReportFilter(filterType, parameter.apply(filter), factory);
 						filters.add(fil);
 					}
 				}
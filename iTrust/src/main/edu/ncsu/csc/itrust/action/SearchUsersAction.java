@@ -3,7 +3,9 @@ package edu.ncsu.csc.itrust.action;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import edu.ncsu.csc.itrust.exception.DBException;
@@ -11,6 +13,8 @@ import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.beans.PersonnelBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDAO;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientNameIndex;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelIndex;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelDAO;
 
 /**
@@ -61,36 +65,47 @@ public class SearchUsersAction {
 	 * @return A java.util.List of PersonnelBeans
 	 */
 	public List<PersonnelBean> fuzzySearchForExperts(String query) {
-		String[] subqueries=null;
-		
-		List<PersonnelBean> result = new ArrayList<PersonnelBean>();
-		if(query!=null && query.length()>0 && !query.startsWith("_")){
-			subqueries = query.split(" ");
-			int i=0;
-			for(String q : subqueries){
-				try {
-					List<PersonnelBean> first = personnelDAO.fuzzySearchForExpertsWithName(q, "");				
-					List<PersonnelBean> last = personnelDAO.fuzzySearchForExpertsWithName("", q);
-					
-					for(int j=0; j < last.size(); j++){
-					  if(!result.contains(last.get(j))){
-						  result.add(0, last.get(j));
-					  }
-					}
-					for(int j=0; j < first.size(); j++){
-					  if(!result.contains(first.get(j))){
-						  result.add(0, first.get(j));
-					  }
-					}
-					i++;
-				} catch (DBException e1) {
-					e1.printStackTrace();
-				}
-			}
-			
+		if (query == null || query.length() == 0 || query.startsWith("_"))
+			return new ArrayList<PersonnelBean>();
+		try {
+			return personnelDAO.fuzzySearchForExperts(query);
+		} catch (DBException e) {
+			e.printStackTrace();
+			return new ArrayList<PersonnelBean>();
+		}
+	}
+	
+	/**
+	 * Search for the experts (HCPs) matching every word of the query, narrowed down by specialty and hospital.
+	 * @param query Words to find in their names; a word ending in * must start one of their names
+	 * @param specialty The specialty, or null for any
+	 * @param hospitalID The ID of a hospital they're assigned to, or null for any
+	 * @return A java.util.List of PersonnelBeans
+	 */
+	public List<PersonnelBean> searchForExperts(String query, String specialty, String hospitalID) {
+		try {
+			return personnelDAO.searchPersonnel(new PersonnelIndex.Query().named(query).role("hcp")
+					.specialty(specialty).hospital(hospitalID));
+		} catch (DBException e) {
+			e.printStackTrace();
+			return new ArrayList<PersonnelBean>();
+		}
+	}
+	
+	/**
+	 * Counts the experts matching a search in each specialty.
+	 * @param query Words to find in their names, as for searchForExperts
+	 * @param hospitalID The ID of a hospital they're assigned to, or null for any
+	 * @return Specialty to the number of experts in it
+	 */
+	public Map<String, Integer> getExpertSpecialtyCounts(String query, String hospitalID) {
+		try {
+			return personnelDAO.getSpecialtyCounts(new PersonnelIndex.Query().named(query).role("hcp")
+					.hospital(hospitalID));
+		} catch (DBException e) {
+			e.printStackTrace();
+			return new TreeMap<String, Integer>();
 		}
-		
-		return result;
 	}
 	
 	/**
@@ -131,6 +146,11 @@ public class SearchUsersAction {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<PatientBean> fuzzySearchForPatients(String query, boolean allowDeactivated) {
+		if (query != null && PatientNameIndex.getShared() != null) {
+			List<PatientBean> indexed = searchPatientNameIndex(query, allowDeactivated, 0);
+			if (indexed != null)
+				return indexed;
+		}
 		String[] subqueries=null;
 		
 		Set<PatientBean> patientsSet = new TreeSet<PatientBean>();
@@ -189,6 +209,82 @@ public class SearchUsersAction {
 		return results;
 	}
 	
+	/**
+	 * Search for the patients best matching the query: those where part of the query is a whole name or MID
+	 * come first, then those where it starts one, then the rest.
+	 * @param query query
+	 * @param allowDeactivated allowDeactivated
+	 * @param limit The most patients to return
+	 * @return A java.util.List of PatientBeans, best match first
+	 */
+	public List<PatientBean> fuzzySearchForPatients(String query, boolean allowDeactivated, int limit) {
+		if (query != null && PatientNameIndex.getShared() != null) {
+			List<PatientBean> indexed = searchPatientNameIndex(query, allowDeactivated, limit);
+			if (indexed != null)
+				return indexed;
+		}
+		List<PatientBean> results = fuzzySearchForPatients(query, allowDeactivated);
+		return results.size() > limit ? new ArrayList<PatientBean>(results.subList(0, limit)) : results;
+	}
+
+	/**
+	 * Search for the MIDs of all patients matching the query, as fuzzySearchForPatients does, without loading
+	 * every patient when the patient name index can answer it. An empty query with allowDeactivated finds every
+	 * deactivated patient.
+	 * @param query query
+	 * @param allowDeactivated allowDeactivated
+	 * @return A java.util.List of MIDs, in order
+	 */
+	public List<Long> fuzzySearchForPatientMIDs(String query, boolean allowDeactivated) {
+		if (query != null && query.length() > 0 && !query.startsWith("_") && PatientNameIndex.getShared() != null) {
+			try {
+				return patientDAO.searchPatientNameIndexMIDs(query, allowDeactivated, 0);
+			} catch (DBException e) {
+				e.printStackTrace();
+			} catch (IllegalStateException e) {
+				// the index was dropped; search with SQL
+			}
+		}
+		List<PatientBean> patients = (query == null || query.isEmpty()) && allowDeactivated ? getDeactivated()
+				: fuzzySearchForPatients(query, allowDeactivated);
+		List<Long> mids = new ArrayList<Long>(patients.size());
+		for (PatientBean p : patients)
+			mids.add(p.getMID());
+		Collections.sort(mids);
+		return mids;
+	}
+
+	/**
+	 * Looks up patients found by fuzzySearchForPatientMIDs.
+	 * @param mids The MIDs of the patients
+	 * @return A java.util.List of PatientBeans, in the same order as the MIDs
+	 */
+	public List<PatientBean> getPatients(List<Long> mids) {
+		try {
+			return patientDAO.getPatients(mids);
+		} catch (DBException e) {
+			e.printStackTrace();
+			return new ArrayList<PatientBean>();
+		}
+	}
+
+	/**
+	 * Searches the patient name index, which only knows how to match what the search box accepts.
+	 * @return The patients found, or null to fall back on searching with SQL
+	 */
+	private List<PatientBean> searchPatientNameIndex(String query, boolean allowDeactivated, int limit) {
+		if (query.length() == 0 || query.startsWith("_"))
+			return new ArrayList<PatientBean>();
+		try {
+			return patientDAO.searchPatientNameIndex(query, allowDeactivated, limit);
+		} catch (DBException e) {
+			e.printStackTrace();
+			return null;
+		} catch (IllegalStateException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * getDeactivated is a special case used for when we want to see all deactivated patients.
 	 * @return The List of deactivated patients.
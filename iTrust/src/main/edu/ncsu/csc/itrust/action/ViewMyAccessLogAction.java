@@ -1,7 +1,10 @@
 package edu.ncsu.csc.itrust.action;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -14,10 +17,14 @@ import edu.ncsu.csc.itrust.logger.TransactionLogger;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.beans.PersonnelBean;
 import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionPage;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDAO;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCallback;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+import edu.ncsu.csc.itrust.report.CsvReportWriter;
 
 /**
  * Handles retrieving the log of record accesses for a given user Used by viewAccessLog.jsp
@@ -25,6 +32,9 @@ import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
  * 
  */
 public class ViewMyAccessLogAction {
+	/** Accesses shown per page of the access log */
+	public static final int PAGE_SIZE = 50;
+
 	private TransactionDAO transDAO;
 	private PatientDAO patientDAO;
 	private long loggedInMID;
@@ -54,9 +64,116 @@ public class ViewMyAccessLogAction {
 	 */
 	public List<TransactionBean> getAccesses(String lowerDate, String upperDate, String logMID, boolean getByRole) throws ITrustException, DBException,
 			FormValidationException {
-		List<TransactionBean> accesses; //stores the log entries
-		List<PersonnelBean> dlhcps; 
+		long mid = getLogMID(logMID);
+		long dlhcpID = getDLHCPID(mid);
+		
+		if (lowerDate == null || upperDate == null)
+			return transDAO.getAllRecordAccesses(mid, dlhcpID, getByRole);
+		
+		Date[] range = parseRange(lowerDate, upperDate);
+		return transDAO.getRecordAccesses(mid, dlhcpID, range[0], range[1], getByRole);
+	}
+
+	/**
+	 * Returns one page of accesses, newest first, between the two dates passed
+	 * as params. Only the page is loaded, however long the log is.
+	 * 
+	 * @see #getAccessPage(String, String, String, String, boolean)
+	 */
+	public TransactionPage getAccessPage(String lowerDate, String upperDate, String logMID, String pageToken)
+			throws ITrustException, DBException, FormValidationException {
+		return getAccessPage(lowerDate, upperDate, logMID, pageToken, false);
+	}
+
+	/**
+	 * Returns one page of accesses between the two dates passed as params,
+	 * newest first or sorted by role. Only the page is loaded, however long
+	 * the log is.
+	 * 
+	 * @param lowerDate
+	 *            the first date, or null/empty for no lower bound
+	 * @param upperDate
+	 *            the second date, or null/empty for no upper bound
+	 * @param logMID
+	 *            the user whose log is being viewed
+	 * @param pageToken
+	 *            the token of the page to show, or null for the first page
+	 * @param byRole
+	 *            whether to sort by the accessor's role, newest first within
+	 *            a role
+	 * @return the page of TransactionBeans
+	 * @throws DBException
+	 * @throws FormValidationException
+	 */
+	public TransactionPage getAccessPage(String lowerDate, String upperDate, String logMID, String pageToken,
+			boolean byRole) throws ITrustException, DBException, FormValidationException {
+		long mid = getLogMID(logMID);
+		long dlhcpID = getDLHCPID(mid);
+		TransactionCursor after;
+		try {
+			after = TransactionCursor.parse(pageToken);
+		} catch (IllegalArgumentException e) {
+			throw new FormValidationException("Page of the access log.");
+		}
+		if (after != null && after.isByRole() != byRole)
+			throw new FormValidationException("Page of the access log.");
 		
+		Date[] range = parseBounds(lowerDate, upperDate);
+		if (byRole)
+			return transDAO.getRecordAccessPageByRole(mid, dlhcpID, range[0], range[1], after, PAGE_SIZE);
+		return transDAO.getRecordAccessPage(mid, dlhcpID, range[0], range[1], after, PAGE_SIZE);
+	}
+
+	/**
+	 * Writes every access between the two dates passed as params to a CSV
+	 * file, newest first. The accesses are streamed from the log as they are
+	 * written, so the whole log is never held in memory.
+	 * 
+	 * @param lowerDate
+	 *            the first date, or null/empty for no lower bound
+	 * @param upperDate
+	 *            the second date, or null/empty for no upper bound
+	 * @param logMID
+	 *            the user whose log is being exported
+	 * @param out
+	 *            where to write the CSV
+	 * @throws DBException
+	 * @throws FormValidationException
+	 * @throws IOException
+	 */
+	public void exportAccesses(String lowerDate, String upperDate, String logMID, Writer out)
+			throws ITrustException, DBException, FormValidationException, IOException {
+		long mid = getLogMID(logMID);
+		long dlhcpID = getDLHCPID(mid);
+		Date[] range = parseBounds(lowerDate, upperDate);
+
+		final CsvReportWriter csv = new CsvReportWriter(out);
+		csv.writeHeaders(Arrays.asList("Date", "Accessor MID", "Description"));
+		final IOException[] failure = { null };
+		transDAO.streamRecordAccesses(mid, dlhcpID, range[0], range[1], new TransactionCallback() {
+			@Override
+			public boolean handle(TransactionBean t) {
+				try {
+					csv.writeRecord(Arrays.asList("" + t.getTimeLogged(), "" + t.getLoggedInMID(), t
+							.getTransactionType().getDescription()));
+					return true;
+				} catch (IOException e) {
+					failure[0] = e;
+					return false;
+				}
+			}
+		});
+		if (failure[0] != null)
+			throw failure[0];
+		csv.finish();
+		logViewAccessLog(loggedInMID);
+	}
+
+	/**
+	 * Returns the MID of the log to view, checking that it is the logged in user or one of their
+	 * medical dependents
+	 */
+	private long getLogMID(String logMID) throws ITrustException, FormValidationException {
 		//get the medical dependents for a signed in user. If the selected user is not the
 		//signed in user or one of the dependents, then the user doesn't have access to the log
 		List<PatientBean> patientRelatives = getRepresented(loggedInMID); 
@@ -68,8 +185,6 @@ public class ViewMyAccessLogAction {
 			//TODO
 		}
 		
-		dlhcps = patientDAO.getDeclaredHCPs(mid);
-		
 		boolean midInScope = false;
 		for (PatientBean pb : patientRelatives) {
 			if (pb.getMID() == mid) 
@@ -78,15 +193,33 @@ public class ViewMyAccessLogAction {
 		if (mid != loggedInMID && !midInScope) { //the selected user in the form is out of scope and can't be shown to the user
 			throw new FormValidationException("Log to View.");
 		}
-		
+		return mid;
+	}
+
+	private long getDLHCPID(long mid) throws DBException {
+		List<PersonnelBean> dlhcps = patientDAO.getDeclaredHCPs(mid);
 		//user has either 0 or 1 DLHCP's. Get one if exists so it can be filtered from results
 		long dlhcpID = -1;
 		if(!dlhcps.isEmpty())
 			dlhcpID = dlhcps.get(0).getMID();
-		
-		if (lowerDate == null || upperDate == null)
-			return transDAO.getAllRecordAccesses(mid, dlhcpID, getByRole);
-		
+		return dlhcpID;
+	}
+
+	/**
+	 * Parses the dates of a page or export, either of which may be left empty
+	 * 
+	 * @return the lower and upper bounds, null where they were left empty
+	 */
+	private Date[] parseBounds(String lowerDate, String upperDate) throws FormValidationException {
+		boolean noLower = lowerDate == null || lowerDate.trim().isEmpty();
+		boolean noUpper = upperDate == null || upperDate.trim().isEmpty();
+		if (noLower && noUpper)
+			return new Date[2];
+		Date[] range = parseRange(noLower ? upperDate : lowerDate, noUpper ? lowerDate : upperDate);
+		return new Date[] { noLower ? null : range[0], noUpper ? null : range[1] };
+	}
+
+	private Date[] parseRange(String lowerDate, String upperDate) throws FormValidationException {
 		try {
 			/*the way the Date class works, is if you enter more months, or days than
 			 is allowed, it will simply mod it, and add it all together. To make sure it
@@ -106,11 +239,10 @@ public class ViewMyAccessLogAction {
 
 			if (lower.after(upper))
 				throw new FormValidationException("Start date must be before end date!");
-			accesses = transDAO.getRecordAccesses(mid, dlhcpID, lower, upper, getByRole);
+			return new Date[] { lower, upper };
 		} catch (ParseException e) {
 			throw new FormValidationException("Enter dates in MM/dd/yyyy");
 		} 
-		return accesses;
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package edu.ncsu.csc.itrust.controller.cptcode;
 
+import java.util.Collections;
 import java.util.List;
 
 import javax.faces.bean.ManagedBean;
@@ -59,6 +60,17 @@ public class CPTCodeForm {
         return controller.getCodesWithFilter(search);
     }
 
+    /**
+     * @return Suggested codes for what's been typed into the search box so
+     *         far, best first
+     */
+    public List<CPTCode> getSuggestions() {
+        if (search == null || search.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return controller.getSuggestions(search);
+    }
+
     public void fillInput(String code, String description) {
         this.code = code;
         this.description = description;
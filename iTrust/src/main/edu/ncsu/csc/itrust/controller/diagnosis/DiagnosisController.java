@@ -1,5 +1,6 @@
 package edu.ncsu.csc.itrust.controller.diagnosis;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -13,6 +14,7 @@ import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
 import edu.ncsu.csc.itrust.model.diagnosis.DiagnosisData;
 import edu.ncsu.csc.itrust.model.diagnosis.DiagnosisMySQL;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChart;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 
 @ManagedBean(name="diagnosis_controller")
@@ -52,6 +54,7 @@ public class DiagnosisController extends iTrustController {
 	public void add(Diagnosis diagnosis) {
 		try {
 			if (sql.add(diagnosis)) {
+				forgetOfficeVisitCharts();
 				printFacesMessage(FacesMessage.SEVERITY_INFO, "Diagnosis is successfully created",
 						"Diagnosis is successfully created", null);
 				Long ovid = getSessionUtils().getCurrentOfficeVisitId();
@@ -69,6 +72,7 @@ public class DiagnosisController extends iTrustController {
 	public void edit(Diagnosis diagnosis) {
 		try {
 			if (sql.update(diagnosis)) {
+				forgetOfficeVisitCharts();
 				printFacesMessage(FacesMessage.SEVERITY_INFO, "Prescription is successfully updated",
 						"Prescription is successfully updated", null);
 			} else {
@@ -84,6 +88,7 @@ public class DiagnosisController extends iTrustController {
 	public void remove(long diagnosisID) {
         try {
         	if (sql.remove(diagnosisID)) {
+        		forgetOfficeVisitCharts();
 				printFacesMessage(FacesMessage.SEVERITY_INFO, "Diagnosis is successfully deleted",
 						"Diagnosis is successfully deleted", null);
 				Long ovid = getSessionUtils().getCurrentOfficeVisitId();
@@ -101,7 +106,9 @@ public class DiagnosisController extends iTrustController {
 	public List<Diagnosis> getDiagnosesByOfficeVisit(long officeVisitID) {
 		List<Diagnosis> result = Collections.emptyList();
 		try {
-			result = sql.getAllDiagnosisByOfficeVisit(officeVisitID);
+			OfficeVisitChart chart = getOfficeVisitChart(officeVisitID);
+			result = (chart != null) ? new ArrayList<Diagnosis>(chart.getDiagnoses())
+					: sql.getAllDiagnosisByOfficeVisit(officeVisitID);
 		} catch (DBException e) {
 			printFacesMessage(FacesMessage.SEVERITY_ERROR, INVALID_DIAGNOSIS, e.getExtendedMessage(), null);
 		} catch (Exception e) {
@@ -8,6 +8,7 @@ import edu.ncsu.csc.itrust.controller.iTrustController;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecord;
 import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordMySQL;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.AllergyDAO;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 
@@ -44,6 +45,8 @@ public class EmergencyRecordController extends iTrustController {
      * Loads the appropriate data for an EmergencyRecord for the given MID.
      * The loaded record is returned, but it is also stored for later retrieval
      * with getRecord(). This method MUST be called before calling getRecord().
+     * The record comes from the shared {@link EmergencyRecordSnapshots} if
+     * there is one, and is assembled live otherwise.
      * 
      * @param mid The mid of the patient to load the record for
      * @return The loaded EmergencyRecord if loaded successfully, null if
@@ -54,7 +57,8 @@ public class EmergencyRecordController extends iTrustController {
     	EmergencyRecord record;
         try {
         	mid = Long.parseLong(midString);
-        	record = sql.getEmergencyRecordForPatient(mid);
+        	EmergencyRecordSnapshots snapshots = EmergencyRecordSnapshots.getShared();
+        	record = snapshots == null ? sql.getEmergencyRecordForPatient(mid) : snapshots.get(mid);
         } catch (Exception e) {
             return null;
         }
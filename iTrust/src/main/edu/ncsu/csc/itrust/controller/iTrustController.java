@@ -1,8 +1,14 @@
 package edu.ncsu.csc.itrust.controller;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.faces.application.FacesMessage.Severity;
 
+import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.logger.TransactionLogger;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChart;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChartMySQL;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 import edu.ncsu.csc.itrust.webutils.SessionUtils;
 
@@ -14,6 +20,14 @@ import edu.ncsu.csc.itrust.webutils.SessionUtils;
  */
 public class iTrustController {
 
+	/**
+	 * Request attribute holding the office visit charts loaded during the
+	 * request, by visit ID.
+	 */
+	private static final String OFFICE_VISIT_CHARTS = "officeVisitCharts";
+
+	private static OfficeVisitChartMySQL chartLoader;
+
 	private SessionUtils sessionUtils;
 	private TransactionLogger logger;
 
@@ -84,4 +98,48 @@ public class iTrustController {
 		Long patientMID = sessionUtils.getCurrentPatientMIDLong();
 		logTransaction(type, loggedInMID, patientMID, addedInfo);
 	}
+
+	/**
+	 * Loads an office visit and everything recorded at it once per request,
+	 * so that the controllers rendering parts of the visit share one load.
+	 * 
+	 * @param visitID
+	 *            ID of the office visit
+	 * @return the visit's chart, or null outside of a JSF request, where
+	 *         callers should load just what they need
+	 * @throws DBException
+	 */
+	protected OfficeVisitChart getOfficeVisitChart(long visitID) throws DBException {
+		if (sessionUtils.getCurrentFacesContext() == null) {
+			return null;
+		}
+		@SuppressWarnings("unchecked")
+		Map<Long, OfficeVisitChart> charts = (Map<Long, OfficeVisitChart>) sessionUtils
+				.getRequestVariable(OFFICE_VISIT_CHARTS);
+		if (charts == null) {
+			charts = new HashMap<Long, OfficeVisitChart>();
+			sessionUtils.setRequestVariable(OFFICE_VISIT_CHARTS, charts);
+		}
+		OfficeVisitChart chart = charts.get(visitID);
+		if (chart == null) {
+			chart = getChartLoader().getChart(visitID);
+			charts.put(visitID, chart);
+		}
+		return chart;
+	}
+
+	/**
+	 * Drops the office visit charts loaded earlier in the request, after
+	 * something recorded at a visit has been added, edited or removed.
+	 */
+	protected void forgetOfficeVisitCharts() {
+		sessionUtils.setRequestVariable(OFFICE_VISIT_CHARTS, null);
+	}
+
+	private static synchronized OfficeVisitChartMySQL getChartLoader() throws DBException {
+		if (chartLoader == null) {
+			chartLoader = new OfficeVisitChartMySQL();
+		}
+		return chartLoader;
+	}
 }
@@ -22,6 +22,7 @@ public class ICDCodeController extends iTrustController {
     private static final String UNKNOWN_ERROR = "Unknown error";
     private static final String NONEXISTENT_CODE = "Code does not exist";
     private static final String DUPLICATE_CODE = "Cannot add duplicate code";
+    private static final int MAX_SUGGESTIONS = 10;
 	private ICDCodeMySQL sql;
 	//private SessionUtils sessionUtils;
 
@@ -103,4 +104,17 @@ public class ICDCodeController extends iTrustController {
         }
         return new ArrayList<>();
 	}
+
+	/**
+	 * @param query What's been typed into a code box
+	 * @return The best few codes matching it, by code or by name
+	 */
+	public List<ICDCode> getSuggestions(String query){
+	    try {
+            return sql.getSuggestions(query, MAX_SUGGESTIONS);
+        } catch (Exception e) {
+            printFacesMessage(FacesMessage.SEVERITY_ERROR, UNKNOWN_ERROR, UNKNOWN_ERROR, null);
+        }
+        return new ArrayList<>();
+	}
 }
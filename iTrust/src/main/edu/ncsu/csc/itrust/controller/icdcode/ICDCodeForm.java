@@ -72,6 +72,17 @@ public class ICDCodeForm {
     	return codes;
     }
 
+    /**
+     * @return Suggested codes for what's been typed into the search box so
+     *         far, best first
+     */
+    public List<ICDCode> getSuggestions() {
+        if (search == null || search.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return controller.getSuggestions(search);
+    }
+
     public String getSearch() {
         return search;
     }
@@ -1,6 +1,7 @@
 package edu.ncsu.csc.itrust.controller.immunization;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -13,6 +14,7 @@ import edu.ncsu.csc.itrust.controller.iTrustController;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.immunization.Immunization;
 import edu.ncsu.csc.itrust.model.immunization.ImmunizationMySQL;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChart;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 
 @ManagedBean(name = "immunization_controller")
@@ -45,6 +47,7 @@ public class ImmunizationController extends iTrustController {
     public void add(Immunization immunization) {
         try {
             if (sql.add(immunization)) {
+                forgetOfficeVisitCharts();
                 printFacesMessage(FacesMessage.SEVERITY_INFO, "Immunization successfully created",
                         "Immunization successfully created", null);
                 Long ovid = getSessionUtils().getCurrentOfficeVisitId();
@@ -60,6 +63,7 @@ public class ImmunizationController extends iTrustController {
     public void edit(Immunization immunization) {
         try {
             if (sql.update(immunization)) {
+                forgetOfficeVisitCharts();
                 printFacesMessage(FacesMessage.SEVERITY_INFO, "Immunization successfully updated",
                         "Immunization successfully updated", null);
             } else {
@@ -73,6 +77,7 @@ public class ImmunizationController extends iTrustController {
     public void remove(long immunizationID) {
         try {
             if (sql.remove(immunizationID)) {
+                forgetOfficeVisitCharts();
                 printFacesMessage(FacesMessage.SEVERITY_INFO, "Immunization successfully deleted",
                         "Immunization successfully deleted", null);
                 Long ovid = getSessionUtils().getCurrentOfficeVisitId();
@@ -93,7 +98,9 @@ public class ImmunizationController extends iTrustController {
         if ( officeVisitID != null ) {
             ovID = Long.parseLong(officeVisitID);
             try {
-                immunizations = sql.getImmunizationsForOfficeVisit(ovID);
+                OfficeVisitChart chart = getOfficeVisitChart(ovID);
+                immunizations = (chart != null) ? new ArrayList<Immunization>(chart.getImmunizations())
+                        : sql.getImmunizationsForOfficeVisit(ovID);
             } catch (Exception e) {
                 printFacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to Retrieve Immunizations", "Unable to Retrieve Immunizations", null);
             }
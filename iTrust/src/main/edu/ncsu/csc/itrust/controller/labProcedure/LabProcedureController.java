@@ -17,6 +17,7 @@ import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure;
 import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure.LabProcedureStatus;
 import edu.ncsu.csc.itrust.model.labProcedure.LabProcedureData;
 import edu.ncsu.csc.itrust.model.labProcedure.LabProcedureMySQL;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChart;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 
 @ManagedBean(name = "lab_procedure_controller")
@@ -72,6 +73,7 @@ public class LabProcedureController extends iTrustController {
 		try {
 			procedure.setHcpMID(Long.parseLong(getSessionUtils().getSessionLoggedInMID()));
 			successfullyAdded = labProcedureData.add(procedure);
+			forgetOfficeVisitCharts();
 		} catch (DBException e) {
 			printFacesMessage(FacesMessage.SEVERITY_ERROR, INVALID_LAB_PROCEDURE, e.getExtendedMessage(), null);
 		} catch (NumberFormatException e) {
@@ -103,6 +105,7 @@ public class LabProcedureController extends iTrustController {
 
 		try {
 			successfullyUpdated = labProcedureData.update(procedure);
+			forgetOfficeVisitCharts();
 		} catch (DBException e) {
 			printFacesMessage(FacesMessage.SEVERITY_ERROR, INVALID_LAB_PROCEDURE, e.getExtendedMessage(), null);
 		} catch (Exception e) {
@@ -131,6 +134,7 @@ public class LabProcedureController extends iTrustController {
 			try {
 				id = Long.parseLong(labProcedureID);
 				successfullyRemoved = labProcedureData.removeLabProcedure(id);
+				forgetOfficeVisitCharts();
 			} catch (NumberFormatException e) {
 				printFacesMessage(FacesMessage.SEVERITY_ERROR, "Could not remove lab procedure",
 						"Failed to parse lab procedure ID", null);
@@ -172,7 +176,10 @@ public class LabProcedureController extends iTrustController {
 		if ((officeVisitID != null) && ValidationFormat.NPMID.getRegex().matcher(officeVisitID).matches()) {
 			mid = Long.parseLong(officeVisitID);
 			try {
-				procedures = labProcedureData.getLabProceduresByOfficeVisit(mid).stream().sorted((o1, o2) -> {
+				OfficeVisitChart chart = getOfficeVisitChart(mid);
+				List<LabProcedure> loaded = (chart != null) ? chart.getLabProcedures()
+						: labProcedureData.getLabProceduresByOfficeVisit(mid);
+				procedures = loaded.stream().sorted((o1, o2) -> {
 					return (o1.getPriority() == o2.getPriority()) ? o1.getUpdatedDate().compareTo(o2.getUpdatedDate())
 							: o1.getPriority() - o2.getPriority();
 				}).collect(Collectors.toList());
@@ -202,42 +209,55 @@ public class LabProcedureController extends iTrustController {
 		return procedures;
 	}
 
+	/**
+	 * Returns the lab procedures with the given status in a lab technician's
+	 * queue, highest priority first, then least recently updated.
+	 * 
+	 * @param technicianID
+	 *            MID of the lab technician
+	 * @param status
+	 *            Status of the lab procedures to return
+	 * @return The lab technician's lab procedures with the given status
+	 */
+	private List<LabProcedure> getLabQueueByTechnician(String technicianID, LabProcedureStatus status) {
+		List<LabProcedure> procedures = Collections.emptyList();
+		if ((technicianID != null) && ValidationFormat.NPMID.getRegex().matcher(technicianID).matches()) {
+			try {
+				procedures = labProcedureData.getLabQueue(Long.parseLong(technicianID), status);
+			} catch (Exception e) {
+				printFacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to Retrieve Lab Procedures",
+						"Unable to Retrieve Lab Procedures", null);
+			}
+		}
+		return procedures;
+	}
+
 	public List<LabProcedure> getPendingLabProceduresByTechnician(String technicianID) throws DBException {
-		return getLabProceduresByLabTechnician(technicianID).stream().filter((o) -> {
-			return o.getStatus().name().equals(LabProcedureStatus.PENDING.name());
-		}).collect(Collectors.toList());
+		return getLabQueueByTechnician(technicianID, LabProcedureStatus.PENDING);
 	}
 
 	public List<LabProcedure> getInTransitLabProceduresByTechnician(String technicianID) throws DBException {
-		return getLabProceduresByLabTechnician(technicianID).stream().filter((o) -> {
-			return o.getStatus().name().equals(LabProcedureStatus.IN_TRANSIT.name());
-		}).collect(Collectors.toList());
+		return getLabQueueByTechnician(technicianID, LabProcedureStatus.IN_TRANSIT);
 	}
 
 	public List<LabProcedure> getReceivedLabProceduresByTechnician(String technicianID) throws DBException {
-		return getReceivedLabProceduresStreamByTechnician(technicianID).collect(Collectors.toList());
+		return getLabQueueByTechnician(technicianID, LabProcedureStatus.RECEIVED);
 	}
 
 	public Stream<LabProcedure> getReceivedLabProceduresStreamByTechnician(String technicianID) throws DBException {
-		return getLabProceduresByLabTechnician(technicianID).stream().filter((o) -> {
-			return o.getStatus().name().equals(LabProcedureStatus.RECEIVED.name());
-		});
+		return getReceivedLabProceduresByTechnician(technicianID).stream();
 	}
 
 	public List<LabProcedure> getTestingLabProceduresByTechnician(String technicianID) throws DBException {
-		return getTestingLabProceduresStreamsByTechnician(technicianID).collect(Collectors.toList());
+		return getLabQueueByTechnician(technicianID, LabProcedureStatus.TESTING);
 	}
 
 	public Stream<LabProcedure> getTestingLabProceduresStreamsByTechnician(String technicianID) throws DBException {
-		return getLabProceduresByLabTechnician(technicianID).stream().filter((o) -> {
-			return o.getStatus().name().equals(LabProcedureStatus.TESTING.name());
-		});
+		return getTestingLabProceduresByTechnician(technicianID).stream();
 	}
 
 	public List<LabProcedure> getCompletedLabProceduresByTechnician(String technicianID) throws DBException {
-		return getLabProceduresByLabTechnician(technicianID).stream().filter((o) -> {
-			return o.getStatus().name().equals(LabProcedureStatus.COMPLETED.name());
-		}).collect(Collectors.toList());
+		return getLabQueueByTechnician(technicianID, LabProcedureStatus.COMPLETED);
 	}
 
 	public List<LabProcedure> getCompletedLabProceduresByOfficeVisit(String officeVisitID) throws DBException {
@@ -276,6 +296,7 @@ public class LabProcedureController extends iTrustController {
 			LabProcedure proc = labProcedureData.getByID(id);
 			proc.setStatus(LabProcedureStatus.RECEIVED.getID());
 			successfullyUpdated = labProcedureData.update(proc);
+			forgetOfficeVisitCharts();
 			updateStatusForReceivedList(proc.getLabTechnicianID().toString());
 			if (successfullyUpdated) {
 				logTransaction(TransactionType.LAB_RESULTS_RECEIVED, proc.getLabProcedureCode());
@@ -1,5 +1,7 @@
 package edu.ncsu.csc.itrust.controller.labtechnician;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -13,6 +15,7 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure.LabProcedureStatus;
 import edu.ncsu.csc.itrust.model.labProcedure.LabProcedureData;
 import edu.ncsu.csc.itrust.model.labProcedure.LabProcedureMySQL;
 import edu.ncsu.csc.itrust.model.old.beans.PersonnelBean;
@@ -54,27 +57,19 @@ public class LabTechnicianController {
 	}
 
 	public List<Pair<String, Long>> getLabTechnicianStatusMID() throws DBException {
-		return getLabTechnicianList().stream().map((lt) -> {
-			try {
-				List<LabProcedure> labProcedures = ldata.getLabProceduresForLabTechnician(lt.getMID());
-				Map<Integer, Long> priorityQueueCounter = labProcedures.stream()
-						.filter((proc)->{
-							return proc.getStatus() == LabProcedure.LabProcedureStatus.PENDING
-									|| proc.getStatus() == LabProcedure.LabProcedureStatus.IN_TRANSIT
-									|| proc.getStatus() == LabProcedure.LabProcedureStatus.TESTING;
-						})
-						.collect(Collectors.groupingBy(LabProcedure::getPriority, Collectors.counting()));
-				String display = String.format("%s, %s (Specialty: %s | Queue Status - High: %d, Medium: %d, Low: %d)",
-						lt.getLastName(), lt.getFirstName(), lt.getSpecialty(),
-						priorityQueueCounter.getOrDefault(LabProcedure.PRIORITY_HIGH, 0L),
-						priorityQueueCounter.getOrDefault(LabProcedure.PRIORITY_MEDIUM, 0L),
-						priorityQueueCounter.getOrDefault(LabProcedure.PRIORITY_LOW, 0L));
-				return new ImmutablePair<>(display, lt.getMID());
-			} catch (DBException e) {
-				return null;
-			}
-		}).filter((pair) -> {
-			return pair != null;
+		List<PersonnelBean> labTechnicians = getLabTechnicianList();
+		Map<Long, Map<Integer, Long>> queueCounts = ldata.countLabQueues(
+				labTechnicians.stream().map(PersonnelBean::getMID).collect(Collectors.toList()),
+				EnumSet.of(LabProcedureStatus.PENDING, LabProcedureStatus.IN_TRANSIT, LabProcedureStatus.TESTING));
+		return labTechnicians.stream().map((lt) -> {
+			Map<Integer, Long> priorityQueueCounter = queueCounts.getOrDefault(lt.getMID(),
+					Collections.<Integer, Long> emptyMap());
+			String display = String.format("%s, %s (Specialty: %s | Queue Status - High: %d, Medium: %d, Low: %d)",
+					lt.getLastName(), lt.getFirstName(), lt.getSpecialty(),
+					priorityQueueCounter.getOrDefault(LabProcedure.PRIORITY_HIGH, 0L),
+					priorityQueueCounter.getOrDefault(LabProcedure.PRIORITY_MEDIUM, 0L),
+					priorityQueueCounter.getOrDefault(LabProcedure.PRIORITY_LOW, 0L));
+			return new ImmutablePair<String, Long>(display, lt.getMID());
 		}).collect(Collectors.toList());
 	}
 }
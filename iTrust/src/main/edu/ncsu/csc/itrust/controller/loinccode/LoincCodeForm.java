@@ -1,5 +1,6 @@
 package edu.ncsu.csc.itrust.controller.loinccode;
 
+import java.util.Collections;
 import java.util.List;
 
 import javax.faces.bean.ManagedBean;
@@ -89,6 +90,17 @@ public class LoincCodeForm {
 		return controller.getCodesWithFilter(search);
 	}
 
+	/**
+	 * @return Suggested codes for what's been typed into the search box so
+	 *         far, best first
+	 */
+	public List<LOINCCode> getSuggestions() {
+		if (search == null || search.trim().isEmpty()) {
+			return Collections.emptyList();
+		}
+		return controller.getSuggestions(search);
+	}
+
 	public String getSearch() {
 		return search;
 	}
@@ -1,6 +1,7 @@
 package edu.ncsu.csc.itrust.controller.medicalProcedure;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -13,6 +14,7 @@ import edu.ncsu.csc.itrust.controller.iTrustController;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.medicalProcedure.MedicalProcedure;
 import edu.ncsu.csc.itrust.model.medicalProcedure.MedicalProcedureMySQL;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChart;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 
 @ManagedBean(name = "medical_procedure_controller")
@@ -34,6 +36,7 @@ public class MedicalProcedureController extends iTrustController {
     public void add(MedicalProcedure mp){
         try {
             if (sql.add(mp)) {
+                forgetOfficeVisitCharts();
                 printFacesMessage(FacesMessage.SEVERITY_INFO, "Medical Procedure successfully created",
                         "Medical Procedure successfully created", null);
                 Long ovid = getSessionUtils().getCurrentOfficeVisitId();
@@ -51,6 +54,7 @@ public class MedicalProcedureController extends iTrustController {
     public void edit(MedicalProcedure mp){
         try {
             if (sql.update(mp)) {
+                forgetOfficeVisitCharts();
                 printFacesMessage(FacesMessage.SEVERITY_INFO, "Medical Procedure successfully updated",
                         "Medical Procedure successfully updated", null);
                 Long ovid = getSessionUtils().getCurrentOfficeVisitId();
@@ -68,6 +72,7 @@ public class MedicalProcedureController extends iTrustController {
     public void remove(long mpID) {
         try {
             if (sql.remove(mpID)) {
+                forgetOfficeVisitCharts();
                 printFacesMessage(FacesMessage.SEVERITY_INFO, "Medical Procedure successfully deleted",
                         "Medical Procedure successfully deleted", null);
                 Long ovid = getSessionUtils().getCurrentOfficeVisitId();
@@ -88,7 +93,9 @@ public class MedicalProcedureController extends iTrustController {
         if ( officeVisitID != null ) {
             ovID = Long.parseLong(officeVisitID);
             try {
-                medicalProcedures = sql.getMedicalProceduresForOfficeVisit(ovID);
+                OfficeVisitChart chart = getOfficeVisitChart(ovID);
+                medicalProcedures = (chart != null) ? new ArrayList<MedicalProcedure>(chart.getMedicalProcedures())
+                        : sql.getMedicalProceduresForOfficeVisit(ovID);
             } catch (Exception e) {
                 printFacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to Retrieve Medical Procedures", "Unable to Retrieve Medical Procedures", null);
             }
@@ -64,6 +64,17 @@ public class NDCCodeForm {
     	return codes;
     }
 
+    /**
+     * @return Suggested codes for what's been typed into the search box so
+     *         far, best first
+     */
+    public List<NDCCode> getSuggestions() {
+        if (search == null || search.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return controller.getSuggestions(search);
+    }
+
     public void fillInput(String code, String description) {
         this.code = code;
         this.description = description;
@@ -3,7 +3,7 @@ package edu.ncsu.csc.itrust.controller.officeVisit;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -30,14 +30,11 @@ import edu.ncsu.csc.itrust.webutils.SessionUtils;
 public class OfficeVisitController extends iTrustController {
 
 	/**
-	 * The cut off age for being considered a baby.
+	 * Request attribute holding the {@link PatientOfficeVisits} loaded during
+	 * the request, so that the pages listing a patient's visits several ways
+	 * load them once.
 	 */
-	private static final int PATIENT_BABY_AGE = 3;
-
-	/**
-	 * The cut off age for being considered a child.
-	 */
-	private static final int PATIENT_CHILD_AGE = 12;
+	private static final String PATIENT_VISITS = "office_visit_controller.patientVisits";
 
 	/**
 	 * Constant for the error message to be displayed if the Office Visit is
@@ -112,6 +109,7 @@ public class OfficeVisitController extends iTrustController {
 		}
 		if (res) {
 			logEditBasicHealthInformation();
+			forgetPatientOfficeVisits(ov);
 		}
 
 		return res;
@@ -143,6 +141,7 @@ public class OfficeVisitController extends iTrustController {
 			printFacesMessage(FacesMessage.SEVERITY_INFO, OFFICE_VISIT_SUCCESSFULLY_CREATED,
 					OFFICE_VISIT_SUCCESSFULLY_CREATED, null);
 			logEditBasicHealthInformation();
+			forgetPatientOfficeVisits(ov);
 		}
 
 		return generatedId;
@@ -192,7 +191,47 @@ public class OfficeVisitController extends iTrustController {
 			printFacesMessage(FacesMessage.SEVERITY_INFO, OFFICE_VISIT_SUCCESSFULLY_CREATED,
 					OFFICE_VISIT_SUCCESSFULLY_CREATED, null);
 			logEditBasicHealthInformation();
+			forgetPatientOfficeVisits(ov);
+		}
+	}
+
+	/**
+	 * Loads the given patient's office visits and date of birth once per
+	 * request, and sorts the visits by the patient's age at each.
+	 * 
+	 * @param pid
+	 *            patient mid
+	 * @return the patient's office visits, no visits if the mid is invalid
+	 */
+	public PatientOfficeVisits getPatientOfficeVisits(String pid) {
+		if ((pid == null) || !ValidationFormat.NPMID.getRegex().matcher(pid).matches()) {
+			return new PatientOfficeVisits(Collections.<OfficeVisit> emptyList(), null);
+		}
+		Object loaded = sessionUtils.getRequestVariable(PATIENT_VISITS + "." + pid);
+		if (loaded instanceof PatientOfficeVisits) {
+			return (PatientOfficeVisits) loaded;
 		}
+		long mid = Long.parseLong(pid);
+		List<OfficeVisit> visits = Collections.emptyList();
+		try {
+			visits = officeVisitData.getVisitsForPatient(mid).stream().sorted((o1, o2) -> {
+				return o2.getDate().compareTo(o1.getDate());
+			}).collect(Collectors.toList());
+		} catch (Exception e) {
+			printFacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to Retrieve Office Visits",
+					"Unable to Retrieve Office Visits", null);
+		}
+		PatientOfficeVisits patientVisits = new PatientOfficeVisits(visits,
+				visits.isEmpty() ? null : getPatientDOB(mid));
+		sessionUtils.setRequestVariable(PATIENT_VISITS + "." + pid, patientVisits);
+		return patientVisits;
+	}
+
+	/**
+	 * @return the office visits of the patient selected in the session
+	 */
+	public PatientOfficeVisits getPatientOfficeVisitsForCurrentPatient() {
+		return getPatientOfficeVisits(sessionUtils.getCurrentPatientMID());
 	}
 
 	/**
@@ -201,20 +240,7 @@ public class OfficeVisitController extends iTrustController {
 	 * @return sorted list of office visit for the given patient
 	 */
 	public List<OfficeVisit> getOfficeVisitsForPatient(String pid) {
-		List<OfficeVisit> ret = Collections.emptyList();
-		long mid = -1;
-		if ((pid != null) && ValidationFormat.NPMID.getRegex().matcher(pid).matches()) {
-			mid = Long.parseLong(pid);
-			try {
-				ret = officeVisitData.getVisitsForPatient(mid).stream().sorted((o1, o2) -> {
-					return o2.getDate().compareTo(o1.getDate());
-				}).collect(Collectors.toList());
-			} catch (Exception e) {
-				printFacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to Retrieve Office Visits",
-						"Unable to Retrieve Office Visits", null);
-			}
-		}
-		return ret;
+		return new ArrayList<OfficeVisit>(getPatientOfficeVisits(pid).getVisits());
 	}
 
 	/**
@@ -232,9 +258,7 @@ public class OfficeVisitController extends iTrustController {
 	 *         if no office visit exists during that age range
 	 */
 	public List<OfficeVisit> getBabyOfficeVisitsForPatient(String pid) {
-		return getOfficeVisitsForPatient(pid).stream().filter((o) -> {
-			return isPatientABaby(o.getPatientMID(), o.getDate());
-		}).collect(Collectors.toList());
+		return new ArrayList<OfficeVisit>(getPatientOfficeVisits(pid).getBabyVisits());
 	}
 
 	/**
@@ -252,9 +276,7 @@ public class OfficeVisitController extends iTrustController {
 	 *         if no office visit exists during that age range
 	 */
 	public List<OfficeVisit> getChildOfficeVisitsForPatient(String pid) {
-		return getOfficeVisitsForPatient(pid).stream().filter((o) -> {
-			return isPatientAChild(o.getPatientMID(), o.getDate());
-		}).collect(Collectors.toList());
+		return new ArrayList<OfficeVisit>(getPatientOfficeVisits(pid).getChildVisits());
 	}
 
 	/**
@@ -272,9 +294,7 @@ public class OfficeVisitController extends iTrustController {
 	 *         if no office visit exists during that age range
 	 */
 	public List<OfficeVisit> getAdultOfficeVisitsForPatient(String pid) {
-		return getOfficeVisitsForPatient(pid).stream().filter((o) -> {
-			return isPatientAnAdult(o.getPatientMID(), o.getDate());
-		}).collect(Collectors.toList());
+		return new ArrayList<OfficeVisit>(getPatientOfficeVisits(pid).getAdultVisits());
 	}
 
 	/**
@@ -321,13 +341,7 @@ public class OfficeVisitController extends iTrustController {
 	 *         otherwise
 	 */
 	public boolean hasPatientVisited(String patientID) {
-		boolean ret = false;
-		if ((patientID != null) && (ValidationFormat.NPMID.getRegex().matcher(patientID).matches())) {
-			if (getOfficeVisitsForPatient(patientID).size() > 0) {
-				ret = true;
-			}
-		}
-		return ret;
+		return getPatientOfficeVisits(patientID).hasVisited();
 	}
 
 	/**
@@ -354,6 +368,8 @@ public class OfficeVisitController extends iTrustController {
 			printFacesMessage(FacesMessage.SEVERITY_INFO, OFFICE_VISIT_SUCCESSFULLY_UPDATED,
 					OFFICE_VISIT_SUCCESSFULLY_UPDATED, null);
 			logEditBasicHealthInformation();
+			forgetPatientOfficeVisits(ov);
+			forgetOfficeVisitCharts();
 		}
 	}
 
@@ -372,16 +388,7 @@ public class OfficeVisitController extends iTrustController {
 			return ret;
 		}
 
-		LocalDate patientDOB = getPatientDOB(patientMID);
-		if (patientDOB == null) {
-			return ret;
-		}
-
-		if (futureDate.toLocalDate().isBefore(patientDOB)) {
-			return ret;
-		}
-
-		return ChronoUnit.YEARS.between(patientDOB, futureDate);
+		return PatientOfficeVisits.calculateAge(getPatientDOB(patientMID), futureDate);
 	}
 
 	/**
@@ -396,7 +403,7 @@ public class OfficeVisitController extends iTrustController {
 	 */
 	public boolean isPatientABaby(final Long patientMID, final LocalDateTime officeVisitDate) {
 		Long age = calculatePatientAge(patientMID, officeVisitDate);
-		return age < PATIENT_BABY_AGE && age >= 0;
+		return age < PatientOfficeVisits.PATIENT_BABY_AGE && age >= 0;
 	}
 
 	/**
@@ -412,7 +419,7 @@ public class OfficeVisitController extends iTrustController {
 	 */
 	public boolean isPatientAChild(final Long patientMID, final LocalDateTime officeVisitDate) {
 		Long age = calculatePatientAge(patientMID, officeVisitDate);
-		return age < PATIENT_CHILD_AGE && age >= PATIENT_BABY_AGE;
+		return age < PatientOfficeVisits.PATIENT_CHILD_AGE && age >= PatientOfficeVisits.PATIENT_BABY_AGE;
 	}
 
 	/**
@@ -426,7 +433,7 @@ public class OfficeVisitController extends iTrustController {
 	 */
 	public boolean isPatientAnAdult(final Long patientMID, final LocalDateTime officeVisitDate) {
 		Long age = calculatePatientAge(patientMID, officeVisitDate);
-		return age >= PATIENT_CHILD_AGE;
+		return age >= PatientOfficeVisits.PATIENT_CHILD_AGE;
 	}
 
 	/**
@@ -477,4 +484,14 @@ public class OfficeVisitController extends iTrustController {
 	private void logEditBasicHealthInformation() {
 		logTransaction(TransactionType.PATIENT_HEALTH_INFORMATION_EDIT, "");
 	}
+
+	/**
+	 * Drops the visits loaded earlier in the request for the patient of an
+	 * office visit that was just added or edited.
+	 */
+	private void forgetPatientOfficeVisits(OfficeVisit ov) {
+		if (ov.getPatientMID() != null) {
+			sessionUtils.setRequestVariable(PATIENT_VISITS + "." + ov.getPatientMID(), null);
+		}
+	}
 }
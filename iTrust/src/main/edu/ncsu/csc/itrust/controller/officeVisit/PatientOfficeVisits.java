@@ -0,0 +1,107 @@
+package edu.ncsu.csc.itrust.controller.officeVisit;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisit;
+
+/**
+ * A patient's office visits, newest first, sorted by how old the patient was
+ * at each one. Built once per request by {@link OfficeVisitController} so that
+ * the baby, child and adult tables of the basic health metrics page share one
+ * load of the visits and one lookup of the patient's date of birth.
+ */
+public class PatientOfficeVisits {
+	/**
+	 * The cut off age for being considered a baby.
+	 */
+	static final int PATIENT_BABY_AGE = 3;
+
+	/**
+	 * The cut off age for being considered a child.
+	 */
+	static final int PATIENT_CHILD_AGE = 12;
+
+	private final List<OfficeVisit> visits;
+	private final List<OfficeVisit> babyVisits = new ArrayList<OfficeVisit>();
+	private final List<OfficeVisit> childVisits = new ArrayList<OfficeVisit>();
+	private final List<OfficeVisit> adultVisits = new ArrayList<OfficeVisit>();
+
+	/**
+	 * @param visits
+	 *            the patient's office visits, in the order they're shown
+	 * @param patientDOB
+	 *            the patient's date of birth, or null if it isn't known
+	 */
+	public PatientOfficeVisits(List<OfficeVisit> visits, LocalDate patientDOB) {
+		this.visits = Collections.unmodifiableList(visits);
+		for (OfficeVisit visit : visits) {
+			long age = calculateAge(patientDOB, visit.getDate());
+			if (age < 0) {
+				continue;
+			}
+			if (age < PATIENT_BABY_AGE) {
+				babyVisits.add(visit);
+			} else if (age < PATIENT_CHILD_AGE) {
+				childVisits.add(visit);
+			} else {
+				adultVisits.add(visit);
+			}
+		}
+	}
+
+	/**
+	 * @param patientDOB
+	 *            the patient's date of birth
+	 * @param date
+	 *            a date on or after it
+	 * @return the patient's age in calendar years on that date, or -1 if
+	 *         either date is missing or the patient wasn't born yet
+	 */
+	static long calculateAge(LocalDate patientDOB, LocalDateTime date) {
+		if (patientDOB == null || date == null || date.toLocalDate().isBefore(patientDOB)) {
+			return -1;
+		}
+		return ChronoUnit.YEARS.between(patientDOB, date.toLocalDate());
+	}
+
+	/**
+	 * @return all of the patient's office visits
+	 */
+	public List<OfficeVisit> getVisits() {
+		return visits;
+	}
+
+	/**
+	 * @return the visits when the patient was under 3 years old
+	 */
+	public List<OfficeVisit> getBabyVisits() {
+		return Collections.unmodifiableList(babyVisits);
+	}
+
+	/**
+	 * @return the visits when the patient was between 3 (inclusive) and 12
+	 *         (exclusive) years old
+	 */
+	public List<OfficeVisit> getChildVisits() {
+		return Collections.unmodifiableList(childVisits);
+	}
+
+	/**
+	 * @return the visits when the patient was 12 years old or older
+	 */
+	public List<OfficeVisit> getAdultVisits() {
+		return Collections.unmodifiableList(adultVisits);
+	}
+
+	/**
+	 * @return true if the patient has at least 1 office visit
+	 */
+	public boolean hasVisited() {
+		return !visits.isEmpty();
+	}
+}
@@ -2,6 +2,7 @@ package edu.ncsu.csc.itrust.controller.prescription;
 
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -12,6 +13,7 @@ import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.controller.iTrustController;
 import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChart;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 import edu.ncsu.csc.itrust.model.prescription.Prescription;
@@ -47,6 +49,7 @@ public class PrescriptionController extends iTrustController {
 	public void add(Prescription prescription) {
 		try {
 			if (sql.add(prescription)) {
+				forgetOfficeVisitCharts();
 				printFacesMessage(FacesMessage.SEVERITY_INFO, "Prescription is successfully created",
 						"Prescription is successfully created", null);
 				logTransaction(TransactionType.PRESCRIPTION_ADD, getSessionUtils().getCurrentOfficeVisitId().toString());
@@ -63,6 +66,7 @@ public class PrescriptionController extends iTrustController {
 	public void edit(Prescription prescription) {
 		try {
 			if (sql.update(prescription)) {
+				forgetOfficeVisitCharts();
 				printFacesMessage(FacesMessage.SEVERITY_INFO, "Prescription is successfully updated",
 						"Prescription is successfully updated", null);
 				logTransaction(TransactionType.PRESCRIPTION_EDIT, getSessionUtils().getCurrentOfficeVisitId().toString());
@@ -79,6 +83,7 @@ public class PrescriptionController extends iTrustController {
 	public void remove(long prescriptionID) {
         try {
         	if (sql.remove(prescriptionID)) {
+        		forgetOfficeVisitCharts();
 				printFacesMessage(FacesMessage.SEVERITY_INFO, "Prescription is successfully deleted",
 						"Prescription is successfully deleted", null);
 				logTransaction(TransactionType.PRESCRIPTION_REMOVE, getSessionUtils().getCurrentOfficeVisitId().toString());
@@ -98,7 +103,9 @@ public class PrescriptionController extends iTrustController {
 		if ( officeVisitID != null ) {
 			ovID = Long.parseLong(officeVisitID);
 			try {
-				prescriptions = sql.getPrescriptionsForOfficeVisit(ovID);
+				OfficeVisitChart chart = getOfficeVisitChart(ovID);
+				prescriptions = (chart != null) ? new ArrayList<Prescription>(chart.getPrescriptions())
+						: sql.getPrescriptionsForOfficeVisit(ovID);
 			} catch (Exception e) {
 				printFacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to Retrieve Prescriptions", "Unable to Retrieve Prescriptions", null);
 			}
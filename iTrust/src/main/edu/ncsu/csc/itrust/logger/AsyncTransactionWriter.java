@@ -0,0 +1,273 @@
+package edu.ncsu.csc.itrust.logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+
+/**
+ * Writes transactions to the transaction log on a background thread. Requests
+ * only put the transaction on a bounded queue; the writer thread takes them
+ * off and flushes them with {@link TransactionDAO#logTransactions(List)} once
+ * either <code>batchSize</code> transactions are waiting or
+ * <code>flushIntervalMillis</code> has passed since the first one of the batch
+ * arrived. What happens when the queue is full is decided by the
+ * {@link QueueFullPolicy}. If a {@link TransactionSpool} is set, spilled
+ * transactions and batches the database rejects are appended to it instead of
+ * being written on the request thread or lost.
+ */
+public class AsyncTransactionWriter implements Runnable {
+	private final BlockingQueue<TransactionBean> queue;
+	private final TransactionDAO dao;
+	private final int batchSize;
+	private final long flushIntervalMillis;
+	private final QueueFullPolicy policy;
+
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong spilled = new AtomicLong();
+
+	private volatile boolean running = false;
+	private volatile TransactionSpool spool;
+	private Thread thread;
+
+	/**
+	 * @param dao
+	 *            The DAO the batches are written with
+	 * @param capacity
+	 *            The maximum number of transactions waiting to be written
+	 * @param batchSize
+	 *            The maximum number of transactions written in one INSERT
+	 * @param flushIntervalMillis
+	 *            The longest a transaction waits for its batch to fill up
+	 * @param policy
+	 *            What to do with a transaction when the queue is full
+	 */
+	public AsyncTransactionWriter(TransactionDAO dao, int capacity, int batchSize, long flushIntervalMillis,
+			QueueFullPolicy policy) {
+		if (capacity < 1 || batchSize < 1 || flushIntervalMillis < 1)
+			throw new IllegalArgumentException("capacity, batchSize and flushIntervalMillis must be positive");
+		this.dao = dao;
+		this.queue = new ArrayBlockingQueue<TransactionBean>(capacity);
+		this.batchSize = batchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.policy = policy;
+	}
+
+	/**
+	 * Starts the background writer thread.
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+		running = true;
+		thread = new Thread(this, "iTrust-TransactionWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops accepting work and waits for everything already queued to be
+	 * written. Anything queued after the writer thread finished is written on
+	 * the calling thread.
+	 * 
+	 * @param timeoutMillis
+	 *            How long to wait for the queue to drain
+	 * @return The number of transactions that were still queued when the
+	 *         timeout expired (0 on a clean drain)
+	 */
+	public synchronized int shutdown(long timeoutMillis) {
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(timeoutMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (thread.isAlive())
+				return queue.size();
+			thread = null;
+		}
+		List<TransactionBean> batch = new ArrayList<TransactionBean>(batchSize);
+		while (queue.drainTo(batch, batchSize) > 0) {
+			writeNow(batch);
+			batch = new ArrayList<TransactionBean>(batchSize);
+		}
+		return queue.size();
+	}
+
+	/**
+	 * Hands a transaction to the writer. Never throws; if the writer is not
+	 * running the transaction is written on the calling thread.
+	 * 
+	 * @param transaction
+	 *            The transaction to log, with its timeLogged already set
+	 */
+	public void submit(TransactionBean transaction) {
+		if (!running) {
+			writeNow(Collections.singletonList(transaction));
+			return;
+		}
+		if (queue.offer(transaction)) {
+			reclaimIfStopped(transaction);
+			return;
+		}
+		switch (policy) {
+		case BLOCK:
+			try {
+				while (running) {
+					if (queue.offer(transaction, flushIntervalMillis, TimeUnit.MILLISECONDS)) {
+						reclaimIfStopped(transaction);
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			writeNow(Collections.singletonList(transaction));
+			break;
+		case SPILL:
+			if (spool == null || !spill(Collections.singletonList(transaction)))
+				writeNow(Collections.singletonList(transaction));
+			break;
+		case DROP:
+		default:
+			dropped.incrementAndGet();
+			break;
+		}
+	}
+
+	/**
+	 * The writer may have stopped between the caller seeing it running and
+	 * queueing the transaction, in which case nothing would ever take it off
+	 * the queue. Whoever takes it off first writes it: the writer thread,
+	 * {@link #shutdown(long)}, or the caller here.
+	 */
+	private void reclaimIfStopped(TransactionBean transaction) {
+		if (!running && queue.remove(transaction))
+			writeNow(Collections.singletonList(transaction));
+	}
+
+	@Override
+	public void run() {
+		List<TransactionBean> batch = new ArrayList<TransactionBean>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				TransactionBean first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+				batch.add(first);
+				long deadline = System.currentTimeMillis() + flushIntervalMillis;
+				while (batch.size() < batchSize) {
+					if (queue.drainTo(batch, batchSize - batch.size()) > 0)
+						continue;
+					long remaining = running ? deadline - System.currentTimeMillis() : 0;
+					if (remaining <= 0)
+						break;
+					TransactionBean next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+					if (next == null)
+						break;
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				// Keep going until the queue is drained; shutdown() flips running
+			}
+			if (!batch.isEmpty()) {
+				writeNow(batch);
+				batch = new ArrayList<TransactionBean>(batchSize);
+			}
+		}
+	}
+
+	private void writeNow(List<TransactionBean> batch) {
+		try {
+			dao.logTransactions(batch);
+			written.addAndGet(batch.size());
+		} catch (DBException e) {
+			if (!spill(batch)) {
+				failed.addAndGet(batch.size());
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Appends the transactions to the spool.
+	 * 
+	 * @return true if every transaction made it into the spool
+	 */
+	private boolean spill(List<TransactionBean> batch) {
+		TransactionSpool s = spool;
+		if (s == null)
+			return false;
+		try {
+			for (TransactionBean t : batch)
+				s.append(t);
+			spilled.addAndGet(batch.size());
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @param spool
+	 *            The spool for spilled and failed transactions, or null to
+	 *            write them on the request thread
+	 */
+	public void setSpool(TransactionSpool spool) {
+		this.spool = spool;
+	}
+
+	/**
+	 * @return The number of transactions appended to the spool
+	 */
+	public long getSpilledCount() {
+		return spilled.get();
+	}
+
+	/**
+	 * @return The number of transactions currently waiting to be written
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return The number of transactions written so far
+	 */
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * @return The number of transactions discarded because the queue was full
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return The number of transactions whose write failed
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * @return true if the background thread is accepting transactions
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+}
@@ -0,0 +1,36 @@
+package edu.ncsu.csc.itrust.logger;
+
+/**
+ * What the {@link AsyncTransactionWriter} does with a transaction when its
+ * queue is already full.
+ */
+public enum QueueFullPolicy {
+	/** Wait on the request thread until the writer frees up room. */
+	BLOCK,
+	/** Discard the transaction and count it as dropped. */
+	DROP,
+	/**
+	 * Append the transaction to the local spool, or write it synchronously on
+	 * the request thread if there is no spool.
+	 */
+	SPILL;
+
+	/**
+	 * Parses a policy name, ignoring case.
+	 * 
+	 * @param name
+	 *            The name of the policy, e.g. "block"
+	 * @param defaultPolicy
+	 *            The policy to use if the name is null or not recognized
+	 * @return The matching policy
+	 */
+	public static QueueFullPolicy parse(String name, QueueFullPolicy defaultPolicy) {
+		if (name != null) {
+			for (QueueFullPolicy policy : values()) {
+				if (policy.name().equalsIgnoreCase(name.trim()))
+					return policy;
+			}
+		}
+		return defaultPolicy;
+	}
+}
@@ -0,0 +1,835 @@
+package edu.ncsu.csc.itrust.logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCallback;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+/**
+ * The cold tier of the transaction log: one file per month,
+ * <code>transactionlog-yyyy-MM.tla</code>, written by the
+ * {@link TransactionArchiver} once a month is older than the retention age.
+ *
+ * A month's transactions are sorted by secondary MID (the patient), then
+ * time, and cut into segments of at most {@link #SEGMENT_ROWS} rows. Each
+ * segment is gzipped on its own and stored by column rather than by row:
+ * transaction IDs and times as deltas, MIDs and codes as variable-length
+ * integers, and the added info as length-prefixed UTF-8. An index at the end
+ * of the file gives each segment's range of secondary MIDs, times and IDs, so
+ * reading one patient's transactions only decompresses the few segments that
+ * hold them.
+ *
+ * Files written before segments were introduced (version 1: the whole month
+ * as one gzipped block) are still read, by decompressing them whole, and are
+ * rewritten in the segmented form the next time their month is reopened.
+ */
+public class TransactionArchive {
+	private static final int MAGIC = 0x49544c41; // "ITLA"
+	private static final int LEGACY_VERSION = 1;
+	private static final int VERSION = 2;
+	private static final String PREFIX = "transactionlog-";
+	private static final String SUFFIX = ".tla";
+	/** Rows per segment: the most a read decompresses to find one patient's rows */
+	static final int SEGMENT_ROWS = 4096;
+	/** Rows a {@link MonthWriter} holds in memory before sorting them out to a run file */
+	static final int RUN_ROWS = 32768;
+
+	/** Matches any secondary MID */
+	public static final long ANY_MID = -1;
+
+	/** Newest first, the order every read returns */
+	private static final Comparator<TransactionBean> NEWEST_FIRST = new Comparator<TransactionBean>() {
+		@Override
+		public int compare(TransactionBean a, TransactionBean b) {
+			int c = b.getTimeLogged().compareTo(a.getTimeLogged());
+			return c != 0 ? c : Long.compare(b.getTransactionID(), a.getTransactionID());
+		}
+	};
+
+	/** The order rows are stored in within a month */
+	private static final Comparator<TransactionBean> BY_PATIENT = new Comparator<TransactionBean>() {
+		@Override
+		public int compare(TransactionBean a, TransactionBean b) {
+			int c = Long.compare(a.getSecondaryMID(), b.getSecondaryMID());
+			if (c == 0)
+				c = Long.compare(a.getTimeLogged().getTime(), b.getTimeLogged().getTime());
+			return c != 0 ? c : Long.compare(a.getTransactionID(), b.getTransactionID());
+		}
+	};
+
+	/**
+	 * Picks the archived transactions a read should return.
+	 */
+	public interface Filter {
+		public boolean accept(long loggedInMID, long secondaryMID, int code);
+	}
+
+	private static volatile TransactionArchive shared;
+
+	private final File dir;
+	/** Segment indexes of the month files read so far, dropped when a file changes */
+	private final Map<File, MonthIndex> indexes = new ConcurrentHashMap<File, MonthIndex>();
+
+	/**
+	 * @param dir
+	 *            The directory holding the archive files; created if needed
+	 * @throws IOException
+	 */
+	public TransactionArchive(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create " + dir);
+		this.dir = dir;
+	}
+
+	/**
+	 * @return The archive {@link edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO}
+	 *         reads from, or null if the log is not archived
+	 */
+	public static TransactionArchive getShared() {
+		return shared;
+	}
+
+	public static void setShared(TransactionArchive archive) {
+		shared = archive;
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * @return The first instant of each archived month, oldest first
+	 */
+	public List<Date> getMonths() {
+		List<Date> months = new ArrayList<Date>();
+		String[] names = dir.list();
+		if (names == null)
+			return months;
+		Arrays.sort(names);
+		for (String name : names) {
+			Date month = parseMonth(name);
+			if (month != null)
+				months.add(month);
+		}
+		return months;
+	}
+
+	/**
+	 * Reads archived transactions, newest first, decompressing every segment
+	 * in the range.
+	 *
+	 * @see #read(long, Date, Date, TransactionCursor, Filter, int)
+	 */
+	public List<TransactionBean> read(Date from, Date to, TransactionCursor before, Filter filter, int max)
+			throws IOException {
+		return read(ANY_MID, from, to, before, filter, max);
+	}
+
+	/**
+	 * Reads archived transactions, newest first.
+	 *
+	 * @param secondaryMID
+	 *            Only transactions with this secondary MID, or
+	 *            {@link #ANY_MID}; only the segments holding it are read
+	 * @param from
+	 *            The earliest time to include, or null
+	 * @param to
+	 *            The time to stop before, or null
+	 * @param before
+	 *            Only transactions older than this cursor, or null
+	 * @param filter
+	 *            Which transactions to include, or null for all of them
+	 * @param max
+	 *            The most transactions to return; 0 for all of them
+	 * @return The matching transactions
+	 * @throws IOException
+	 */
+	public List<TransactionBean> read(long secondaryMID, Date from, Date to, TransactionCursor before,
+			Filter filter, int max) throws IOException {
+		List<TransactionBean> result = new ArrayList<TransactionBean>();
+		for (Date month : getMonthsNewestFirst(from, to, before)) {
+			for (TransactionBean t : readMonth(month, secondaryMID, from, to, before, filter)) {
+				if (max > 0 && result.size() == max)
+					return result;
+				result.add(t);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Hands archived transactions to a callback, newest first, holding no
+	 * more than one month of the matching ones in memory at a time.
+	 *
+	 * @param callback
+	 *            Receives each transaction; returning false stops the stream
+	 * @return false if the callback stopped the stream
+	 * @throws IOException
+	 * @throws DBException
+	 *             If the callback throws it
+	 * @see #read(long, Date, Date, TransactionCursor, Filter, int)
+	 */
+	public boolean stream(long secondaryMID, Date from, Date to, TransactionCursor before, Filter filter,
+			TransactionCallback callback) throws IOException, DBException {
+		for (Date month : getMonthsNewestFirst(from, to, before)) {
+			for (TransactionBean t : readMonth(month, secondaryMID, from, to, before, filter)) {
+				if (!callback.handle(t))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private List<Date> getMonthsNewestFirst(Date from, Date to, TransactionCursor before) {
+		List<Date> months = new ArrayList<Date>();
+		for (Date month : getMonths()) {
+			long start = month.getTime();
+			long end = nextMonth(month).getTime();
+			if ((from != null && end <= from.getTime()) || (to != null && start >= to.getTime())
+					|| (before != null && start > before.getTimeLogged()))
+				continue;
+			months.add(month);
+		}
+		Collections.reverse(months);
+		return months;
+	}
+
+	/**
+	 * @return The month's matching transactions, newest first
+	 */
+	private List<TransactionBean> readMonth(Date month, long secondaryMID, Date from, Date to,
+			TransactionCursor before, Filter filter) throws IOException {
+		File file = fileFor(month);
+		List<TransactionBean> result = new ArrayList<TransactionBean>();
+		MonthIndex index = getIndex(file);
+		if (index == null) {
+			result = readLegacyMonth(file, secondaryMID, from, to, before, filter);
+		} else {
+			try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+				for (Segment segment : index.segments) {
+					if (segment.mayHold(secondaryMID, from, to, before))
+						result.addAll(decode(segment.read(in), secondaryMID, from, to, before, filter));
+				}
+			}
+		}
+		Collections.sort(result, NEWEST_FIRST);
+		return result;
+	}
+
+	/**
+	 * Starts (re)writing a month. Transactions already archived for the month
+	 * are carried over, so the archiver can safely be rerun after a crash
+	 * between writing a file and deleting its rows from the database.
+	 *
+	 * @param month
+	 *            Any instant in the month
+	 * @return The writer; nothing changes on disk until it is committed, and
+	 *         it should be closed whether or not it is
+	 * @throws IOException
+	 */
+	public MonthWriter openMonth(Date month) throws IOException {
+		Date start = startOfMonth(month);
+		File file = fileFor(start);
+		MonthWriter writer = new MonthWriter(file);
+		if (!file.exists())
+			return writer;
+		MonthIndex index = getIndex(file);
+		List<Long> archived = new ArrayList<Long>();
+		if (index == null) {
+			// a version 1 file is rewritten from its rows
+			for (TransactionBean t : readLegacyMonth(file, ANY_MID, null, null, null, null)) {
+				writer.add(t);
+				archived.add(t.getTransactionID());
+			}
+		} else {
+			writer.carriedOver = index;
+			try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+				for (Segment segment : index.segments) {
+					for (TransactionBean t : decode(segment.read(in), ANY_MID, null, null, null, null))
+						archived.add(t.getTransactionID());
+				}
+			}
+			writer.rows = archived.size();
+		}
+		writer.archived = new long[archived.size()];
+		for (int i = 0; i < writer.archived.length; i++)
+			writer.archived[i] = archived.get(i);
+		Arrays.sort(writer.archived);
+		return writer;
+	}
+
+	/**
+	 * Writes one month. Added rows are sorted in memory up to
+	 * {@link #RUN_ROWS} at a time and spilled to run files next to the
+	 * archive; committing merges the runs with the rows carried over from the
+	 * month's existing file straight into segments on disk, so only a run and
+	 * a segment are ever held in memory.
+	 */
+	public class MonthWriter implements Closeable {
+		private final File file;
+		private MonthIndex carriedOver;
+		/** IDs already in the month's file, sorted */
+		private long[] archived = new long[0];
+		private final List<TransactionBean> run = new ArrayList<TransactionBean>();
+		private final List<File> runFiles = new ArrayList<File>();
+		private int rows;
+
+		private MonthWriter(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * @return Whether the transaction was in the month's archive already
+		 */
+		public boolean contains(long transactionID) {
+			return Arrays.binarySearch(archived, transactionID) >= 0;
+		}
+
+		public void add(TransactionBean t) throws IOException {
+			run.add(t);
+			rows++;
+			if (run.size() >= RUN_ROWS)
+				spill();
+		}
+
+		public int getRowCount() {
+			return rows;
+		}
+
+		private void spill() throws IOException {
+			Collections.sort(run, BY_PATIENT);
+			File runFile = File.createTempFile(PREFIX, ".run", dir);
+			runFiles.add(runFile);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile),
+					65536))) {
+				for (TransactionBean t : run) {
+					out.writeBoolean(true);
+					out.writeLong(t.getTransactionID());
+					out.writeLong(t.getTimeLogged().getTime());
+					out.writeLong(t.getLoggedInMID());
+					out.writeLong(t.getSecondaryMID());
+					out.writeInt(t.getTransactionType().getCode());
+					byte[] info = infoBytes(t);
+					out.writeInt(info.length);
+					out.write(info);
+				}
+				out.writeBoolean(false);
+			}
+			run.clear();
+		}
+
+		/**
+		 * Writes the month to a temporary file, syncs it and moves it into
+		 * place.
+		 *
+		 * @throws IOException
+		 */
+		public void commit() throws IOException {
+			File tmp = new File(file.getPath() + ".tmp");
+			Collections.sort(run, BY_PATIENT);
+			List<RowSource> sources = new ArrayList<RowSource>();
+			try (RandomAccessFile old = carriedOver == null ? null : new RandomAccessFile(file, "r");
+					FileOutputStream fos = new FileOutputStream(tmp)) {
+				if (old != null)
+					sources.add(new SegmentSource(old, carriedOver.segments));
+				for (File runFile : runFiles)
+					sources.add(new RunSource(runFile));
+				sources.add(new ListSource(run.iterator()));
+
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 65536));
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+				long offset = 5;
+				List<Segment> segments = new ArrayList<Segment>();
+				SegmentBuilder builder = new SegmentBuilder();
+				PriorityQueue<RowSource> heads = new PriorityQueue<RowSource>();
+				for (RowSource source : sources) {
+					if (source.advance())
+						heads.add(source);
+				}
+				while (!heads.isEmpty()) {
+					RowSource source = heads.poll();
+					builder.add(source.head);
+					if (builder.rows == SEGMENT_ROWS) {
+						Segment segment = builder.writeTo(out, offset);
+						segments.add(segment);
+						offset += segment.length;
+					}
+					if (source.advance())
+						heads.add(source);
+				}
+				if (builder.rows > 0) {
+					Segment segment = builder.writeTo(out, offset);
+					segments.add(segment);
+					offset += segment.length;
+				}
+
+				out.writeInt(segments.size());
+				for (Segment segment : segments)
+					segment.writeTo(out);
+				out.writeLong(offset);
+				out.writeInt(MAGIC);
+				out.flush();
+				fos.getFD().sync();
+			} finally {
+				for (RowSource source : sources)
+					source.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			indexes.remove(file);
+			close();
+		}
+
+		/**
+		 * Deletes the writer's run files. Committing closes the writer.
+		 */
+		@Override
+		public void close() {
+			for (File runFile : runFiles) {
+				if (!runFile.delete() && runFile.exists())
+					System.err.println("Unable to delete " + runFile);
+			}
+			runFiles.clear();
+			run.clear();
+		}
+	}
+
+	/**
+	 * Where one segment is in a month file and what it holds.
+	 */
+	private static class Segment {
+		long firstMID, lastMID, minTime, maxTime, minID, maxID, offset;
+		int length, rows;
+
+		boolean mayHold(long secondaryMID, Date from, Date to, TransactionCursor before) {
+			return (secondaryMID == ANY_MID || (firstMID <= secondaryMID && secondaryMID <= lastMID))
+					&& (from == null || maxTime >= from.getTime()) && (to == null || minTime < to.getTime())
+					&& (before == null || minTime < before.getTimeLogged()
+							|| (minTime == before.getTimeLogged() && minID < before.getTransactionID()));
+		}
+
+		DataInputStream read(RandomAccessFile in) throws IOException {
+			byte[] bytes = new byte[length];
+			in.seek(offset);
+			in.readFully(bytes);
+			return new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes), 65536));
+		}
+
+		void writeTo(DataOutputStream out) throws IOException {
+			for (long value : new long[] { firstMID, lastMID, minTime, maxTime, minID, maxID, offset })
+				out.writeLong(value);
+			out.writeInt(length);
+			out.writeInt(rows);
+		}
+
+		static Segment readFrom(DataInputStream in) throws IOException {
+			Segment segment = new Segment();
+			segment.firstMID = in.readLong();
+			segment.lastMID = in.readLong();
+			segment.minTime = in.readLong();
+			segment.maxTime = in.readLong();
+			segment.minID = in.readLong();
+			segment.maxID = in.readLong();
+			segment.offset = in.readLong();
+			segment.length = in.readInt();
+			segment.rows = in.readInt();
+			return segment;
+		}
+	}
+
+	/**
+	 * A month file's segments, as of the file's size and modification time.
+	 */
+	private static class MonthIndex {
+		final long size;
+		final long modified;
+		final List<Segment> segments;
+
+		MonthIndex(long size, long modified, List<Segment> segments) {
+			this.size = size;
+			this.modified = modified;
+			this.segments = segments;
+		}
+	}
+
+	/**
+	 * @return The month file's segment index, or null for a version 1 file
+	 */
+	private MonthIndex getIndex(File file) throws IOException {
+		long size = file.length();
+		long modified = file.lastModified();
+		MonthIndex index = indexes.get(file);
+		if (index != null && index.size == size && index.modified == modified)
+			return index;
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			if (in.length() < 5 || in.readInt() != MAGIC)
+				return null; // version 1 files are gzipped from the first byte
+			if (in.readByte() != VERSION || in.length() < 17)
+				throw new IOException(file + " is not a transaction archive");
+			in.seek(in.length() - 12);
+			long indexOffset = in.readLong();
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a transaction archive");
+			byte[] bytes = new byte[(int) (in.length() - 12 - indexOffset)];
+			in.seek(indexOffset);
+			in.readFully(bytes);
+			DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+			int count = data.readInt();
+			List<Segment> segments = new ArrayList<Segment>(count);
+			for (int i = 0; i < count; i++)
+				segments.add(Segment.readFrom(data));
+			index = new MonthIndex(size, modified, segments);
+		}
+		indexes.put(file, index);
+		return index;
+	}
+
+	/**
+	 * Collects up to {@link #SEGMENT_ROWS} rows by column.
+	 */
+	private static class SegmentBuilder {
+		private final ByteArrayOutputStream ids = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream times = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream loggedInMIDs = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream secondaryMIDs = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream codes = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream infos = new ByteArrayOutputStream();
+		private Segment segment = new Segment();
+		private long lastID;
+		private long lastTime;
+		private int rows;
+
+		void add(TransactionBean t) {
+			long time = t.getTimeLogged().getTime();
+			if (rows == 0) {
+				segment.firstMID = t.getSecondaryMID();
+				segment.minTime = segment.maxTime = time;
+				segment.minID = segment.maxID = t.getTransactionID();
+			}
+			segment.lastMID = t.getSecondaryMID();
+			segment.minTime = Math.min(segment.minTime, time);
+			segment.maxTime = Math.max(segment.maxTime, time);
+			segment.minID = Math.min(segment.minID, t.getTransactionID());
+			segment.maxID = Math.max(segment.maxID, t.getTransactionID());
+
+			writeVarLong(ids, zigzag(t.getTransactionID() - lastID));
+			writeVarLong(times, zigzag(time - lastTime));
+			writeVarLong(loggedInMIDs, t.getLoggedInMID());
+			writeVarLong(secondaryMIDs, t.getSecondaryMID());
+			writeVarLong(codes, t.getTransactionType().getCode());
+			byte[] info = infoBytes(t);
+			writeVarLong(infos, info.length);
+			infos.write(info, 0, info.length);
+			lastID = t.getTransactionID();
+			lastTime = time;
+			rows++;
+		}
+
+		/**
+		 * Compresses the segment onto the end of the file and starts the next
+		 * one.
+		 */
+		Segment writeTo(OutputStream out, long offset) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream data = new DataOutputStream(new GZIPOutputStream(bytes, 65536))) {
+				data.writeInt(rows);
+				for (ByteArrayOutputStream column : Arrays.asList(ids, times, loggedInMIDs, secondaryMIDs, codes,
+						infos)) {
+					data.writeInt(column.size());
+					column.writeTo(data);
+					column.reset();
+				}
+			}
+			bytes.writeTo(out);
+			Segment written = segment;
+			written.offset = offset;
+			written.length = bytes.size();
+			written.rows = rows;
+			segment = new Segment();
+			lastID = 0;
+			lastTime = 0;
+			rows = 0;
+			return written;
+		}
+	}
+
+	/**
+	 * One sorted input to the merge in {@link MonthWriter#commit()}.
+	 */
+	private abstract static class RowSource implements Comparable<RowSource>, Closeable {
+		TransactionBean head;
+
+		/**
+		 * Moves to the next row
+		 *
+		 * @return false once the rows run out
+		 */
+		abstract boolean advance() throws IOException;
+
+		@Override
+		public int compareTo(RowSource o) {
+			return BY_PATIENT.compare(head, o.head);
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+	}
+
+	private static class ListSource extends RowSource {
+		private final Iterator<TransactionBean> rows;
+
+		ListSource(Iterator<TransactionBean> rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		boolean advance() {
+			head = rows.hasNext() ? rows.next() : null;
+			return head != null;
+		}
+	}
+
+	private static class RunSource extends RowSource {
+		private final DataInputStream in;
+
+		RunSource(File runFile) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 65536));
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			if (!in.readBoolean()) {
+				head = null;
+				return false;
+			}
+			TransactionBean t = new TransactionBean();
+			t.setTransactionID(in.readLong());
+			t.setTimeLogged(new Timestamp(in.readLong()));
+			t.setLoggedInMID(in.readLong());
+			t.setSecondaryMID(in.readLong());
+			t.setTransactionType(TransactionType.parse(in.readInt()));
+			byte[] info = new byte[in.readInt()];
+			in.readFully(info);
+			t.setAddedInfo(new String(info, StandardCharsets.UTF_8));
+			head = t;
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/** The rows of an existing month file, decompressed a segment at a time */
+	private static class SegmentSource extends RowSource {
+		private final RandomAccessFile in;
+		private final Iterator<Segment> segments;
+		private Iterator<TransactionBean> rows = Collections.<TransactionBean> emptyList().iterator();
+
+		SegmentSource(RandomAccessFile in, List<Segment> segments) {
+			this.in = in;
+			this.segments = segments.iterator();
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			while (!rows.hasNext() && segments.hasNext())
+				rows = decode(segments.next().read(in), ANY_MID, null, null, null, null).iterator();
+			head = rows.hasNext() ? rows.next() : null;
+			return head != null;
+		}
+	}
+
+	private List<TransactionBean> readLegacyMonth(File file, long secondaryMID, Date from, Date to,
+			TransactionCursor before, Filter filter) throws IOException {
+		try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 65536), 65536)) {
+			DataInputStream data = new DataInputStream(in);
+			if (data.readInt() != MAGIC || data.readByte() != LEGACY_VERSION)
+				throw new IOException(file + " is not a transaction archive");
+			return decode(data, secondaryMID, from, to, before, filter);
+		}
+	}
+
+	/**
+	 * Decodes a block of rows stored by column: a segment, or the whole of a
+	 * version 1 file after its header.
+	 */
+	private static List<TransactionBean> decode(DataInputStream data, long secondaryMID, Date from, Date to,
+			TransactionCursor before, Filter filter) throws IOException {
+		int rows = data.readInt();
+		long[] ids = new long[rows];
+		long[] times = new long[rows];
+		long[] loggedInMIDs = new long[rows];
+		long[] secondaryMIDs = new long[rows];
+		int[] codes = new int[rows];
+		InputStream column = column(data);
+		for (int i = 0; i < rows; i++)
+			ids[i] = (i == 0 ? 0 : ids[i - 1]) + unzigzag(readVarLong(column));
+		column = column(data);
+		for (int i = 0; i < rows; i++)
+			times[i] = (i == 0 ? 0 : times[i - 1]) + unzigzag(readVarLong(column));
+		column = column(data);
+		for (int i = 0; i < rows; i++)
+			loggedInMIDs[i] = readVarLong(column);
+		column = column(data);
+		for (int i = 0; i < rows; i++)
+			secondaryMIDs[i] = readVarLong(column);
+		column = column(data);
+		for (int i = 0; i < rows; i++)
+			codes[i] = (int) readVarLong(column);
+
+		List<TransactionBean> result = new ArrayList<TransactionBean>();
+		DataInputStream infos = new DataInputStream(column(data));
+		for (int i = 0; i < rows; i++) {
+			int length = (int) readVarLong(infos);
+			boolean keep = (secondaryMID == ANY_MID || secondaryMIDs[i] == secondaryMID)
+					&& (from == null || times[i] >= from.getTime()) && (to == null || times[i] < to.getTime())
+					&& (before == null || times[i] < before.getTimeLogged()
+							|| (times[i] == before.getTimeLogged() && ids[i] < before.getTransactionID()))
+					&& (filter == null || filter.accept(loggedInMIDs[i], secondaryMIDs[i], codes[i]));
+			if (!keep) {
+				infos.skipBytes(length);
+				continue;
+			}
+			byte[] info = new byte[length];
+			infos.readFully(info);
+			TransactionBean t = new TransactionBean();
+			t.setTransactionID(ids[i]);
+			t.setTimeLogged(new Timestamp(times[i]));
+			t.setLoggedInMID(loggedInMIDs[i]);
+			t.setSecondaryMID(secondaryMIDs[i]);
+			t.setTransactionType(TransactionType.parse(codes[i]));
+			t.setAddedInfo(new String(info, StandardCharsets.UTF_8));
+			result.add(t);
+		}
+		return result;
+	}
+
+	private static byte[] infoBytes(TransactionBean t) {
+		return t.getAddedInfo() == null ? new byte[0] : t.getAddedInfo().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static InputStream column(DataInputStream data) throws IOException {
+		byte[] column = new byte[data.readInt()];
+		data.readFully(column);
+		return new ByteArrayInputStream(column);
+	}
+
+	private File fileFor(Date month) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(month);
+		return new File(dir, String.format("%s%04d-%02d%s", PREFIX, cal.get(Calendar.YEAR),
+				cal.get(Calendar.MONTH) + 1, SUFFIX));
+	}
+
+	private static Date parseMonth(String name) {
+		if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)
+				|| name.length() != PREFIX.length() + 7 + SUFFIX.length())
+			return null;
+		try {
+			int year = Integer.parseInt(name.substring(PREFIX.length(), PREFIX.length() + 4));
+			int month = Integer.parseInt(name.substring(PREFIX.length() + 5, PREFIX.length() + 7));
+			Calendar cal = Calendar.getInstance();
+			cal.clear();
+			cal.set(year, month - 1, 1);
+			return cal.getTime();
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The first instant of the month the date is in
+	 */
+	public static Date startOfMonth(Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		cal.set(Calendar.DAY_OF_MONTH, 1);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTime();
+	}
+
+	/**
+	 * @return The first instant of the month after the one the date is in
+	 */
+	public static Date nextMonth(Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(startOfMonth(date));
+		cal.add(Calendar.MONTH, 1);
+		return cal.getTime();
+	}
+
+	private static long zigzag(long n) {
+		return (n << 1) ^ (n >> 63);
+	}
+
+	private static long unzigzag(long n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	private static void writeVarLong(OutputStream out, long value) {
+		try {
+			while ((value & ~0x7FL) != 0) {
+				out.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int) value);
+		} catch (IOException e) {
+			// ByteArrayOutputStream does not throw
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed archive column");
+	}
+}
@@ -0,0 +1,158 @@
+package edu.ncsu.csc.itrust.logger;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCallback;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+
+/**
+ * Periodically moves whole months of the transaction log that are older than
+ * <code>retentionMonths</code> out of transactionlog and into the
+ * {@link TransactionArchive}. A month's rows are only deleted once its archive
+ * file has been synced to disk; if the archiver stops in between, the next run
+ * merges the rows into the existing file and deletes them then.
+ */
+public class TransactionArchiver {
+	private final TransactionDAO dao;
+	private final TransactionArchive archive;
+	private final int retentionMonths;
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param dao
+	 *            The DAO to move transactions out of
+	 * @param archive
+	 *            The archive to move them into
+	 * @param retentionMonths
+	 *            How many whole months to keep in the database, besides the
+	 *            current one
+	 */
+	public TransactionArchiver(TransactionDAO dao, TransactionArchive archive, int retentionMonths) {
+		this.dao = dao;
+		this.archive = archive;
+		this.retentionMonths = retentionMonths;
+	}
+
+	/**
+	 * Starts archiving in the background.
+	 *
+	 * @param intervalHours
+	 *            How often to look for months to archive
+	 */
+	public synchronized void start(long intervalHours) {
+		if (executor != null)
+			return;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-TransactionArchiver");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					archiveOldMonths();
+				} catch (DBException e) {
+					System.err.println("Unable to archive the transaction log: " + e.getExtendedMessage());
+				} catch (IOException e) {
+					System.err.println("Unable to archive the transaction log: " + e.getMessage());
+				}
+			}
+		}, intervalHours, intervalHours, TimeUnit.HOURS);
+	}
+
+	/**
+	 * Stops archiving.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return The first instant that is kept in the database
+	 */
+	public Date getCutoff() {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(TransactionArchive.startOfMonth(new Date()));
+		cal.add(Calendar.MONTH, -retentionMonths);
+		return cal.getTime();
+	}
+
+	/**
+	 * Archives every month before the cutoff that still has rows in the
+	 * database.
+	 *
+	 * @return The number of transactions moved into the archive
+	 * @throws DBException
+	 * @throws IOException
+	 */
+	public synchronized int archiveOldMonths() throws DBException, IOException {
+		Date cutoff = getCutoff();
+		int moved = 0;
+		Date oldest = dao.getOldestTransactionTime();
+		if (oldest == null)
+			return 0;
+		for (Date month = TransactionArchive.startOfMonth(oldest); month.before(cutoff); month = TransactionArchive
+				.nextMonth(month)) {
+			moved += archiveMonth(month);
+		}
+		return moved;
+	}
+
+	/**
+	 * Moves one month of the log into the archive.
+	 *
+	 * @param month
+	 *            Any instant in the month
+	 * @return The number of transactions moved
+	 * @throws DBException
+	 * @throws IOException
+	 */
+	public synchronized int archiveMonth(Date month) throws DBException, IOException {
+		Date start = TransactionArchive.startOfMonth(month);
+		Date end = TransactionArchive.nextMonth(month);
+		final long[] maxID = { -1 };
+		final int[] added = { 0 };
+		final IOException[] failure = { null };
+		try (final TransactionArchive.MonthWriter writer = archive.openMonth(start)) {
+			dao.streamTransactionsBetween(start, end, new TransactionCallback() {
+				@Override
+				public boolean handle(TransactionBean t) {
+					if (!writer.contains(t.getTransactionID())) {
+						try {
+							writer.add(t);
+						} catch (IOException e) {
+							failure[0] = e;
+							return false;
+						}
+						added[0]++;
+					}
+					maxID[0] = Math.max(maxID[0], t.getTransactionID());
+					return true;
+				}
+			});
+			if (failure[0] != null)
+				throw failure[0];
+			if (maxID[0] < 0)
+				return 0;
+			if (added[0] > 0)
+				writer.commit();
+		}
+		dao.deleteTransactionsBetween(start, end, maxID[0]);
+		return added[0];
+	}
+}
@@ -0,0 +1,126 @@
+package edu.ncsu.csc.itrust.logger;
+
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCountDAO;
+
+/**
+ * Periodically reconciles the running transaction counts against the
+ * transaction log: every <code>recentIntervalMinutes</code> the last
+ * <code>recentHours</code> hours are rebuilt, and every
+ * <code>fullIntervalHours</code> the whole log is rescanned. Counts that have
+ * never been built are built from the whole log as soon as it starts.
+ */
+public class TransactionCountReconciler {
+	private final TransactionCountDAO dao;
+	private final int recentHours;
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param dao
+	 *            The DAO holding the counts
+	 * @param recentHours
+	 *            How many hours back the frequent reconciliation rebuilds
+	 */
+	public TransactionCountReconciler(TransactionCountDAO dao, int recentHours) {
+		this.dao = dao;
+		this.recentHours = recentHours;
+	}
+
+	/**
+	 * Starts reconciling in the background.
+	 * 
+	 * @param recentIntervalMinutes
+	 *            How often to rebuild the recent hours
+	 * @param fullIntervalHours
+	 *            How often to rescan the whole log; 0 to never do so
+	 */
+	public synchronized void start(long recentIntervalMinutes, long fullIntervalHours) {
+		if (executor != null)
+			return;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-TransactionCountReconciler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				reconcileIfEmpty();
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				reconcileRecent();
+			}
+		}, recentIntervalMinutes, recentIntervalMinutes, TimeUnit.MINUTES);
+		if (fullIntervalHours > 0) {
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					reconcileAll();
+				}
+			}, fullIntervalHours, fullIntervalHours, TimeUnit.HOURS);
+		}
+	}
+
+	/**
+	 * Stops reconciling.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Rebuilds the counts for the last <code>recentHours</code> hours.
+	 */
+	public void reconcileRecent() {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.add(Calendar.HOUR_OF_DAY, -recentHours);
+		try {
+			dao.reconcileSince(new Timestamp(cal.getTimeInMillis()));
+		} catch (DBException e) {
+			System.err.println("Unable to reconcile recent transaction counts: " + e.getExtendedMessage());
+		}
+	}
+
+	/**
+	 * Builds the counts from the whole log if they have never been built,
+	 * e.g. on a fresh database.
+	 */
+	public void reconcileIfEmpty() {
+		try {
+			if (!dao.hasCounts())
+				dao.reconcile();
+		} catch (DBException e) {
+			System.err.println("Unable to build transaction counts: " + e.getExtendedMessage());
+		}
+	}
+
+	/**
+	 * Rebuilds all the counts from the whole log.
+	 */
+	public void reconcileAll() {
+		try {
+			dao.reconcile();
+		} catch (DBException e) {
+			System.err.println("Unable to reconcile transaction counts: " + e.getExtendedMessage());
+		}
+	}
+}
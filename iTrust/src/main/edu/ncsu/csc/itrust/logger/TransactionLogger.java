@@ -1,6 +1,11 @@
 package edu.ncsu.csc.itrust.logger;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+
 import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
@@ -8,6 +13,14 @@ import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 /**
  * Singleton provider of the transaction logging mechanism.
  * 
+ * By default transactions are written synchronously. Calling
+ * {@link #startAsync(int, int, long, QueueFullPolicy)} (done by
+ * TransactionLoggerListener at webapp startup) switches to an
+ * {@link AsyncTransactionWriter}, so requests no longer wait on the insert.
+ * With {@link #startSpool(File, int, int, long)} transactions the database
+ * cannot take are kept in a local {@link TransactionSpool} and replayed later
+ * instead of being lost.
+ * 
  * @author mwreesjo
  *
  */
@@ -19,6 +32,13 @@ public class TransactionLogger {
 	/** The DAO which exposes logging functionality to the singleton */
 	TransactionDAO dao;
 
+	/** The background writer, or null when logging synchronously */
+	private volatile AsyncTransactionWriter writer;
+
+	/** The local spool for failed writes, or null if there is none */
+	private volatile TransactionSpool spool;
+	private TransactionSpoolReplayer replayer;
+
 	private TransactionLogger() {
 		dao = DAOFactory.getProductionInstance().getTransactionDAO();
 	}
@@ -36,10 +56,144 @@ public class TransactionLogger {
 	 * Logs a transaction. @see {@link TransactionDAO#logTransaction}
 	 */
 	public void logTransaction(TransactionType type, Long loggedInMID, Long secondaryMID, String addedInfo) {
+		AsyncTransactionWriter w = writer;
+		if (w != null) {
+			w.submit(toBean(type, loggedInMID, secondaryMID, addedInfo));
+			return;
+		}
 		try {
 			dao.logTransaction(type, loggedInMID, secondaryMID, addedInfo);
 		} catch (DBException e) {
+			TransactionSpool s = spool;
+			if (s != null) {
+				try {
+					s.append(toBean(type, loggedInMID, secondaryMID, addedInfo));
+					return;
+				} catch (IOException ioe) {
+					ioe.printStackTrace();
+				}
+			}
+			e.printStackTrace();
+		}
+	}
+
+	private static TransactionBean toBean(TransactionType type, Long loggedInMID, Long secondaryMID,
+			String addedInfo) {
+		TransactionBean t = new TransactionBean();
+		t.setTransactionType(type);
+		t.setLoggedInMID(loggedInMID);
+		t.setSecondaryMID(secondaryMID == null ? 0L : secondaryMID);
+		t.setAddedInfo(addedInfo);
+		t.setTimeLogged(new Timestamp(System.currentTimeMillis()));
+		return t;
+	}
+
+	/**
+	 * Switches this logger to asynchronous mode. Does nothing if it is
+	 * already asynchronous.
+	 * 
+	 * @param capacity
+	 *            The maximum number of transactions waiting to be written
+	 * @param batchSize
+	 *            The maximum number of transactions written in one INSERT
+	 * @param flushIntervalMillis
+	 *            The longest a transaction waits for its batch to fill up
+	 * @param policy
+	 *            What to do with a transaction when the queue is full
+	 */
+	public synchronized void startAsync(int capacity, int batchSize, long flushIntervalMillis,
+			QueueFullPolicy policy) {
+		if (writer != null)
+			return;
+		AsyncTransactionWriter w = new AsyncTransactionWriter(dao, capacity, batchSize, flushIntervalMillis, policy);
+		w.setSpool(spool);
+		w.start();
+		writer = w;
+	}
+
+	/**
+	 * Switches this logger back to synchronous mode, writing out everything
+	 * still queued first.
+	 * 
+	 * @param timeoutMillis
+	 *            How long to wait for the queue to drain
+	 * @return The number of transactions left unwritten (0 on a clean drain)
+	 */
+	public synchronized int stopAsync(long timeoutMillis) {
+		AsyncTransactionWriter w = writer;
+		if (w == null)
+			return 0;
+		writer = null;
+		return w.shutdown(timeoutMillis);
+	}
+
+	/**
+	 * Opens the local spool for transactions the database cannot take, and
+	 * starts replaying it. Does nothing if a spool is already open.
+	 * 
+	 * @param directory
+	 *            The directory holding the spool segments
+	 * @param recordsPerSegment
+	 *            How many records go in one segment file before rotating
+	 * @param replayBatchSize
+	 *            The maximum number of records replayed in one INSERT
+	 * @param replayIntervalMillis
+	 *            How often to check the spool for records to replay
+	 * @throws IOException
+	 */
+	public synchronized void startSpool(File directory, int recordsPerSegment, int replayBatchSize,
+			long replayIntervalMillis) throws IOException {
+		if (spool != null)
+			return;
+		TransactionSpool s = new TransactionSpool(directory, recordsPerSegment);
+		replayer = new TransactionSpoolReplayer(s, dao, replayBatchSize, replayIntervalMillis);
+		replayer.start();
+		spool = s;
+		if (writer != null)
+			writer.setSpool(s);
+	}
+
+	/**
+	 * Stops replaying and closes the spool. Records still in it are replayed
+	 * the next time the spool is opened.
+	 * 
+	 * @param timeoutMillis
+	 *            How long to wait for the replayer to stop
+	 */
+	public synchronized void stopSpool(long timeoutMillis) {
+		TransactionSpool s = spool;
+		if (s == null)
+			return;
+		if (writer != null)
+			writer.setSpool(null);
+		spool = null;
+		replayer.stop(timeoutMillis);
+		replayer = null;
+		try {
+			s.close();
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return The local spool, or null if there is none
+	 */
+	public TransactionSpool getSpool() {
+		return spool;
+	}
+
+	/**
+	 * @return The spool replayer, or null if there is no spool
+	 */
+	public synchronized TransactionSpoolReplayer getSpoolReplayer() {
+		return replayer;
+	}
+
+	/**
+	 * @return The background writer, or null when logging synchronously
+	 */
+	public AsyncTransactionWriter getAsyncWriter() {
+		return writer;
+	}
+}
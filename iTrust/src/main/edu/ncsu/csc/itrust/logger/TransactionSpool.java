@@ -0,0 +1,371 @@
+package edu.ncsu.csc.itrust.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+/**
+ * A local, append-only write-ahead spool for transactions that could not be
+ * written to the database. The spool is a directory of memory-mapped segment
+ * files named <code>spool-&lt;first sequence&gt;.seg</code>, each holding up to
+ * <code>recordsPerSegment</code> fixed-size records:
+ * 
+ * <pre>
+ * offset  size  field
+ *      0     8  sequence number (never 0 for a written record)
+ *      8     8  timeLogged (epoch millis)
+ *     16     8  loggedInMID
+ *     24     8  secondaryMID
+ *     32     4  transactionCode
+ *     36     2  length of addedInfo in bytes
+ *     38   766  addedInfo (UTF-8, zero padded)
+ *    804     4  CRC32 of bytes 0-803
+ * </pre>
+ * 
+ * A record whose checksum does not match (a torn write from a crash) is
+ * skipped. The <code>checkpoint</code> file holds this
+ * spool's random ID and the last sequence number that was replayed; replayed
+ * rows are tagged with (spoolID, spoolSeq) so the unique key on transactionlog
+ * rejects anything replayed twice. Segments are deleted once fully replayed.
+ */
+public class TransactionSpool {
+	static final int RECORD_SIZE = 808;
+	private static final int INFO_OFFSET = 38;
+	private static final int INFO_BYTES = 766;
+	private static final int CRC_OFFSET = 804;
+	private static final String SEGMENT_PREFIX = "spool-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private final File directory;
+	private final int recordsPerSegment;
+	private final CRC32 crc = new CRC32();
+
+	/** Segment files by their first sequence number, oldest first */
+	private final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+	private RandomAccessFile activeFile;
+	private MappedByteBuffer active;
+	private long activeFirstSeq;
+
+	private final RandomAccessFile checkpointFile;
+	private long spoolID;
+	private long replayedSeq;
+	private long nextSeq;
+	private boolean closed = false;
+
+	/**
+	 * Opens (or creates) the spool in the given directory, recovering any
+	 * records left over from a previous run.
+	 * 
+	 * @param directory
+	 *            The directory holding the segment files
+	 * @param recordsPerSegment
+	 *            How many records fit in one segment before it is rotated
+	 * @throws IOException
+	 */
+	public TransactionSpool(File directory, int recordsPerSegment) throws IOException {
+		if (recordsPerSegment < 1)
+			throw new IllegalArgumentException("recordsPerSegment must be positive");
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Unable to create spool directory " + directory);
+		this.directory = directory;
+		this.recordsPerSegment = recordsPerSegment;
+
+		checkpointFile = new RandomAccessFile(new File(directory, "checkpoint"), "rw");
+		if (checkpointFile.length() >= 16) {
+			spoolID = checkpointFile.readLong();
+			replayedSeq = checkpointFile.readLong();
+		} else {
+			spoolID = new Random().nextLong() & Long.MAX_VALUE;
+			replayedSeq = 0;
+			writeCheckpoint();
+		}
+		recover();
+	}
+
+	private void recover() throws IOException {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				String name = f.getName();
+				if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+					long first = Long.parseLong(
+							name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+					segments.put(first, f);
+				}
+			}
+		}
+		nextSeq = replayedSeq + 1;
+		if (segments.isEmpty())
+			return;
+		long lastFirst = segments.lastKey();
+		openActive(lastFirst);
+		int slot = 0;
+		while (slot < recordsPerSegment && readSeq(active, slot) == lastFirst + slot) {
+			slot++;
+		}
+		nextSeq = Math.max(nextSeq, lastFirst + slot);
+	}
+
+	/**
+	 * Appends a transaction to the spool.
+	 * 
+	 * @param t
+	 *            The transaction; its timeLogged must be set
+	 * @return The sequence number assigned to the record
+	 * @throws IOException
+	 */
+	public synchronized long append(TransactionBean t) throws IOException {
+		if (closed)
+			throw new IOException("Transaction spool is closed");
+		if (active == null || nextSeq - activeFirstSeq >= recordsPerSegment)
+			rotate();
+		long seq = nextSeq++;
+		int pos = (int) (seq - activeFirstSeq) * RECORD_SIZE;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		record.putLong(seq);
+		record.putLong(t.getTimeLogged().getTime());
+		record.putLong(t.getLoggedInMID());
+		record.putLong(t.getSecondaryMID());
+		record.putInt(t.getTransactionType().getCode());
+		byte[] info = encodeInfo(t.getAddedInfo());
+		record.putShort((short) info.length);
+		record.put(info);
+		crc.reset();
+		crc.update(record.array(), 0, CRC_OFFSET);
+		record.putInt(CRC_OFFSET, (int) crc.getValue());
+		// the sequence goes in last so a torn record never looks written
+		active.position(pos + 8);
+		active.put(record.array(), 8, RECORD_SIZE - 8);
+		active.putLong(pos, seq);
+		return seq;
+	}
+
+	/**
+	 * Reads up to <code>max</code> records that have not been replayed yet,
+	 * oldest first.
+	 * 
+	 * @param max
+	 *            The maximum number of records to read
+	 * @param sequences
+	 *            Receives the sequence number of every returned record
+	 * @return The spooled transactions
+	 * @throws IOException
+	 */
+	public synchronized List<TransactionBean> readPending(int max, List<Long> sequences) throws IOException {
+		List<TransactionBean> result = new ArrayList<TransactionBean>();
+		long seq = replayedSeq + 1;
+		while (result.size() < max && seq < nextSeq) {
+			Long first = segments.floorKey(seq);
+			if (first == null) {
+				// the records before the oldest segment are gone; skip ahead
+				Long next = segments.ceilingKey(seq);
+				if (next == null)
+					break;
+				seq = next;
+				continue;
+			}
+			if (seq - first >= recordsPerSegment) {
+				Long next = segments.higherKey(first);
+				if (next == null)
+					break;
+				seq = next;
+				continue;
+			}
+			ByteBuffer segment = first == activeFirstSeq ? active : mapReadOnly(segments.get(first));
+			for (int slot = (int) (seq - first); slot < recordsPerSegment && result.size() < max
+					&& seq < nextSeq; slot++, seq++) {
+				TransactionBean t = readRecord(segment, slot, seq);
+				if (t != null) {
+					result.add(t);
+					sequences.add(seq);
+				} else if (result.isEmpty()) {
+					// nothing to replay for a corrupt record; don't get stuck on it
+					markReplayed(seq);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Records that everything up to and including <code>seq</code> has been
+	 * written to the database, and deletes segments that are no longer needed.
+	 * 
+	 * @param seq
+	 *            The last replayed sequence number
+	 * @throws IOException
+	 */
+	public synchronized void markReplayed(long seq) throws IOException {
+		if (seq <= replayedSeq)
+			return;
+		replayedSeq = seq;
+		writeCheckpoint();
+		while (!segments.isEmpty()) {
+			long first = segments.firstKey();
+			if (first == activeFirstSeq || first + recordsPerSegment - 1 > replayedSeq)
+				break;
+			File f = segments.remove(first);
+			if (!f.delete())
+				System.err.println("Unable to delete replayed spool segment " + f);
+		}
+	}
+
+	/**
+	 * Flushes the active segment to disk.
+	 */
+	public synchronized void force() {
+		if (active != null)
+			active.force();
+	}
+
+	/**
+	 * Flushes and closes the spool.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		force();
+		if (activeFile != null)
+			activeFile.close();
+		active = null;
+		activeFile = null;
+		checkpointFile.close();
+	}
+
+	/**
+	 * @return The random ID of this spool, used with the sequence number to
+	 *         identify a replayed row
+	 */
+	public long getSpoolID() {
+		return spoolID;
+	}
+
+	/**
+	 * @return The number of records waiting to be replayed
+	 */
+	public synchronized long getDepth() {
+		return nextSeq - 1 - replayedSeq;
+	}
+
+	/**
+	 * @return The number of segment files on disk
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * @return How long ago, in milliseconds, the oldest record waiting to be
+	 *         replayed was logged, or 0 if nothing is waiting
+	 * @throws IOException
+	 */
+	public synchronized long getReplayLagMillis() throws IOException {
+		List<Long> seqs = new ArrayList<Long>(1);
+		List<TransactionBean> oldest = readPending(1, seqs);
+		if (oldest.isEmpty())
+			return 0;
+		return Math.max(0, System.currentTimeMillis() - oldest.get(0).getTimeLogged().getTime());
+	}
+
+	private void rotate() throws IOException {
+		if (active != null) {
+			active.force();
+			activeFile.close();
+			if (activeFirstSeq + recordsPerSegment - 1 <= replayedSeq) {
+				File done = segments.remove(activeFirstSeq);
+				if (!done.delete())
+					System.err.println("Unable to delete replayed spool segment " + done);
+			}
+		}
+		File f = new File(directory, SEGMENT_PREFIX + nextSeq + SEGMENT_SUFFIX);
+		segments.put(nextSeq, f);
+		openActive(nextSeq);
+	}
+
+	private void openActive(long firstSeq) throws IOException {
+		activeFile = new RandomAccessFile(segments.get(firstSeq), "rw");
+		active = activeFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				(long) recordsPerSegment * RECORD_SIZE);
+		activeFirstSeq = firstSeq;
+	}
+
+	private ByteBuffer mapReadOnly(File f) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, Math.min(raf.length(),
+					(long) recordsPerSegment * RECORD_SIZE));
+		}
+	}
+
+	private long readSeq(ByteBuffer segment, int slot) {
+		int pos = slot * RECORD_SIZE;
+		if (pos + RECORD_SIZE > segment.limit())
+			return 0;
+		return segment.getLong(pos);
+	}
+
+	private TransactionBean readRecord(ByteBuffer segment, int slot, long expectedSeq) {
+		if (readSeq(segment, slot) != expectedSeq)
+			return null;
+		int pos = slot * RECORD_SIZE;
+		byte[] record = new byte[RECORD_SIZE];
+		ByteBuffer dup = segment.duplicate();
+		dup.position(pos);
+		dup.get(record);
+		crc.reset();
+		crc.update(record, 0, CRC_OFFSET);
+		ByteBuffer buf = ByteBuffer.wrap(record);
+		if (buf.getInt(CRC_OFFSET) != (int) crc.getValue()) {
+			System.err.println("Skipping corrupt spool record " + expectedSeq);
+			return null;
+		}
+		TransactionBean t = new TransactionBean();
+		t.setTimeLogged(new Timestamp(buf.getLong(8)));
+		t.setLoggedInMID(buf.getLong(16));
+		t.setSecondaryMID(buf.getLong(24));
+		try {
+			t.setTransactionType(TransactionType.parse(buf.getInt(32)));
+		} catch (IllegalArgumentException e) {
+			System.err.println("Skipping spool record " + expectedSeq + ": " + e.getMessage());
+			return null;
+		}
+		int len = Math.min(buf.getShort(36), INFO_BYTES);
+		t.setAddedInfo(new String(record, INFO_OFFSET, len, StandardCharsets.UTF_8));
+		return t;
+	}
+
+	private static byte[] encodeInfo(String info) {
+		if (info == null)
+			return new byte[0];
+		if (info.length() > 255)
+			info = info.substring(0, 255);
+		byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+		while (bytes.length > INFO_BYTES) {
+			info = info.substring(0, info.length() - 1);
+			bytes = info.getBytes(StandardCharsets.UTF_8);
+		}
+		return bytes;
+	}
+
+	private void writeCheckpoint() throws IOException {
+		checkpointFile.seek(0);
+		checkpointFile.writeLong(spoolID);
+		checkpointFile.writeLong(replayedSeq);
+		checkpointFile.getFD().sync();
+	}
+}
@@ -0,0 +1,136 @@
+package edu.ncsu.csc.itrust.logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+
+/**
+ * Ships the records of a {@link TransactionSpool} into the transaction log
+ * once the database is reachable again. Runs on its own background thread,
+ * polling every <code>intervalMillis</code> and backing off (up to a minute)
+ * while the database keeps failing.
+ */
+public class TransactionSpoolReplayer implements Runnable {
+	private static final long MAX_BACKOFF_MILLIS = 60000;
+
+	private final TransactionSpool spool;
+	private final TransactionDAO dao;
+	private final int batchSize;
+	private final long intervalMillis;
+
+	private final AtomicLong replayed = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile boolean running = false;
+	private Thread thread;
+
+	/**
+	 * @param spool
+	 *            The spool to replay
+	 * @param dao
+	 *            The DAO the records are written with
+	 * @param batchSize
+	 *            The maximum number of records written in one INSERT
+	 * @param intervalMillis
+	 *            How often to check the spool for records
+	 */
+	public TransactionSpoolReplayer(TransactionSpool spool, TransactionDAO dao, int batchSize, long intervalMillis) {
+		this.spool = spool;
+		this.dao = dao;
+		this.batchSize = batchSize;
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Starts the background replay thread.
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+		running = true;
+		thread = new Thread(this, "iTrust-TransactionSpoolReplayer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the background replay thread, letting the current batch finish.
+	 * 
+	 * @param timeoutMillis
+	 *            How long to wait for the thread to stop
+	 */
+	public synchronized void stop(long timeoutMillis) {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(timeoutMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		long backoff = intervalMillis;
+		while (running) {
+			try {
+				while (running && replayOnce() > 0) {
+					// keep going while there's a backlog
+				}
+				backoff = intervalMillis;
+			} catch (DBException e) {
+				failures.incrementAndGet();
+				backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+			} catch (IOException e) {
+				failures.incrementAndGet();
+				e.printStackTrace();
+			}
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException e) {
+				// woken up by stop()
+			}
+		}
+	}
+
+	/**
+	 * Writes one batch of spooled records to the database.
+	 * 
+	 * @return The number of records shipped (0 if the spool is empty)
+	 * @throws DBException
+	 *             If the database is still unavailable; nothing is marked as
+	 *             replayed in that case
+	 * @throws IOException
+	 */
+	public int replayOnce() throws DBException, IOException {
+		List<Long> sequences = new ArrayList<Long>(batchSize);
+		List<TransactionBean> pending = spool.readPending(batchSize, sequences);
+		if (pending.isEmpty())
+			return 0;
+		dao.logSpooledTransactions(spool.getSpoolID(), pending, sequences);
+		spool.markReplayed(sequences.get(sequences.size() - 1));
+		replayed.addAndGet(pending.size());
+		return pending.size();
+	}
+
+	/**
+	 * @return The number of records shipped so far
+	 */
+	public long getReplayedCount() {
+		return replayed.get();
+	}
+
+	/**
+	 * @return The number of replay attempts that failed
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+}
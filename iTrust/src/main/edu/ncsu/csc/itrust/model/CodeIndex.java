@@ -0,0 +1,553 @@
+package edu.ncsu.csc.itrust.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * An immutable, in-memory snapshot of one code system (ICD-10-CM, NDC, CPT or
+ * LOINC) for looking codes up as they're typed. It keeps three prefix tries:
+ * one over the codes, one over every suffix of the codes (so that "contains"
+ * searches are prefix searches too), and one over the names starting at each
+ * word. Each trie branches on the first {@value #TRIE_DEPTH} characters and
+ * its leaves are ranges of one sorted array, so longer keys are narrowed down
+ * by binary search instead of more nodes.
+ *
+ * Snapshots are never changed once built; {@link #with(Object)} and
+ * {@link #without(String)} return new ones. See {@link CodeLookup} for how
+ * they're shared and kept up to date.
+ *
+ * @param <T>
+ *            The code bean, e.g. ICDCode
+ */
+public final class CodeIndex<T> {
+	/** How many characters deep the tries branch */
+	static final int TRIE_DEPTH = 6;
+
+	private final Function<? super T, String> codeOf;
+	private final Function<? super T, String> nameOf;
+	/** Sorted by code, so a code's position is also its ID in the tries */
+	private final List<T> codes;
+	private final String[] codeKeys;
+	private final String[] nameKeys;
+	private final PrefixTrie codeStarts;
+	private final PrefixTrie codeSuffixes;
+	private final PrefixTrie nameWords;
+
+	private CodeIndex(List<T> sorted, Function<? super T, String> codeOf, Function<? super T, String> nameOf) {
+		this.codeOf = codeOf;
+		this.nameOf = nameOf;
+		this.codes = Collections.unmodifiableList(sorted);
+		int n = sorted.size();
+		codeKeys = new String[n];
+		nameKeys = new String[n];
+		int suffixes = 0;
+		int words = 0;
+		for (int id = 0; id < n; id++) {
+			codeKeys[id] = normalize(codeOf.apply(sorted.get(id)));
+			nameKeys[id] = normalize(nameOf.apply(sorted.get(id)));
+			suffixes += codeKeys[id].length();
+			for (int i = 0; i < nameKeys[id].length(); i++) {
+				if (isWordStart(nameKeys[id], i))
+					words++;
+			}
+		}
+		long[] starts = new long[n];
+		long[] allSuffixes = new long[suffixes];
+		long[] wordStarts = new long[words];
+		suffixes = 0;
+		words = 0;
+		for (int id = 0; id < n; id++) {
+			starts[id] = entry(id, 0);
+			for (int i = 0; i < codeKeys[id].length(); i++)
+				allSuffixes[suffixes++] = entry(id, i);
+			for (int i = 0; i < nameKeys[id].length(); i++) {
+				if (isWordStart(nameKeys[id], i))
+					wordStarts[words++] = entry(id, i);
+			}
+		}
+		codeStarts = new PrefixTrie(codeKeys, starts);
+		codeSuffixes = new PrefixTrie(codeKeys, allSuffixes);
+		nameWords = new PrefixTrie(nameKeys, wordStarts);
+	}
+
+	/**
+	 * Builds a snapshot of the given codes.
+	 *
+	 * @param codes
+	 *            Every code in the code system
+	 * @param codeOf
+	 *            Gets a bean's code
+	 * @param nameOf
+	 *            Gets a bean's name or description
+	 * @return The new snapshot
+	 */
+	public static <T> CodeIndex<T> build(Collection<? extends T> codes, final Function<? super T, String> codeOf,
+			Function<? super T, String> nameOf) {
+		final List<T> unsorted = new ArrayList<T>(codes);
+		final String[] keys = new String[unsorted.size()];
+		Integer[] order = new Integer[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = normalize(codeOf.apply(unsorted.get(i)));
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return keys[a].compareTo(keys[b]);
+			}
+		});
+		List<T> sorted = new ArrayList<T>(keys.length);
+		for (Integer i : order)
+			sorted.add(unsorted.get(i));
+		return new CodeIndex<T>(sorted, codeOf, nameOf);
+	}
+
+	/**
+	 * @param code
+	 *            A code to add, or to replace the code of the same name
+	 * @return A new snapshot with the code in it
+	 */
+	public CodeIndex<T> with(T code) {
+		List<T> changed = new ArrayList<T>(codes);
+		int at = indexOf(codeOf.apply(code));
+		if (at >= 0) {
+			changed.set(at, code);
+		} else {
+			changed.add(-at - 1, code);
+		}
+		return new CodeIndex<T>(changed, codeOf, nameOf);
+	}
+
+	/**
+	 * @param code
+	 *            The code to remove
+	 * @return A new snapshot without the code, or this one if it wasn't here
+	 */
+	public CodeIndex<T> without(String code) {
+		int at = indexOf(code);
+		if (at < 0)
+			return this;
+		List<T> changed = new ArrayList<T>(codes);
+		changed.remove(at);
+		return new CodeIndex<T>(changed, codeOf, nameOf);
+	}
+
+	/**
+	 * @return Every code, in code order
+	 */
+	public List<T> getAll() {
+		return codes;
+	}
+
+	/**
+	 * @param code
+	 *            A code, in any case
+	 * @return The code's bean, or null if there's no such code
+	 */
+	public T get(String code) {
+		int at = indexOf(code);
+		return at < 0 ? null : codes.get(at);
+	}
+
+	public int size() {
+		return codes.size();
+	}
+
+	/**
+	 * Finds the codes containing the given text, ignoring case, the way
+	 * <code>code LIKE '%text%'</code> does.
+	 *
+	 * @param text
+	 *            Part of a code, taken literally
+	 * @return The matching codes, in code order
+	 */
+	public List<T> filter(String text) {
+		String key = normalize(text);
+		if (key.isEmpty())
+			return codes;
+		int[] range = codeSuffixes.range(key);
+		BitSet found = new BitSet(codes.size());
+		for (int e = range[0]; e < range[1]; e++)
+			found.set(codeSuffixes.idAt(e));
+		List<T> matches = new ArrayList<T>(found.cardinality());
+		for (int id = found.nextSetBit(0); id >= 0; id = found.nextSetBit(id + 1))
+			matches.add(codes.get(id));
+		return matches;
+	}
+
+	/**
+	 * Suggests codes for what's been typed so far, best first: the code
+	 * itself, then codes starting with the query, names starting with it,
+	 * names with a word starting with it, names with a word starting with
+	 * each of the query's words, and finally codes containing it.
+	 *
+	 * @param query
+	 *            What's been typed, in any case
+	 * @param limit
+	 *            The most suggestions to return
+	 * @return Up to limit codes
+	 */
+	public List<T> suggest(String query, int limit) {
+		String key = normalize(query).replaceAll("\\s+", " ");
+		List<T> suggestions = new ArrayList<T>();
+		if (key.isEmpty() || limit <= 0)
+			return suggestions;
+		BitSet seen = new BitSet(codes.size());
+
+		// codes sort before codes they're a prefix of, so an exact match is first
+		int[] range = codeStarts.range(key);
+		if (take(codeStarts, range, -1, seen, suggestions, limit))
+			return suggestions;
+
+		range = nameWords.range(key);
+		if (take(nameWords, range, 0, seen, suggestions, limit))
+			return suggestions;
+		if (take(nameWords, range, -1, seen, suggestions, limit))
+			return suggestions;
+
+		String[] words = words(key);
+		if (words.length > 1 && takeAllWords(words, seen, suggestions, limit))
+			return suggestions;
+
+		take(codeSuffixes, codeSuffixes.range(key), -1, seen, suggestions, limit);
+		return suggestions;
+	}
+
+	/**
+	 * Adds the codes in a range of a trie that haven't been suggested yet.
+	 *
+	 * @param offset
+	 *            Only take entries whose key starts this far into the text,
+	 *            or -1 for any
+	 * @return true once the limit's been reached
+	 */
+	private boolean take(PrefixTrie trie, int[] range, int offset, BitSet seen, List<T> suggestions, int limit) {
+		for (int e = range[0]; e < range[1]; e++) {
+			if (offset >= 0 && trie.offsetAt(e) != offset)
+				continue;
+			int id = trie.idAt(e);
+			if (!seen.get(id)) {
+				seen.set(id);
+				suggestions.add(codes.get(id));
+				if (suggestions.size() >= limit)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean takeAllWords(String[] words, BitSet seen, List<T> suggestions, int limit) {
+		int[] rarest = null;
+		String rarestWord = null;
+		for (String word : words) {
+			int[] range = nameWords.range(word);
+			if (rarest == null || range[1] - range[0] < rarest[1] - rarest[0]) {
+				rarest = range;
+				rarestWord = word;
+			}
+		}
+		for (int e = rarest[0]; e < rarest[1]; e++) {
+			int id = nameWords.idAt(e);
+			if (seen.get(id))
+				continue;
+			boolean all = true;
+			for (String word : words) {
+				if (word != rarestWord && !hasWordStartingWith(nameKeys[id], word)) {
+					all = false;
+					break;
+				}
+			}
+			if (all) {
+				seen.set(id);
+				suggestions.add(codes.get(id));
+				if (suggestions.size() >= limit)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private int indexOf(String code) {
+		String key = normalize(code);
+		int lo = 0;
+		int hi = codeKeys.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = codeKeys[mid].compareTo(key);
+			if (cmp < 0)
+				lo = mid + 1;
+			else if (cmp > 0)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -lo - 1;
+	}
+
+	private static String normalize(String s) {
+		return s == null ? "" : s.trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	private static boolean isWordStart(String text, int i) {
+		return Character.isLetterOrDigit(text.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+	}
+
+	private static boolean hasWordStartingWith(String text, String word) {
+		for (int i = text.indexOf(word); i >= 0; i = text.indexOf(word, i + 1)) {
+			if (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+				return true;
+		}
+		return false;
+	}
+
+	private static String[] words(String key) {
+		List<String> words = new ArrayList<String>();
+		for (String word : key.split("[^\\p{L}\\p{N}]+")) {
+			if (!word.isEmpty())
+				words.add(word);
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	private static long entry(int id, int offset) {
+		return ((long) id << 32) | offset;
+	}
+
+	/**
+	 * A trie over keys that are suffixes of a set of texts. The entries (a
+	 * text's ID and where in it the key starts) are sorted by key, so each
+	 * node covers one range of them.
+	 */
+	private static final class PrefixTrie {
+		private static final int[] EMPTY = { 0, 0 };
+
+		private final String[] texts;
+		private final int[] ids;
+		private final int[] offsets;
+
+		// node n's entries are [nodeLo[n], nodeHi[n]); its children are the
+		// edges [firstEdge[n], firstEdge[n] + edgeCount[n]), sorted by char
+		private int[] nodeLo = new int[64];
+		private int[] nodeHi = new int[64];
+		private int[] firstEdge = new int[64];
+		private int[] edgeCount = new int[64];
+		private int nodes;
+		private char[] edgeChar = new char[64];
+		private int[] edgeNode = new int[64];
+		private int edges;
+
+		PrefixTrie(String[] texts, long[] entries) {
+			this.texts = texts;
+			sort(entries, 0, entries.length, 0);
+			ids = new int[entries.length];
+			offsets = new int[entries.length];
+			for (int i = 0; i < entries.length; i++) {
+				ids[i] = (int) (entries[i] >>> 32);
+				offsets[i] = (int) entries[i];
+			}
+			addNode(0, 0, ids.length);
+			nodeLo = Arrays.copyOf(nodeLo, nodes);
+			nodeHi = Arrays.copyOf(nodeHi, nodes);
+			firstEdge = Arrays.copyOf(firstEdge, nodes);
+			edgeCount = Arrays.copyOf(edgeCount, nodes);
+			edgeChar = Arrays.copyOf(edgeChar, edges);
+			edgeNode = Arrays.copyOf(edgeNode, edges);
+		}
+
+		/**
+		 * Sorts entries [lo, hi), which all agree on the first depth characters
+		 * of their keys, by key and then by ID. This is a three-way radix
+		 * quicksort, which only compares each key's characters once or twice
+		 * rather than comparing whole keys every time.
+		 */
+		private void sort(long[] entries, int lo, int hi, int depth) {
+			while (hi - lo > 1) {
+				if (hi - lo < 12) {
+					insertionSort(entries, lo, hi, depth);
+					return;
+				}
+				swap(entries, lo, lo + (hi - lo) / 2);
+				int pivot = keyChar(entries[lo], depth);
+				int lt = lo;
+				int gt = hi - 1;
+				for (int i = lo + 1; i <= gt;) {
+					int c = keyChar(entries[i], depth);
+					if (c < pivot)
+						swap(entries, lt++, i++);
+					else if (c > pivot)
+						swap(entries, i, gt--);
+					else
+						i++;
+				}
+				sort(entries, lo, lt, depth);
+				if (pivot >= 0)
+					sort(entries, lt, gt + 1, depth + 1);
+				else
+					Arrays.sort(entries, lt, gt + 1); // the same key, so by ID
+				lo = gt + 1;
+			}
+		}
+
+		private void insertionSort(long[] entries, int lo, int hi, int depth) {
+			for (int i = lo + 1; i < hi; i++) {
+				for (int j = i; j > lo && compare(entries[j - 1], entries[j], depth) > 0; j--)
+					swap(entries, j - 1, j);
+			}
+		}
+
+		private int compare(long a, long b, int depth) {
+			for (int d = depth;; d++) {
+				int c = keyChar(a, d);
+				int e = keyChar(b, d);
+				if (c != e)
+					return c - e;
+				if (c < 0)
+					return Long.compare(a, b);
+			}
+		}
+
+		/**
+		 * @return The entry's key's character at i, or -1 past its end
+		 */
+		private int keyChar(long entry, int i) {
+			String text = texts[(int) (entry >>> 32)];
+			int at = (int) entry + i;
+			return at < text.length() ? text.charAt(at) : -1;
+		}
+
+		private static void swap(long[] entries, int i, int j) {
+			long t = entries[i];
+			entries[i] = entries[j];
+			entries[j] = t;
+		}
+
+		int idAt(int entry) {
+			return ids[entry];
+		}
+
+		int offsetAt(int entry) {
+			return offsets[entry];
+		}
+
+		private int length(int entry) {
+			return texts[ids[entry]].length() - offsets[entry];
+		}
+
+		private char charAt(int entry, int i) {
+			return texts[ids[entry]].charAt(offsets[entry] + i);
+		}
+
+		private int addNode(int depth, int lo, int hi) {
+			if (nodes == nodeLo.length) {
+				nodeLo = Arrays.copyOf(nodeLo, nodes * 2);
+				nodeHi = Arrays.copyOf(nodeHi, nodes * 2);
+				firstEdge = Arrays.copyOf(firstEdge, nodes * 2);
+				edgeCount = Arrays.copyOf(edgeCount, nodes * 2);
+			}
+			int node = nodes++;
+			nodeLo[node] = lo;
+			nodeHi[node] = hi;
+			if (depth == TRIE_DEPTH)
+				return node;
+
+			// keys that end here sort first; the rest are grouped by their next char
+			int start = lo;
+			while (start < hi && length(start) == depth)
+				start++;
+			int children = 0;
+			for (int e = start; e < hi; e++) {
+				if (e == start || charAt(e, depth) != charAt(e - 1, depth))
+					children++;
+			}
+			int first = edges;
+			edges += children;
+			if (edges > edgeChar.length) {
+				edgeChar = Arrays.copyOf(edgeChar, Math.max(edges, edgeChar.length * 2));
+				edgeNode = Arrays.copyOf(edgeNode, edgeChar.length);
+			}
+			firstEdge[node] = first;
+			edgeCount[node] = children;
+			int edge = first;
+			for (int e = start; e < hi;) {
+				char c = charAt(e, depth);
+				int end = e + 1;
+				while (end < hi && charAt(end, depth) == c)
+					end++;
+				// the arrays may grow while the child is added, so look them up after
+				int child = addNode(depth + 1, e, end);
+				edgeChar[edge] = c;
+				edgeNode[edge] = child;
+				edge++;
+				e = end;
+			}
+			return node;
+		}
+
+		/**
+		 * @return The range of entries whose keys start with the prefix
+		 */
+		int[] range(String prefix) {
+			int node = 0;
+			for (int d = 0; d < prefix.length() && d < TRIE_DEPTH; d++) {
+				node = child(node, prefix.charAt(d));
+				if (node < 0)
+					return EMPTY;
+			}
+			int lo = nodeLo[node];
+			int hi = nodeHi[node];
+			if (prefix.length() > TRIE_DEPTH) {
+				lo = search(lo, hi, prefix, false);
+				hi = search(lo, hi, prefix, true);
+			}
+			return new int[] { lo, hi };
+		}
+
+		private int child(int node, char c) {
+			int lo = firstEdge[node];
+			int hi = lo + edgeCount[node] - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (edgeChar[mid] < c)
+					lo = mid + 1;
+				else if (edgeChar[mid] > c)
+					hi = mid - 1;
+				else
+					return edgeNode[mid];
+			}
+			return -1;
+		}
+
+		/**
+		 * @return The first entry in [lo, hi) whose key comes after the prefix
+		 *         (past, or just up to, the keys starting with it)
+		 */
+		private int search(int lo, int hi, String prefix, boolean past) {
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				int cmp = comparePrefix(mid, prefix);
+				if (cmp < 0 || (past && cmp == 0))
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		private int comparePrefix(int entry, String prefix) {
+			int n = Math.min(length(entry), prefix.length());
+			for (int i = 0; i < n; i++) {
+				char c = charAt(entry, i);
+				if (c != prefix.charAt(i))
+					return c - prefix.charAt(i);
+			}
+			return n < prefix.length() ? -1 : 0;
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package edu.ncsu.csc.itrust.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import javax.sql.DataSource;
+
+/**
+ * Shares a {@link CodeIndex} of one code system between everyone looking its
+ * codes up. Until {@link #load(DataSource, Loader)} is called (see
+ * SearchIndexListener) nothing is loaded and every method that reads returns
+ * null, meaning the caller should ask the database instead.
+ *
+ * Readers get whatever snapshot is current, without locking. Writers (the
+ * code's MySQL class, on behalf of the admin's code controller) call
+ * {@link #refreshIfChanged(Connection)} before changing the table and
+ * {@link #put(Connection, Object)} or {@link #remove(Connection, String)}
+ * after, which swap in a new snapshot. Changes made to the table any other way
+ * are noticed from its update time, checked at most once every
+ * {@value #CHECK_INTERVAL} ms, and the snapshot is then reloaded.
+ *
+ * The beans are mutable, so the snapshot keeps its own copies and hands out
+ * copies of those.
+ *
+ * @param <T>
+ *            The code bean, e.g. ICDCode
+ */
+public class CodeLookup<T> {
+	/** How often, in ms, to check whether the table was changed behind our back */
+	public static final long CHECK_INTERVAL = 1000;
+
+	private static final String UPDATE_TIME = "SELECT UPDATE_TIME FROM information_schema.TABLES "
+			+ "WHERE TABLE_SCHEMA=DATABASE() AND LOWER(TABLE_NAME)=LOWER(?)";
+
+	/**
+	 * Reads every code in the code system from the database.
+	 */
+	public interface Loader<T> {
+		List<T> loadAll() throws SQLException;
+	}
+
+	private final String table;
+	private final Function<? super T, String> codeOf;
+	private final Function<? super T, String> nameOf;
+	private final UnaryOperator<T> copyOf;
+
+	private volatile CodeIndex<T> index;
+	private volatile DataSource ds;
+	private volatile Loader<T> loader;
+	private volatile Timestamp syncedUpdateTime;
+	private volatile long checkedAt;
+
+	/**
+	 * @param table
+	 *            The table the codes are kept in
+	 * @param codeOf
+	 *            Gets a bean's code
+	 * @param nameOf
+	 *            Gets a bean's name or description
+	 * @param copyOf
+	 *            Copies a bean
+	 */
+	public CodeLookup(String table, Function<? super T, String> codeOf, Function<? super T, String> nameOf,
+			UnaryOperator<T> copyOf) {
+		this.table = table;
+		this.codeOf = codeOf;
+		this.nameOf = nameOf;
+		this.copyOf = copyOf;
+	}
+
+	/**
+	 * Loads every code and starts answering lookups from memory.
+	 *
+	 * @param ds
+	 *            Where to check for changes to the table
+	 * @param loader
+	 *            How to read the table when it has changed
+	 * @throws SQLException
+	 */
+	public synchronized void load(DataSource ds, Loader<T> loader) throws SQLException {
+		this.ds = ds;
+		this.loader = loader;
+		try (Connection conn = ds.getConnection()) {
+			reload(conn);
+		}
+	}
+
+	/**
+	 * Stops answering lookups from memory.
+	 */
+	public synchronized void clear() {
+		index = null;
+		ds = null;
+		loader = null;
+		syncedUpdateTime = null;
+	}
+
+	/**
+	 * @return The current snapshot, or null if none is loaded
+	 * @throws SQLException
+	 */
+	public CodeIndex<T> get() throws SQLException {
+		CodeIndex<T> current = index;
+		if (current == null)
+			return null;
+		long now = System.currentTimeMillis();
+		if (now - checkedAt >= CHECK_INTERVAL) {
+			checkedAt = now;
+			DataSource source = ds;
+			if (source != null) {
+				try (Connection conn = source.getConnection()) {
+					refreshIfChanged(conn);
+				}
+			}
+			current = index;
+		}
+		return current;
+	}
+
+	/**
+	 * @return Every code, in code order, or null if none are loaded
+	 * @throws SQLException
+	 */
+	public List<T> getAll() throws SQLException {
+		CodeIndex<T> current = get();
+		return current == null ? null : copies(current.getAll());
+	}
+
+	/**
+	 * @param filter
+	 *            Text to look for in the codes
+	 * @return The codes containing it, as <code>code LIKE '%filter%'</code>
+	 *         would find them, or null if the database should be asked, since
+	 *         none are loaded or the filter uses LIKE's wildcards
+	 * @throws SQLException
+	 */
+	public List<T> filter(String filter) throws SQLException {
+		if (filter == null || filter.indexOf('%') >= 0 || filter.indexOf('_') >= 0 || filter.indexOf('\\') >= 0)
+			return null;
+		CodeIndex<T> current = get();
+		return current == null ? null : copies(current.filter(filter));
+	}
+
+	/**
+	 * @param query
+	 *            What's been typed
+	 * @param limit
+	 *            The most suggestions to return
+	 * @return Ranked suggestions (see {@link CodeIndex#suggest(String, int)}),
+	 *         or null if none are loaded
+	 * @throws SQLException
+	 */
+	public List<T> suggest(String query, int limit) throws SQLException {
+		CodeIndex<T> current = get();
+		return current == null ? null : copies(current.suggest(query, limit));
+	}
+
+	/**
+	 * Reloads the snapshot if the table has been changed since it was last in
+	 * step with it. Call it on the connection that's about to write.
+	 *
+	 * @param conn
+	 *            A connection to the database
+	 * @return true if it was reloaded
+	 * @throws SQLException
+	 */
+	public boolean refreshIfChanged(Connection conn) throws SQLException {
+		if (index == null)
+			return false;
+		Timestamp updateTime = getUpdateTime(conn);
+		if (updateTime == null || updateTime.equals(syncedUpdateTime))
+			return false;
+		synchronized (this) {
+			if (index == null || updateTime.equals(syncedUpdateTime))
+				return false;
+			reload(conn);
+			return true;
+		}
+	}
+
+	/**
+	 * Swaps in a snapshot with the code added or replaced, after it's been
+	 * written to the table.
+	 *
+	 * @param conn
+	 *            The connection the write was made on
+	 * @param code
+	 *            The code as it now is in the table
+	 * @throws SQLException
+	 */
+	public synchronized void put(Connection conn, T code) throws SQLException {
+		if (index != null) {
+			index = index.with(copyOf.apply(code));
+			syncedUpdateTime = getUpdateTime(conn);
+		}
+	}
+
+	/**
+	 * Swaps in a snapshot without the code, after it's been deleted from the
+	 * table.
+	 *
+	 * @param conn
+	 *            The connection the delete was made on
+	 * @param code
+	 *            The deleted code
+	 * @throws SQLException
+	 */
+	public synchronized void remove(Connection conn, String code) throws SQLException {
+		if (index != null) {
+			index = index.without(code);
+			syncedUpdateTime = getUpdateTime(conn);
+		}
+	}
+
+	private void reload(Connection conn) throws SQLException {
+		Timestamp updateTime = getUpdateTime(conn);
+		index = CodeIndex.build(loader.loadAll(), codeOf, nameOf);
+		syncedUpdateTime = updateTime;
+		checkedAt = System.currentTimeMillis();
+	}
+
+	private List<T> copies(List<T> codes) {
+		List<T> copies = new ArrayList<T>(codes.size());
+		for (T code : codes)
+			copies.add(copyOf.apply(code));
+		return copies;
+	}
+
+	private Timestamp getUpdateTime(Connection conn) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(UPDATE_TIME)) {
+			ps.setString(1, table);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() ? rs.getTimestamp(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * Escapes LIKE's wildcards so the text is matched literally.
+	 *
+	 * @param text
+	 *            The text to match
+	 * @return The escaped text
+	 */
+	public static String escapeLike(String text) {
+		return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+}
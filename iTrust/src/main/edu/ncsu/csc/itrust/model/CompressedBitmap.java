@@ -0,0 +1,460 @@
+package edu.ncsu.csc.itrust.model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of non-negative ints kept compressed the way Roaring bitmaps are: the
+ * ints are split into chunks of 65536 by their high 16 bits, and each chunk
+ * that has any is kept either as a sorted array of its low 16 bits, while it
+ * has at most {@value #ARRAY_MAX}, or as a 65536 bit bitmap once it has more.
+ * A value that only a few patients have costs a few bytes per patient, and
+ * one that most have costs a bit per patient.
+ *
+ * {@link #and(CompressedBitmap, CompressedBitmap)},
+ * {@link #or(CompressedBitmap, CompressedBitmap)} and
+ * {@link #andNot(CompressedBitmap, CompressedBitmap)} work a chunk at a time
+ * and return new bitmaps. Not thread safe; see PatientDemographicIndex for how
+ * it's shared.
+ */
+public final class CompressedBitmap {
+	/** The most ints a chunk keeps as an array before it becomes a bitmap */
+	static final int ARRAY_MAX = 4096;
+
+	private char[] keys = new char[0];
+	private Chunk[] chunks = new Chunk[0];
+	private int size;
+
+	/**
+	 * @param values
+	 *            The ints to start with, in any order
+	 * @return A bitmap of them
+	 */
+	public static CompressedBitmap of(int... values) {
+		CompressedBitmap bitmap = new CompressedBitmap();
+		for (int value : values)
+			bitmap.add(value);
+		return bitmap;
+	}
+
+	/**
+	 * @param value
+	 *            A non-negative int
+	 */
+	public void add(int value) {
+		char key = (char) (value >>> 16);
+		int at = find(key);
+		if (at < 0) {
+			at = -at - 1;
+			insert(at, key, new Chunk());
+		}
+		chunks[at] = chunks[at].add((char) value);
+	}
+
+	/**
+	 * @param value
+	 *            A non-negative int
+	 */
+	public void remove(int value) {
+		int at = find((char) (value >>> 16));
+		if (at < 0)
+			return;
+		chunks[at] = chunks[at].remove((char) value);
+		if (chunks[at].cardinality == 0) {
+			System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+			System.arraycopy(chunks, at + 1, chunks, at, size - at - 1);
+			chunks[--size] = null;
+		}
+	}
+
+	/**
+	 * @param value
+	 *            A non-negative int
+	 * @return true if it's in the bitmap
+	 */
+	public boolean contains(int value) {
+		int at = find((char) (value >>> 16));
+		return at >= 0 && chunks[at].contains((char) value);
+	}
+
+	/**
+	 * @return How many ints are in the bitmap
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++)
+			cardinality += chunks[i].cardinality;
+		return cardinality;
+	}
+
+	/**
+	 * @return true if there are no ints in the bitmap
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return Roughly how many bytes the bitmap's chunks take up
+	 */
+	public long sizeInBytes() {
+		long bytes = 16L + keys.length * 2L + chunks.length * 8L;
+		for (int i = 0; i < size; i++)
+			bytes += chunks[i].sizeInBytes();
+		return bytes;
+	}
+
+	/**
+	 * Calls the consumer with each int, in increasing order.
+	 *
+	 * @param consumer
+	 *            What to call
+	 */
+	public void forEach(IntConsumer consumer) {
+		for (int i = 0; i < size; i++)
+			chunks[i].forEach(keys[i] << 16, consumer);
+	}
+
+	/**
+	 * @return The ints, in increasing order
+	 */
+	public int[] toArray() {
+		final int[] values = new int[cardinality()];
+		final int[] n = { 0 };
+		forEach(new IntConsumer() {
+			@Override
+			public void accept(int value) {
+				values[n[0]++] = value;
+			}
+		});
+		return values;
+	}
+
+	/**
+	 * @return A copy that can be changed independently
+	 */
+	public CompressedBitmap copy() {
+		CompressedBitmap copy = new CompressedBitmap();
+		copy.keys = Arrays.copyOf(keys, size);
+		copy.chunks = new Chunk[size];
+		for (int i = 0; i < size; i++)
+			copy.chunks[i] = chunks[i].copy();
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * @return A new bitmap of the ints in both
+	 */
+	public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < a.size && j < b.size) {
+			if (a.keys[i] < b.keys[j]) {
+				i++;
+			} else if (a.keys[i] > b.keys[j]) {
+				j++;
+			} else {
+				Chunk chunk = Chunk.and(a.chunks[i], b.chunks[j]);
+				if (chunk.cardinality > 0)
+					result.append(a.keys[i], chunk);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return A new bitmap of the ints in either
+	 */
+	public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < a.size || j < b.size) {
+			if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+				result.append(a.keys[i], a.chunks[i].copy());
+				i++;
+			} else if (i == a.size || a.keys[i] > b.keys[j]) {
+				result.append(b.keys[j], b.chunks[j].copy());
+				j++;
+			} else {
+				result.append(a.keys[i], Chunk.or(a.chunks[i], b.chunks[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return A new bitmap of the ints in a but not b
+	 */
+	public static CompressedBitmap andNot(CompressedBitmap a, CompressedBitmap b) {
+		CompressedBitmap result = new CompressedBitmap();
+		int j = 0;
+		for (int i = 0; i < a.size; i++) {
+			while (j < b.size && b.keys[j] < a.keys[i])
+				j++;
+			Chunk chunk = j < b.size && b.keys[j] == a.keys[i] ? Chunk.andNot(a.chunks[i], b.chunks[j])
+					: a.chunks[i].copy();
+			if (chunk.cardinality > 0)
+				result.append(a.keys[i], chunk);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CompressedBitmap))
+			return false;
+		return Arrays.equals(toArray(), ((CompressedBitmap) o).toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	private int find(char key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	private void insert(int at, char key, Chunk chunk) {
+		grow();
+		System.arraycopy(keys, at, keys, at + 1, size - at);
+		System.arraycopy(chunks, at, chunks, at + 1, size - at);
+		keys[at] = key;
+		chunks[at] = chunk;
+		size++;
+	}
+
+	private void append(char key, Chunk chunk) {
+		grow();
+		keys[size] = key;
+		chunks[size++] = chunk;
+	}
+
+	private void grow() {
+		if (size == keys.length) {
+			int capacity = Math.max(4, size * 2);
+			keys = Arrays.copyOf(keys, capacity);
+			chunks = Arrays.copyOf(chunks, capacity);
+		}
+	}
+
+	/**
+	 * The low 16 bits of the ints in one chunk, as a sorted array (bits is
+	 * null) or a bitmap (array is null).
+	 */
+	private static final class Chunk {
+		private char[] array;
+		private long[] bits;
+		private int cardinality;
+
+		Chunk() {
+			array = new char[4];
+		}
+
+		private Chunk(char[] array, long[] bits, int cardinality) {
+			this.array = array;
+			this.bits = bits;
+			this.cardinality = cardinality;
+		}
+
+		boolean contains(char low) {
+			if (bits != null)
+				return (bits[low >>> 6] & (1L << low)) != 0;
+			return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+		}
+
+		Chunk add(char low) {
+			if (bits != null) {
+				long bit = 1L << low;
+				if ((bits[low >>> 6] & bit) == 0) {
+					bits[low >>> 6] |= bit;
+					cardinality++;
+				}
+				return this;
+			}
+			int at = Arrays.binarySearch(array, 0, cardinality, low);
+			if (at >= 0)
+				return this;
+			if (cardinality == ARRAY_MAX) {
+				Chunk bitmap = toBitmap();
+				return bitmap.add(low);
+			}
+			at = -at - 1;
+			if (cardinality == array.length)
+				array = Arrays.copyOf(array, Math.min(ARRAY_MAX, Math.max(4, array.length * 2)));
+			System.arraycopy(array, at, array, at + 1, cardinality - at);
+			array[at] = low;
+			cardinality++;
+			return this;
+		}
+
+		Chunk remove(char low) {
+			if (bits != null) {
+				long bit = 1L << low;
+				if ((bits[low >>> 6] & bit) != 0) {
+					bits[low >>> 6] &= ~bit;
+					cardinality--;
+				}
+				return cardinality <= ARRAY_MAX ? toArrayChunk() : this;
+			}
+			int at = Arrays.binarySearch(array, 0, cardinality, low);
+			if (at >= 0) {
+				System.arraycopy(array, at + 1, array, at, cardinality - at - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		void forEach(int high, IntConsumer consumer) {
+			if (bits == null) {
+				for (int i = 0; i < cardinality; i++)
+					consumer.accept(high | array[i]);
+				return;
+			}
+			for (int w = 0; w < bits.length; w++) {
+				long word = bits[w];
+				while (word != 0) {
+					consumer.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+
+		long sizeInBytes() {
+			return 24 + (bits != null ? bits.length * 8L : array.length * 2L);
+		}
+
+		Chunk copy() {
+			return bits != null ? new Chunk(null, bits.clone(), cardinality)
+					: new Chunk(Arrays.copyOf(array, Math.max(4, cardinality)), null, cardinality);
+		}
+
+		static Chunk and(Chunk a, Chunk b) {
+			if (a.bits != null && b.bits != null) {
+				long[] bits = new long[1024];
+				int cardinality = 0;
+				for (int w = 0; w < 1024; w++) {
+					bits[w] = a.bits[w] & b.bits[w];
+					cardinality += Long.bitCount(bits[w]);
+				}
+				return new Chunk(null, bits, cardinality).shrink();
+			}
+			if (a.bits != null)
+				return and(b, a);
+			char[] array = new char[a.cardinality];
+			int n = 0;
+			if (b.bits != null) {
+				for (int i = 0; i < a.cardinality; i++) {
+					if (b.contains(a.array[i]))
+						array[n++] = a.array[i];
+				}
+			} else {
+				int i = 0;
+				int j = 0;
+				while (i < a.cardinality && j < b.cardinality) {
+					if (a.array[i] < b.array[j]) {
+						i++;
+					} else if (a.array[i] > b.array[j]) {
+						j++;
+					} else {
+						array[n++] = a.array[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return new Chunk(array, null, n);
+		}
+
+		static Chunk or(Chunk a, Chunk b) {
+			if (a.bits == null && b.bits == null && a.cardinality + b.cardinality <= ARRAY_MAX) {
+				char[] array = new char[a.cardinality + b.cardinality];
+				int n = 0;
+				int i = 0;
+				int j = 0;
+				while (i < a.cardinality || j < b.cardinality) {
+					if (j == b.cardinality || (i < a.cardinality && a.array[i] < b.array[j])) {
+						array[n++] = a.array[i++];
+					} else if (i == a.cardinality || a.array[i] > b.array[j]) {
+						array[n++] = b.array[j++];
+					} else {
+						array[n++] = a.array[i++];
+						j++;
+					}
+				}
+				return new Chunk(array, null, n);
+			}
+			long[] bits = a.bits != null ? a.bits.clone() : a.toBitmap().bits;
+			if (b.bits != null) {
+				for (int w = 0; w < 1024; w++)
+					bits[w] |= b.bits[w];
+			} else {
+				for (int i = 0; i < b.cardinality; i++)
+					bits[b.array[i] >>> 6] |= 1L << b.array[i];
+			}
+			int cardinality = 0;
+			for (long word : bits)
+				cardinality += Long.bitCount(word);
+			return new Chunk(null, bits, cardinality).shrink();
+		}
+
+		static Chunk andNot(Chunk a, Chunk b) {
+			if (a.bits == null) {
+				char[] array = new char[a.cardinality];
+				int n = 0;
+				for (int i = 0; i < a.cardinality; i++) {
+					if (!b.contains(a.array[i]))
+						array[n++] = a.array[i];
+				}
+				return new Chunk(array, null, n);
+			}
+			long[] bits = a.bits.clone();
+			if (b.bits != null) {
+				for (int w = 0; w < 1024; w++)
+					bits[w] &= ~b.bits[w];
+			} else {
+				for (int i = 0; i < b.cardinality; i++)
+					bits[b.array[i] >>> 6] &= ~(1L << b.array[i]);
+			}
+			int cardinality = 0;
+			for (long word : bits)
+				cardinality += Long.bitCount(word);
+			return new Chunk(null, bits, cardinality).shrink();
+		}
+
+		private Chunk toBitmap() {
+			long[] bits = new long[1024];
+			for (int i = 0; i < cardinality; i++)
+				bits[array[i] >>> 6] |= 1L << array[i];
+			return new Chunk(null, bits, cardinality);
+		}
+
+		private Chunk toArrayChunk() {
+			final char[] array = new char[Math.max(4, cardinality)];
+			final int[] n = { 0 };
+			forEach(0, new IntConsumer() {
+				@Override
+				public void accept(int value) {
+					array[n[0]++] = (char) value;
+				}
+			});
+			return new Chunk(array, null, cardinality);
+		}
+
+		private Chunk shrink() {
+			return bits != null && cardinality <= ARRAY_MAX ? toArrayChunk() : this;
+		}
+	}
+}
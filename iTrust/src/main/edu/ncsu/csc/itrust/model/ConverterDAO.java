@@ -13,14 +13,20 @@ import org.apache.tomcat.dbcp.dbcp2.BasicDataSource;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
+
 /**
  * This class pulls the JDBC driver information from Tomcat's context.xml file
  * in WebRoot/META-INF/context.xml. This is done only for convenience - so that
  * you only have to pull your JDBC info from one place (context.xml)<br />
  * <br />
  * The tangled mess you see here is SAX, the XML-parser and XPath, an XML
+ * <br />
+ * The pool is built once and shared by every caller, and validates connections
+ * with {@link java.sql.Connection#isValid(int)} rather than a query.
  */
 public class ConverterDAO {
+	private static DataSource shared;
 
 
 	private static String getAttribute(Document document, String attribute) throws XPathExpressionException {
@@ -35,7 +41,13 @@ public class ConverterDAO {
 		return builder.parse(new InputSource(reader));
 	}
 
-	public static DataSource getDataSource() {
+	public static synchronized DataSource getDataSource() {
+		if (shared == null)
+			shared = createDataSource();
+		return shared;
+	}
+
+	private static DataSource createDataSource() {
 		FileReader f = null;
 		BufferedReader r = null;
 		BasicDataSource ds = null;
@@ -49,6 +61,7 @@ public class ConverterDAO {
 			ds.setPassword(getAttribute(document, "@password"));
 			ds.setUrl(getAttribute(document, "@url"));
 			ds.setMaxTotal(15);
+			ds.setTestOnBorrow(true);
 			
 			ds.setPoolPreparedStatements(true);
 			
@@ -69,7 +82,7 @@ public class ConverterDAO {
 				}
 			}
 		}
-		return ds;
+		return ds == null ? null : new ConnectionPool("context.xml", ds);
 	}
 	
 }
@@ -12,13 +12,13 @@ import java.util.Map;
 import javax.annotation.Resource;
 import javax.faces.bean.ManagedBean;
 import javax.faces.bean.SessionScoped;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.DBUtil;
 import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 @ManagedBean(name="appt_type")
 @SessionScoped
@@ -38,8 +38,7 @@ public class ApptTypeMySQLConverter  implements Serializable, ApptTypeData{
 	public ApptTypeMySQLConverter() throws DBException{
 			apptTypeLoader = new ApptTypeMySQLLoader();
 			try {
-				Context ctx = new InitialContext();
-					ds = ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+					ds = ConnectionContext.share(ConnectionPool.getProductionPool());
 			} catch (NamingException e) {
 				throw new DBException(new SQLException("Context Lookup Naming Exception: "+e.getMessage()));
 			}
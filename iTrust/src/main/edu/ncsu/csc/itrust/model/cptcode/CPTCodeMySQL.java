@@ -7,8 +7,6 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
@@ -16,9 +14,16 @@ import com.mysql.jdbc.exceptions.jdbc4.MySQLIntegrityConstraintViolationExceptio
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.CodeLookup;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class CPTCodeMySQL {
 
+	/** The CPT codes, in memory once {@link #loadLookup()} has been called */
+	public static final CodeLookup<CPTCode> LOOKUP = new CodeLookup<>("cptCode", CPTCode::getCode, CPTCode::getName,
+			c -> new CPTCode(c.getCode(), c.getName()));
+
 	private CPTCodeValidator validator;
 	private DataSource ds;
 
@@ -29,8 +34,7 @@ public class CPTCodeMySQL {
 	 */
 	public CPTCodeMySQL() throws DBException {
 		try {
-			Context ctx = new InitialContext();
-			this.ds = ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+			this.ds = ConnectionContext.share(ConnectionPool.getProductionPool());
 		} catch (NamingException e) {
 			throw new DBException(new SQLException("Context Lookup Naming Exception: " + e.getMessage()));
 		}
@@ -47,7 +51,21 @@ public class CPTCodeMySQL {
 		validator = new CPTCodeValidator();
 	}
 	
+	/**
+	 * Loads every CPTCode into the shared {@link #LOOKUP}, which answers
+	 * lookups from then on
+	 * @throws SQLException
+	 */
+	public void loadLookup() throws SQLException {
+	    LOOKUP.load(ds, this::loadAll);
+	}
+
 	public List<CPTCode> getAll() throws SQLException {
+	    List<CPTCode> codes = LOOKUP.getAll();
+	    return codes != null ? codes : loadAll();
+	}
+
+	private List<CPTCode> loadAll() throws SQLException {
 	    try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createGetAllPreparedStatement(conn);
                 ResultSet rs = pstring.executeQuery()){
@@ -102,7 +120,12 @@ public class CPTCodeMySQL {
         validator.validate(addObj);
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createAddPreparedStatement(conn, addObj);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean added = pstring.executeUpdate() > 0;
+            if (added) {
+                LOOKUP.put(conn, addObj);
+            }
+            return added;
         } catch (MySQLIntegrityConstraintViolationException e){
             return false;
         }
@@ -120,7 +143,12 @@ public class CPTCodeMySQL {
         validator.validate(updateObj);
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createUpdatePreparedStatement(conn, updateObj);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean updated = pstring.executeUpdate() > 0;
+            if (updated) {
+                LOOKUP.put(conn, updateObj);
+            }
+            return updated;
         }
 	}
 
@@ -134,7 +162,12 @@ public class CPTCodeMySQL {
     public boolean delete(CPTCode deleteObj) throws SQLException{
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createDeletePreparedStatement(conn, deleteObj);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean deleted = pstring.executeUpdate() > 0;
+            if (deleted) {
+                LOOKUP.remove(conn, deleteObj.getCode());
+            }
+            return deleted;
         }
     }
 
@@ -145,6 +178,10 @@ public class CPTCodeMySQL {
     }
     
     public List<CPTCode> getCodesWithFilter(String filter) throws SQLException{
+        List<CPTCode> codes = LOOKUP.filter(filter);
+        if (codes != null) {
+            return codes;
+        }
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = creategetCodesWithFilterPreparedStatement(conn, filter);
                 ResultSet rs = pstring.executeQuery()){
@@ -157,5 +194,35 @@ public class CPTCodeMySQL {
         pstring.setString(1, "%" + filter + "%");
         return pstring;
     }
-	
+
+    /**
+     * Suggests CPTCodes matching what's been typed, by code or by name, best
+     * matches first
+     * @param query What's been typed
+     * @param limit The most codes to return
+     * @return Up to limit CPTCodes
+     * @throws SQLException
+     */
+    public List<CPTCode> getSuggestions(String query, int limit) throws SQLException {
+        List<CPTCode> codes = LOOKUP.suggest(query, limit);
+        if (codes != null) {
+            return codes;
+        }
+        try (Connection conn = ds.getConnection();
+                PreparedStatement pstring = createGetSuggestionsPreparedStatement(conn, query, limit);
+                ResultSet rs = pstring.executeQuery()){
+            return loadResults(rs);
+        }
+    }
+
+    private PreparedStatement createGetSuggestionsPreparedStatement(Connection conn, String query, int limit) throws SQLException {
+        PreparedStatement pstring = conn.prepareStatement("SELECT * FROM cptCode WHERE Code LIKE ? OR name LIKE ? "
+                + "ORDER BY Code LIKE ? DESC, Code LIMIT ?");
+        String escaped = CodeLookup.escapeLike(query.trim());
+        pstring.setString(1, "%" + escaped + "%");
+        pstring.setString(2, "%" + escaped + "%");
+        pstring.setString(3, escaped + "%");
+        pstring.setInt(4, limit);
+        return pstring;
+    }
 }
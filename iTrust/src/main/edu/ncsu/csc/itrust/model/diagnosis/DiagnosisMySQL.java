@@ -13,6 +13,9 @@ import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class DiagnosisMySQL implements DiagnosisData {
 
@@ -40,7 +43,7 @@ public class DiagnosisMySQL implements DiagnosisData {
 	}
 	
 	public DataSource getDataSource() throws NamingException {
-		return ((DataSource) (((Context) getContext().lookup("java:comp/env"))).lookup("jdbc/itrust"));
+		return ConnectionContext.share(ConnectionPool.getProductionPool());
 	}
 	
 	/**
@@ -109,7 +112,10 @@ public class DiagnosisMySQL implements DiagnosisData {
 		}
 		try (Connection conn = ds.getConnection();
 				PreparedStatement ps = loader.loadParameters(conn, null, addObj, true);) {
-			return ps.executeUpdate() > 0;
+			boolean added = ps.executeUpdate() > 0;
+			EmergencyRecordSnapshots.patientChanged(EmergencyRecordSnapshots.findPatient(conn,
+					EmergencyRecordSnapshots.PATIENT_OF_VISIT, addObj.getVisitId()));
+			return added;
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -127,7 +133,11 @@ public class DiagnosisMySQL implements DiagnosisData {
 		}
 		try (Connection conn = ds.getConnection();
 				PreparedStatement ps = loader.loadParameters(conn, null, updateObj, false);) {
-			return ps.executeUpdate() > 0;
+			long patientMID = EmergencyRecordSnapshots.findPatient(conn, EmergencyRecordSnapshots.PATIENT_OF_DIAGNOSIS,
+					updateObj.getId());
+			boolean updated = ps.executeUpdate() > 0;
+			EmergencyRecordSnapshots.patientChanged(patientMID);
+			return updated;
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -136,7 +146,11 @@ public class DiagnosisMySQL implements DiagnosisData {
 	public boolean remove(long diagnosisId) throws DBException {
 		try (Connection conn = ds.getConnection();
 				PreparedStatement ps = createRemoveStatement(conn, diagnosisId)) {
-			return ps.executeUpdate() > 0;
+			long patientMID = EmergencyRecordSnapshots.findPatient(conn, EmergencyRecordSnapshots.PATIENT_OF_DIAGNOSIS,
+					diagnosisId);
+			boolean removed = ps.executeUpdate() > 0;
+			EmergencyRecordSnapshots.patientChanged(patientMID);
+			return removed;
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -1,7 +1,9 @@
 package edu.ncsu.csc.itrust.model.emergencyRecord;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import edu.ncsu.csc.itrust.model.prescription.Prescription;
 import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
@@ -14,6 +16,14 @@ import edu.ncsu.csc.itrust.model.old.beans.AllergyBean;
  *
  */
 public class EmergencyRecord {
+    /**
+     * The parts of the record loaded by queries of their own, any of which may
+     * be left out if it takes too long to load.
+     */
+    public enum Section {
+        PRESCRIPTIONS, ALLERGIES, DIAGNOSES, IMMUNIZATIONS
+    }
+
     private String name;
     private int age;
     private String gender;
@@ -24,6 +34,7 @@ public class EmergencyRecord {
     private List<Diagnosis> diagnoses;
     private List<Prescription> prescriptions;
     private List<Immunization> immunizations;
+    private final Set<Section> unavailable = EnumSet.noneOf(Section.class);
     
     /**
      * Get the patient name
@@ -192,4 +203,30 @@ public class EmergencyRecord {
     public void setImmunizations(List<Immunization> immunizations) {
         this.immunizations = immunizations;
     }
+    
+    /**
+     * Marks a section as not loaded in time; its list is left empty
+     * @param section
+     */
+    public void setUnavailable(Section section) {
+        unavailable.add(section);
+    }
+    
+    /**
+     * Whether a section was loaded. When it wasn't, its list is empty even if
+     * the patient has records of that kind.
+     * @param section
+     * @return
+     */
+    public boolean isAvailable(Section section) {
+        return !unavailable.contains(section);
+    }
+    
+    /**
+     * Gets the sections that weren't loaded in time
+     * @return
+     */
+    public Set<Section> getUnavailableSections() {
+        return EnumSet.copyOf(unavailable);
+    }
 }
@@ -0,0 +1,311 @@
+package edu.ncsu.csc.itrust.model.emergencyRecord;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecord.Section;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+
+/**
+ * Runs the queries for the sections of an emergency record (prescriptions,
+ * allergies, diagnoses and immunizations) side by side on a small pool of its
+ * own, so the record takes as long as its slowest section rather than all of
+ * them added up. A record gets whatever sections are done by its deadline;
+ * the rest are left unavailable rather than holding up the ER.
+ *
+ * Each section query runs in its own {@link ConnectionContext}, so it borrows
+ * its own connection, and reads from the primary if the request it's for
+ * would have. If the pool's queue is full, the query runs on the caller's
+ * thread instead.
+ *
+ * A loader made with no threads runs every query on the caller's thread with
+ * no deadline, which is what {@link EmergencyRecordMySQL} does when there is
+ * no shared loader, e.g. in unit tests.
+ */
+public class EmergencyRecordLoader {
+	/** Upper bounds, in milliseconds, of the section latency histogram buckets */
+	public static final long[] LATENCY_BUCKETS_MILLIS = { 5, 10, 50, 100, 250, 1000, 5000 };
+
+	private static volatile EmergencyRecordLoader shared;
+
+	private final ThreadPoolExecutor executor;
+	private final long deadlineMillis;
+	private final Map<Section, SectionMetrics> metrics = new EnumMap<Section, SectionMetrics>(Section.class);
+
+	/**
+	 * Makes a loader that runs every query on the caller's thread.
+	 */
+	public EmergencyRecordLoader() {
+		this(0, 0, 0);
+	}
+
+	/**
+	 * @param threads
+	 *            How many section queries may run at once, across all records;
+	 *            0 to run them on the caller's thread
+	 * @param queueCapacity
+	 *            How many section queries may wait for a thread
+	 * @param deadlineMillis
+	 *            How long a record may take to load before its unfinished
+	 *            sections are given up on; 0 for no deadline
+	 */
+	public EmergencyRecordLoader(int threads, int queueCapacity, long deadlineMillis) {
+		this.deadlineMillis = deadlineMillis;
+		for (Section section : Section.values())
+			metrics.put(section, new SectionMetrics());
+		if (threads <= 0) {
+			executor = null;
+			return;
+		}
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "iTrust-EmergencyRecord-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return The loader shared by the webapp, or null if there isn't one
+	 */
+	public static EmergencyRecordLoader getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param loader
+	 *            The loader for the webapp to share, or null for none
+	 */
+	public static void setShared(EmergencyRecordLoader loader) {
+		shared = loader;
+	}
+
+	/**
+	 * @return How long a record may take to load, in milliseconds; 0 if there
+	 *         is no deadline
+	 */
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+
+	/**
+	 * @return The time by which a record started now has to be loaded, for
+	 *         {@link #await(Section, Future, long)}
+	 */
+	public long startDeadline() {
+		return deadlineMillis <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + deadlineMillis;
+	}
+
+	/**
+	 * Starts a section's query.
+	 *
+	 * @param section
+	 *            The section it loads
+	 * @param query
+	 *            The query
+	 * @return The query's result, to pass to {@link #await(Section, Future, long)}
+	 */
+	public <T> Future<T> submit(Section section, Callable<T> query) {
+		ConnectionContext context = ConnectionContext.current();
+		FutureTask<T> task = new FutureTask<T>(new SectionQuery<T>(metrics.get(section), query,
+				context != null && context.isReadFromPrimary()));
+		if (executor == null)
+			task.run();
+		else
+			executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Waits for a section's query to finish, giving up on it at the deadline.
+	 *
+	 * @param section
+	 *            The section it loads
+	 * @param result
+	 *            What {@link #submit(Section, Callable)} returned for it
+	 * @param deadline
+	 *            What {@link #startDeadline()} returned for the record
+	 * @return The section, or null if it wasn't loaded by the deadline
+	 * @throws SQLException
+	 *             If the query failed
+	 * @throws DBException
+	 *             If the query failed
+	 */
+	public <T> T await(Section section, Future<T> result, long deadline) throws SQLException, DBException {
+		try {
+			if (deadline == Long.MAX_VALUE)
+				return result.get();
+			return result.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | CancellationException e) {
+			result.cancel(true);
+			metrics.get(section).timeouts.incrementAndGet();
+			return null;
+		} catch (InterruptedException e) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException)
+				throw (SQLException) cause;
+			if (cause instanceof DBException)
+				throw (DBException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new DBException(new SQLException(cause));
+		}
+	}
+
+	/**
+	 * Stops the pool's threads. Queries already running are interrupted.
+	 */
+	public void shutdown() {
+		if (executor != null)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * @param section
+	 *            A section
+	 * @return How many times its query has finished, successfully or not
+	 */
+	public long getCount(Section section) {
+		return metrics.get(section).count.get();
+	}
+
+	/**
+	 * @param section
+	 *            A section
+	 * @return How many times its query failed
+	 */
+	public long getFailureCount(Section section) {
+		return metrics.get(section).failures.get();
+	}
+
+	/**
+	 * @param section
+	 *            A section
+	 * @return How many times a record was returned without it
+	 */
+	public long getTimeoutCount(Section section) {
+		return metrics.get(section).timeouts.get();
+	}
+
+	/**
+	 * @param section
+	 *            A section
+	 * @return The longest its query has taken, in milliseconds
+	 */
+	public long getMaxMillis(Section section) {
+		return metrics.get(section).maxMillis.get();
+	}
+
+	/**
+	 * @param section
+	 *            A section
+	 * @return How many of its queries fell into each bucket of
+	 *         {@link #LATENCY_BUCKETS_MILLIS}, with one more bucket at the end
+	 *         for slower ones
+	 */
+	public long[] getLatencyHistogram(Section section) {
+		AtomicLongArray latencies = metrics.get(section).latencies;
+		long[] counts = new long[latencies.length()];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = latencies.get(i);
+		return counts;
+	}
+
+	/**
+	 * @return A one-line summary of the metrics of each section
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("EmergencyRecordLoader:");
+		for (Section section : Section.values()) {
+			sb.append(' ').append(section.name().toLowerCase()).append("[count=").append(getCount(section))
+					.append(" failures=").append(getFailureCount(section)).append(" timeouts=")
+					.append(getTimeoutCount(section)).append(" max=").append(getMaxMillis(section))
+					.append(" latency(ms)");
+			long[] counts = getLatencyHistogram(section);
+			for (int i = 0; i < counts.length; i++) {
+				sb.append(i < LATENCY_BUCKETS_MILLIS.length ? " <=" + LATENCY_BUCKETS_MILLIS[i] : " >"
+						+ LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1]).append(':').append(counts[i]);
+			}
+			sb.append(']');
+		}
+		return sb.toString();
+	}
+
+	private static class SectionMetrics {
+		private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong timeouts = new AtomicLong();
+		private final AtomicLong maxMillis = new AtomicLong();
+
+		private void record(long millis, boolean failed) {
+			int bucket = 0;
+			while (bucket < LATENCY_BUCKETS_MILLIS.length && millis > LATENCY_BUCKETS_MILLIS[bucket])
+				bucket++;
+			latencies.incrementAndGet(bucket);
+			count.incrementAndGet();
+			if (failed)
+				failures.incrementAndGet();
+			long max = maxMillis.get();
+			while (millis > max && !maxMillis.compareAndSet(max, millis))
+				max = maxMillis.get();
+		}
+	}
+
+	/**
+	 * A section's query, timed, in a connection context of its own.
+	 */
+	private static class SectionQuery<T> implements Callable<T> {
+		private final SectionMetrics metrics;
+		private final Callable<T> query;
+		private final boolean readFromPrimary;
+
+		private SectionQuery(SectionMetrics metrics, Callable<T> query, boolean readFromPrimary) {
+			this.metrics = metrics;
+			this.query = query;
+			this.readFromPrimary = readFromPrimary;
+		}
+
+		@Override
+		public T call() throws Exception {
+			long start = System.currentTimeMillis();
+			boolean failed = true;
+			try (ConnectionContext context = ConnectionContext.open()) {
+				if (readFromPrimary)
+					context.setReadFromPrimary(true);
+				T result = query.call();
+				failed = false;
+				return result;
+			} finally {
+				metrics.record(System.currentTimeMillis() - start, failed);
+			}
+		}
+	}
+}
@@ -6,21 +6,31 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.prescription.Prescription;
 import edu.ncsu.csc.itrust.model.prescription.PrescriptionMySQL;
+import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
 import edu.ncsu.csc.itrust.model.diagnosis.DiagnosisData;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecord.Section;
+import edu.ncsu.csc.itrust.model.immunization.Immunization;
 import edu.ncsu.csc.itrust.model.diagnosis.DiagnosisMySQL;
 import edu.ncsu.csc.itrust.model.immunization.ImmunizationMySQL;
+import edu.ncsu.csc.itrust.model.old.beans.AllergyBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.AllergyDAO;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class EmergencyRecordMySQL {
+    private static final EmergencyRecordLoader INLINE = new EmergencyRecordLoader();
+    
     private DataSource ds;
     private PrescriptionMySQL prescriptionLoader;
     private DiagnosisData diagnosisData;
@@ -44,8 +54,7 @@ public class EmergencyRecordMySQL {
     }
     
     protected DataSource getDataSource() throws NamingException {
-    	Context ctx = new InitialContext();
-    	return ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+    	return ConnectionContext.share(ConnectionPool.getProductionPool());
     }
     
     /**
@@ -102,16 +111,49 @@ public class EmergencyRecordMySQL {
         newRecord.setBloodType(rs.getString("BloodType"));
 
         LocalDate endDate = LocalDate.now().minusDays(91);
-        newRecord.setPrescriptions(
-                prescriptionLoader.getPrescriptionsForPatientEndingAfter(
-                        mid, endDate));
+        EmergencyRecordLoader loader = getLoader();
+        long deadline = loader.startDeadline();
+        Future<List<Prescription>> prescriptions = loader.submit(Section.PRESCRIPTIONS,
+                () -> prescriptionLoader.getPrescriptionsForPatientEndingAfter(mid, endDate));
+        Future<List<AllergyBean>> allergies = loader.submit(Section.ALLERGIES,
+                () -> allergyData.getAllergies(mid));
+        Future<List<Diagnosis>> diagnoses = loader.submit(Section.DIAGNOSES,
+                () -> diagnosisData.getAllEmergencyDiagnosis(mid));
+        Future<List<Immunization>> immunizations = loader.submit(Section.IMMUNIZATIONS,
+                () -> immunizationData.getAllImmunizations(mid));
 
-        newRecord.setAllergies(allergyData.getAllergies(mid));
-        newRecord.setDiagnoses(diagnosisData.getAllEmergencyDiagnosis(mid));
-        newRecord.setImmunizations(immunizationData.getAllImmunizations(mid));
+        newRecord.setPrescriptions(section(newRecord, loader, Section.PRESCRIPTIONS, prescriptions, deadline));
+        newRecord.setAllergies(section(newRecord, loader, Section.ALLERGIES, allergies, deadline));
+        newRecord.setDiagnoses(section(newRecord, loader, Section.DIAGNOSES, diagnoses, deadline));
+        newRecord.setImmunizations(section(newRecord, loader, Section.IMMUNIZATIONS, immunizations, deadline));
         return newRecord;
     }
     
+    /**
+     * Waits for one of the record's sections, marking it unavailable if it
+     * isn't loaded by the deadline.
+     * 
+     * @return The section, or an empty list if it's unavailable
+     */
+    private static <T> List<T> section(EmergencyRecord record, EmergencyRecordLoader loader, Section section,
+            Future<List<T>> result, long deadline) throws SQLException, DBException {
+        List<T> list = loader.await(section, result, deadline);
+        if (list == null) {
+            record.setUnavailable(section);
+            return new ArrayList<T>();
+        }
+        return list;
+    }
+    
+    /**
+     * @return The webapp's shared loader, or one that loads each section in
+     *         turn on this thread if there isn't one
+     */
+    protected EmergencyRecordLoader getLoader() {
+        EmergencyRecordLoader loader = EmergencyRecordLoader.getShared();
+        return loader == null ? INLINE : loader;
+    }
+    
     /**
      * A convenience method for preparing the needed SQL query
      * 
@@ -0,0 +1,611 @@
+package edu.ncsu.csc.itrust.model.emergencyRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.cptcode.CPTCode;
+import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
+import edu.ncsu.csc.itrust.model.icdcode.ICDCode;
+import edu.ncsu.csc.itrust.model.immunization.Immunization;
+import edu.ncsu.csc.itrust.model.old.beans.AllergyBean;
+import edu.ncsu.csc.itrust.model.old.beans.MedicationBean;
+import edu.ncsu.csc.itrust.model.prescription.Prescription;
+
+/**
+ * Keeps a ready-made emergency record for each patient, so the ER gets it with
+ * one lookup instead of five queries. Records are kept serialized, a few
+ * hundred bytes each, and least recently used ones are evicted to keep the
+ * store under its size in bytes.
+ *
+ * The DAOs call {@link #patientChanged(long)} after writing a patient's
+ * demographics, prescriptions, allergies, diagnoses or immunizations. That
+ * drops the patient's snapshot at once and, once the write has had time to
+ * settle (be committed and reach the replicas), rebuilds it in the background.
+ * A snapshot is only kept if nothing was written for the patient while it was
+ * being built, or shortly before.
+ *
+ * An emergency record depends on the date: the patient's age, prescriptions
+ * that ended in the last 91 days and diagnoses from the last 30 days. So a
+ * snapshot is only served on the day it was built, and is rebuilt on the
+ * first lookup after that. Records missing a section that timed out aren't
+ * kept.
+ */
+public class EmergencyRecordSnapshots {
+	/** Finds the patient an office visit is for */
+	public static final String PATIENT_OF_VISIT = "SELECT patientMID FROM officevisit WHERE visitID = ?";
+	/** Finds the patient a diagnosis is for */
+	public static final String PATIENT_OF_DIAGNOSIS = "SELECT ov.patientMID FROM diagnosis d, officevisit ov "
+			+ "WHERE d.visitId = ov.visitID AND d.id = ?";
+	/** Finds the patient an immunization is for */
+	public static final String PATIENT_OF_IMMUNIZATION = "SELECT ov.patientMID FROM immunization i, officevisit ov "
+			+ "WHERE i.visitId = ov.visitID AND i.id = ?";
+	/** Finds the patient a prescription is for */
+	public static final String PATIENT_OF_PRESCRIPTION = "SELECT patientMID FROM prescription WHERE id = ?";
+
+	/** How long a write is remembered after it has settled */
+	private static final long FORGET_CHANGES_MILLIS = 10 * 60 * 1000;
+
+	private static volatile EmergencyRecordSnapshots shared;
+
+	/**
+	 * Assembles a patient's emergency record from the database.
+	 */
+	public interface Builder {
+		EmergencyRecord build(long mid) throws DBException;
+	}
+
+	private static class Snapshot {
+		final byte[] data;
+		final long builtOn;
+
+		Snapshot(byte[] data, long builtOn) {
+			this.data = data;
+			this.builtOn = builtOn;
+		}
+
+		long sizeInBytes() {
+			return 64 + data.length;
+		}
+	}
+
+	private static class Change {
+		final long sequence;
+		final long at;
+
+		Change(long sequence, long at) {
+			this.sequence = sequence;
+			this.at = at;
+		}
+	}
+
+	private final Builder builder;
+	private final long maxBytes;
+	private final long settleMillis;
+	/** Guarded by this; in least recently used order */
+	private final LinkedHashMap<Long, Snapshot> snapshots = new LinkedHashMap<Long, Snapshot>(16, 0.75f, true);
+	private final Map<Long, Change> changes = new ConcurrentHashMap<Long, Change>();
+	private final AtomicLong sequence = new AtomicLong();
+	/** Guarded by this; the latest change forgotten */
+	private long forgottenThrough;
+	/** Guarded by this */
+	private long bytes;
+	private ScheduledExecutorService executor;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong rebuilds = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param builder
+	 *            Assembles records that aren't in the store
+	 * @param maxBytes
+	 *            How big the snapshots may get altogether
+	 * @param settleMillis
+	 *            How long after a patient's records are written to before
+	 *            their snapshot is rebuilt
+	 */
+	public EmergencyRecordSnapshots(Builder builder, long maxBytes, long settleMillis) {
+		this.builder = builder;
+		this.maxBytes = maxBytes;
+		this.settleMillis = settleMillis;
+	}
+
+	/**
+	 * @return The store the ER reads from, or null if records are always
+	 *         assembled live
+	 */
+	public static EmergencyRecordSnapshots getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param store
+	 *            The store for the ER to read from, or null to always assemble
+	 *            records live
+	 */
+	public static void setShared(EmergencyRecordSnapshots store) {
+		shared = store;
+	}
+
+	/**
+	 * Tells the shared store, if there is one, that something in a patient's
+	 * emergency record has been written.
+	 *
+	 * @param mid
+	 *            The patient's MID; ignored if negative
+	 */
+	public static void patientChanged(long mid) {
+		EmergencyRecordSnapshots store = shared;
+		if (store != null && mid >= 0)
+			store.invalidate(mid);
+	}
+
+	/**
+	 * Finds the patient a record is for, so that its DAO can call
+	 * {@link #patientChanged(long)} after writing it. Doesn't query anything if
+	 * there is no shared store.
+	 *
+	 * @param conn
+	 *            The DAO's connection
+	 * @param query
+	 *            One of the PATIENT_OF_* queries
+	 * @param id
+	 *            The ID of the visit or record
+	 * @return The patient's MID, or -1 if there's no shared store or no such
+	 *         record
+	 * @throws SQLException
+	 */
+	public static long findPatient(Connection conn, String query, long id) throws SQLException {
+		if (shared == null)
+			return -1;
+		try (PreparedStatement ps = conn.prepareStatement(query)) {
+			ps.setLong(1, id);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : -1;
+			}
+		}
+	}
+
+	/**
+	 * Starts rebuilding snapshots in the background when patients' records
+	 * are written to.
+	 */
+	public synchronized void start() {
+		if (executor != null)
+			return;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-EmergencySnapshots");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				forgetSettledChanges();
+			}
+		}, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stops the background rebuilds.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Builds snapshots for patients in the background, one at a time, until
+	 * the store is full.
+	 *
+	 * @param mids
+	 *            The patients' MIDs, most important first
+	 */
+	public synchronized void warm(final List<Long> mids) {
+		if (executor == null)
+			return;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (long mid : mids) {
+					if (Thread.currentThread().isInterrupted() || sizeInBytes() >= maxBytes)
+						return;
+					if (!contains(mid))
+						rebuild(mid);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets a patient's emergency record from the store, or assembles it and
+	 * keeps a snapshot of it.
+	 *
+	 * @param mid
+	 *            The patient's MID
+	 * @return The record, or null if there is no such patient
+	 * @throws DBException
+	 */
+	public EmergencyRecord get(long mid) throws DBException {
+		long today = LocalDate.now().toEpochDay();
+		Snapshot snapshot;
+		synchronized (this) {
+			snapshot = snapshots.get(mid);
+			if (snapshot != null && snapshot.builtOn != today) {
+				remove(mid);
+				snapshot = null;
+			}
+		}
+		if (snapshot != null) {
+			hits.incrementAndGet();
+			return decode(snapshot.data);
+		}
+		misses.incrementAndGet();
+		return load(mid);
+	}
+
+	/**
+	 * Drops a patient's snapshot and schedules it to be rebuilt once the
+	 * write has settled.
+	 *
+	 * @param mid
+	 *            The patient's MID
+	 */
+	public void invalidate(final long mid) {
+		changes.put(mid, new Change(sequence.incrementAndGet(), System.currentTimeMillis()));
+		synchronized (this) {
+			if (remove(mid))
+				invalidations.incrementAndGet();
+			if (executor != null) {
+				executor.schedule(new Runnable() {
+					@Override
+					public void run() {
+						rebuild(mid);
+					}
+				}, settleMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Drops every snapshot.
+	 */
+	public synchronized void clear() {
+		snapshots.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @param mid
+	 *            A patient's MID
+	 * @return true if the patient has a snapshot, even one too old to serve
+	 */
+	public synchronized boolean contains(long mid) {
+		return snapshots.containsKey(mid);
+	}
+
+	/**
+	 * @return How many patients have snapshots
+	 */
+	public synchronized int size() {
+		return snapshots.size();
+	}
+
+	/**
+	 * @return Roughly how many bytes the snapshots take up
+	 */
+	public synchronized long sizeInBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return How many records were served from a snapshot
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return How many records had to be assembled live
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return How many snapshots were dropped because the patient's records
+	 *         were written to
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * @return How many snapshots were built in the background
+	 */
+	public long getRebuilds() {
+		return rebuilds.get();
+	}
+
+	/**
+	 * @return How many snapshots were dropped to make room
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		long h = hits.get();
+		long m = misses.get();
+		return "Emergency record snapshots: " + size() + " patients, " + sizeInBytes() / 1024 + " KB, " + h
+				+ " hits, " + m + " misses (" + (h + m == 0 ? 0 : 100 * h / (h + m)) + "% hit), "
+				+ invalidations.get() + " invalidated, " + rebuilds.get() + " rebuilt, " + evictions.get()
+				+ " evicted";
+	}
+
+	/**
+	 * Assembles a record, keeping a snapshot of it unless the patient's
+	 * records were written to while it was assembled or too shortly before.
+	 */
+	private EmergencyRecord load(long mid) throws DBException {
+		long started = System.currentTimeMillis();
+		long startSequence = sequence.get();
+		long builtOn = LocalDate.now().toEpochDay();
+		EmergencyRecord record = builder.build(mid);
+		if (record == null || !record.getUnavailableSections().isEmpty())
+			return record;
+		byte[] data = encode(record);
+		synchronized (this) {
+			Change change = changes.get(mid);
+			if (startSequence < forgottenThrough
+					|| change != null && (change.sequence > startSequence || started - change.at < settleMillis))
+				return record;
+			Snapshot snapshot = new Snapshot(data, builtOn);
+			if (snapshot.sizeInBytes() <= maxBytes) {
+				remove(mid);
+				snapshots.put(mid, snapshot);
+				bytes += snapshot.sizeInBytes();
+				evict();
+			}
+		}
+		return record;
+	}
+
+	private void rebuild(long mid) {
+		try {
+			load(mid);
+			rebuilds.incrementAndGet();
+		} catch (DBException e) {
+			System.err.println("Unable to rebuild the emergency record of " + mid + ": " + e.getExtendedMessage());
+		} catch (RuntimeException e) {
+			System.err.println("Unable to rebuild the emergency record of " + mid + ": " + e);
+		}
+	}
+
+	/**
+	 * Forgets writes that settled long ago, so the changes don't pile up.
+	 * Anything that started assembling before the latest one forgotten isn't
+	 * kept, since it can no longer be told whether it missed a write.
+	 */
+	private synchronized void forgetSettledChanges() {
+		long cutoff = System.currentTimeMillis() - settleMillis - FORGET_CHANGES_MILLIS;
+		for (Iterator<Change> it = changes.values().iterator(); it.hasNext();) {
+			Change change = it.next();
+			if (change.at < cutoff) {
+				forgottenThrough = Math.max(forgottenThrough, change.sequence);
+				it.remove();
+			}
+		}
+	}
+
+	/** Must hold this */
+	private boolean remove(long mid) {
+		Snapshot removed = snapshots.remove(mid);
+		if (removed == null)
+			return false;
+		bytes -= removed.sizeInBytes();
+		return true;
+	}
+
+	/** Must hold this */
+	private void evict() {
+		Iterator<Snapshot> it = snapshots.values().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().sizeInBytes();
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	static byte[] encode(EmergencyRecord record) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeString(out, record.getName());
+			out.writeInt(record.getAge());
+			writeString(out, record.getGender());
+			writeString(out, record.getContactName());
+			writeString(out, record.getContactPhone());
+			writeString(out, record.getBloodType());
+
+			List<Prescription> prescriptions = orEmpty(record.getPrescriptions());
+			out.writeInt(prescriptions.size());
+			for (Prescription p : prescriptions) {
+				out.writeLong(p.getId());
+				out.writeLong(p.getPatientMID());
+				out.writeLong(p.getHcpMID());
+				out.writeLong(p.getOfficeVisitId());
+				writeString(out, p.getDrugCode() == null ? null : p.getDrugCode().getNDCode());
+				writeString(out, p.getDrugCode() == null ? null : p.getDrugCode().getDescription());
+				writeDate(out, p.getStartDate());
+				writeDate(out, p.getEndDate());
+				writeString(out, p.getInstructions());
+				out.writeLong(p.getDosage());
+			}
+
+			List<AllergyBean> allergies = orEmpty(record.getAllergies());
+			out.writeInt(allergies.size());
+			for (AllergyBean a : allergies) {
+				out.writeLong(a.getId());
+				out.writeLong(a.getPatientID());
+				writeString(out, a.getDescription());
+				writeString(out, a.getNDCode());
+				out.writeLong(a.getFirstFound() == null ? Long.MIN_VALUE : a.getFirstFound().getTime());
+			}
+
+			List<Diagnosis> diagnoses = orEmpty(record.getDiagnoses());
+			out.writeInt(diagnoses.size());
+			for (Diagnosis d : diagnoses) {
+				out.writeLong(d.getId());
+				out.writeLong(d.getVisitId());
+				ICDCode code = d.getIcdCode();
+				out.writeBoolean(code != null);
+				if (code != null) {
+					writeString(out, code.getCode());
+					writeString(out, code.getName());
+					out.writeBoolean(code.isChronic());
+				}
+			}
+
+			List<Immunization> immunizations = orEmpty(record.getImmunizations());
+			out.writeInt(immunizations.size());
+			for (Immunization i : immunizations) {
+				out.writeLong(i.getId());
+				out.writeLong(i.getVisitId());
+				CPTCode code = i.getCptCode();
+				out.writeBoolean(code != null);
+				if (code != null) {
+					writeString(out, code.getCode());
+					writeString(out, code.getName());
+				}
+			}
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// a ByteArrayOutputStream doesn't throw
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static EmergencyRecord decode(byte[] data) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+			EmergencyRecord record = new EmergencyRecord();
+			record.setName(readString(in));
+			record.setAge(in.readInt());
+			record.setGender(readString(in));
+			record.setContactName(readString(in));
+			record.setContactPhone(readString(in));
+			record.setBloodType(readString(in));
+
+			int count = in.readInt();
+			List<Prescription> prescriptions = new ArrayList<Prescription>(count);
+			for (int n = 0; n < count; n++) {
+				Prescription p = new Prescription();
+				p.setId(in.readLong());
+				p.setPatientMID(in.readLong());
+				p.setHcpMID(in.readLong());
+				p.setOfficeVisitId(in.readLong());
+				String code = readString(in);
+				String description = readString(in);
+				if (code != null || description != null)
+					p.setDrugCode(new MedicationBean(code, description));
+				p.setStartDate(readDate(in));
+				p.setEndDate(readDate(in));
+				p.setInstructions(readString(in));
+				p.setDosage(in.readLong());
+				prescriptions.add(p);
+			}
+			record.setPrescriptions(prescriptions);
+
+			count = in.readInt();
+			List<AllergyBean> allergies = new ArrayList<AllergyBean>(count);
+			for (int n = 0; n < count; n++) {
+				AllergyBean a = new AllergyBean();
+				a.setId(in.readLong());
+				a.setPatientID(in.readLong());
+				a.setDescription(readString(in));
+				a.setNDCode(readString(in));
+				long firstFound = in.readLong();
+				a.setFirstFound(firstFound == Long.MIN_VALUE ? null : new Date(firstFound));
+				allergies.add(a);
+			}
+			record.setAllergies(allergies);
+
+			count = in.readInt();
+			List<Diagnosis> diagnoses = new ArrayList<Diagnosis>(count);
+			for (int n = 0; n < count; n++) {
+				long id = in.readLong();
+				long visitId = in.readLong();
+				ICDCode code = in.readBoolean() ? new ICDCode(readString(in), readString(in), in.readBoolean()) : null;
+				diagnoses.add(new Diagnosis(id, visitId, code));
+			}
+			record.setDiagnoses(diagnoses);
+
+			count = in.readInt();
+			List<Immunization> immunizations = new ArrayList<Immunization>(count);
+			for (int n = 0; n < count; n++) {
+				long id = in.readLong();
+				long visitId = in.readLong();
+				CPTCode code = in.readBoolean() ? new CPTCode(readString(in), readString(in)) : null;
+				immunizations.add(new Immunization(id, visitId, code));
+			}
+			record.setImmunizations(immunizations);
+			return record;
+		} catch (IOException e) {
+			throw new IllegalStateException("Corrupt emergency record snapshot", e);
+		}
+	}
+
+	private static <T> List<T> orEmpty(List<T> list) {
+		return list == null ? new ArrayList<T>() : list;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null)
+			out.writeUTF(s);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+		out.writeLong(date == null ? Long.MIN_VALUE : date.toEpochDay());
+	}
+
+	private static LocalDate readDate(DataInputStream in) throws IOException {
+		long day = in.readLong();
+		return day == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(day);
+	}
+}
@@ -8,8 +8,6 @@ import java.sql.SQLException;
 import java.util.List;
 
 import javax.faces.bean.ManagedBean;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
@@ -18,6 +16,8 @@ import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.SQLLoader;
 import edu.ncsu.csc.itrust.model.ValidationFormat;
 import edu.ncsu.csc.itrust.model.hospital.Hospital;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 @ManagedBean
 public class HospitalMySQLConverter implements HospitalData, Serializable{
 	/**
@@ -30,8 +30,7 @@ public class HospitalMySQLConverter implements HospitalData, Serializable{
 	public HospitalMySQLConverter() throws DBException{
 		hospitalLoader = new HospitalMySQLLoader();
 		try {
-			Context ctx = new InitialContext();
-			this.ds = ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+			this.ds = ConnectionContext.share(ConnectionPool.getProductionPool());
 		} catch (NamingException e) {
 			throw new DBException(new SQLException("Context Lookup Naming Exception: "+e.getMessage()));
 		}
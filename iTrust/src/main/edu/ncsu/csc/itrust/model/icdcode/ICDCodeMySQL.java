@@ -7,8 +7,6 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
@@ -16,9 +14,16 @@ import com.mysql.jdbc.exceptions.jdbc4.MySQLIntegrityConstraintViolationExceptio
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.CodeLookup;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class ICDCodeMySQL {
 
+    /** The ICD-10-CM codes, in memory once {@link #loadLookup()} has been called */
+    public static final CodeLookup<ICDCode> LOOKUP = new CodeLookup<>("icdCode", ICDCode::getCode, ICDCode::getName,
+            c -> new ICDCode(c.getCode(), c.getName(), c.isChronic()));
+
     private DataSource ds;
     private ICDCodeValidator validator;
     
@@ -50,10 +55,18 @@ public class ICDCodeMySQL {
      * @throws NamingException
      */
     protected DataSource getDataSource() throws NamingException {
-        Context ctx = new InitialContext();
-        return ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+        return ConnectionContext.share(ConnectionPool.getProductionPool());
     }
     
+    /**
+     * Loads every ICDCode into the shared {@link #LOOKUP}, which answers
+     * lookups from then on
+     * @throws SQLException
+     */
+    public void loadLookup() throws SQLException {
+        LOOKUP.load(ds, this::loadAll);
+    }
+
     /**
      * Gets all ICDCodes in the database
      * @return A List<ICDCode> of all ICDCodes in the database
@@ -61,6 +74,11 @@ public class ICDCodeMySQL {
      * @throws SQLException
      */
 	public List<ICDCode> getAll() throws SQLException {
+	    List<ICDCode> codes = LOOKUP.getAll();
+	    return codes != null ? codes : loadAll();
+	}
+
+	private List<ICDCode> loadAll() throws SQLException {
 	    try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createGetAllPreparedStatement(conn);
                 ResultSet rs = pstring.executeQuery()){
@@ -149,7 +167,12 @@ public class ICDCodeMySQL {
 	    validator.validate(addObj);
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createAddPreparedStatement(conn, addObj);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean added = pstring.executeUpdate() > 0;
+            if (added) {
+                LOOKUP.put(conn, addObj);
+            }
+            return added;
         } catch (MySQLIntegrityConstraintViolationException e){
             return false;
         }
@@ -185,7 +208,12 @@ public class ICDCodeMySQL {
         validator.validate(updateObj);
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createUpdatePreparedStatement(conn, updateObj);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean updated = pstring.executeUpdate() > 0;
+            if (updated) {
+                LOOKUP.put(conn, updateObj);
+            }
+            return updated;
         }
 	}
 	
@@ -213,7 +241,12 @@ public class ICDCodeMySQL {
     public boolean delete(ICDCode deleteObj) throws SQLException{
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createDeletePreparedStatement(conn, deleteObj);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean deleted = pstring.executeUpdate() > 0;
+            if (deleted) {
+                LOOKUP.remove(conn, deleteObj.getCode());
+            }
+            return deleted;
         }
     }
 
@@ -231,6 +264,10 @@ public class ICDCodeMySQL {
     }
 
     public List<ICDCode> getCodesWithFilter(String filterString) throws SQLException {
+        List<ICDCode> codes = LOOKUP.filter(filterString);
+        if (codes != null) {
+            return codes;
+        }
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = creategetCodesWithFilterPreparedStatement(conn, filterString);
                 ResultSet rs = pstring.executeQuery()){
@@ -243,4 +280,35 @@ public class ICDCodeMySQL {
         pstring.setString(1, "%" + filterString + "%");
         return pstring;
     }
+
+    /**
+     * Suggests ICDCodes matching what's been typed, by code or by name, best
+     * matches first
+     * @param query What's been typed
+     * @param limit The most codes to return
+     * @return Up to limit ICDCodes
+     * @throws SQLException
+     */
+    public List<ICDCode> getSuggestions(String query, int limit) throws SQLException {
+        List<ICDCode> codes = LOOKUP.suggest(query, limit);
+        if (codes != null) {
+            return codes;
+        }
+        try (Connection conn = ds.getConnection();
+                PreparedStatement pstring = createGetSuggestionsPreparedStatement(conn, query, limit);
+                ResultSet rs = pstring.executeQuery()){
+            return loadResults(rs);
+        }
+    }
+
+    private PreparedStatement createGetSuggestionsPreparedStatement(Connection conn, String query, int limit) throws SQLException {
+        PreparedStatement pstring = conn.prepareStatement("SELECT * FROM icdCode WHERE code LIKE ? OR name LIKE ? "
+                + "ORDER BY code LIKE ? DESC, code LIMIT ?");
+        String escaped = CodeLookup.escapeLike(query.trim());
+        pstring.setString(1, "%" + escaped + "%");
+        pstring.setString(2, "%" + escaped + "%");
+        pstring.setString(3, escaped + "%");
+        pstring.setInt(4, limit);
+        return pstring;
+    }
 }
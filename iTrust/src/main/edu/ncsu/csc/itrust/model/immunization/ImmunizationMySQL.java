@@ -6,13 +6,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class ImmunizationMySQL implements ImmunizationData {
 
@@ -28,8 +29,7 @@ public class ImmunizationMySQL implements ImmunizationData {
 	public ImmunizationMySQL() throws DBException {
 		loader = new ImmunizationSQLLoader();
 		try {
-			Context ctx = new InitialContext();
-			this.ds = ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+			this.ds = ConnectionContext.share(ConnectionPool.getProductionPool());
 		} catch (NamingException e) {
 			throw new DBException(new SQLException("Context Lookup Naming Exception: " + e.getMessage()));
 		}
@@ -94,6 +94,8 @@ public class ImmunizationMySQL implements ImmunizationData {
 		try (Connection conn = ds.getConnection();
 			PreparedStatement statement = loader.loadParameters(conn, null, addObj, true);) {
 			int results = statement.executeUpdate();
+			EmergencyRecordSnapshots.patientChanged(EmergencyRecordSnapshots.findPatient(conn,
+					EmergencyRecordSnapshots.PATIENT_OF_VISIT, addObj.getVisitId()));
 			return results == 1;
 		} catch (SQLException e) {
 			throw new DBException(e);
@@ -113,7 +115,10 @@ public class ImmunizationMySQL implements ImmunizationData {
 
 		try (Connection conn = ds.getConnection();
 			PreparedStatement statement = loader.loadParameters(conn, null, updateObj, false);) {
+			long patientMID = EmergencyRecordSnapshots.findPatient(conn,
+					EmergencyRecordSnapshots.PATIENT_OF_IMMUNIZATION, updateObj.getId());
 			int results = statement.executeUpdate();
+			EmergencyRecordSnapshots.patientChanged(patientMID);
 			return results == 1;
 		} catch (SQLException e) {
 			throw new DBException(e);
@@ -158,7 +163,11 @@ public class ImmunizationMySQL implements ImmunizationData {
 	public boolean remove(long id) throws SQLException {
 	    try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createRemovePreparedStatement(conn, id);){
-            return pstring.executeUpdate() > 0;
+            long patientMID = EmergencyRecordSnapshots.findPatient(conn,
+                    EmergencyRecordSnapshots.PATIENT_OF_IMMUNIZATION, id);
+            boolean removed = pstring.executeUpdate() > 0;
+            EmergencyRecordSnapshots.patientChanged(patientMID);
+            return removed;
         }
 	}
 
@@ -2,9 +2,12 @@ package edu.ncsu.csc.itrust.model.labProcedure;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.DataBean;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure.LabProcedureStatus;
 
 public interface LabProcedureData extends DataBean<LabProcedure> {
 
@@ -19,6 +22,35 @@ public interface LabProcedureData extends DataBean<LabProcedure> {
 	 */
 	List<LabProcedure> getLabProceduresForLabTechnician(Long technicianID) throws DBException;
 
+	/**
+	 * Returns the lab procedures with the given status in the given lab
+	 * technician's queue, in the order the lab technician works through them:
+	 * highest priority first, then least recently updated.
+	 *
+	 * @param technicianID
+	 *            The ID of the lab technician to query by
+	 * @param status
+	 *            The status to query by
+	 * @return the lab technician's lab procedures with the given status
+	 * @throws DBException
+	 */
+	List<LabProcedure> getLabQueue(Long technicianID, LabProcedureStatus status) throws DBException;
+
+	/**
+	 * Counts the lab procedures with any of the given statuses in each of the
+	 * given lab technicians' queues, by priority.
+	 *
+	 * @param technicianIDs
+	 *            The IDs of the lab technicians to count for
+	 * @param statuses
+	 *            The statuses to count
+	 * @return a map from each lab technician's ID to how many lab procedures
+	 *         of each priority they have; priorities with none are left out
+	 * @throws DBException
+	 */
+	Map<Long, Map<Integer, Long>> countLabQueues(List<Long> technicianIDs, Set<LabProcedureStatus> statuses)
+			throws DBException;
+
 	/**
 	 * Returns all lab procedures with the given office visit ID, or empty
 	 * list if no lab procedures exist for the given office visit ID.
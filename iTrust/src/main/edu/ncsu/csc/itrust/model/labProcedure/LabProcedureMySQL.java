@@ -5,18 +5,25 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Resource;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.DBUtil;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure.LabProcedureStatus;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class LabProcedureMySQL implements LabProcedureData {
 
@@ -28,8 +35,7 @@ public class LabProcedureMySQL implements LabProcedureData {
 	public LabProcedureMySQL() throws DBException {
 		loader = new LabProcedureSQLLoader();
 		try {
-			Context ctx = new InitialContext();
-			ds = ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+			ds = ConnectionContext.share(ConnectionPool.getProductionPool());
 		} catch (NamingException e) {
 			throw new DBException(new SQLException("Context Lookup Naming Exception: " + e.getMessage()));
 		}
@@ -129,9 +135,13 @@ public class LabProcedureMySQL implements LabProcedureData {
 		}
 		try {
 			conn = ds.getConnection();
+			LabQueueIndex index = LabQueueIndex.getShared();
+			long generation = index == null ? 0 : index.beginWrite(conn);
 			addStatement = loader.loadParameters(conn, addStatement, procedure, true);
 			int exitStatus = addStatement.executeUpdate();
 			successfullyAdded = (exitStatus > 0);
+			if (index != null)
+				reindex(index, generation, procedure.getLabTechnicianID());
 		} catch (SQLException e) {
 			throw new DBException(e);
 		} finally {
@@ -156,9 +166,18 @@ public class LabProcedureMySQL implements LabProcedureData {
 		}
 		try {
 			conn = ds.getConnection();
+			LabQueueIndex index = LabQueueIndex.getShared();
+			Long previousTechnicianID = null;
+			long generation = 0;
+			if (index != null) {
+				generation = index.beginWrite(conn);
+				previousTechnicianID = getLabTechnicianID(conn, procedure.getLabProcedureID());
+			}
 			updateStatement = loader.loadParameters(conn, updateStatement, procedure, false);
 			int exitStatus = updateStatement.executeUpdate();
 			successfullyUpdated = (exitStatus > 0);
+			if (index != null)
+				reindex(index, generation, previousTechnicianID, procedure.getLabTechnicianID());
 		} catch (SQLException e) {
 			throw new DBException(e);
 		} finally {
@@ -176,9 +195,18 @@ public class LabProcedureMySQL implements LabProcedureData {
 		PreparedStatement removeStatement = null;
 		try {
 			conn = ds.getConnection();
+			LabQueueIndex index = LabQueueIndex.getShared();
+			Long technicianID = null;
+			long generation = 0;
+			if (index != null) {
+				generation = index.beginWrite(conn);
+				technicianID = getLabTechnicianID(conn, labProcedureID);
+			}
 			removeStatement = conn.prepareStatement(LabProcedureSQLLoader.REMOVE_BY_LAB_PROCEDURE);
 			removeStatement.setLong(1, labProcedureID);
 			int exitCode = removeStatement.executeUpdate();
+			if (index != null)
+				reindex(index, generation, technicianID);
 			return exitCode > 0;
 		} catch (SQLException e) {
 			throw new DBException(e);
@@ -217,6 +245,95 @@ public class LabProcedureMySQL implements LabProcedureData {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<LabProcedure> getLabQueue(Long technicianID, LabProcedureStatus status) throws DBException {
+		LabQueueIndex index = LabQueueIndex.getShared();
+		Connection conn = null;
+		PreparedStatement query = null;
+		ResultSet procedures = null;
+		try {
+			conn = ds.getConnection();
+			if (index != null && status != LabProcedureStatus.COMPLETED) {
+				index.refreshIfChanged(conn);
+				return index.getQueue(technicianID, status);
+			}
+			query = conn.prepareStatement(LabProcedureSQLLoader.SELECT_BY_LAB_TECHNICIAN_AND_STATUS);
+			query.setLong(1, technicianID);
+			query.setLong(2, status.getID());
+			procedures = query.executeQuery();
+
+			List<LabProcedure> queue = loader.loadList(procedures);
+			Collections.sort(queue, LabQueueIndex.QUEUE_ORDER);
+			return queue;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			try {
+				if (procedures != null) {
+					procedures.close();
+				}
+			} catch (SQLException e) {
+				throw new DBException(e);
+			} finally {
+				DBUtil.closeConnection(conn, query);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<Long, Map<Integer, Long>> countLabQueues(List<Long> technicianIDs, Set<LabProcedureStatus> statuses)
+			throws DBException {
+		Map<Long, Map<Integer, Long>> counts = new HashMap<Long, Map<Integer, Long>>();
+		for (Long technicianID : technicianIDs)
+			counts.put(technicianID, new HashMap<Integer, Long>());
+		LabQueueIndex index = LabQueueIndex.getShared();
+		Connection conn = null;
+		PreparedStatement query = null;
+		ResultSet rows = null;
+		try {
+			conn = ds.getConnection();
+			if (index != null) {
+				index.refreshIfChanged(conn);
+				for (Map.Entry<Long, Map<Integer, Long>> entry : counts.entrySet()) {
+					for (LabProcedureStatus status : statuses) {
+						for (Map.Entry<Integer, Long> count : index.getCounts(entry.getKey(), status).entrySet())
+							entry.getValue().merge(count.getKey(), count.getValue(), Long::sum);
+					}
+				}
+				return counts;
+			}
+			Set<Long> statusIDs = new HashSet<Long>();
+			for (LabProcedureStatus status : statuses)
+				statusIDs.add(status.getID());
+			query = conn.prepareStatement(LabProcedureSQLLoader.COUNT_BY_LAB_TECHNICIAN_STATUS_AND_PRIORITY);
+			rows = query.executeQuery();
+			while (rows.next()) {
+				Map<Integer, Long> byPriority = counts.get(rows.getLong("labTechnicianID"));
+				if (byPriority != null && statusIDs.contains(rows.getLong("status")))
+					byPriority.merge(rows.getInt("priority"), rows.getLong("count"), Long::sum);
+			}
+			return counts;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			try {
+				if (rows != null) {
+					rows.close();
+				}
+			} catch (SQLException e) {
+				throw new DBException(e);
+			} finally {
+				DBUtil.closeConnection(conn, query);
+			}
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -246,4 +363,48 @@ public class LabProcedureMySQL implements LabProcedureData {
 			}
 		}
 	}
+
+	/**
+	 * Looks up which lab technician a lab procedure is assigned to.
+	 * 
+	 * @return the lab technician's ID, or null if there is no such lab
+	 *         procedure
+	 */
+	private Long getLabTechnicianID(Connection conn, Long labProcedureID) throws SQLException {
+		try (PreparedStatement query = conn
+				.prepareStatement(LabProcedureSQLLoader.SELECT_LAB_TECHNICIAN_OF_LAB_PROCEDURE)) {
+			query.setLong(1, labProcedureID);
+			try (ResultSet results = query.executeQuery()) {
+				return results.next() ? results.getLong(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * Brings the lab queue index up to date with a write by reloading the
+	 * queues of the lab technicians it touched once the write has been
+	 * committed or rolled back (straight away unless it is part of a unit of
+	 * work), so the index never holds uncommitted rows. If they can't be
+	 * reloaded, the index is rebuilt on its next use instead.
+	 */
+	private void reindex(final LabQueueIndex index, final long generation, Long... technicianIDs) {
+		final Set<Long> touched = new LinkedHashSet<Long>();
+		for (Long technicianID : technicianIDs) {
+			if (technicianID != null)
+				touched.add(technicianID);
+		}
+		ConnectionContext.afterCompletion(new Runnable() {
+			@Override
+			public void run() {
+				try (Connection conn = ds.getConnection()) {
+					for (Long technicianID : touched)
+						index.reload(conn, technicianID);
+					index.markSynced(conn, generation);
+				} catch (SQLException e) {
+					System.err.println("Unable to reload lab queues: " + e.getMessage());
+					index.invalidate();
+				}
+			}
+		});
+	}
 }
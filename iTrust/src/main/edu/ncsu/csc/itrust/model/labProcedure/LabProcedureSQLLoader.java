@@ -62,7 +62,17 @@ public class LabProcedureSQLLoader implements SQLLoader<LabProcedure> {
 	public static final String SELECT_BY_LAB_TECHNICIAN = "SELECT * from " + LAB_PROCEDURE_TABLE_NAME + " WHERE "
 			+ LAB_TECHNICIAN_ID + "=?;";
 
-	public static final String SELECT_BY_OFFICE_VISIT = "SELECT * from " + LAB_PROCEDURE_TABLE_NAME + " WHERE "
+	public static final String SELECT_BY_LAB_TECHNICIAN_AND_STATUS = "SELECT * from " + LAB_PROCEDURE_TABLE_NAME
+			+ " WHERE " + LAB_TECHNICIAN_ID + "=? AND " + STATUS + "=?;";
+
+	public static final String SELECT_LAB_TECHNICIAN_OF_LAB_PROCEDURE = "SELECT " + LAB_TECHNICIAN_ID + " from "
+			+ LAB_PROCEDURE_TABLE_NAME + " WHERE " + LAB_PROCEDURE_ID + "=?;";
+
+	public static final String COUNT_BY_LAB_TECHNICIAN_STATUS_AND_PRIORITY = "SELECT " + LAB_TECHNICIAN_ID + ", "
+			+ STATUS + ", " + PRIORITY + ", COUNT(*) AS count from " + LAB_PROCEDURE_TABLE_NAME + " GROUP BY "
+			+ LAB_TECHNICIAN_ID + ", " + STATUS + ", " + PRIORITY + ";";
+
+	public static final String SELECT_BY_OFFICE_VISIT ="SELECT * from " + LAB_PROCEDURE_TABLE_NAME + " WHERE "
 			+ OFFICE_VISIT_ID + "=?;";
 
 	public static final String SELECT_ALL = "SELECT * from " + LAB_PROCEDURE_TABLE_NAME + ";";
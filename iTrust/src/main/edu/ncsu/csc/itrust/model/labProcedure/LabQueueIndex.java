@@ -0,0 +1,345 @@
+package edu.ncsu.csc.itrust.model.labProcedure;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure.LabProcedureStatus;
+
+/**
+ * An in-memory index of every lab technician's queue: the lab procedures
+ * assigned to them that aren't completed, by status, in the order the lab
+ * technician works through them (highest priority first, then least recently
+ * updated), and how many procedures they have of each status and priority,
+ * completed ones included. Lab technicians' queues and counts are looked up
+ * without loading every procedure they have ever had.
+ *
+ * The shared index is built when the webapp starts (see
+ * {@link #setShared(LabQueueIndex)}) and kept up to date by
+ * {@link LabProcedureMySQL}, which reloads the queues of the lab technicians
+ * a write touched once the write's unit of work has ended. Rebuilds and reloads take
+ * turns, so one that read the table earlier never replaces one that read it
+ * later. If the labProcedure table changes
+ * any other way (e.g. test data being loaded),
+ * {@link #refreshIfChanged(Connection)} notices from the table's update time
+ * and rebuilds the index.
+ */
+public class LabQueueIndex {
+	private static final String UPDATE_TIME = "SELECT UPDATE_TIME FROM information_schema.TABLES "
+			+ "WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME='labProcedure'";
+
+	/** The order lab technicians work through their queues in */
+	public static final Comparator<LabProcedure> QUEUE_ORDER = new Comparator<LabProcedure>() {
+		@Override
+		public int compare(LabProcedure o1, LabProcedure o2) {
+			int c = Integer.compare(o1.getPriority(), o2.getPriority());
+			if (c == 0)
+				c = compareDates(o1.getUpdatedDate(), o2.getUpdatedDate());
+			if (c == 0)
+				c = Long.compare(o1.getLabProcedureID(), o2.getLabProcedureID());
+			return c;
+		}
+	};
+
+	private static volatile LabQueueIndex shared;
+
+	private final LabProcedureSQLLoader loader = new LabProcedureSQLLoader();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Map<Long, Queue> queues = new HashMap<Long, Queue>();
+	private volatile Timestamp syncedUpdateTime;
+	/** Bumped by every rebuild, so a write can tell if one happened under it */
+	private long generation;
+
+	/**
+	 * One lab technician's procedures. Never changed once built; a write
+	 * replaces the whole queue.
+	 */
+	private static class Queue {
+		final Map<LabProcedureStatus, List<LabProcedure>> procedures = new EnumMap<LabProcedureStatus, List<LabProcedure>>(
+				LabProcedureStatus.class);
+		final Map<LabProcedureStatus, Map<Integer, Long>> counts = new EnumMap<LabProcedureStatus, Map<Integer, Long>>(
+				LabProcedureStatus.class);
+
+		void add(LabProcedure procedure) {
+			LabProcedureStatus status = procedure.getStatus();
+			Map<Integer, Long> byPriority = counts.get(status);
+			if (byPriority == null) {
+				byPriority = new HashMap<Integer, Long>();
+				counts.put(status, byPriority);
+			}
+			byPriority.merge(procedure.getPriority(), 1L, Long::sum);
+			if (status == LabProcedureStatus.COMPLETED)
+				return;
+			List<LabProcedure> list = procedures.get(status);
+			if (list == null) {
+				list = new ArrayList<LabProcedure>();
+				procedures.put(status, list);
+			}
+			list.add(procedure);
+		}
+
+		Queue sorted() {
+			for (List<LabProcedure> list : procedures.values())
+				Collections.sort(list, QUEUE_ORDER);
+			return this;
+		}
+	}
+
+	/**
+	 * @return The index the lab procedure DAO uses, or null if queues are
+	 *         queried with SQL
+	 */
+	public static LabQueueIndex getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param index
+	 *            The index for the lab procedure DAO to use, or null to query
+	 *            queues with SQL
+	 */
+	public static void setShared(LabQueueIndex index) {
+		shared = index;
+	}
+
+	/**
+	 * Builds the index from scratch from the labProcedure table.
+	 *
+	 * @param conn
+	 *            The connection to read the lab procedures on
+	 * @throws SQLException
+	 */
+	public synchronized void build(Connection conn) throws SQLException {
+		Timestamp updateTime = getUpdateTime(conn);
+		Map<Long, Queue> fresh = new HashMap<Long, Queue>();
+		try (PreparedStatement ps = conn.prepareStatement(LabProcedureSQLLoader.SELECT_ALL,
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			ps.setFetchSize(Integer.MIN_VALUE);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					LabProcedure procedure = loader.loadSingle(rs);
+					Queue queue = fresh.get(procedure.getLabTechnicianID());
+					if (queue == null) {
+						queue = new Queue();
+						fresh.put(procedure.getLabTechnicianID(), queue);
+					}
+					queue.add(procedure);
+				}
+			}
+		}
+		for (Queue queue : fresh.values())
+			queue.sorted();
+		lock.writeLock().lock();
+		try {
+			queues = fresh;
+			syncedUpdateTime = updateTime;
+			generation++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuilds the index if the labProcedure table has been changed since the
+	 * index was last in step with it.
+	 *
+	 * @param conn
+	 *            A connection to the primary database
+	 * @return true if the index was rebuilt
+	 * @throws SQLException
+	 */
+	public boolean refreshIfChanged(Connection conn) throws SQLException {
+		Timestamp updateTime = getUpdateTime(conn);
+		if (updateTime == null || updateTime.equals(syncedUpdateTime))
+			return false;
+		synchronized (this) {
+			if (updateTime.equals(syncedUpdateTime))
+				return false;
+			build(conn);
+			return true;
+		}
+	}
+
+	/**
+	 * Brings the index up to date before a write to the labProcedure table.
+	 *
+	 * @param conn
+	 *            A connection to the primary database
+	 * @return A token to pass to {@link #markSynced(Connection, long)} after
+	 *         the write
+	 * @throws SQLException
+	 */
+	public long beginWrite(Connection conn) throws SQLException {
+		refreshIfChanged(conn);
+		synchronized (this) {
+			return generation;
+		}
+	}
+
+	/**
+	 * Records that the index reflects the labProcedure table as it is now,
+	 * after the caller has both written to the table and reloaded the queues
+	 * it touched. Nothing is recorded if the index has been rebuilt or
+	 * invalidated since the write began, since the table may then have been
+	 * changed in ways this write's reloads didn't pick up; the next
+	 * {@link #refreshIfChanged(Connection)} sorts that out.
+	 *
+	 * @param conn
+	 *            A connection to the primary database
+	 * @param before
+	 *            What {@link #beginWrite(Connection)} returned
+	 * @throws SQLException
+	 */
+	public synchronized void markSynced(Connection conn, long before) throws SQLException {
+		if (before == generation)
+			syncedUpdateTime = getUpdateTime(conn);
+	}
+
+	/**
+	 * Makes the next {@link #refreshIfChanged(Connection)} rebuild the index,
+	 * e.g. after a write whose queues couldn't be reloaded.
+	 */
+	public synchronized void invalidate() {
+		syncedUpdateTime = null;
+		generation++;
+	}
+
+	/**
+	 * Re-reads one lab technician's queue. Waits for any rebuild or other
+	 * reload, and holds them off from reading the queue to replacing it.
+	 *
+	 * @param conn
+	 *            The connection to read it on, after any write to it has
+	 *            committed
+	 * @param technicianID
+	 *            The lab technician's MID
+	 * @throws SQLException
+	 */
+	public synchronized void reload(Connection conn, long technicianID) throws SQLException {
+		Queue queue = new Queue();
+		try (PreparedStatement ps = conn.prepareStatement(LabProcedureSQLLoader.SELECT_BY_LAB_TECHNICIAN)) {
+			ps.setLong(1, technicianID);
+			try (ResultSet rs = ps.executeQuery()) {
+				for (LabProcedure procedure : loader.loadList(rs))
+					queue.add(procedure);
+			}
+		}
+		queue.sorted();
+		lock.writeLock().lock();
+		try {
+			if (queue.counts.isEmpty())
+				queues.remove(technicianID);
+			else
+				queues.put(technicianID, queue);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of lab technicians with procedures in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return queues.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the procedures of one status in a lab technician's queue.
+	 *
+	 * @param technicianID
+	 *            The lab technician's MID
+	 * @param status
+	 *            Any status but completed, which the index only counts
+	 * @return Copies of the procedures, in queue order
+	 */
+	public List<LabProcedure> getQueue(long technicianID, LabProcedureStatus status) {
+		if (status == LabProcedureStatus.COMPLETED)
+			throw new IllegalArgumentException("Completed lab procedures aren't queued");
+		List<LabProcedure> procedures;
+		lock.readLock().lock();
+		try {
+			Queue queue = queues.get(technicianID);
+			procedures = queue == null ? null : queue.procedures.get(status);
+		} finally {
+			lock.readLock().unlock();
+		}
+		List<LabProcedure> copies = new ArrayList<LabProcedure>();
+		if (procedures != null) {
+			for (LabProcedure procedure : procedures)
+				copies.add(copy(procedure));
+		}
+		return copies;
+	}
+
+	/**
+	 * Counts a lab technician's procedures of one status.
+	 *
+	 * @param technicianID
+	 *            The lab technician's MID
+	 * @param status
+	 *            The status
+	 * @return How many procedures there are of each priority; priorities with
+	 *         none are left out
+	 */
+	public Map<Integer, Long> getCounts(long technicianID, LabProcedureStatus status) {
+		lock.readLock().lock();
+		try {
+			Queue queue = queues.get(technicianID);
+			Map<Integer, Long> counts = queue == null ? null : queue.counts.get(status);
+			return counts == null ? new HashMap<Integer, Long>() : new HashMap<Integer, Long>(counts);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The queues hand out copies, since callers change the procedures they
+	 * get before saving them.
+	 */
+	private static LabProcedure copy(LabProcedure procedure) {
+		LabProcedure copy = new LabProcedure();
+		copy.setLabProcedureID(procedure.getLabProcedureID());
+		copy.setLabTechnicianID(procedure.getLabTechnicianID());
+		copy.setOfficeVisitID(procedure.getOfficeVisitID());
+		copy.setHcpMID(procedure.getHcpMID());
+		copy.setLabProcedureCode(procedure.getLabProcedureCode());
+		copy.setPriority(procedure.getPriority());
+		copy.setIsRestricted(procedure.isRestricted());
+		copy.setStatus(procedure.getStatus().getID());
+		copy.setCommentary(procedure.getCommentary());
+		copy.setResults(procedure.getResults());
+		copy.setUpdatedDate(procedure.getUpdatedDate() == null ? null : new Timestamp(procedure.getUpdatedDate()
+				.getTime()));
+		copy.setConfidenceIntervalLower(procedure.getConfidenceIntervalLower());
+		copy.setConfidenceIntervalUpper(procedure.getConfidenceIntervalUpper());
+		return copy;
+	}
+
+	private static int compareDates(Timestamp a, Timestamp b) {
+		if (a == null || b == null)
+			return a == null ? (b == null ? 0 : -1) : 1;
+		return a.compareTo(b);
+	}
+
+	private static Timestamp getUpdateTime(Connection conn) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(UPDATE_TIME); ResultSet rs = ps.executeQuery()) {
+			return rs.next() ? rs.getTimestamp(1) : null;
+		}
+	}
+}
@@ -6,8 +6,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
@@ -15,8 +13,16 @@ import com.mysql.jdbc.exceptions.jdbc4.MySQLIntegrityConstraintViolationExceptio
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.CodeLookup;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class LOINCCodeMySQL implements LOINCCodeData {
+	/** The LOINC codes, in memory once {@link #loadLookup()} has been called */
+	public static final CodeLookup<LOINCCode> LOOKUP = new CodeLookup<>("loincCode", LOINCCode::getCode,
+			LOINCCode::getComponent, c -> new LOINCCode(c.getCode(), c.getComponent(), c.getKindOfProperty(),
+					c.getTimeAspect(), c.getSystem(), c.getScaleType(), c.getMethodType()));
+
 	private DataSource ds;
 	private LOINCCodeValidator validator;
 	private LOINCCodeSQLLoader loader;
@@ -37,8 +43,7 @@ public class LOINCCodeMySQL implements LOINCCodeData {
 	}
 
 	protected DataSource getDataSource() throws NamingException {
-		Context ctx = new InitialContext();
-		return ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+		return ConnectionContext.share(ConnectionPool.getProductionPool());
 	}
 
 	/**
@@ -53,14 +58,31 @@ public class LOINCCodeMySQL implements LOINCCodeData {
 		this.loader = new LOINCCodeSQLLoader();
 	}
 
+	/**
+	 * Loads every LOINCCode into the shared {@link #LOOKUP}, which answers
+	 * lookups from then on
+	 * 
+	 * @throws SQLException
+	 */
+	public void loadLookup() throws SQLException {
+		LOOKUP.load(ds, this::loadAll);
+	}
+
 	@Override
 	public List<LOINCCode> getAll() throws DBException {
+		try {
+			List<LOINCCode> codes = LOOKUP.getAll();
+			return codes != null ? codes : loadAll();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	private List<LOINCCode> loadAll() throws SQLException {
 		try (Connection conn = ds.getConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM loincCode;");
 				ResultSet rs = ps.executeQuery();) {
 			return loader.loadList(rs);
-		} catch (SQLException e) {
-			throw new DBException(e);
 		}
 	}
 
@@ -90,7 +112,12 @@ public class LOINCCodeMySQL implements LOINCCodeData {
 		PreparedStatement pstring = null;
 		try (Connection conn = ds.getConnection();
 				PreparedStatement ps = loader.loadParameters(conn, pstring, addObj, true);) {
-			return ps.executeUpdate() > 0;
+			LOOKUP.refreshIfChanged(conn);
+			boolean added = ps.executeUpdate() > 0;
+			if (added) {
+				LOOKUP.put(conn, addObj);
+			}
+			return added;
 		} catch (MySQLIntegrityConstraintViolationException e){
             return false;
         } catch (SQLException e) {
@@ -104,7 +131,12 @@ public class LOINCCodeMySQL implements LOINCCodeData {
 		PreparedStatement pstring = null;
 		try (Connection conn = ds.getConnection();
 				PreparedStatement ps = loader.loadParameters(conn, pstring, updateObj, false);) {
-			return ps.executeUpdate() > 0;
+			LOOKUP.refreshIfChanged(conn);
+			boolean updated = ps.executeUpdate() > 0;
+			if (updated) {
+				LOOKUP.put(conn, updateObj);
+			}
+			return updated;
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -113,7 +145,12 @@ public class LOINCCodeMySQL implements LOINCCodeData {
     public boolean delete(LOINCCode deleteObj) throws SQLException {
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createDeletePreparedStatement(conn, deleteObj);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean deleted = pstring.executeUpdate() > 0;
+            if (deleted) {
+                LOOKUP.remove(conn, deleteObj.getCode());
+            }
+            return deleted;
         }
     }
 
@@ -124,6 +161,10 @@ public class LOINCCodeMySQL implements LOINCCodeData {
     }
 
     public List<LOINCCode> getCodesWithFilter(String filterString) throws SQLException {
+        List<LOINCCode> codes = LOOKUP.filter(filterString);
+        if (codes != null) {
+            return codes;
+        }
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = creategetCodesWithFilterPreparedStatement(conn, filterString);
                 ResultSet rs = pstring.executeQuery()){
@@ -136,6 +177,37 @@ public class LOINCCodeMySQL implements LOINCCodeData {
         pstring.setString(1, "%" + filterString + "%");
         return pstring;
     }
+
+    /**
+     * Suggests LOINCCodes matching what's been typed, by code or by
+     * component, best matches first
+     * @param query What's been typed
+     * @param limit The most codes to return
+     * @return Up to limit LOINCCodes
+     * @throws SQLException
+     */
+    public List<LOINCCode> getSuggestions(String query, int limit) throws SQLException {
+        List<LOINCCode> codes = LOOKUP.suggest(query, limit);
+        if (codes != null) {
+            return codes;
+        }
+        try (Connection conn = ds.getConnection();
+                PreparedStatement pstring = createGetSuggestionsPreparedStatement(conn, query, limit);
+                ResultSet rs = pstring.executeQuery()){
+            return loader.loadList(rs);
+        }
+    }
+
+    private PreparedStatement createGetSuggestionsPreparedStatement(Connection conn, String query, int limit) throws SQLException {
+        PreparedStatement pstring = conn.prepareStatement("SELECT * FROM loincCode WHERE code LIKE ? OR component LIKE ? "
+                + "ORDER BY code LIKE ? DESC, code LIMIT ?");
+        String escaped = CodeLookup.escapeLike(query.trim());
+        pstring.setString(1, "%" + escaped + "%");
+        pstring.setString(2, "%" + escaped + "%");
+        pstring.setString(3, escaped + "%");
+        pstring.setInt(4, limit);
+        return pstring;
+    }
 	
 	
 
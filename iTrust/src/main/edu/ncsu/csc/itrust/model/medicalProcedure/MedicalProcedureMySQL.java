@@ -7,14 +7,14 @@ import java.sql.SQLException;
 import java.util.LinkedList;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
 import edu.ncsu.csc.itrust.model.cptcode.CPTCode;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class MedicalProcedureMySQL {
     private DataSource ds;
@@ -30,8 +30,7 @@ public class MedicalProcedureMySQL {
     }
     
     protected DataSource getDataSource() throws NamingException {
-        Context ctx = new InitialContext();
-        return ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+        return ConnectionContext.share(ConnectionPool.getProductionPool());
     }
     
     public MedicalProcedureMySQL(DataSource ds) {
@@ -7,8 +7,6 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
@@ -16,8 +14,15 @@ import com.mysql.jdbc.exceptions.jdbc4.MySQLIntegrityConstraintViolationExceptio
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.CodeLookup;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class NDCCodeMySQL {
+    /** The NDC codes, in memory once {@link #loadLookup()} has been called */
+    public static final CodeLookup<NDCCode> LOOKUP = new CodeLookup<>("ndcodes", NDCCode::getCode, NDCCode::getDescription,
+            c -> new NDCCode(c.getCode(), c.getDescription()));
+
     private DataSource ds;
     NDCCodeValidator validator;
     
@@ -35,8 +40,7 @@ public class NDCCodeMySQL {
     }
     
     protected DataSource getDataSource() throws NamingException {
-        Context ctx = new InitialContext();
-        return ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+        return ConnectionContext.share(ConnectionPool.getProductionPool());
     }
     
     /**
@@ -60,7 +64,12 @@ public class NDCCodeMySQL {
         validator.validate(nd);
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createAddPreparedStatement(conn, nd);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean added = pstring.executeUpdate() > 0;
+            if (added) {
+                LOOKUP.put(conn, nd);
+            }
+            return added;
         } catch (MySQLIntegrityConstraintViolationException e){
             return false;
         }
@@ -91,7 +100,12 @@ public class NDCCodeMySQL {
     public boolean delete(NDCCode nd) throws SQLException{
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createDeletePreparedStatement(conn, nd);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean deleted = pstring.executeUpdate() > 0;
+            if (deleted) {
+                LOOKUP.remove(conn, nd.getCode());
+            }
+            return deleted;
         }
     }
     
@@ -109,12 +123,26 @@ public class NDCCodeMySQL {
         return pstring;
     }
     
+    /**
+     * Loads every NDCCode into the shared {@link #LOOKUP}, which answers
+     * lookups from then on
+     * @throws SQLException
+     */
+    public void loadLookup() throws SQLException {
+        LOOKUP.load(ds, this::loadAll);
+    }
+
     /**
      * Gets all NDCCode in the database
      * @return A List<NDCCode> containing all NDCCode in the database
      * @throws SQLException
      */
     public List<NDCCode> getAll() throws SQLException{
+        List<NDCCode> codes = LOOKUP.getAll();
+        return codes != null ? codes : loadAll();
+    }
+
+    private List<NDCCode> loadAll() throws SQLException {
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createGetAllPreparedStatement(conn);
                 ResultSet rs = pstring.executeQuery()){
@@ -180,7 +208,12 @@ public class NDCCodeMySQL {
         validator.validate(toChange);
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createUpdatePreparedStatement(conn, toChange);){
-            return pstring.executeUpdate() > 0;
+            LOOKUP.refreshIfChanged(conn);
+            boolean updated = pstring.executeUpdate() > 0;
+            if (updated) {
+                LOOKUP.put(conn, toChange);
+            }
+            return updated;
         }
     }
 
@@ -192,6 +225,10 @@ public class NDCCodeMySQL {
     }
 
     public List<NDCCode> getCodesWithFilter(String filter) throws SQLException {
+        List<NDCCode> codes = LOOKUP.filter(filter);
+        if (codes != null) {
+            return codes;
+        }
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = creategetCodesWithFilterPreparedStatement(conn, filter);
                 ResultSet rs = pstring.executeQuery()){
@@ -204,4 +241,35 @@ public class NDCCodeMySQL {
         pstring.setString(1, "%" + filter + "%");
         return pstring;
     }
+
+    /**
+     * Suggests NDCCodes matching what's been typed, by code or by name, best
+     * matches first
+     * @param query What's been typed
+     * @param limit The most codes to return
+     * @return Up to limit NDCCodes
+     * @throws SQLException
+     */
+    public List<NDCCode> getSuggestions(String query, int limit) throws SQLException {
+        List<NDCCode> codes = LOOKUP.suggest(query, limit);
+        if (codes != null) {
+            return codes;
+        }
+        try (Connection conn = ds.getConnection();
+                PreparedStatement pstring = createGetSuggestionsPreparedStatement(conn, query, limit);
+                ResultSet rs = pstring.executeQuery()){
+            return loadResults(rs);
+        }
+    }
+
+    private PreparedStatement createGetSuggestionsPreparedStatement(Connection conn, String query, int limit) throws SQLException {
+        PreparedStatement pstring = conn.prepareStatement("SELECT * FROM ndcodes WHERE Code LIKE ? OR Description LIKE ? "
+                + "ORDER BY Code LIKE ? DESC, Code LIMIT ?");
+        String escaped = CodeLookup.escapeLike(query.trim());
+        pstring.setString(1, "%" + escaped + "%");
+        pstring.setString(2, "%" + escaped + "%");
+        pstring.setString(3, escaped + "%");
+        pstring.setInt(4, limit);
+        return pstring;
+    }
 }
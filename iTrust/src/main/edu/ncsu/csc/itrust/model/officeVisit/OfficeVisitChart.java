@@ -0,0 +1,62 @@
+package edu.ncsu.csc.itrust.model.officeVisit;
+
+import java.util.Collections;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
+import edu.ncsu.csc.itrust.model.immunization.Immunization;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure;
+import edu.ncsu.csc.itrust.model.medicalProcedure.MedicalProcedure;
+import edu.ncsu.csc.itrust.model.prescription.Prescription;
+
+/**
+ * An office visit together with everything recorded at it, loaded at once by
+ * {@link OfficeVisitChartMySQL}.
+ */
+public class OfficeVisitChart {
+	private final OfficeVisit visit;
+	private final List<Diagnosis> diagnoses;
+	private final List<Prescription> prescriptions;
+	private final List<Immunization> immunizations;
+	private final List<MedicalProcedure> medicalProcedures;
+	private final List<LabProcedure> labProcedures;
+
+	public OfficeVisitChart(OfficeVisit visit, List<Diagnosis> diagnoses, List<Prescription> prescriptions,
+			List<Immunization> immunizations, List<MedicalProcedure> medicalProcedures,
+			List<LabProcedure> labProcedures) {
+		this.visit = visit;
+		this.diagnoses = Collections.unmodifiableList(diagnoses);
+		this.prescriptions = Collections.unmodifiableList(prescriptions);
+		this.immunizations = Collections.unmodifiableList(immunizations);
+		this.medicalProcedures = Collections.unmodifiableList(medicalProcedures);
+		this.labProcedures = Collections.unmodifiableList(labProcedures);
+	}
+
+	/**
+	 * @return the office visit, or null if there is no visit with the ID the
+	 *         chart was loaded for
+	 */
+	public OfficeVisit getVisit() {
+		return visit;
+	}
+
+	public List<Diagnosis> getDiagnoses() {
+		return diagnoses;
+	}
+
+	public List<Prescription> getPrescriptions() {
+		return prescriptions;
+	}
+
+	public List<Immunization> getImmunizations() {
+		return immunizations;
+	}
+
+	public List<MedicalProcedure> getMedicalProcedures() {
+		return medicalProcedures;
+	}
+
+	public List<LabProcedure> getLabProcedures() {
+		return labProcedures;
+	}
+}
@@ -0,0 +1,146 @@
+package edu.ncsu.csc.itrust.model.officeVisit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.cptcode.CPTCode;
+import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
+import edu.ncsu.csc.itrust.model.icdcode.ICDCode;
+import edu.ncsu.csc.itrust.model.immunization.Immunization;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedureSQLLoader;
+import edu.ncsu.csc.itrust.model.medicalProcedure.MedicalProcedure;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
+import edu.ncsu.csc.itrust.model.prescription.Prescription;
+import edu.ncsu.csc.itrust.model.prescription.PrescriptionMySQL;
+
+/**
+ * Loads an {@link OfficeVisitChart} with one connection: the visit, its
+ * prescriptions and its lab procedures take a query each, and its diagnoses,
+ * immunizations and medical procedures, which all pair an ID with a code and
+ * the code's name, share one UNION query.
+ */
+public class OfficeVisitChartMySQL {
+	private static final String DIAGNOSIS = "D";
+	private static final String IMMUNIZATION = "I";
+	private static final String MEDICAL_PROCEDURE = "M";
+
+	private static final String SELECT_CODED_RECORDS = "SELECT '" + DIAGNOSIS + "' AS kind, d.id, d.icdCode AS code, "
+			+ "c.name, c.is_chronic FROM diagnosis d, icdcode c WHERE d.icdCode = c.code AND d.visitId = ? "
+			+ "UNION ALL SELECT '" + IMMUNIZATION + "', i.id, i.cptCode, c.name, FALSE "
+			+ "FROM immunization i, cptcode c WHERE i.cptCode = c.code AND i.visitId = ? "
+			+ "UNION ALL SELECT '" + MEDICAL_PROCEDURE + "', m.id, m.cptCode, c.name, FALSE "
+			+ "FROM medicalProcedure m, cptcode c WHERE m.cptCode = c.code AND m.visitId = ? "
+			+ "ORDER BY kind, id";
+
+	private final DataSource ds;
+	private final OfficeVisitSQLLoader visitLoader = new OfficeVisitSQLLoader();
+	private final LabProcedureSQLLoader labProcedureLoader = new LabProcedureSQLLoader();
+	private final PrescriptionMySQL prescriptionLoader;
+
+	/**
+	 * Loads charts from the production database.
+	 *
+	 * @throws DBException
+	 *             when the data source can't be looked up
+	 */
+	public OfficeVisitChartMySQL() throws DBException {
+		try {
+			this.ds = ConnectionContext.share(ConnectionPool.getProductionPool());
+		} catch (NamingException e) {
+			throw new DBException(new SQLException("Context Lookup Naming Exception: " + e.getMessage()));
+		}
+		prescriptionLoader = new PrescriptionMySQL(ds);
+	}
+
+	/**
+	 * Constructor for testing.
+	 *
+	 * @param ds
+	 *            testing data source
+	 */
+	public OfficeVisitChartMySQL(DataSource ds) {
+		this.ds = ds;
+		prescriptionLoader = new PrescriptionMySQL(ds);
+	}
+
+	/**
+	 * @param visitID
+	 *            ID of the office visit
+	 * @return the visit and everything recorded at it; the visit is null, and
+	 *         the lists are empty, if there's no such visit
+	 * @throws DBException
+	 */
+	public OfficeVisitChart getChart(long visitID) throws DBException {
+		try (Connection conn = ds.getConnection()) {
+			OfficeVisit visit = null;
+			try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM officeVisit WHERE visitID=?")) {
+				ps.setLong(1, visitID);
+				try (ResultSet rs = ps.executeQuery()) {
+					List<OfficeVisit> visits = visitLoader.loadList(rs);
+					visit = visits.isEmpty() ? null : visits.get(0);
+				}
+			}
+
+			List<Diagnosis> diagnoses = new ArrayList<Diagnosis>();
+			List<Immunization> immunizations = new ArrayList<Immunization>();
+			List<MedicalProcedure> medicalProcedures = new ArrayList<MedicalProcedure>();
+			try (PreparedStatement ps = conn.prepareStatement(SELECT_CODED_RECORDS)) {
+				ps.setLong(1, visitID);
+				ps.setLong(2, visitID);
+				ps.setLong(3, visitID);
+				try (ResultSet rs = ps.executeQuery()) {
+					while (rs.next()) {
+						String kind = rs.getString("kind");
+						long id = rs.getLong("id");
+						String code = rs.getString("code");
+						String name = rs.getString("name");
+						if (DIAGNOSIS.equals(kind)) {
+							diagnoses.add(new Diagnosis(id, visitID,
+									new ICDCode(code, name, rs.getBoolean("is_chronic"))));
+						} else if (IMMUNIZATION.equals(kind)) {
+							immunizations.add(new Immunization(id, visitID, new CPTCode(code, name)));
+						} else if (MEDICAL_PROCEDURE.equals(kind)) {
+							MedicalProcedure procedure = new MedicalProcedure();
+							procedure.setId(id);
+							procedure.setOfficeVisitId(visitID);
+							procedure.setCptCode(new CPTCode(code, name));
+							medicalProcedures.add(procedure);
+						}
+					}
+				}
+			}
+
+			List<Prescription> prescriptions;
+			try (PreparedStatement ps = conn.prepareStatement(
+					"SELECT * FROM prescription, ndcodes WHERE drugCode = code AND officeVisitId=?")) {
+				ps.setLong(1, visitID);
+				try (ResultSet rs = ps.executeQuery()) {
+					prescriptions = prescriptionLoader.loadRecords(rs);
+				}
+			}
+
+			List<LabProcedure> labProcedures;
+			try (PreparedStatement ps = conn.prepareStatement(LabProcedureSQLLoader.SELECT_BY_OFFICE_VISIT)) {
+				ps.setLong(1, visitID);
+				try (ResultSet rs = ps.executeQuery()) {
+					labProcedures = labProcedureLoader.loadList(rs);
+				}
+			}
+
+			return new OfficeVisitChart(visit, diagnoses, prescriptions, immunizations, medicalProcedures,
+					labProcedures);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+}
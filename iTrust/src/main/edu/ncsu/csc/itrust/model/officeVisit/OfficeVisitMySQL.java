@@ -13,8 +13,6 @@ import java.util.List;
 
 import javax.annotation.Resource;
 import javax.faces.bean.ManagedBean;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
@@ -22,6 +20,8 @@ import edu.ncsu.csc.itrust.DBUtil;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
 import edu.ncsu.csc.itrust.model.ValidationFormat;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 /**
  * @author seelder
@@ -43,8 +43,7 @@ public class OfficeVisitMySQL implements Serializable, OfficeVisitData {
 	public OfficeVisitMySQL() throws DBException {
 		ovLoader = new OfficeVisitSQLLoader();
 		try {
-			Context ctx = new InitialContext();
-			this.ds = ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+			this.ds = ConnectionContext.share(ConnectionPool.getProductionPool());
 		} catch (NamingException e) {
 			throw new DBException(new SQLException("Context Lookup Naming Exception: " + e.getMessage()));
 		}
@@ -0,0 +1,74 @@
+package edu.ncsu.csc.itrust.model.old.beans;
+
+import java.sql.Timestamp;
+
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+/**
+ * One entry of a patient's activity feed: a patient-viewable transaction as
+ * it was rendered when it was logged.
+ * 
+ * A bean's purpose is to store data. Period. Little or no functionality is to be added to a bean 
+ * (with the exception of minor formatting such as concatenating phone numbers together). 
+ * A bean must only have Getters and Setters (Eclipse Hint: Use Source > Generate Getters and Setters.
+ * to create these easily)
+ */
+public class ActivityBean {
+	private long patientMID;
+	private long transactionID;
+	private Timestamp timeLogged;
+	private long actorMID;
+	private TransactionType transactionType;
+	private String actorName;
+
+	public long getPatientMID() {
+		return patientMID;
+	}
+
+	public void setPatientMID(long patientMID) {
+		this.patientMID = patientMID;
+	}
+
+	public long getTransactionID() {
+		return transactionID;
+	}
+
+	public void setTransactionID(long transactionID) {
+		this.transactionID = transactionID;
+	}
+
+	public Timestamp getTimeLogged() {
+		return timeLogged;
+	}
+
+	public void setTimeLogged(Timestamp timeLogged) {
+		this.timeLogged = timeLogged;
+	}
+
+	public long getActorMID() {
+		return actorMID;
+	}
+
+	public void setActorMID(long actorMID) {
+		this.actorMID = actorMID;
+	}
+
+	public TransactionType getTransactionType() {
+		return transactionType;
+	}
+
+	public void setTransactionType(TransactionType transactionType) {
+		this.transactionType = transactionType;
+	}
+
+	/**
+	 * @return The actor's name, or "You" if the actor is the patient
+	 */
+	public String getActorName() {
+		return actorName;
+	}
+
+	public void setActorName(String actorName) {
+		this.actorName = actorName;
+	}
+}
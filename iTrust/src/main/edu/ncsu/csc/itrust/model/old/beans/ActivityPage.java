@@ -0,0 +1,37 @@
+package edu.ncsu.csc.itrust.model.old.beans;
+
+import java.util.List;
+
+/**
+ * One page of a patient's activity feed, newest first, with the token for the
+ * next (older) page.
+ * 
+ * A bean's purpose is to store data. Period. Little or no functionality is to be added to a bean 
+ * (with the exception of minor formatting such as concatenating phone numbers together). 
+ * A bean must only have Getters and Setters (Eclipse Hint: Use Source > Generate Getters and Setters.
+ * to create these easily)
+ */
+public class ActivityPage {
+	private List<ActivityBean> activities;
+	private String nextToken;
+
+	public ActivityPage(List<ActivityBean> activities, String nextToken) {
+		this.activities = activities;
+		this.nextToken = nextToken;
+	}
+
+	public List<ActivityBean> getActivities() {
+		return activities;
+	}
+
+	/**
+	 * @return The token for the next page, or null if this is the last page
+	 */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	public boolean hasMore() {
+		return nextToken != null;
+	}
+}
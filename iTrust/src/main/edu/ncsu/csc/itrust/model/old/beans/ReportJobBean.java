@@ -0,0 +1,109 @@
+package edu.ncsu.csc.itrust.model.old.beans;
+
+import java.sql.Timestamp;
+
+import edu.ncsu.csc.itrust.model.old.enums.ReportJobStatus;
+
+/**
+ * A bean for storing data about a group report being run in the background.
+ * 
+ * A bean's purpose is to store data. Period. Little or no functionality is to be added to a bean 
+ * (with the exception of minor formatting such as concatenating phone numbers together). 
+ * A bean must only have Getters and Setters (Eclipse Hint: Use Source > Generate Getters and Setters.
+ * to create these easily)
+ */
+public class ReportJobBean {
+	private long jobID;
+	private long ownerMID;
+	private ReportJobStatus status = ReportJobStatus.QUEUED;
+	private String format = "xml";
+	private String definition = "";
+	private int rowsDone;
+	private int rowsEstimated;
+	private String message = "";
+	private Timestamp createdAt;
+	private Timestamp finishedAt;
+
+	public long getJobID() {
+		return jobID;
+	}
+
+	public void setJobID(long jobID) {
+		this.jobID = jobID;
+	}
+
+	public long getOwnerMID() {
+		return ownerMID;
+	}
+
+	public void setOwnerMID(long ownerMID) {
+		this.ownerMID = ownerMID;
+	}
+
+	public ReportJobStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(ReportJobStatus status) {
+		this.status = status;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public void setFormat(String format) {
+		this.format = format;
+	}
+
+	/**
+	 * @return The report form's parameters, URL-encoded
+	 */
+	public String getDefinition() {
+		return definition;
+	}
+
+	public void setDefinition(String definition) {
+		this.definition = definition;
+	}
+
+	public int getRowsDone() {
+		return rowsDone;
+	}
+
+	public void setRowsDone(int rowsDone) {
+		this.rowsDone = rowsDone;
+	}
+
+	public int getRowsEstimated() {
+		return rowsEstimated;
+	}
+
+	public void setRowsEstimated(int rowsEstimated) {
+		this.rowsEstimated = rowsEstimated;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public Timestamp getCreatedAt() {
+		return createdAt == null ? null : (Timestamp) createdAt.clone();
+	}
+
+	public void setCreatedAt(Timestamp createdAt) {
+		this.createdAt = createdAt == null ? null : (Timestamp) createdAt.clone();
+	}
+
+	public Timestamp getFinishedAt() {
+		return finishedAt == null ? null : (Timestamp) finishedAt.clone();
+	}
+
+	public void setFinishedAt(Timestamp finishedAt) {
+		this.finishedAt = finishedAt == null ? null : (Timestamp) finishedAt.clone();
+	}
+}
@@ -0,0 +1,57 @@
+package edu.ncsu.csc.itrust.model.old.beans;
+
+import java.sql.Timestamp;
+
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+/**
+ * A bean for the number of transactions of one type logged in one time bucket
+ * (an hour or a day), split by whether a patient or personnel was logged in.
+ * 
+ * A bean's purpose is to store data. Period. Little or no functionality is to be added to a bean 
+ * (with the exception of minor formatting such as concatenating phone numbers together). 
+ * A bean must only have Getters and Setters (Eclipse Hint: Use Source > Generate Getters and Setters.
+ * to create these easily)
+ */
+public class TransactionCountBean {
+	private TransactionType transactionType;
+	private Timestamp bucketStart;
+	private long patientCount;
+	private long personnelCount;
+
+	public TransactionType getTransactionType() {
+		return transactionType;
+	}
+
+	public void setTransactionType(TransactionType transactionType) {
+		this.transactionType = transactionType;
+	}
+
+	public Timestamp getBucketStart() {
+		return bucketStart;
+	}
+
+	public void setBucketStart(Timestamp bucketStart) {
+		this.bucketStart = bucketStart;
+	}
+
+	public long getPatientCount() {
+		return patientCount;
+	}
+
+	public void setPatientCount(long patientCount) {
+		this.patientCount = patientCount;
+	}
+
+	public long getPersonnelCount() {
+		return personnelCount;
+	}
+
+	public void setPersonnelCount(long personnelCount) {
+		this.personnelCount = personnelCount;
+	}
+
+	public long getTotalCount() {
+		return patientCount + personnelCount;
+	}
+}
@@ -0,0 +1,108 @@
+package edu.ncsu.csc.itrust.model.old.beans;
+
+/**
+ * A position in the transaction log, ordered newest first by (timeLogged,
+ * transactionID). Pages of the log are fetched by seeking past a cursor
+ * instead of counting an offset, so every page costs the same no matter how
+ * deep it is. Handed to the browser as an opaque token.
+ * 
+ * A cursor into the access log sorted by role also carries the rank of the
+ * role it stopped in; the log is then ordered by (role rank, timeLogged
+ * descending, transactionID descending).
+ */
+public class TransactionCursor {
+	/** The role rank of a cursor that is not sorted by role */
+	public static final int NO_ROLE = -1;
+
+	private final int roleRank;
+	private final long timeLogged;
+	private final long transactionID;
+
+	public TransactionCursor(long timeLogged, long transactionID) {
+		this(NO_ROLE, timeLogged, transactionID);
+	}
+
+	public TransactionCursor(int roleRank, long timeLogged, long transactionID) {
+		this.roleRank = roleRank;
+		this.timeLogged = timeLogged;
+		this.transactionID = transactionID;
+	}
+
+	/**
+	 * @param t
+	 *            A transaction
+	 * @return The cursor just past the given transaction
+	 */
+	public static TransactionCursor after(TransactionBean t) {
+		return new TransactionCursor(t.getTimeLogged().getTime(), t.getTransactionID());
+	}
+
+	/**
+	 * @param roleRank
+	 *            The rank of the transaction's role
+	 * @param t
+	 *            A transaction
+	 * @return The cursor just past the given transaction, in role order
+	 */
+	public static TransactionCursor after(int roleRank, TransactionBean t) {
+		return new TransactionCursor(roleRank, t.getTimeLogged().getTime(), t.getTransactionID());
+	}
+
+	/**
+	 * Parses a token made by {@link #toToken()}.
+	 * 
+	 * @param token
+	 *            The token, or null/empty for the start of the log
+	 * @return The cursor, or null for the start of the log
+	 * @throws IllegalArgumentException
+	 *             If the token is malformed
+	 */
+	public static TransactionCursor parse(String token) {
+		if (token == null || token.isEmpty())
+			return null;
+		int roleRank = NO_ROLE;
+		int colon = token.indexOf(':');
+		int dot = token.indexOf('.');
+		if (dot < colon + 2)
+			throw new IllegalArgumentException("Invalid page token");
+		try {
+			if (colon >= 0) {
+				roleRank = Integer.parseInt(token.substring(0, colon), Character.MAX_RADIX);
+				if (roleRank < 0)
+					throw new IllegalArgumentException("Invalid page token");
+			}
+			return new TransactionCursor(roleRank, Long.parseLong(token.substring(colon + 1, dot),
+					Character.MAX_RADIX), Long.parseLong(token.substring(dot + 1), Character.MAX_RADIX));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid page token");
+		}
+	}
+
+	/**
+	 * @return An opaque, URL-safe token for this cursor
+	 */
+	public String toToken() {
+		return (isByRole() ? Integer.toString(roleRank, Character.MAX_RADIX) + ":" : "")
+				+ Long.toString(timeLogged, Character.MAX_RADIX) + "."
+				+ Long.toString(transactionID, Character.MAX_RADIX);
+	}
+
+	/**
+	 * @return Whether this is a cursor into the log sorted by role
+	 */
+	public boolean isByRole() {
+		return roleRank != NO_ROLE;
+	}
+
+	public int getRoleRank() {
+		return roleRank;
+	}
+
+	public long getTimeLogged() {
+		return timeLogged;
+	}
+
+	public long getTransactionID() {
+		return transactionID;
+	}
+}
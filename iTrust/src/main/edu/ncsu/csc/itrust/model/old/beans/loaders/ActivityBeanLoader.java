@@ -0,0 +1,45 @@
+package edu.ncsu.csc.itrust.model.old.beans.loaders;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.ActivityBean;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+/**
+ * A loader for ActivityBeans.
+ * 
+ * Loads in information to/from beans using ResultSets and PreparedStatements. Use the superclass to enforce consistency. 
+ * For details on the paradigm for a loader (and what its methods do), see {@link BeanLoader}
+ */
+public class ActivityBeanLoader implements BeanLoader<ActivityBean> {
+
+	@Override
+	public List<ActivityBean> loadList(ResultSet rs) throws SQLException {
+		List<ActivityBean> list = new ArrayList<ActivityBean>();
+		while (rs.next()) {
+			list.add(loadSingle(rs));
+		}
+		return list;
+	}
+
+	@Override
+	public ActivityBean loadSingle(ResultSet rs) throws SQLException {
+		ActivityBean a = new ActivityBean();
+		a.setPatientMID(rs.getLong("patientMID"));
+		a.setTransactionID(rs.getLong("transactionID"));
+		a.setTimeLogged(rs.getTimestamp("timeLogged"));
+		a.setActorMID(rs.getLong("actorMID"));
+		a.setTransactionType(TransactionType.parse(rs.getInt("transactionCode")));
+		a.setActorName(rs.getString("actorName"));
+		return a;
+	}
+
+	@Override
+	public PreparedStatement loadParameters(PreparedStatement ps, ActivityBean bean) throws SQLException {
+		throw new IllegalStateException("unimplemented!");
+	}
+}
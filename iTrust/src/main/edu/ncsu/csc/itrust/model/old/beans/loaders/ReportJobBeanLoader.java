@@ -0,0 +1,53 @@
+package edu.ncsu.csc.itrust.model.old.beans.loaders;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.ReportJobBean;
+import edu.ncsu.csc.itrust.model.old.enums.ReportJobStatus;
+
+/**
+ * A loader for ReportJobBeans.
+ * 
+ * Loads in information to/from beans using ResultSets and PreparedStatements. Use the superclass to enforce consistency. 
+ * For details on the paradigm for a loader (and what its methods do), see {@link BeanLoader}
+ */
+public class ReportJobBeanLoader implements BeanLoader<ReportJobBean> {
+
+	@Override
+	public List<ReportJobBean> loadList(ResultSet rs) throws SQLException {
+		ArrayList<ReportJobBean> list = new ArrayList<ReportJobBean>();
+		while (rs.next()) {
+			list.add(loadSingle(rs));
+		}
+		return list;
+	}
+
+	@Override
+	public ReportJobBean loadSingle(ResultSet rs) throws SQLException {
+		ReportJobBean b = new ReportJobBean();
+		b.setJobID(rs.getLong("jobID"));
+		b.setOwnerMID(rs.getLong("ownerMID"));
+		b.setStatus(ReportJobStatus.valueOf(rs.getString("status")));
+		b.setFormat(rs.getString("format"));
+		b.setDefinition(rs.getString("definition"));
+		b.setRowsDone(rs.getInt("rowsDone"));
+		b.setRowsEstimated(rs.getInt("rowsEstimated"));
+		b.setMessage(rs.getString("message"));
+		b.setCreatedAt(rs.getTimestamp("createdAt"));
+		b.setFinishedAt(rs.getTimestamp("finishedAt"));
+		return b;
+	}
+
+	@Override
+	public PreparedStatement loadParameters(PreparedStatement ps, ReportJobBean bean) throws SQLException {
+		ps.setLong(1, bean.getOwnerMID());
+		ps.setString(2, bean.getStatus().name());
+		ps.setString(3, bean.getFormat());
+		ps.setString(4, bean.getDefinition());
+		return ps;
+	}
+}
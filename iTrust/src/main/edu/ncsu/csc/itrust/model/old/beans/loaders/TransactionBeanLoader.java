@@ -28,7 +28,28 @@ public class TransactionBeanLoader implements BeanLoader<TransactionBean> {
 
 	@Override
 	public PreparedStatement loadParameters(PreparedStatement ps, TransactionBean bean) throws SQLException {
-		throw new IllegalStateException("unimplemented!");
+		return loadParameters(ps, bean, 1);
+	}
+
+	/**
+	 * Loads the insert columns (loggedInMID, secondaryMID, transactionCode,
+	 * timeLogged, addedInfo) of the given bean starting at parameter index
+	 * <code>start</code>, so several beans can share one multi-row INSERT.
+	 * 
+	 * @param ps The prepared statement to be loaded.
+	 * @param bean The bean containing the data to be placed.
+	 * @param start The index of the first parameter to set.
+	 * @return The prepared statement with the appropriately loaded parameters.
+	 * @throws SQLException
+	 */
+	public PreparedStatement loadParameters(PreparedStatement ps, TransactionBean bean, int start)
+			throws SQLException {
+		ps.setLong(start, bean.getLoggedInMID());
+		ps.setLong(start + 1, bean.getSecondaryMID());
+		ps.setInt(start + 2, bean.getTransactionType().getCode());
+		ps.setTimestamp(start + 3, bean.getTimeLogged());
+		ps.setString(start + 4, bean.getAddedInfo());
+		return ps;
 	}
 
 	@Override
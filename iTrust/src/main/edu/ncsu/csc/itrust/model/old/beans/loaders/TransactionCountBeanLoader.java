@@ -0,0 +1,43 @@
+package edu.ncsu.csc.itrust.model.old.beans.loaders;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCountBean;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+/**
+ * A loader for TransactionCountBeans.
+ * 
+ * Loads in information to/from beans using ResultSets and PreparedStatements. Use the superclass to enforce consistency. 
+ * For details on the paradigm for a loader (and what its methods do), see {@link BeanLoader}
+ */
+public class TransactionCountBeanLoader implements BeanLoader<TransactionCountBean> {
+
+	@Override
+	public List<TransactionCountBean> loadList(ResultSet rs) throws SQLException {
+		List<TransactionCountBean> list = new ArrayList<TransactionCountBean>();
+		while (rs.next()) {
+			list.add(loadSingle(rs));
+		}
+		return list;
+	}
+
+	@Override
+	public TransactionCountBean loadSingle(ResultSet rs) throws SQLException {
+		TransactionCountBean c = new TransactionCountBean();
+		c.setTransactionType(TransactionType.parse(rs.getInt("transactionCode")));
+		c.setBucketStart(rs.getTimestamp("bucketStart"));
+		c.setPatientCount(rs.getLong("patientCount"));
+		c.setPersonnelCount(rs.getLong("personnelCount"));
+		return c;
+	}
+
+	@Override
+	public PreparedStatement loadParameters(PreparedStatement ps, TransactionCountBean bean) throws SQLException {
+		throw new IllegalStateException("unimplemented!");
+	}
+}
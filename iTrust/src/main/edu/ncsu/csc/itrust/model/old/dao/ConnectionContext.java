@@ -0,0 +1,511 @@
+package edu.ncsu.csc.itrust.model.old.dao;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Lets every DAO used while handling one request share a single JDBC
+ * connection. While a context is open on a thread, the first DAO to ask a
+ * shared {@link DataSource} for a connection borrows one from the pool, and
+ * every later DAO gets that same connection; DAOs still close their
+ * connections as usual, but the close is ignored until the context itself is
+ * closed and the connection goes back to the pool.
+ *
+ * A context can also be a unit of work: the shared connection is taken out of
+ * auto-commit, and everything done through it is committed together by
+ * {@link #commit()}, or rolled back if the unit of work is closed without
+ * committing. Units of work only make the changes atomic for tables whose
+ * storage engine supports transactions.
+ *
+ * Contexts nest. Opening one while another is open on the same thread shares
+ * the outer one's connection, and a unit of work begun inside another joins
+ * it, so only the outermost unit of work commits. Work that must wait until
+ * the changes are committed or rolled back, such as reloading an in-memory
+ * index from the tables, is handed to {@link #afterCompletion(Runnable)}.
+ *
+ * The context also notes whether anything was written through it (any
+ * statement prepared on it that isn't a query), which {@link ReplicaRouter}
+ * uses to send the rest of the request's reads to the primary.
+ *
+ * Writes that must stand apart from the request, like the transaction log,
+ * are made inside {@link #suspend()}: they get their own connection, in
+ * auto-commit, and neither join the unit of work nor count as the request
+ * having written.
+ */
+public final class ConnectionContext implements AutoCloseable {
+	private static final ThreadLocal<ConnectionContext> CURRENT = new ThreadLocal<ConnectionContext>();
+
+	private final ConnectionContext outer;
+	private final ConnectionContext root;
+	private final boolean unitOfWork;
+	private boolean committed;
+	private boolean closed;
+
+	// kept on the outermost context only
+	private final Map<DataSource, Connection> connections = new IdentityHashMap<DataSource, Connection>();
+	private ConnectionContext transaction;
+	private boolean rollbackOnly;
+	private int borrowCount;
+	private int requestCount;
+	private boolean written;
+	private boolean readFromPrimary;
+	private Map<String, Object> attributes;
+	private List<Runnable> afterCompletion;
+
+	private ConnectionContext(ConnectionContext outer, boolean unitOfWork) {
+		this.outer = outer;
+		this.root = outer == null ? this : outer.root;
+		this.unitOfWork = unitOfWork;
+	}
+
+	/**
+	 * Opens a context on this thread, or joins the one already open.
+	 *
+	 * @return The context, which must be closed by the caller
+	 */
+	public static ConnectionContext open() {
+		ConnectionContext context = new ConnectionContext(CURRENT.get(), false);
+		CURRENT.set(context);
+		return context;
+	}
+
+	/**
+	 * Begins a unit of work on this thread, opening a context if there isn't
+	 * one. If a unit of work is already under way, this one joins it.
+	 *
+	 * @return The unit of work, which must be committed and closed by the
+	 *         caller
+	 * @throws SQLException
+	 *             If a connection already shared can't be taken out of
+	 *             auto-commit
+	 */
+	public static ConnectionContext beginUnitOfWork() throws SQLException {
+		ConnectionContext context = new ConnectionContext(CURRENT.get(), true);
+		CURRENT.set(context);
+		if (context.root.transaction == null) {
+			context.root.transaction = context;
+			context.root.rollbackOnly = false;
+			try {
+				for (Connection conn : context.root.connections.values())
+					conn.setAutoCommit(false);
+			} catch (SQLException e) {
+				context.close();
+				throw e;
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Runs a task once the unit of work under way on this thread has been
+	 * committed or rolled back, after its connections are back in
+	 * auto-commit, so the task only ever reads what the tables really hold.
+	 * (A rollback leaves MyISAM tables as they were written.) With no unit of
+	 * work under way, everything written is already committed and the task
+	 * runs at once.
+	 *
+	 * @param task
+	 *            The task, which handles its own failures
+	 */
+	public static void afterCompletion(Runnable task) {
+		ConnectionContext context = CURRENT.get();
+		if (context == null || context.root.transaction == null) {
+			task.run();
+			return;
+		}
+		if (context.root.afterCompletion == null)
+			context.root.afterCompletion = new ArrayList<Runnable>();
+		context.root.afterCompletion.add(task);
+	}
+
+	/**
+	 * Sets the context open on this thread aside until the returned handle is
+	 * closed. Connections got in the meantime come straight from the pool, as
+	 * if no context were open.
+	 *
+	 * @return The handle, which the caller closes to put the context back
+	 */
+	public static Suspension suspend() {
+		Suspension suspension = new Suspension(CURRENT.get());
+		CURRENT.remove();
+		return suspension;
+	}
+
+	/**
+	 * A context set aside by {@link ConnectionContext#suspend()}.
+	 */
+	public static final class Suspension implements AutoCloseable {
+		private final ConnectionContext context;
+		private boolean closed;
+
+		private Suspension(ConnectionContext context) {
+			this.context = context;
+		}
+
+		/**
+		 * Puts the context back on this thread.
+		 */
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			if (context != null)
+				CURRENT.set(context);
+		}
+	}
+
+	/**
+	 * @return The context open on this thread, or null if there isn't one
+	 */
+	public static ConnectionContext current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Gets a connection from a data source, sharing it with the rest of the
+	 * context open on this thread, if there is one.
+	 *
+	 * @param ds
+	 *            The data source
+	 * @return A connection, which the caller closes as usual
+	 * @throws SQLException
+	 */
+	public static Connection getConnection(DataSource ds) throws SQLException {
+		if (ds instanceof SharedDataSource)
+			ds = ((SharedDataSource) ds).ds;
+		ConnectionContext context = CURRENT.get();
+		if (context == null)
+			return ds.getConnection();
+		return context.root.borrow(ds);
+	}
+
+	/**
+	 * Wraps a data source so that the connections it hands out are shared with
+	 * the context open on the calling thread. With no context open, it behaves
+	 * just like the data source it wraps.
+	 *
+	 * @param ds
+	 *            The data source, typically the pool looked up from JNDI
+	 * @return The wrapped data source
+	 */
+	public static DataSource share(DataSource ds) {
+		if (ds == null || ds instanceof SharedDataSource)
+			return ds;
+		return new SharedDataSource(ds);
+	}
+
+	/**
+	 * @return How many connections this context has borrowed from the pool
+	 */
+	public int getBorrowCount() {
+		return root.borrowCount;
+	}
+
+	/**
+	 * @return How many times a DAO asked for a connection in this context;
+	 *         without the context, each of these would have been a borrow
+	 */
+	public int getRequestCount() {
+		return root.requestCount;
+	}
+
+	/**
+	 * Records that something was written in this context, e.g. when the
+	 * request itself is a form submission.
+	 */
+	public void markWritten() {
+		root.written = true;
+	}
+
+	/**
+	 * @return true if anything was written in this context
+	 */
+	public boolean hasWritten() {
+		return root.written;
+	}
+
+	/**
+	 * @param readFromPrimary
+	 *            true to send all reads in this context to the primary
+	 *            database, e.g. because the session wrote moments ago
+	 */
+	public void setReadFromPrimary(boolean readFromPrimary) {
+		root.readFromPrimary = readFromPrimary;
+	}
+
+	/**
+	 * @return true if reads in this context should go to the primary: it was
+	 *         asked to, or something has been written
+	 */
+	public boolean isReadFromPrimary() {
+		return root.readFromPrimary || root.written;
+	}
+
+	/**
+	 * @param name
+	 *            The attribute's name
+	 * @return The attribute, or null if it isn't set
+	 */
+	public Object getAttribute(String name) {
+		return root.attributes == null ? null : root.attributes.get(name);
+	}
+
+	/**
+	 * Keeps something for the rest of the context, such as which replica it
+	 * reads from.
+	 *
+	 * @param name
+	 *            The attribute's name
+	 * @param value
+	 *            The attribute
+	 */
+	public void setAttribute(String name, Object value) {
+		if (root.attributes == null)
+			root.attributes = new HashMap<String, Object>();
+		root.attributes.put(name, value);
+	}
+
+	/**
+	 * @return true if this context is a unit of work
+	 */
+	public boolean isUnitOfWork() {
+		return unitOfWork;
+	}
+
+	/**
+	 * Commits the unit of work. A unit of work that joined another one leaves
+	 * the commit to the outer one.
+	 *
+	 * @throws SQLException
+	 *             If the commit fails, or an inner unit of work was closed
+	 *             without committing and everything was rolled back
+	 */
+	public void commit() throws SQLException {
+		if (!unitOfWork)
+			throw new IllegalStateException("Not a unit of work");
+		if (closed)
+			throw new IllegalStateException("Unit of work already closed");
+		committed = true;
+		if (root.transaction != this)
+			return;
+		if (root.rollbackOnly) {
+			committed = false;
+			throw new SQLException("Unit of work was rolled back by an inner unit of work");
+		}
+		for (Connection conn : root.connections.values())
+			conn.commit();
+	}
+
+	/**
+	 * Closes the context. Closing a unit of work that wasn't committed rolls
+	 * it back; closing the outermost context returns its connections to the
+	 * pool.
+	 *
+	 * @throws SQLException
+	 *             If the connections couldn't be rolled back or returned
+	 */
+	@Override
+	public void close() throws SQLException {
+		if (closed)
+			return;
+		closed = true;
+		SQLException failure = null;
+		try {
+			if (unitOfWork) {
+				if (root.transaction == this) {
+					List<Runnable> tasks = root.afterCompletion;
+					root.afterCompletion = null;
+					failure = endTransaction();
+					if (tasks != null) {
+						for (Runnable task : tasks)
+							task.run();
+					}
+				} else if (!committed)
+					root.rollbackOnly = true;
+			}
+			if (root == this) {
+				for (Connection conn : connections.values())
+					failure = attempt(failure, conn, false);
+				connections.clear();
+			}
+		} finally {
+			if (outer == null)
+				CURRENT.remove();
+			else
+				CURRENT.set(outer);
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	private SQLException endTransaction() {
+		SQLException failure = null;
+		for (Connection conn : root.connections.values()) {
+			if (!committed) {
+				try {
+					conn.rollback();
+				} catch (SQLException e) {
+					failure = failure == null ? e : failure;
+				}
+			}
+			failure = attempt(failure, conn, true);
+		}
+		root.transaction = null;
+		root.rollbackOnly = false;
+		return failure;
+	}
+
+	/**
+	 * Puts a connection back into auto-commit, or closes it, keeping the first
+	 * failure.
+	 */
+	private static SQLException attempt(SQLException failure, Connection conn, boolean autoCommit) {
+		try {
+			if (autoCommit)
+				conn.setAutoCommit(true);
+			else
+				conn.close();
+		} catch (SQLException e) {
+			return failure == null ? e : failure;
+		}
+		return failure;
+	}
+
+	private Connection borrow(DataSource ds) throws SQLException {
+		requestCount++;
+		Connection conn = connections.get(ds);
+		if (conn == null) {
+			conn = ds.getConnection();
+			borrowCount++;
+			if (transaction != null) {
+				try {
+					conn.setAutoCommit(false);
+				} catch (SQLException e) {
+					conn.close();
+					throw e;
+				}
+			}
+			connections.put(ds, conn);
+		}
+		return unclosable(conn);
+	}
+
+	/**
+	 * Wraps the shared connection so that the DAOs' own close() calls leave it
+	 * open, and notes statements that write.
+	 */
+	private Connection unclosable(final Connection conn) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+					private boolean closed;
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String name = method.getName();
+						if (name.equals("close") && method.getParameterTypes().length == 0) {
+							closed = true;
+							return null;
+						}
+						if (name.equals("isClosed") && method.getParameterTypes().length == 0)
+							return closed || conn.isClosed();
+						if (closed)
+							throw new SQLException("Connection is closed");
+						if (!written && name.startsWith("prepare") && isWrite(name, args[0]))
+							written = true;
+						try {
+							return method.invoke(conn, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	/**
+	 * @return true unless the statement is a query; stored procedures may write
+	 */
+	private static boolean isWrite(String method, Object sql) {
+		if (method.equals("prepareCall") || !(sql instanceof String))
+			return true;
+		String s = ((String) sql).trim();
+		while (s.startsWith("("))
+			s = s.substring(1).trim();
+		int end = 0;
+		while (end < s.length() && Character.isLetter(s.charAt(end)))
+			end++;
+		String verb = s.substring(0, end).toUpperCase(Locale.ENGLISH);
+		return !(verb.equals("SELECT") || verb.equals("SHOW") || verb.equals("DESCRIBE") || verb.equals("EXPLAIN"));
+	}
+
+	/**
+	 * The data source returned by {@link ConnectionContext#share(DataSource)}.
+	 */
+	private static class SharedDataSource implements DataSource {
+		private final DataSource ds;
+
+		private SharedDataSource(DataSource ds) {
+			this.ds = ds;
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			return ConnectionContext.getConnection(ds);
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			return ds.getConnection(username, password);
+		}
+
+		@Override
+		public PrintWriter getLogWriter() throws SQLException {
+			return ds.getLogWriter();
+		}
+
+		@Override
+		public void setLogWriter(PrintWriter out) throws SQLException {
+			ds.setLogWriter(out);
+		}
+
+		@Override
+		public void setLoginTimeout(int seconds) throws SQLException {
+			ds.setLoginTimeout(seconds);
+		}
+
+		@Override
+		public int getLoginTimeout() throws SQLException {
+			return ds.getLoginTimeout();
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			return ds.getParentLogger();
+		}
+
+		@Override
+		public <T> T unwrap(Class<T> iface) throws SQLException {
+			return iface.isInstance(ds) ? iface.cast(ds) : ds.unwrap(iface);
+		}
+
+		@Override
+		public boolean isWrapperFor(Class<?> iface) throws SQLException {
+			return iface.isInstance(ds) || ds.isWrapperFor(iface);
+		}
+	}
+}
@@ -0,0 +1,400 @@
+package edu.ncsu.csc.itrust.model.old.dao;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.apache.tomcat.dbcp.dbcp2.BasicDataSource;
+
+/**
+ * The one place iTrust gets pooled connections from. Wraps whichever pool
+ * implementation is configured - the container's pool defined in context.xml
+ * (DBCP by default, or Tomcat's JDBC pool if its factory is configured there),
+ * or a pool built by the application - and keeps metrics on it: how long
+ * borrowers waited, how many borrows timed out or failed, how many connections
+ * are active and idle, and which connections have been held longer than the
+ * leak threshold.
+ *
+ * The production pool is looked up from JNDI once and cached, and is shared by
+ * {@link ProductionConnectionDriver} and the JSF *MySQL classes.
+ */
+public class ConnectionPool implements DataSource {
+	/** Upper bounds, in milliseconds, of the borrow wait-time histogram buckets */
+	public static final long[] WAIT_BUCKETS_MILLIS = { 1, 5, 10, 50, 100, 250, 1000 };
+
+	private static volatile ConnectionPool production;
+
+	private final String name;
+	private final DataSource ds;
+	private volatile long leakThresholdMillis = 60000;
+	private volatile boolean leakTraces;
+
+	private final AtomicLongArray waits = new AtomicLongArray(WAIT_BUCKETS_MILLIS.length + 1);
+	private final AtomicLong borrows = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong leaks = new AtomicLong();
+	private final AtomicLong lastLeakCheck = new AtomicLong(System.currentTimeMillis());
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger peakActive = new AtomicInteger();
+	private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param name
+	 *            What to call the pool in metrics and log messages
+	 * @param ds
+	 *            The pool implementation
+	 */
+	public ConnectionPool(String name, DataSource ds) {
+		this.name = name;
+		this.ds = ds;
+	}
+
+	/**
+	 * Returns the production pool, looking up jdbc/itrust from JNDI the first
+	 * time it is called.
+	 *
+	 * @return The shared production pool
+	 * @throws NamingException
+	 *             If the pool isn't defined, e.g. outside of Tomcat
+	 */
+	public static ConnectionPool getProductionPool() throws NamingException {
+		ConnectionPool pool = production;
+		if (pool == null) {
+			synchronized (ConnectionPool.class) {
+				pool = production;
+				if (pool == null) {
+					Context ctx = new InitialContext();
+					pool = new ConnectionPool("jdbc/itrust",
+							(DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+					production = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Swaps in a different production pool, e.g. one built by the application
+	 * instead of the container.
+	 *
+	 * @param pool
+	 *            The new pool, or null to look jdbc/itrust up again
+	 */
+	public static void setProductionPool(ConnectionPool pool) {
+		production = pool;
+	}
+
+	/**
+	 * Borrows a connection, recording how long it took. The connection is
+	 * tracked until it's closed.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		Connection conn;
+		try {
+			conn = ds.getConnection();
+		} catch (SQLException e) {
+			if (isTimeout(e))
+				timeouts.incrementAndGet();
+			else
+				failures.incrementAndGet();
+			throw e;
+		}
+		recordWait((System.nanoTime() - start) / 1000000L);
+		borrows.incrementAndGet();
+		int now = active.incrementAndGet();
+		int peak;
+		while (now > (peak = peakActive.get()) && !peakActive.compareAndSet(peak, now))
+			;
+		checkForLeaks();
+		return track(conn);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return ds.getConnection(username, password);
+	}
+
+	/**
+	 * @return The pool's name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The pool implementation this wraps
+	 */
+	public DataSource getDataSource() {
+		return ds;
+	}
+
+	/**
+	 * @param millis
+	 *            How long a connection can be held before it's reported as
+	 *            leaked, or 0 to not look for leaks
+	 */
+	public void setLeakThresholdMillis(long millis) {
+		this.leakThresholdMillis = millis;
+	}
+
+	/**
+	 * @param leakTraces
+	 *            true to record where each connection was borrowed, so leaks
+	 *            can be reported with a stack trace
+	 */
+	public void setLeakTraces(boolean leakTraces) {
+		this.leakTraces = leakTraces;
+	}
+
+	/**
+	 * @return The number of connections borrowed so far
+	 */
+	public long getBorrowCount() {
+		return borrows.get();
+	}
+
+	/**
+	 * @return The number of borrows that gave up waiting for a connection
+	 */
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return The number of borrows that failed for some other reason
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * @return The number of connections that have been reported as leaked
+	 */
+	public long getLeakCount() {
+		return leaks.get();
+	}
+
+	/**
+	 * @return The number of connections currently borrowed through this pool
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * @return The most connections borrowed through this pool at once
+	 */
+	public int getPeakActiveCount() {
+		return peakActive.get();
+	}
+
+	/**
+	 * @return The number of idle connections in the pool, or -1 if the pool
+	 *         implementation doesn't say
+	 */
+	public int getIdleCount() {
+		BasicDataSource basic = getBasicDataSource();
+		return basic == null ? -1 : basic.getNumIdle();
+	}
+
+	/**
+	 * @return The most connections the pool will open, or -1 if the pool
+	 *         implementation doesn't say
+	 */
+	public int getMaxTotal() {
+		BasicDataSource basic = getBasicDataSource();
+		return basic == null ? -1 : basic.getMaxTotal();
+	}
+
+	/**
+	 * @return How many borrows fell into each bucket of
+	 *         {@link #WAIT_BUCKETS_MILLIS}, with one more bucket at the end for
+	 *         longer waits
+	 */
+	public long[] getWaitHistogram() {
+		long[] counts = new long[waits.length()];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = waits.get(i);
+		return counts;
+	}
+
+	/**
+	 * Reports connections held longer than the leak threshold.
+	 *
+	 * @return A description of each, with where it was borrowed if leak
+	 *         traces are on
+	 */
+	public List<String> findLeaks() {
+		List<String> found = new ArrayList<String>();
+		long threshold = leakThresholdMillis;
+		if (threshold <= 0)
+			return found;
+		long now = System.currentTimeMillis();
+		for (Lease lease : leases) {
+			if (now - lease.borrowed >= threshold)
+				found.add(lease.describe(now));
+		}
+		return found;
+	}
+
+	/**
+	 * @return A one-line summary of the metrics
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name).append(": active=").append(getActiveCount()).append(" idle=")
+				.append(getIdleCount()).append(" peak=").append(getPeakActiveCount()).append(" borrows=")
+				.append(getBorrowCount()).append(" timeouts=").append(getTimeoutCount()).append(" failures=")
+				.append(getFailureCount()).append(" leaks=").append(getLeakCount()).append(" wait(ms)");
+		long[] counts = getWaitHistogram();
+		for (int i = 0; i < counts.length; i++) {
+			sb.append(i < WAIT_BUCKETS_MILLIS.length ? " <=" + WAIT_BUCKETS_MILLIS[i] : " >"
+					+ WAIT_BUCKETS_MILLIS[WAIT_BUCKETS_MILLIS.length - 1]).append(':').append(counts[i]);
+		}
+		return sb.toString();
+	}
+
+	private BasicDataSource getBasicDataSource() {
+		return ds instanceof BasicDataSource ? (BasicDataSource) ds : null;
+	}
+
+	private void recordWait(long millis) {
+		int bucket = 0;
+		while (bucket < WAIT_BUCKETS_MILLIS.length && millis > WAIT_BUCKETS_MILLIS[bucket])
+			bucket++;
+		waits.incrementAndGet(bucket);
+	}
+
+	/**
+	 * DBCP reports an exhausted pool as a wrapped NoSuchElementException,
+	 * Tomcat's JDBC pool as a PoolExhaustedException.
+	 */
+	private static boolean isTimeout(SQLException e) {
+		return e.getCause() instanceof NoSuchElementException
+				|| e.getClass().getSimpleName().equals("PoolExhaustedException");
+	}
+
+	/**
+	 * Logs leaks found since the last check, at most once per leak threshold.
+	 */
+	private void checkForLeaks() {
+		long threshold = leakThresholdMillis;
+		long now = System.currentTimeMillis();
+		long last = lastLeakCheck.get();
+		if (threshold <= 0 || now - last < threshold || !lastLeakCheck.compareAndSet(last, now))
+			return;
+		for (Lease lease : leases) {
+			if (!lease.reported && now - lease.borrowed >= threshold) {
+				lease.reported = true;
+				leaks.incrementAndGet();
+				System.err.println("Possible connection leak in " + name + ": " + lease.describe(now));
+			}
+		}
+	}
+
+	private Connection track(final Connection conn) {
+		final Lease lease = new Lease(leakTraces);
+		leases.add(lease);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+					private boolean closed;
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("close") && method.getParameterTypes().length == 0) {
+							if (closed)
+								return null;
+							closed = true;
+							leases.remove(lease);
+							active.decrementAndGet();
+						}
+						try {
+							return method.invoke(conn, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return ds.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		ds.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		ds.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return ds.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return ds.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return iface.isInstance(ds) ? iface.cast(ds) : ds.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(ds) || ds.isWrapperFor(iface);
+	}
+
+	/**
+	 * One borrowed connection.
+	 */
+	private static class Lease {
+		private final long borrowed = System.currentTimeMillis();
+		private final String thread = Thread.currentThread().getName();
+		private final Throwable trace;
+		private volatile boolean reported;
+
+		private Lease(boolean withTrace) {
+			trace = withTrace ? new Throwable("Borrowed here") : null;
+		}
+
+		private String describe(long now) {
+			StringBuilder sb = new StringBuilder("held ").append((now - borrowed) / 1000).append("s by ")
+					.append(thread);
+			if (trace != null) {
+				for (StackTraceElement e : trace.getStackTrace())
+					sb.append("\n\tat ").append(e);
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -20,6 +20,7 @@ import edu.ncsu.csc.itrust.model.old.dao.mysql.*;
 public class DAOFactory {
 	private static DAOFactory productionInstance = null;
 	private IConnectionDriver driver;
+	private volatile ReplicaRouter replicaRouter;
 
 	/**
 	 * 
@@ -48,6 +49,37 @@ public class DAOFactory {
 		return driver.getConnection();
 	}
 
+	/**
+	 * Gets a connection for reads that can be served by a read replica. Without
+	 * a {@link ReplicaRouter}, this is the same as {@link #getConnection()}.
+	 * 
+	 * @return a connection to a replica, or to the primary
+	 * @throws SQLException
+	 */
+	public Connection getReadConnection() throws SQLException {
+		ReplicaRouter router = replicaRouter;
+		if (router == null)
+			return getConnection();
+		return router.getReadConnection(this);
+	}
+
+	/**
+	 * 
+	 * @param replicaRouter
+	 *            routes this DAOFactory's reads to replicas, or null to read from the primary
+	 */
+	public void setReplicaRouter(ReplicaRouter replicaRouter) {
+		this.replicaRouter = replicaRouter;
+	}
+
+	/**
+	 * 
+	 * @return this DAOFactory's ReplicaRouter, or null if it reads from the primary
+	 */
+	public ReplicaRouter getReplicaRouter() {
+		return replicaRouter;
+	}
+
 	/**
 	 * 
 	 * @return this DAOFactory's AccessDAO
@@ -181,6 +213,22 @@ public class DAOFactory {
 	}
 
 
+	/**
+	 * 
+	 * @return this DAOFactory's TransactionCountDAO
+	 */
+	public TransactionCountDAO getTransactionCountDAO() {
+		return new TransactionCountDAO(this);
+	}
+
+	/**
+	 * 
+	 * @return this DAOFactory's ActivityFeedDAO
+	 */
+	public ActivityFeedDAO getActivityFeedDAO() {
+		return new ActivityFeedDAO(this);
+	}
+
 	/**
 	 * 
 	 * @return this DAOFactory's FakeEmailDAO
@@ -197,6 +245,14 @@ public class DAOFactory {
 		return new ReportRequestDAO(this);
 	}
 
+	/**
+	 * 
+	 * @return this DAOFactory's ReportJobDAO
+	 */
+	public ReportJobDAO getReportJobDAO() {
+		return new ReportJobDAO(this);
+	}
+
 	/**
 	 * 
 	 * @return this DAOFactory's MessageDAO
@@ -9,7 +9,9 @@ import javax.sql.DataSource;
 
 /**
  * Produces the JDBC connection from Tomcat's JDBC connection pool (defined in context.xml). Produces and
- * exception when running the unit tests because they're not being run through Tomcat.
+ * exception when running the unit tests because they're not being run through Tomcat. The pool is
+ * looked up once and shared through {@link ConnectionPool}. While a {@link ConnectionContext} is
+ * open, the connection is shared with the rest of the request.
  * 
  *  
  * 
@@ -30,9 +32,9 @@ public class ProductionConnectionDriver implements IConnectionDriver {
 	public Connection getConnection() throws SQLException {
 		try {
 			if (initialContext == null)
-				initialContext = new InitialContext();
-			return ((DataSource) (((Context) initialContext.lookup("java:comp/env"))).lookup("jdbc/itrust"))
-					.getConnection();
+				return ConnectionContext.getConnection(ConnectionPool.getProductionPool());
+			return ConnectionContext.getConnection(
+					(DataSource) (((Context) initialContext.lookup("java:comp/env"))).lookup("jdbc/itrust"));
 		} catch (NamingException e) {
 			throw new SQLException(("Context Lookup Naming Exception: " + e.getMessage()));
 		}
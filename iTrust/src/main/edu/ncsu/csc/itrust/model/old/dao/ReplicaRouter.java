@@ -0,0 +1,237 @@
+package edu.ncsu.csc.itrust.model.old.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * Sends reads that can tolerate a little staleness to read replicas of the
+ * database, leaving the primary to the clinical writes. DAO methods opt in by
+ * getting their connection from {@link DAOFactory#getReadConnection()}; a read
+ * still goes to the primary when
+ * <ul>
+ * <li>something has already been written in the request's
+ * {@link ConnectionContext}, or the session wrote recently (read-your-writes,
+ * see {@link #getStickyMillis()}),</li>
+ * <li>every replica is further behind the primary than the allowed lag, or
+ * </li>
+ * <li>every replica is down. A replica that fails to give a connection is left
+ * alone for a while before it's tried again.</li>
+ * </ul>
+ * Within a request, all reads go to the same replica.
+ */
+public class ReplicaRouter {
+	private static final String REPLICA_ATTRIBUTE = ReplicaRouter.class.getName();
+
+	/**
+	 * Measures how far a replica is behind the primary.
+	 */
+	public interface LagProbe {
+		/**
+		 * @param replica
+		 *            A connection to the replica
+		 * @return The replica's lag in milliseconds, or -1 if it isn't
+		 *         replicating
+		 * @throws SQLException
+		 */
+		public long getLagMillis(Connection replica) throws SQLException;
+	}
+
+	/**
+	 * Reads Seconds_Behind_Master from SHOW SLAVE STATUS. A database that isn't
+	 * set up as a slave at all returns no rows and counts as not replicating,
+	 * so a pool pointed at the wrong server (or one whose replication was
+	 * reset) is never read from as if it were an up-to-date copy.
+	 */
+	public static final LagProbe MYSQL_LAG = new LagProbe() {
+		@Override
+		public long getLagMillis(Connection replica) throws SQLException {
+			try (Statement stmt = replica.createStatement(); ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+				if (!rs.next())
+					return -1;
+				long seconds = rs.getLong("Seconds_Behind_Master");
+				return rs.wasNull() ? -1 : seconds * 1000L;
+			}
+		}
+	};
+
+	private final List<Replica> replicas;
+	private final LagProbe probe;
+	private final long maxLagMillis;
+	private final long stickyMillis;
+	private final long retryMillis;
+	private final AtomicInteger next = new AtomicInteger();
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param replicas
+	 *            The replicas' connection pools
+	 * @param probe
+	 *            How to measure a replica's lag
+	 * @param maxLagMillis
+	 *            The most a replica can be behind and still be read from
+	 * @param stickyMillis
+	 *            How long a session reads from the primary after it writes
+	 * @param retryMillis
+	 *            How long a replica that failed is left alone
+	 */
+	public ReplicaRouter(List<? extends DataSource> replicas, LagProbe probe, long maxLagMillis, long stickyMillis,
+			long retryMillis) {
+		List<Replica> list = new ArrayList<Replica>();
+		for (DataSource ds : replicas)
+			list.add(new Replica(ds));
+		this.replicas = Collections.unmodifiableList(list);
+		this.probe = probe;
+		this.maxLagMillis = maxLagMillis;
+		this.stickyMillis = stickyMillis;
+		this.retryMillis = retryMillis;
+	}
+
+	/**
+	 * Gets a connection for a read: from a replica if one is usable, otherwise
+	 * from the primary.
+	 *
+	 * @param primary
+	 *            The factory whose connections go to the primary
+	 * @return The connection, which the caller closes as usual
+	 * @throws SQLException
+	 */
+	public Connection getReadConnection(DAOFactory primary) throws SQLException {
+		ConnectionContext context = ConnectionContext.current();
+		if (context != null && context.isReadFromPrimary())
+			return primary.getConnection();
+		Replica chosen = context == null ? null : (Replica) context.getAttribute(REPLICA_ATTRIBUTE);
+		if (chosen != null && chosen.isUsable(maxLagMillis)) {
+			Connection conn = chosen.connect(retryMillis);
+			if (conn != null)
+				return conn;
+		}
+		int size = replicas.size();
+		int start = size == 0 ? 0 : Math.abs(next.getAndIncrement() % size);
+		for (int i = 0; i < size; i++) {
+			Replica replica = replicas.get((start + i) % size);
+			if (replica == chosen || !replica.isUsable(maxLagMillis))
+				continue;
+			Connection conn = replica.connect(retryMillis);
+			if (conn != null) {
+				if (context != null)
+					context.setAttribute(REPLICA_ATTRIBUTE, replica);
+				return conn;
+			}
+		}
+		return primary.getConnection();
+	}
+
+	/**
+	 * Measures every replica's lag, marking replicas that can't be reached as
+	 * down.
+	 */
+	public void checkReplicas() {
+		for (Replica replica : replicas) {
+			try (Connection conn = replica.ds.getConnection()) {
+				replica.lagMillis = probe.getLagMillis(conn);
+				replica.downUntil = 0;
+			} catch (SQLException e) {
+				replica.markDown(retryMillis);
+			}
+		}
+	}
+
+	/**
+	 * Starts checking the replicas' lag in the background.
+	 *
+	 * @param intervalMillis
+	 *            How often to check
+	 */
+	public synchronized void start(long intervalMillis) {
+		if (executor != null)
+			return;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-ReplicaMonitor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkReplicas();
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops checking the replicas.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return How long a session reads from the primary after it writes
+	 */
+	public long getStickyMillis() {
+		return stickyMillis;
+	}
+
+	/**
+	 * @return The number of replicas that reads can go to right now
+	 */
+	public int getUsableCount() {
+		int usable = 0;
+		for (Replica replica : replicas) {
+			if (replica.isUsable(maxLagMillis))
+				usable++;
+		}
+		return usable;
+	}
+
+	/**
+	 * One replica and what is known about it.
+	 */
+	private static class Replica {
+		private final DataSource ds;
+		private volatile long lagMillis;
+		private volatile long downUntil;
+
+		private Replica(DataSource ds) {
+			this.ds = ds;
+		}
+
+		private boolean isUsable(long maxLagMillis) {
+			return lagMillis >= 0 && lagMillis <= maxLagMillis && System.currentTimeMillis() >= downUntil;
+		}
+
+		/**
+		 * @return A connection, or null if the replica is down
+		 */
+		private Connection connect(long retryMillis) {
+			try {
+				return ConnectionContext.getConnection(ds);
+			} catch (SQLException e) {
+				markDown(retryMillis);
+				return null;
+			}
+		}
+
+		private void markDown(long retryMillis) {
+			downUntil = System.currentTimeMillis() + retryMillis;
+		}
+	}
+}
@@ -0,0 +1,498 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.logger.TransactionArchive;
+import edu.ncsu.csc.itrust.model.old.beans.ActivityBean;
+import edu.ncsu.csc.itrust.model.old.beans.ActivityPage;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.beans.loaders.ActivityBeanLoader;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+/**
+ * Keeps each patient's activity feed ready to read. When {@link TransactionDAO}
+ * logs a patient-viewable transaction (or a patient's login), the entry is
+ * added to activityfeed under every patient whose feed shows it, so reading
+ * the first pages is one range read on the primary key. Actors' names are
+ * looked up when a page is read, so a renamed actor shows up under their
+ * new name.
+ *
+ * A patient's feed is built from the log the first time it is read, and only
+ * feeds that have been built (listed in activityfeedstate) are added to on
+ * write. Each feed keeps roughly its newest {@link #FEED_CAPACITY} entries:
+ * once it grows {@link #TRIM_BATCH} past that it is trimmed back, and
+ * activityfeedstate records where the trimmed entries began. Pages past
+ * that point are read from the log, and then from the
+ * {@link TransactionArchive}, so no history is lost to the cap.
+ *
+ * DAO stands for Database Access Object. All DAOs are intended to be
+ * reflections of the database, that is, one DAO per table in the database (most
+ * of the time). For more complex sets of queries, extra DAOs are added. DAOs
+ * can assume that all data has been validated and is correct.
+ *
+ * DAOs should never have setters or any other parameter to the constructor than
+ * a factory. All DAOs should be accessed by DAOFactory (@see
+ * {@link DAOFactory}) and every DAO should have a factory - for obtaining JDBC
+ * connections and/or accessing other DAOs.
+ */
+public class ActivityFeedDAO {
+	/** The entries kept in each patient's feed when it is trimmed */
+	public static final int FEED_CAPACITY = 500;
+	/** How far past {@link #FEED_CAPACITY} a feed grows before it is trimmed */
+	public static final int TRIM_BATCH = 100;
+
+	private static final String INSERT = "INSERT IGNORE INTO activityfeed(patientMID, timeLogged, transactionID, "
+			+ "actorMID, transactionCode) ";
+	/** The actor's name the way the feed shows it, for a row f joined to pe and pa by {@link #ACTOR_JOINS} */
+	private static final String ACTOR_NAME = "IF(f.actorMID=f.patientMID, 'You', COALESCE(CONCAT(pe.firstName, "
+			+ "' ', pe.lastName), CONCAT(pa.firstName, ' ', pa.lastName), f.actorMID)) AS actorName";
+	private static final String ACTOR_JOINS = " LEFT JOIN personnel pe ON pe.MID=f.actorMID "
+			+ "LEFT JOIN patients pa ON pa.MID=f.actorMID";
+	private static final String FEED_SEEK = " AND (f.timeLogged < ? OR (f.timeLogged = ? AND f.transactionID < ?))";
+	private static final String FEED_ORDER = " ORDER BY f.timeLogged DESC, f.transactionID DESC";
+	private static final Set<Integer> DLHCP_HIDDEN = new HashSet<Integer>();
+	static {
+		for (String code : TransactionType.dlhcpHiddenStr.split(","))
+			DLHCP_HIDDEN.add(Integer.parseInt(code.trim()));
+	}
+
+	private DAOFactory factory;
+	private ActivityBeanLoader loader = new ActivityBeanLoader();
+
+	/**
+	 * The typical constructor.
+	 *
+	 * @param factory
+	 *            The {@link DAOFactory} associated with this DAO, which is used
+	 *            for obtaining SQL connections, etc.
+	 */
+	public ActivityFeedDAO(DAOFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Returns one page of a patient's feed, newest first. Pages older than
+	 * what the feed still holds continue into the log and the archive.
+	 *
+	 * @param patientMID
+	 *            The patient whose feed this is
+	 * @param dlhcpID
+	 *            The patient's DLHCP, whose hidden actions are left out, or -1
+	 * @param after
+	 *            The end of the previous page, or null for the first page
+	 * @param pageSize
+	 *            The most entries to return
+	 * @return The page
+	 * @throws DBException
+	 */
+	public ActivityPage getFeedPage(long patientMID, long dlhcpID, TransactionCursor after, int pageSize)
+			throws DBException {
+		try (Connection conn = factory.getConnection()) {
+			TransactionCursor trimmedBefore = ensureBuilt(conn, patientMID);
+			List<ActivityBean> list = readFeed(conn, patientMID, dlhcpID, after, pageSize + 1);
+			if (list.size() <= pageSize && trimmedBefore != null) {
+				TransactionCursor from = after != null && isOlder(after, trimmedBefore) ? after : trimmedBefore;
+				list.addAll(readOlder(conn, patientMID, dlhcpID, from, pageSize + 1 - list.size()));
+			}
+			String nextToken = null;
+			if (list.size() > pageSize) {
+				list = new ArrayList<ActivityBean>(list.subList(0, pageSize));
+				ActivityBean last = list.get(pageSize - 1);
+				nextToken = new TransactionCursor(last.getTimeLogged().getTime(), last.getTransactionID())
+						.toToken();
+			}
+			return new ActivityPage(list, nextToken);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Drops a patient's feed so it is rebuilt from the log on the next read.
+	 *
+	 * @param patientMID
+	 *            The patient
+	 * @throws DBException
+	 */
+	public void invalidate(long patientMID) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement state = conn.prepareStatement("DELETE FROM activityfeedstate WHERE patientMID=?");
+				PreparedStatement feed = conn.prepareStatement("DELETE FROM activityfeed WHERE patientMID=?")) {
+			state.setLong(1, patientMID);
+			state.executeUpdate();
+			feed.setLong(1, patientMID);
+			feed.executeUpdate();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Adds newly logged transactions to the feeds that show them. Called by
+	 * {@link TransactionDAO} on the connection that logged them; failures are
+	 * reported but not thrown, so the log write itself still succeeds. Feeds
+	 * that haven't been built cost one lookup; built ones get the entries
+	 * straight from the beans, and are only trimmed once they have grown
+	 * {@link #TRIM_BATCH} entries past {@link #FEED_CAPACITY}.
+	 *
+	 * @param conn
+	 *            The connection the transactions were logged on
+	 * @param transactions
+	 *            The transactions just logged
+	 * @param ids
+	 *            The ID each of them was logged under, in the same order
+	 */
+	void addTransactions(Connection conn, List<TransactionBean> transactions, List<Long> ids) {
+		Map<Long, List<Integer>> byPatient = new TreeMap<Long, List<Integer>>();
+		for (int i = 0; i < transactions.size(); i++) {
+			TransactionBean t = transactions.get(i);
+			if (t.getTransactionType().isPatientViewable())
+				addTo(byPatient, t.getSecondaryMID(), i);
+			if (t.getTransactionType() == TransactionType.LOGIN_SUCCESS
+					&& t.getLoggedInMID() < TransactionCountDAO.PERSONNEL_MID_START
+					&& t.getLoggedInMID() != t.getSecondaryMID())
+				addTo(byPatient, t.getLoggedInMID(), i);
+		}
+		if (byPatient.isEmpty())
+			return;
+		try {
+			Map<Long, Long> entries = new HashMap<Long, Long>();
+			Map<Long, TransactionCursor> trimmed = new HashMap<Long, TransactionCursor>();
+			try (PreparedStatement ps = conn.prepareStatement("SELECT patientMID, entries, trimmedBeforeTime, "
+					+ "trimmedBeforeID FROM activityfeedstate WHERE patientMID IN (" + params(byPatient.size())
+					+ ")")) {
+				int i = 1;
+				for (long patientMID : byPatient.keySet())
+					ps.setLong(i++, patientMID);
+				try (ResultSet rs = ps.executeQuery()) {
+					while (rs.next()) {
+						entries.put(rs.getLong("patientMID"), rs.getLong("entries"));
+						trimmed.put(rs.getLong("patientMID"), trimmedBefore(rs));
+					}
+				}
+			}
+			if (entries.isEmpty())
+				return;
+			// entries older than where a feed was trimmed are left to the log, which pages past that point
+			Map<Long, Integer> added = new TreeMap<Long, Integer>();
+			List<Long> rowPatients = new ArrayList<Long>();
+			List<Integer> rowIndexes = new ArrayList<Integer>();
+			for (Map.Entry<Long, List<Integer>> e : byPatient.entrySet()) {
+				if (!entries.containsKey(e.getKey()))
+					continue;
+				TransactionCursor cut = trimmed.get(e.getKey());
+				for (int i : e.getValue()) {
+					TransactionBean t = transactions.get(i);
+					if (cut != null && t.getTimeLogged() != null
+							&& isOlder(new TransactionCursor(t.getTimeLogged().getTime(), ids.get(i)), cut))
+						continue;
+					rowPatients.add(e.getKey());
+					rowIndexes.add(i);
+					added.merge(e.getKey(), 1, Integer::sum);
+				}
+			}
+			if (rowIndexes.isEmpty())
+				return;
+			StringBuilder sql = new StringBuilder(INSERT + "VALUES");
+			for (int r = 0; r < rowIndexes.size(); r++) {
+				sql.append(r == 0 ? "" : ",");
+				// a transaction logged without a time got the database's, so read it back
+				sql.append(transactions.get(rowIndexes.get(r)).getTimeLogged() == null
+						? "(?,(SELECT timeLogged FROM transactionlog WHERE transactionID=?),?,?,?)" : "(?,?,?,?,?)");
+			}
+			try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+				int p = 1;
+				for (int r = 0; r < rowIndexes.size(); r++) {
+					int i = rowIndexes.get(r);
+					TransactionBean t = transactions.get(i);
+					ps.setLong(p++, rowPatients.get(r));
+					if (t.getTimeLogged() == null)
+						ps.setLong(p++, ids.get(i));
+					else
+						ps.setTimestamp(p++, t.getTimeLogged());
+					ps.setLong(p++, ids.get(i));
+					ps.setLong(p++, t.getLoggedInMID());
+					ps.setInt(p++, t.getTransactionType().getCode());
+				}
+				ps.executeUpdate();
+			}
+			try (PreparedStatement ps = conn.prepareStatement("UPDATE activityfeedstate SET entries=entries+? "
+					+ "WHERE patientMID=?")) {
+				for (Map.Entry<Long, Integer> e : added.entrySet()) {
+					ps.setInt(1, e.getValue());
+					ps.setLong(2, e.getKey());
+					ps.executeUpdate();
+				}
+			}
+			for (Map.Entry<Long, Integer> e : added.entrySet()) {
+				if (entries.get(e.getKey()) + e.getValue() > FEED_CAPACITY + TRIM_BATCH)
+					trim(conn, e.getKey());
+			}
+		} catch (SQLException e) {
+			System.err.println("Unable to update activity feeds: " + e.getMessage());
+		}
+	}
+
+	private static void addTo(Map<Long, List<Integer>> byPatient, long patientMID, int index) {
+		List<Integer> indexes = byPatient.get(patientMID);
+		if (indexes == null) {
+			indexes = new ArrayList<Integer>();
+			byPatient.put(patientMID, indexes);
+		}
+		indexes.add(index);
+	}
+
+	/**
+	 * Builds a patient's feed from the log if it hasn't been yet. The feed is
+	 * marked as built first, so transactions logged while it is being built
+	 * are added by {@link #addTransactions} and at worst inserted twice, which
+	 * the primary key ignores.
+	 *
+	 * @return Where the feed's trimmed entries begin, or null if it holds all
+	 *         of the patient's history
+	 */
+	private TransactionCursor ensureBuilt(Connection conn, long patientMID) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT trimmedBeforeTime, trimmedBeforeID "
+				+ "FROM activityfeedstate WHERE patientMID=?")) {
+			ps.setLong(1, patientMID);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next())
+					return trimmedBefore(rs);
+			}
+		}
+		try (PreparedStatement ps = conn.prepareStatement("INSERT IGNORE INTO activityfeedstate(patientMID, "
+				+ "builtTime) VALUES(?, NOW())")) {
+			ps.setLong(1, patientMID);
+			if (ps.executeUpdate() == 0)
+				return ensureBuilt(conn, patientMID);
+		}
+		try (PreparedStatement ps = conn.prepareStatement(INSERT + "(SELECT ?, timeLogged, transactionID, "
+				+ "loggedInMID, transactionCode FROM transactionlog WHERE secondaryMID=? AND transactionCode IN ("
+				+ TransactionType.patientViewableStr + ")" + TransactionDAO.NEWEST_FIRST + " LIMIT ?) UNION ALL "
+				+ "(SELECT ?, timeLogged, transactionID, loggedInMID, transactionCode FROM transactionlog "
+				+ "WHERE loggedInMID=? AND transactionCode=?" + TransactionDAO.NEWEST_FIRST + " LIMIT ?)")) {
+			ps.setLong(1, patientMID);
+			ps.setLong(2, patientMID);
+			ps.setInt(3, FEED_CAPACITY);
+			ps.setLong(4, patientMID);
+			ps.setLong(5, patientMID);
+			ps.setInt(6, TransactionType.LOGIN_SUCCESS.getCode());
+			ps.setInt(7, FEED_CAPACITY);
+			ps.executeUpdate();
+		}
+		return trim(conn, patientMID);
+	}
+
+	/**
+	 * Reads one stretch of a patient's feed from activityfeed.
+	 */
+	private List<ActivityBean> readFeed(Connection conn, long patientMID, long dlhcpID, TransactionCursor after,
+			int max) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT f.*, " + ACTOR_NAME + " FROM activityfeed f"
+				+ ACTOR_JOINS + " WHERE f.patientMID=? AND NOT (f.actorMID=? AND f.transactionCode IN ("
+				+ TransactionType.dlhcpHiddenStr + "))" + (after == null ? "" : FEED_SEEK) + FEED_ORDER + " LIMIT ?")) {
+			ps.setLong(1, patientMID);
+			ps.setLong(2, dlhcpID);
+			int i = 3;
+			if (after != null)
+				i = bindSeek(ps, i, after);
+			ps.setInt(i, max);
+			try (ResultSet rs = ps.executeQuery()) {
+				return loader.loadList(rs);
+			}
+		}
+	}
+
+	/**
+	 * Reads the part of a patient's feed that has been trimmed from
+	 * activityfeed: from the log, then from the archive once the log runs out.
+	 */
+	private List<ActivityBean> readOlder(Connection conn, long patientMID, long dlhcpID, TransactionCursor before,
+			int max) throws SQLException {
+		List<ActivityBean> older;
+		try (PreparedStatement ps = conn.prepareStatement("SELECT f.*, " + ACTOR_NAME + " FROM ((SELECT ? AS "
+				+ "patientMID, timeLogged, transactionID, loggedInMID AS actorMID, transactionCode FROM transactionlog "
+				+ "WHERE secondaryMID=? AND transactionCode IN (" + TransactionType.patientViewableStr + ") AND NOT "
+				+ "(loggedInMID=? AND transactionCode IN (" + TransactionType.dlhcpHiddenStr + "))"
+				+ TransactionDAO.SEEK + TransactionDAO.NEWEST_FIRST + " LIMIT ?) UNION (SELECT ?, timeLogged, "
+				+ "transactionID, loggedInMID, transactionCode FROM transactionlog WHERE loggedInMID=? "
+				+ "AND transactionCode=?" + TransactionDAO.SEEK + TransactionDAO.NEWEST_FIRST + " LIMIT ?)) f"
+				+ ACTOR_JOINS + FEED_ORDER + " LIMIT ?")) {
+			ps.setLong(1, patientMID);
+			ps.setLong(2, patientMID);
+			ps.setLong(3, dlhcpID);
+			int i = bindSeek(ps, 4, before);
+			ps.setInt(i++, max);
+			ps.setLong(i++, patientMID);
+			ps.setLong(i++, patientMID);
+			ps.setInt(i++, TransactionType.LOGIN_SUCCESS.getCode());
+			i = bindSeek(ps, i, before);
+			ps.setInt(i++, max);
+			ps.setInt(i, max);
+			try (ResultSet rs = ps.executeQuery()) {
+				older = loader.loadList(rs);
+			}
+		}
+		TransactionArchive archive = TransactionArchive.getShared();
+		if (older.size() == max || archive == null)
+			return older;
+		Set<Long> ids = new HashSet<Long>();
+		for (ActivityBean a : older)
+			ids.add(a.getTransactionID());
+		List<ActivityBean> archived = new ArrayList<ActivityBean>();
+		try {
+			// logins are archived under their secondary MID, which the login page sets to the patient's own
+			for (TransactionBean t : archive.read(patientMID, null, null, before, feedFilter(patientMID, dlhcpID),
+					max + older.size())) { // room for rows that are also in the log
+				if (older.size() + archived.size() == max)
+					break;
+				if (!ids.add(t.getTransactionID()))
+					continue;
+				ActivityBean a = new ActivityBean();
+				a.setPatientMID(patientMID);
+				a.setTransactionID(t.getTransactionID());
+				a.setTimeLogged(t.getTimeLogged());
+				a.setActorMID(t.getLoggedInMID());
+				a.setTransactionType(t.getTransactionType());
+				archived.add(a);
+			}
+		} catch (IOException e) {
+			throw new SQLException("Unable to read the transaction archive", e);
+		}
+		nameActors(conn, patientMID, archived);
+		older.addAll(archived);
+		return older;
+	}
+
+	/**
+	 * Fills in the actors' names of entries that didn't come from the
+	 * database, the way {@link #ACTOR_NAME} renders them.
+	 */
+	private static void nameActors(Connection conn, long patientMID, List<ActivityBean> activities)
+			throws SQLException {
+		Set<Long> mids = new HashSet<Long>();
+		for (ActivityBean a : activities) {
+			if (a.getActorMID() != patientMID)
+				mids.add(a.getActorMID());
+		}
+		Map<Long, String> names = new HashMap<Long, String>();
+		if (!mids.isEmpty()) {
+			String in = params(mids.size());
+			// patients first, so a personnel name wins like it does in the COALESCE
+			try (PreparedStatement ps = conn.prepareStatement("SELECT MID, CONCAT(firstName, ' ', lastName) AS "
+					+ "name, 0 AS pass FROM patients WHERE MID IN (" + in + ") UNION ALL SELECT MID, "
+					+ "CONCAT(firstName, ' ', lastName), 1 FROM personnel WHERE MID IN (" + in + ") ORDER BY pass")) {
+				int i = 1;
+				for (int pass = 0; pass < 2; pass++) {
+					for (long mid : mids)
+						ps.setLong(i++, mid);
+				}
+				try (ResultSet rs = ps.executeQuery()) {
+					while (rs.next()) {
+						if (rs.getString("name") != null)
+							names.put(rs.getLong("MID"), rs.getString("name"));
+					}
+				}
+			}
+		}
+		for (ActivityBean a : activities) {
+			String name = names.get(a.getActorMID());
+			a.setActorName(a.getActorMID() == patientMID ? "You" : name != null ? name : String.valueOf(a
+					.getActorMID()));
+		}
+	}
+
+	private static TransactionArchive.Filter feedFilter(final long patientMID, final long dlhcpID) {
+		return new TransactionArchive.Filter() {
+			@Override
+			public boolean accept(long loggedInMID, long secondaryMID, int code) {
+				if (code == TransactionType.LOGIN_SUCCESS.getCode() && loggedInMID == patientMID)
+					return true;
+				return secondaryMID == patientMID && TransactionType.parse(code).isPatientViewable()
+						&& !(loggedInMID == dlhcpID && DLHCP_HIDDEN.contains(code));
+			}
+		};
+	}
+
+	/**
+	 * Deletes all but the newest {@link #FEED_CAPACITY} entries of a feed,
+	 * and records where the deleted ones began and how many are left.
+	 *
+	 * @return Where the deleted entries began, or null if the feed wasn't
+	 *         full and nothing was deleted
+	 */
+	private TransactionCursor trim(Connection conn, long patientMID) throws SQLException {
+		TransactionCursor oldestKept = null;
+		try (PreparedStatement ps = conn.prepareStatement("SELECT timeLogged, transactionID FROM activityfeed "
+				+ "WHERE patientMID=?" + TransactionDAO.NEWEST_FIRST + " LIMIT 1 OFFSET ?")) {
+			ps.setLong(1, patientMID);
+			ps.setInt(2, FEED_CAPACITY - 1);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next())
+					oldestKept = new TransactionCursor(rs.getTimestamp("timeLogged").getTime(),
+							rs.getLong("transactionID"));
+			}
+		}
+		if (oldestKept != null) {
+			try (PreparedStatement ps = conn.prepareStatement("DELETE FROM activityfeed WHERE patientMID=?"
+					+ TransactionDAO.SEEK)) {
+				ps.setLong(1, patientMID);
+				bindSeek(ps, 2, oldestKept);
+				ps.executeUpdate();
+			}
+		}
+		try (PreparedStatement ps = conn.prepareStatement("UPDATE activityfeedstate SET entries=(SELECT COUNT(*) "
+				+ "FROM activityfeed WHERE patientMID=?)"
+				+ (oldestKept == null ? "" : ", trimmedBeforeTime=?, trimmedBeforeID=?") + " WHERE patientMID=?")) {
+			int i = 1;
+			ps.setLong(i++, patientMID);
+			if (oldestKept != null) {
+				ps.setTimestamp(i++, new Timestamp(oldestKept.getTimeLogged()));
+				ps.setLong(i++, oldestKept.getTransactionID());
+			}
+			ps.setLong(i, patientMID);
+			ps.executeUpdate();
+		}
+		return oldestKept;
+	}
+
+	private static TransactionCursor trimmedBefore(ResultSet rs) throws SQLException {
+		Timestamp time = rs.getTimestamp("trimmedBeforeTime");
+		return time == null ? null : new TransactionCursor(time.getTime(), rs.getLong("trimmedBeforeID"));
+	}
+
+	private static boolean isOlder(TransactionCursor a, TransactionCursor b) {
+		return a.getTimeLogged() < b.getTimeLogged()
+				|| (a.getTimeLogged() == b.getTimeLogged() && a.getTransactionID() < b.getTransactionID());
+	}
+
+	private static int bindSeek(PreparedStatement ps, int i, TransactionCursor after) throws SQLException {
+		Timestamp time = new Timestamp(after.getTimeLogged());
+		ps.setTimestamp(i++, time);
+		ps.setTimestamp(i++, time);
+		ps.setLong(i++, after.getTransactionID());
+		return i;
+	}
+
+	private static String params(int count) {
+		StringBuilder in = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			in.append(i == 0 ? "?" : ",?");
+		return in.toString();
+	}
+}
@@ -4,12 +4,17 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
 import edu.ncsu.csc.itrust.model.old.beans.AllergyBean;
 import edu.ncsu.csc.itrust.model.old.beans.loaders.AllergyBeanLoader;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.report.ReportResultCache;
 
 /**
  * DAO stands for Database Access Object. All DAOs are intended to be
@@ -23,6 +28,7 @@ import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
  * connections and/or accessing other DAOs.
  */
 public class AllergyDAO {
+	private static final int MAX_IN_LIST = 500;
 
 	private DAOFactory factory;
 	private transient final AllergyBeanLoader allergyBeanLoader = new AllergyBeanLoader();
@@ -47,7 +53,7 @@ public class AllergyDAO {
 	 * @throws DBException
 	 */
 	public List<AllergyBean> getAllergies(final long pid) throws DBException {
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement stmt = conn
 						.prepareStatement("SELECT * FROM allergies WHERE PatientID=? ORDER BY FirstFound DESC")) {
 			stmt.setLong(1, pid);
@@ -59,6 +65,44 @@ public class AllergyDAO {
 		}
 	}
 
+	/**
+	 * Returns the allergies of each of the patients, as
+	 * {@link #getAllergies(long)} would, querying for them in batches.
+	 * 
+	 * @param mids
+	 *            The MIDs of the patients we are looking up.
+	 * @return Each patient's AllergyBeans by MID; patients without any are
+	 *         left out.
+	 * @throws DBException
+	 */
+	public Map<Long, List<AllergyBean>> getAllergies(final List<Long> mids) throws DBException {
+		final Map<Long, List<AllergyBean>> allergies = new HashMap<Long, List<AllergyBean>>();
+		try (Connection conn = factory.getReadConnection()) {
+			for (int start = 0; start < mids.size(); start += MAX_IN_LIST) {
+				final List<Long> chunk = mids.subList(start, Math.min(mids.size(), start + MAX_IN_LIST));
+				final StringBuilder sql = new StringBuilder("SELECT * FROM allergies WHERE PatientID IN (");
+				for (int i = 0; i < chunk.size(); i++) {
+					sql.append(i == 0 ? "?" : ",?");
+				}
+				sql.append(") ORDER BY PatientID, FirstFound DESC");
+				try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+					for (int i = 0; i < chunk.size(); i++) {
+						stmt.setLong(i + 1, chunk.get(i));
+					}
+					try (ResultSet results = stmt.executeQuery()) {
+						while (results.next()) {
+							allergies.computeIfAbsent(results.getLong("PatientID"), mid -> new ArrayList<AllergyBean>())
+									.add(allergyBeanLoader.loadSingle(results));
+						}
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		return allergies;
+	}
+
 	/**
 	 * Adds an allergy to this patient's list.
 	 * 
@@ -79,6 +123,8 @@ public class AllergyDAO {
 			}
 			stmt.setString(4, allergy.getDescription());
 			stmt.executeUpdate();
+			ReportResultCache.tableChanged("allergies");
+			EmergencyRecordSnapshots.patientChanged(allergy.getPatientID());
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
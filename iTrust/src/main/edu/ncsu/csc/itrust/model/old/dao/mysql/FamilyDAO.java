@@ -4,7 +4,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.old.beans.FamilyMemberBean;
@@ -28,8 +31,8 @@ import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
  * 
  */
 public class FamilyDAO {
+	private static final int MAX_IN_LIST = 500;
 	private DAOFactory factory;
-	private FamilyBeanLoader familyBeanLoader;
 
 	/**
 	 * The typical constructor.
@@ -104,8 +107,8 @@ public class FamilyDAO {
 	 */
 	private List<FamilyMemberBean> getFamilyMembers(long pid, String relation, String query, boolean secondParam)
 			throws DBException {
-		familyBeanLoader = new FamilyBeanLoader(relation);
-		try (Connection conn = factory.getConnection();
+		FamilyBeanLoader familyBeanLoader = new FamilyBeanLoader(relation);
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setLong(1, pid);
 			if (secondParam)
@@ -118,4 +121,80 @@ public class FamilyDAO {
 			throw new DBException(e);
 		}
 	}
+
+	/**
+	 * Returns the parents of each of the patients, as {@link #getParents(long)}
+	 * would, querying for them in batches.
+	 * 
+	 * @param mids
+	 *            The patients
+	 * @return Each patient's parents by MID; patients without any are left
+	 *         out.
+	 * @throws DBException
+	 */
+	public Map<Long, List<FamilyMemberBean>> getParents(List<Long> mids) throws DBException {
+		return getFamilyMembers(mids, "Parent", "(p1.MotherMID=p2.MID OR p1.FatherMID=p2.MID)");
+	}
+
+	/**
+	 * Returns the siblings of each of the patients, as
+	 * {@link #getSiblings(long)} would, querying for them in batches.
+	 * 
+	 * @param mids
+	 *            The patients
+	 * @return Each patient's siblings by MID; patients without any are left
+	 *         out.
+	 * @throws DBException
+	 */
+	public Map<Long, List<FamilyMemberBean>> getSiblings(List<Long> mids) throws DBException {
+		return getFamilyMembers(mids, "Sibling", "p1.MID<>p2.MID "
+				+ "AND( (p1.MotherMID=p2.MotherMID AND p2.MotherMID<>0)"
+				+ "  OR (p1.FatherMID=p2.FatherMID AND p1.FatherMID<>0))");
+	}
+
+	/**
+	 * Returns the children of each of the patients, as
+	 * {@link #getChildren(long)} would, querying for them in batches.
+	 * 
+	 * @param mids
+	 *            The patients
+	 * @return Each patient's children by MID; patients without any are left
+	 *         out.
+	 * @throws DBException
+	 */
+	public Map<Long, List<FamilyMemberBean>> getChildren(List<Long> mids) throws DBException {
+		return getFamilyMembers(mids, "Child", "(p2.MotherMID=p1.MID OR p2.FatherMID=p1.MID)");
+	}
+
+	/**
+	 * Batched version of the helper above: joins each patient p1 to its
+	 * relatives p2.
+	 */
+	private Map<Long, List<FamilyMemberBean>> getFamilyMembers(List<Long> mids, String relation, String join)
+			throws DBException {
+		FamilyBeanLoader familyBeanLoader = new FamilyBeanLoader(relation);
+		Map<Long, List<FamilyMemberBean>> members = new HashMap<Long, List<FamilyMemberBean>>();
+		try (Connection conn = factory.getReadConnection()) {
+			for (int start = 0; start < mids.size(); start += MAX_IN_LIST) {
+				List<Long> chunk = mids.subList(start, Math.min(mids.size(), start + MAX_IN_LIST));
+				StringBuilder sql = new StringBuilder("SELECT p1.MID AS PatientMID, p2.FirstName AS FirstName, "
+						+ "p2.LastName AS LastName, p2.MID as MID FROM patients p1, patients p2 WHERE p1.MID IN (");
+				for (int i = 0; i < chunk.size(); i++)
+					sql.append(i == 0 ? "?" : ",?");
+				sql.append(") AND ").append(join);
+				try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+					for (int i = 0; i < chunk.size(); i++)
+						stmt.setLong(i + 1, chunk.get(i));
+					try (ResultSet rs = stmt.executeQuery()) {
+						while (rs.next())
+							members.computeIfAbsent(rs.getLong("PatientMID"), mid -> new ArrayList<FamilyMemberBean>())
+									.add(familyBeanLoader.loadSingle(rs));
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		return members;
+	}
 }
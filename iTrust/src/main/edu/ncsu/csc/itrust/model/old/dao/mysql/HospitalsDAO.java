@@ -154,9 +154,16 @@ public class HospitalsDAO {
 	public boolean assignHospital(long hcpID, String hospitalID) throws DBException, ITrustException {
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = conn.prepareStatement("INSERT INTO hcpassignedhos (HCPID, HosID) VALUES (?,?)");) {
+			PersonnelIndex index = PersonnelIndex.getShared();
+			if (index != null)
+				index.refreshIfChanged(conn);
 			stmt.setLong(1, hcpID);
 			stmt.setString(2, hospitalID);
 			boolean successfullyAdded = stmt.executeUpdate() == 1;
+			if (index != null) {
+				index.assign(hcpID, hospitalID, true);
+				index.markSynced(conn);
+			}
 			return successfullyAdded;
 		} catch (SQLException e) {
 			if (1062 == e.getErrorCode()) {
@@ -181,9 +188,16 @@ public class HospitalsDAO {
 	public boolean removeHospitalAssignment(long hcpID, String hospitalID) throws DBException {
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = conn.prepareStatement("DELETE FROM hcpassignedhos WHERE HCPID = ? AND HosID = ?");) {
+			PersonnelIndex index = PersonnelIndex.getShared();
+			if (index != null)
+				index.refreshIfChanged(conn);
 			stmt.setLong(1, hcpID);
 			stmt.setString(2, hospitalID);
 			boolean successfullyRemoved = stmt.executeUpdate() == 1;
+			if (index != null) {
+				index.assign(hcpID, hospitalID, false);
+				index.markSynced(conn);
+			}
 			return successfullyRemoved;
 		} catch (SQLException e) {
 			throw new DBException(e);
@@ -202,8 +216,15 @@ public class HospitalsDAO {
 	public int removeAllHospitalAssignmentsFrom(long hcpID) throws DBException {
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = conn.prepareStatement("DELETE FROM hcpassignedhos WHERE HCPID = ?");) {
+			PersonnelIndex index = PersonnelIndex.getShared();
+			if (index != null)
+				index.refreshIfChanged(conn);
 			stmt.setLong(1, hcpID);
 			int numRemoved = stmt.executeUpdate();
+			if (index != null) {
+				index.unassignAll(hcpID);
+				index.markSynced(conn);
+			}
 			return numRemoved;
 		} catch (SQLException e) {
 			throw new DBException(e);
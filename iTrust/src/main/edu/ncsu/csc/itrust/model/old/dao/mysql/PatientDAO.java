@@ -4,17 +4,23 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import edu.ncsu.csc.itrust.DBUtil;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.ITrustException;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.beans.PersonnelBean;
 import edu.ncsu.csc.itrust.model.old.beans.loaders.PatientLoader;
 import edu.ncsu.csc.itrust.model.old.beans.loaders.PersonnelLoader;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.report.ReportResultCache;
 
 /**
  * Used for managing all static information related to a patient. For other
@@ -31,6 +37,8 @@ import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
  * connections and/or accessing other DAOs.
  */
 public class PatientDAO {
+	private static final int MAX_IN_LIST = 500;
+
 	private DAOFactory factory;
 	private PatientLoader patientLoader;
 	private PersonnelLoader personnelLoader;
@@ -115,10 +123,26 @@ public class PatientDAO {
 	 * @throws DBException
 	 */
 	public long addEmptyPatient() throws DBException {
+		PatientNameIndex index = PatientNameIndex.getShared();
+		PatientDemographicIndex demographics = PatientDemographicIndex.getShared();
 		try (Connection conn = factory.getConnection();
 				PreparedStatement ps = conn.prepareStatement("INSERT INTO patients(MID) VALUES(NULL)")) {
+			if (index != null)
+				index.refreshIfChanged(conn);
+			if (demographics != null)
+				demographics.refreshIfChanged(conn);
 			ps.executeUpdate();
-			return DBUtil.getLastInsert(conn);
+			long mid = DBUtil.getLastInsert(conn);
+			ReportResultCache.tableChanged("patients");
+			if (index != null) {
+				index.put(mid, null, null, false);
+				index.markSynced(conn);
+			}
+			if (demographics != null) {
+				demographics.reload(conn, mid);
+				demographics.markSynced(conn);
+			}
+			return mid;
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -164,8 +188,25 @@ public class PatientDAO {
 								+ "BloodType=?,Ethnicity=?,Gender=?,TopicalNotes=?, CreditCardType=?, CreditCardNumber=?, "
 								+ "DirectionsToHome=?, Religion=?, Language=?, SpiritualPractices=?, "
 								+ "AlternateName=?, DateOfDeactivation=? WHERE MID=?"), p)) {
+			PatientNameIndex index = PatientNameIndex.getShared();
+			PatientDemographicIndex demographics = PatientDemographicIndex.getShared();
+			if (index != null)
+				index.refreshIfChanged(conn);
+			if (demographics != null)
+				demographics.refreshIfChanged(conn);
 			ps.setLong(37, p.getMID());
 			ps.executeUpdate();
+			ReportResultCache.tableChanged("patients");
+			EmergencyRecordSnapshots.patientChanged(p.getMID());
+			if (index != null) {
+				index.put(p.getMID(), p.getFirstName(), p.getLastName(),
+						p.getDateOfDeactivationStr() != null && !p.getDateOfDeactivationStr().isEmpty());
+				index.markSynced(conn);
+			}
+			if (demographics != null) {
+				demographics.reload(conn, p.getMID());
+				demographics.markSynced(conn);
+			}
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -204,7 +245,7 @@ public class PatientDAO {
 		if (pid == 0L) {
 			throw new DBException(new SQLException("pid cannot be 0"));
 		}
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM declaredhcp, personnel "
 						+ "WHERE PatientID=? AND personnel.MID=declaredhcp.HCPID")) {
 			ps.setLong(1, pid);
@@ -217,6 +258,41 @@ public class PatientDAO {
 		}
 	}
 
+	/**
+	 * Returns the HCPs declared by each of the patients, as
+	 * {@link #getDeclaredHCPs(long)} would, querying for them in batches.
+	 * 
+	 * @param mids
+	 *            The MIDs of the patients in question.
+	 * @return Each patient's declared HCPs by MID; patients without any are
+	 *         left out.
+	 * @throws DBException
+	 */
+	public Map<Long, List<PersonnelBean>> getDeclaredHCPs(List<Long> mids) throws DBException {
+		Map<Long, List<PersonnelBean>> hcps = new HashMap<Long, List<PersonnelBean>>();
+		try (Connection conn = factory.getReadConnection()) {
+			for (int start = 0; start < mids.size(); start += MAX_IN_LIST) {
+				List<Long> chunk = mids.subList(start, Math.min(mids.size(), start + MAX_IN_LIST));
+				StringBuilder sql = new StringBuilder("SELECT * FROM declaredhcp, personnel WHERE PatientID IN (");
+				for (int i = 0; i < chunk.size(); i++)
+					sql.append(i == 0 ? "?" : ",?");
+				sql.append(") AND personnel.MID=declaredhcp.HCPID");
+				try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+					for (int i = 0; i < chunk.size(); i++)
+						ps.setLong(i + 1, chunk.get(i));
+					try (ResultSet rs = ps.executeQuery()) {
+						while (rs.next())
+							hcps.computeIfAbsent(rs.getLong("PatientID"), mid -> new ArrayList<PersonnelBean>())
+									.add(personnelLoader.loadSingle(rs));
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		return hcps;
+	}
+
 	/**
 	 * Declares an HCP for a particular patient
 	 * 
@@ -234,6 +310,7 @@ public class PatientDAO {
 			ps.setLong(1, pid);
 			ps.setLong(2, hcpID);
 			boolean successfullyAdded = ps.executeUpdate() == 1;
+			ReportResultCache.tableChanged("declaredhcp");
 			return successfullyAdded;
 		} catch (SQLException e) {
 			if (e.getErrorCode() == 1062) {
@@ -260,6 +337,7 @@ public class PatientDAO {
 			ps.setLong(1, pid);
 			ps.setLong(2, hcpID);
 			boolean successfullyDeleted = ps.executeUpdate() == 1;
+			ReportResultCache.tableChanged("declaredhcp");
 			return successfullyDeleted;
 		} catch (SQLException e) {
 			throw new DBException(e);
@@ -399,6 +477,7 @@ public class PatientDAO {
 			ps.setLong(2, representee);
 
 			boolean successfullyAdded = ps.executeUpdate() == 1;
+			ReportResultCache.tableChanged("representatives");
 			return successfullyAdded;
 		} catch (SQLException e) {
 			if (e.getErrorCode() == 1062) {
@@ -461,6 +540,7 @@ public class PatientDAO {
 			ps.setLong(1, representer);
 			ps.setLong(2, representee);
 			boolean successfullyDeleted = ps.executeUpdate() == 1;
+			ReportResultCache.tableChanged("representatives");
 			return successfullyDeleted;
 		} catch (SQLException e) {
 			throw new DBException(e);
@@ -488,6 +568,7 @@ public class PatientDAO {
 			
 			deleteStatement.setLong(1, representerMID);
 			deleteStatement.executeUpdate();
+			ReportResultCache.tableChanged("representatives");
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -507,6 +588,7 @@ public class PatientDAO {
 				PreparedStatement updateStatement = conn.prepareStatement("UPDATE users SET isDependent=0 WHERE MID=?")) {
 			deleteStatement.setLong(1, representeeMID);
 			deleteStatement.executeUpdate();
+			ReportResultCache.tableChanged("representatives");
 
 			updateStatement.setLong(1, representeeMID);
 			updateStatement.executeUpdate();
@@ -515,6 +597,81 @@ public class PatientDAO {
 		}
 	}
 
+	/**
+	 * Lists the patients matching a condition, such as a compiled group report
+	 * query.
+	 * 
+	 * @param condition
+	 *            A condition on the patients table, aliased <code>p</code>
+	 * @param params
+	 *            The condition's parameters, in order
+	 * @return A java.util.List of PatientBeans representing the patients.
+	 * @throws DBException
+	 */
+	public List<PatientBean> getPatientsWhere(String condition, List<Object> params) throws DBException {
+		try (Connection conn = factory.getReadConnection();
+				PreparedStatement ps = conn.prepareStatement("SELECT p.* FROM patients p WHERE " + condition)) {
+			for (int i = 0; i < params.size(); i++)
+				ps.setObject(i + 1, params.get(i));
+			try (ResultSet rs = ps.executeQuery()) {
+				return patientLoader.loadList(rs);
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Lists the MIDs of the patients matching a condition, in the order
+	 * {@link #getPatientsWhere(String, List)} would list the patients.
+	 * 
+	 * @param condition
+	 *            A condition on the patients table, aliased <code>p</code>
+	 * @param params
+	 *            The condition's parameters, in order
+	 * @return A java.util.List of MIDs.
+	 * @throws DBException
+	 */
+	public List<Long> getPatientMIDsWhere(String condition, List<Object> params) throws DBException {
+		try (Connection conn = factory.getReadConnection();
+				PreparedStatement ps = conn.prepareStatement("SELECT p.MID FROM patients p WHERE " + condition)) {
+			for (int i = 0; i < params.size(); i++)
+				ps.setObject(i + 1, params.get(i));
+			try (ResultSet rs = ps.executeQuery()) {
+				List<Long> mids = new ArrayList<Long>();
+				while (rs.next())
+					mids.add(rs.getLong(1));
+				return mids;
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Lists the MIDs of the patients matching every one of a group report's
+	 * filters, found with the shared {@link PatientDemographicIndex} instead of
+	 * a query. The index is rebuilt first if the patients table was changed
+	 * behind its back.
+	 * 
+	 * @param filters
+	 *            The report's filters
+	 * @return A java.util.List of MIDs in increasing order, or null if there's
+	 *         no index or a filter can't be answered from it
+	 * @throws DBException
+	 */
+	public List<Long> getIndexedPatientMIDs(final List<ReportFilter> filters) throws DBException {
+		PatientDemographicIndex index = PatientDemographicIndex.getShared();
+		if (index == null)
+			return null;
+		try (Connection conn = factory.getConnection()) {
+			index.refreshIfChanged(conn);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		return index.findMIDs(i -> ReportFilter.selectAll(filters, i));
+	}
+
 	/**
 	 * Lists every patient in the database.
 	 * 
@@ -522,7 +679,7 @@ public class PatientDAO {
 	 * @throws DBException
 	 */
 	public List<PatientBean> getAllPatients() throws DBException {
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM patients ");
 				ResultSet rs = ps.executeQuery()) {
 			return patientLoader.loadList(rs);
@@ -602,7 +759,7 @@ public class PatientDAO {
 			return new Vector<PatientBean>();
 		}
 		
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM patients WHERE firstName LIKE ? AND lastName LIKE ?")) {
 			ps.setString(1, first);
 			ps.setString(2, last);
@@ -631,7 +788,7 @@ public class PatientDAO {
 			return new Vector<PatientBean>();
 		}
 
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn
 						.prepareStatement("SELECT * FROM patients WHERE firstName LIKE ? AND lastName LIKE ?")) {
 			ps.setString(1, "%" + first + "%");
@@ -655,7 +812,7 @@ public class PatientDAO {
 	 * @throws DBException
 	 */
 	public List<PatientBean> fuzzySearchForPatientsWithMID(long MID) throws DBException {
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM patients WHERE MID LIKE ? ORDER BY MID")) {
 			ps.setString(1, "%" + MID + "%");
 
@@ -668,6 +825,89 @@ public class PatientDAO {
 		}
 	}
 
+	/**
+	 * Returns the patients matching a search from the patient search box, found
+	 * with the shared {@link PatientNameIndex}.
+	 * 
+	 * @param query
+	 *            The search, as typed
+	 * @param allowDeactivated
+	 *            true to include deactivated patients
+	 * @param limit
+	 *            The most patients to return, best matches first, or 0 for
+	 *            every match in MID order
+	 * @return A java.util.List of PatientBeans.
+	 * @throws DBException
+	 */
+	public List<PatientBean> searchPatientNameIndex(String query, boolean allowDeactivated, int limit)
+			throws DBException {
+		return getPatients(searchPatientNameIndexMIDs(query, allowDeactivated, limit));
+	}
+
+	/**
+	 * Returns the MIDs of the patients matching a search from the patient
+	 * search box, found with the shared {@link PatientNameIndex}. If the
+	 * patients table was changed behind the index's back, the index is rebuilt
+	 * in the background and this search still uses the old one.
+	 * 
+	 * @param query
+	 *            The search, as typed
+	 * @param allowDeactivated
+	 *            true to include deactivated patients
+	 * @param limit
+	 *            The most MIDs to return, best matches first, or 0 for every
+	 *            match in MID order
+	 * @return A java.util.List of MIDs.
+	 * @throws DBException
+	 */
+	public List<Long> searchPatientNameIndexMIDs(String query, boolean allowDeactivated, int limit)
+			throws DBException {
+		PatientNameIndex index = PatientNameIndex.getShared();
+		if (index == null)
+			throw new IllegalStateException("The patient name index hasn't been built");
+		index.checkForChanges(factory);
+		return limit > 0 ? index.findTop(query, allowDeactivated, limit) : index.findAll(query, allowDeactivated);
+	}
+
+	/**
+	 * Returns the patients with the given MIDs, querying for them in batches.
+	 * 
+	 * @param mids
+	 *            The MIDs of the patients to retrieve.
+	 * @return A java.util.List of PatientBeans, in the same order as the MIDs;
+	 *         MIDs with no patient are left out.
+	 * @throws DBException
+	 */
+	public List<PatientBean> getPatients(List<Long> mids) throws DBException {
+		Map<Long, PatientBean> found = new HashMap<Long, PatientBean>();
+		try (Connection conn = factory.getReadConnection()) {
+			for (int start = 0; start < mids.size(); start += MAX_IN_LIST) {
+				List<Long> chunk = mids.subList(start, Math.min(mids.size(), start + MAX_IN_LIST));
+				StringBuilder sql = new StringBuilder("SELECT * FROM patients WHERE MID IN (");
+				for (int i = 0; i < chunk.size(); i++)
+					sql.append(i == 0 ? "?" : ",?");
+				sql.append(")");
+				try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+					for (int i = 0; i < chunk.size(); i++)
+						ps.setLong(i + 1, chunk.get(i));
+					try (ResultSet rs = ps.executeQuery()) {
+						for (PatientBean patient : patientLoader.loadList(rs))
+							found.put(patient.getMID(), patient);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		List<PatientBean> patients = new ArrayList<PatientBean>(found.size());
+		for (Long mid : mids) {
+			PatientBean patient = found.get(mid);
+			if (patient != null)
+				patients.add(patient);
+		}
+		return patients;
+	}
+
 	/**
 	 * Allows a patient to add a designated nutritionist. Only the designated
 	 * nutritionist will be able to view the patient's nutritional information.
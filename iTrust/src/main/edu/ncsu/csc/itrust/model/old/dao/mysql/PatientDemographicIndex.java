@@ -0,0 +1,450 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+import edu.ncsu.csc.itrust.model.CompressedBitmap;
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+
+/**
+ * An in-memory, column by column snapshot of the patients table's
+ * low-cardinality demographics (see {@link Attribute}), for counting and
+ * listing cohorts without scanning the table. Patients are numbered by slot,
+ * and each distinct value of each attribute has a {@link CompressedBitmap} of
+ * the slots of the patients who have it. A filter on an attribute ORs the
+ * bitmaps of the values it matches, and filters are combined by ANDing those.
+ *
+ * Values are kept as a PatientBean loaded from the table would give them, so
+ * the report filters match the same patients here as they do in Java.
+ *
+ * Like {@link PatientNameIndex}, the shared index is built when the webapp
+ * starts, kept up to date by {@link PatientDAO#addEmptyPatient()} and
+ * {@link PatientDAO#editPatient(PatientBean, long)} re-reading the patient they
+ * wrote, and rebuilt by {@link #refreshIfChanged(Connection)} if the table was
+ * changed any other way.
+ */
+public class PatientDemographicIndex {
+	private static final String UPDATE_TIME = "SELECT UPDATE_TIME FROM information_schema.TABLES "
+			+ "WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME='patients'";
+	private static final String COLUMNS = "MID, Gender, city, state, zip, BloodType, Ethnicity, iCName, iCCity, "
+			+ "ICState, DateOfDeactivation";
+
+	/**
+	 * The patient attributes that are indexed.
+	 */
+	public enum Attribute {
+		GENDER, CITY, STATE, ZIP, BLOOD_TYPE, ETHNICITY, INSURE_NAME, INSURE_CITY, INSURE_STATE,
+		/** "true" or "false" */
+		DEACTIVATED;
+
+		/**
+		 * @param patient
+		 *            A patient
+		 * @return The patient's value of this attribute, possibly null
+		 */
+		public String valueOf(PatientBean patient) {
+			switch (this) {
+			case GENDER:
+				return patient.getGender().toString();
+			case CITY:
+				return patient.getCity();
+			case STATE:
+				return patient.getState();
+			case ZIP:
+				return patient.getZip();
+			case BLOOD_TYPE:
+				return patient.getBloodType().getName();
+			case ETHNICITY:
+				return patient.getEthnicity().getName();
+			case INSURE_NAME:
+				return patient.getIcName();
+			case INSURE_CITY:
+				return patient.getIcCity();
+			case INSURE_STATE:
+				return patient.getIcState();
+			default:
+				return Boolean.toString(!"".equals(patient.getDateOfDeactivationStr()));
+			}
+		}
+	}
+
+	private static volatile PatientDemographicIndex shared;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Data data = new Data();
+	private volatile Timestamp syncedUpdateTime;
+
+	/**
+	 * @return The index group reports use, or null if they're run with SQL
+	 */
+	public static PatientDemographicIndex getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param index
+	 *            The index for group reports to use, or null to run them with
+	 *            SQL
+	 */
+	public static void setShared(PatientDemographicIndex index) {
+		shared = index;
+	}
+
+	/**
+	 * Builds the index from scratch from the patients table.
+	 *
+	 * @param conn
+	 *            The connection to read the patients on
+	 * @throws SQLException
+	 */
+	public void build(Connection conn) throws SQLException {
+		Timestamp updateTime = getUpdateTime(conn);
+		Data fresh = new Data();
+		try (PreparedStatement ps = conn.prepareStatement("SELECT " + COLUMNS + " FROM patients ORDER BY MID",
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			ps.setFetchSize(Integer.MIN_VALUE);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next())
+					fresh.put(read(rs));
+			}
+		}
+		lock.writeLock().lock();
+		try {
+			data = fresh;
+			syncedUpdateTime = updateTime;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuilds the index if the patients table has been changed since the
+	 * index was last in step with it.
+	 *
+	 * @param conn
+	 *            A connection to the primary database
+	 * @return true if the index was rebuilt
+	 * @throws SQLException
+	 */
+	public boolean refreshIfChanged(Connection conn) throws SQLException {
+		Timestamp updateTime = getUpdateTime(conn);
+		if (updateTime == null || updateTime.equals(syncedUpdateTime))
+			return false;
+		synchronized (this) {
+			if (updateTime.equals(syncedUpdateTime))
+				return false;
+			build(conn);
+			return true;
+		}
+	}
+
+	/**
+	 * Records that the index reflects the patients table as it is now, after
+	 * the caller has both written to the table and updated the index.
+	 *
+	 * @param conn
+	 *            The connection the write was made on
+	 * @throws SQLException
+	 */
+	public void markSynced(Connection conn) throws SQLException {
+		syncedUpdateTime = getUpdateTime(conn);
+	}
+
+	/**
+	 * Re-reads one patient from the table into the index, after they've been
+	 * added or changed.
+	 *
+	 * @param conn
+	 *            The connection the write was made on
+	 * @param mid
+	 *            The patient's MID
+	 * @throws SQLException
+	 */
+	public void reload(Connection conn, long mid) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT " + COLUMNS + " FROM patients WHERE MID = ?")) {
+			ps.setLong(1, mid);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next())
+					put(read(rs));
+			}
+		}
+	}
+
+	/**
+	 * Adds a patient to the index, or updates them if they're already in it.
+	 *
+	 * @param patient
+	 *            The patient
+	 */
+	public void put(PatientBean patient) {
+		lock.writeLock().lock();
+		try {
+			data.put(patient);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of patients in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return data.slots;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return Roughly how many bytes the bitmaps take up
+	 */
+	public long sizeInBytes() {
+		lock.readLock().lock();
+		try {
+			long bytes = data.all.sizeInBytes();
+			for (Column column : data.columns.values()) {
+				for (CompressedBitmap bitmap : column.bitmaps)
+					bytes += bitmap.sizeInBytes();
+			}
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return Every patient
+	 */
+	public CompressedBitmap all() {
+		lock.readLock().lock();
+		try {
+			return data.all.copy();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param attribute
+	 *            An attribute
+	 * @return Its distinct values, in the order they were first seen
+	 */
+	public List<String> getValues(Attribute attribute) {
+		lock.readLock().lock();
+		try {
+			Column column = data.columns.get(attribute);
+			List<String> values = new ArrayList<String>();
+			for (int code = 0; code < column.values.size(); code++) {
+				if (!column.bitmaps.get(code).isEmpty())
+					values.add(column.values.get(code));
+			}
+			return values;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param attribute
+	 *            An attribute
+	 * @param matches
+	 *            Which of its values to match; patients with no value never
+	 *            match
+	 * @return The patients whose value matches
+	 */
+	public CompressedBitmap matching(Attribute attribute, Predicate<String> matches) {
+		lock.readLock().lock();
+		try {
+			Column column = data.columns.get(attribute);
+			CompressedBitmap result = new CompressedBitmap();
+			for (int code = 0; code < column.values.size(); code++) {
+				if (matches.test(column.values.get(code)))
+					result = CompressedBitmap.or(result, column.bitmaps.get(code));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds a cohort's MIDs. The selection is made and the MIDs looked up
+	 * against the same snapshot, so a rebuild can't come in between.
+	 *
+	 * @param selection
+	 *            Picks the cohort out of this index, e.g. by ANDing the results
+	 *            of {@link #matching(Attribute, Predicate)}, or returns null if
+	 *            it can't
+	 * @return The cohort's MIDs in increasing order, or null if the selection
+	 *         returned null
+	 */
+	public List<Long> findMIDs(Function<PatientDemographicIndex, CompressedBitmap> selection) {
+		lock.readLock().lock();
+		try {
+			CompressedBitmap patients = selection.apply(this);
+			return patients == null ? null : getMIDs(patients);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param selection
+	 *            Picks the cohort out of this index, or returns null if it
+	 *            can't
+	 * @return How many patients are in the cohort, or -1 if the selection
+	 *         returned null
+	 */
+	public int count(Function<PatientDemographicIndex, CompressedBitmap> selection) {
+		lock.readLock().lock();
+		try {
+			CompressedBitmap patients = selection.apply(this);
+			return patients == null ? -1 : patients.cardinality();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param patients
+	 *            Patients from this index
+	 * @return Their MIDs, in increasing order
+	 */
+	public List<Long> getMIDs(CompressedBitmap patients) {
+		final List<Long> mids = new ArrayList<Long>(patients.cardinality());
+		lock.readLock().lock();
+		try {
+			final long[] midOf = data.mids;
+			patients.forEach(new IntConsumer() {
+				@Override
+				public void accept(int slot) {
+					mids.add(midOf[slot]);
+				}
+			});
+			if (!data.inMIDOrder)
+				Collections.sort(mids);
+		} finally {
+			lock.readLock().unlock();
+		}
+		return mids;
+	}
+
+	private static PatientBean read(ResultSet rs) throws SQLException {
+		PatientBean p = new PatientBean();
+		p.setMID(rs.getLong("MID"));
+		p.setGenderStr(rs.getString("Gender"));
+		p.setCity(rs.getString("city"));
+		p.setState(rs.getString("state"));
+		p.setZip(rs.getString("zip"));
+		p.setBloodTypeStr(rs.getString("BloodType"));
+		p.setEthnicityStr(rs.getString("Ethnicity"));
+		p.setIcName(rs.getString("iCName"));
+		p.setIcCity(rs.getString("iCCity"));
+		p.setIcState(rs.getString("ICState"));
+		Date deactivated = rs.getDate("DateOfDeactivation");
+		if (deactivated != null)
+			p.setDateOfDeactivationStr(deactivated.toString());
+		return p;
+	}
+
+	private static Timestamp getUpdateTime(Connection conn) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(UPDATE_TIME); ResultSet rs = ps.executeQuery()) {
+			return rs.next() ? rs.getTimestamp(1) : null;
+		}
+	}
+
+	/**
+	 * One attribute's distinct values, each numbered by the order it was first
+	 * seen, with the bitmap of the patients that have it, and each slot's
+	 * value's number (-1 for none).
+	 */
+	private static class Column {
+		private final Map<String, Integer> codeOf = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+		private final List<CompressedBitmap> bitmaps = new ArrayList<CompressedBitmap>();
+		private int[] codes = new int[1024];
+
+		private void set(int slot, String value) {
+			if (slot == codes.length) {
+				int from = codes.length;
+				codes = Arrays.copyOf(codes, codes.length * 2);
+				Arrays.fill(codes, from, codes.length, -1);
+			}
+			int old = codes[slot];
+			Integer code = value == null ? null : codeOf.get(value);
+			if (value != null && code == null) {
+				code = values.size();
+				codeOf.put(value, code);
+				values.add(value);
+				bitmaps.add(new CompressedBitmap());
+			}
+			int now = code == null ? -1 : code;
+			if (old == now)
+				return;
+			if (old >= 0)
+				bitmaps.get(old).remove(slot);
+			if (now >= 0)
+				bitmaps.get(now).add(slot);
+			codes[slot] = now;
+		}
+	}
+
+	/**
+	 * The index itself. Slots are given out in the order patients are added,
+	 * which is MID order unless a patient is added with a lower MID than one
+	 * already there; patients are never removed.
+	 */
+	private static class Data {
+		private final Map<Long, Integer> slotOf = new HashMap<Long, Integer>();
+		private final Map<Attribute, Column> columns = new EnumMap<Attribute, Column>(Attribute.class);
+		private final CompressedBitmap all = new CompressedBitmap();
+		private long[] mids = new long[1024];
+		private int slots;
+		private boolean inMIDOrder = true;
+
+		Data() {
+			for (Attribute attribute : Attribute.values()) {
+				Column column = new Column();
+				Arrays.fill(column.codes, -1);
+				columns.put(attribute, column);
+			}
+		}
+
+		private void put(PatientBean patient) {
+			Integer existing = slotOf.get(patient.getMID());
+			int slot;
+			if (existing == null) {
+				slot = slots++;
+				if (slot == mids.length)
+					mids = Arrays.copyOf(mids, mids.length * 2);
+				if (slot > 0 && patient.getMID() < mids[slot - 1])
+					inMIDOrder = false;
+				mids[slot] = patient.getMID();
+				slotOf.put(patient.getMID(), slot);
+				all.add(slot);
+			} else {
+				slot = existing;
+			}
+			for (Map.Entry<Attribute, Column> column : columns.entrySet())
+				column.getValue().set(slot, column.getKey().valueOf(patient));
+		}
+	}
+}
@@ -0,0 +1,526 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+
+/**
+ * An in-memory index of every patient's first name, last name and MID, for
+ * the patient search box. Each of those is broken into trigrams (three
+ * character substrings), and each trigram lists the patients that contain it,
+ * so a query of three or more characters only looks at the patients that have
+ * its rarest trigram instead of scanning the table. Shorter queries scan the
+ * index in memory. Deactivated patients are kept in a bitmap and filtered out
+ * as they're found.
+ *
+ * The shared index is built when the webapp starts (see
+ * {@link #setShared(PatientNameIndex)}) and kept up to date by
+ * {@link PatientDAO#addEmptyPatient()} and
+ * {@link PatientDAO#editPatient(edu.ncsu.csc.itrust.model.old.beans.PatientBean, long)}.
+ * If the patients table changes any other way (e.g. test data being loaded),
+ * {@link #checkForChanges(DAOFactory)} notices from the table's update time,
+ * checked at most once every {@value #CHECK_INTERVAL} ms, and rebuilds the
+ * index on a background thread while searches keep using the old one.
+ * Patients put while a rebuild is reading the table are copied into the new
+ * index before it is swapped in, so the rebuild can't undo them. The update
+ * time only counts seconds, so a rebuild that read the table in the same
+ * second it was last changed isn't taken as being in step with it, and the
+ * next check rebuilds again.
+ *
+ * Matching follows the SQL search it replaces: a query is split on spaces, and
+ * a patient matches if every part is contained (ignoring case) in their first
+ * name or last name, or, for numbers, in their MID.
+ */
+public class PatientNameIndex {
+	/** How often, in ms, searches check whether the patients table was changed behind the index's back */
+	public static final long CHECK_INTERVAL = 1000;
+
+	private static final String UPDATE_TIME = "SELECT UPDATE_TIME, NOW() FROM information_schema.TABLES "
+			+ "WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME='patients'";
+
+	// below this many candidates, checking them beats narrowing them down further
+	private static final int INTERSECT_UNTIL = 256;
+
+	private static volatile PatientNameIndex shared;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Data data = new Data();
+	private volatile Timestamp syncedUpdateTime;
+	private volatile long checkedAt;
+	private final AtomicBoolean checking = new AtomicBoolean();
+	/** The patients put while a rebuild reads the table, or null if none is */
+	private Set<Long> putDuringBuild;
+
+	/**
+	 * @return The index the DAOs use, or null if patients are searched with
+	 *         SQL
+	 */
+	public static PatientNameIndex getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param index
+	 *            The index for the DAOs to use, or null to search with SQL
+	 */
+	public static void setShared(PatientNameIndex index) {
+		shared = index;
+	}
+
+	/**
+	 * Builds the index from scratch from the patients table. Searches keep
+	 * using the old index until the new one is ready.
+	 *
+	 * @param conn
+	 *            The connection to read the patients on
+	 * @throws SQLException
+	 */
+	public synchronized void build(Connection conn) throws SQLException {
+		Timestamp updateTime;
+		Timestamp now;
+		try (PreparedStatement ps = conn.prepareStatement(UPDATE_TIME); ResultSet rs = ps.executeQuery()) {
+			boolean found = rs.next();
+			updateTime = found ? rs.getTimestamp(1) : null;
+			now = found ? rs.getTimestamp(2) : null;
+		}
+		lock.writeLock().lock();
+		try {
+			putDuringBuild = new HashSet<Long>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		Data fresh = new Data();
+		boolean read = false;
+		try {
+			try (PreparedStatement ps = conn.prepareStatement(
+					"SELECT MID, firstName, lastName, DateOfDeactivation IS NOT NULL AS deactivated FROM patients",
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+				ps.setFetchSize(Integer.MIN_VALUE);
+				try (ResultSet rs = ps.executeQuery()) {
+					while (rs.next())
+						fresh.put(rs.getLong("MID"), rs.getString("firstName"), rs.getString("lastName"),
+								rs.getBoolean("deactivated"));
+				}
+			}
+			read = true;
+		} finally {
+			lock.writeLock().lock();
+			try {
+				if (read) {
+					for (long mid : putDuringBuild)
+						fresh.copy(data, mid);
+					data = fresh;
+					// a change later in the same second wouldn't move the update time, so check again next time
+					syncedUpdateTime = updateTime != null && now != null && updateTime.before(now) ? updateTime
+							: null;
+				}
+				putDuringBuild = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the patients table was changed behind the index's back,
+	 * at most once every {@link #CHECK_INTERVAL} ms, and rebuilds the index if
+	 * so. Both happen on a background thread, so the search that calls this
+	 * never waits for them.
+	 *
+	 * @param factory
+	 *            Where to get a connection to the primary database
+	 */
+	public void checkForChanges(final DAOFactory factory) {
+		long now = System.currentTimeMillis();
+		if (now - checkedAt < CHECK_INTERVAL || !checking.compareAndSet(false, true))
+			return;
+		checkedAt = now;
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try (Connection conn = factory.getConnection()) {
+					refreshIfChanged(conn);
+				} catch (SQLException e) {
+					System.err.println("Unable to refresh the patient name index: " + e.getMessage());
+				} finally {
+					checking.set(false);
+				}
+			}
+		}, "iTrust-PatientNameIndex");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Rebuilds the index if the patients table has been changed since the
+	 * index was last in step with it.
+	 *
+	 * @param conn
+	 *            A connection to the primary database
+	 * @return true if the index was rebuilt
+	 * @throws SQLException
+	 */
+	public boolean refreshIfChanged(Connection conn) throws SQLException {
+		Timestamp updateTime = getUpdateTime(conn);
+		if (updateTime == null || updateTime.equals(syncedUpdateTime))
+			return false;
+		synchronized (this) {
+			if (updateTime.equals(syncedUpdateTime))
+				return false;
+			build(conn);
+			return true;
+		}
+	}
+
+	/**
+	 * Records that the index reflects the patients table as it is now, after
+	 * the caller has both written to the table and updated the index.
+	 *
+	 * @param conn
+	 *            The connection the write was made on
+	 * @throws SQLException
+	 */
+	public void markSynced(Connection conn) throws SQLException {
+		syncedUpdateTime = getUpdateTime(conn);
+	}
+
+	/**
+	 * Adds a patient to the index, or updates them if they're already in it.
+	 *
+	 * @param mid
+	 *            The patient's MID
+	 * @param firstName
+	 *            Their first name
+	 * @param lastName
+	 *            Their last name
+	 * @param deactivated
+	 *            true if the patient is deactivated
+	 */
+	public void put(long mid, String firstName, String lastName, boolean deactivated) {
+		lock.writeLock().lock();
+		try {
+			data.put(mid, firstName, lastName, deactivated);
+			if (putDuringBuild != null)
+				putDuringBuild.add(mid);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of patients in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return data.slotOf.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds every patient matching a query.
+	 *
+	 * @param query
+	 *            The search, as typed
+	 * @param allowDeactivated
+	 *            true to include deactivated patients
+	 * @return The MIDs of the matching patients, in MID order
+	 */
+	public List<Long> findAll(String query, boolean allowDeactivated) {
+		final List<Long> mids = new ArrayList<Long>();
+		lock.readLock().lock();
+		try {
+			final Data d = data;
+			d.match(tokens(query), allowDeactivated, new MatchHandler() {
+				@Override
+				public void matched(int slot, int score) {
+					mids.add(d.mids[slot]);
+				}
+			});
+		} finally {
+			lock.readLock().unlock();
+		}
+		Collections.sort(mids);
+		return mids;
+	}
+
+	/**
+	 * Finds the best matches for a query. A part of the query that is a whole
+	 * name or MID ranks higher than one that starts it, which ranks higher
+	 * than one found in the middle; ties are broken by last name, first name,
+	 * then MID.
+	 *
+	 * @param query
+	 *            The search, as typed
+	 * @param allowDeactivated
+	 *            true to include deactivated patients
+	 * @param limit
+	 *            The most matches to return
+	 * @return The MIDs of the best matches, best first
+	 */
+	public List<Long> findTop(String query, boolean allowDeactivated, final int limit) {
+		if (limit <= 0)
+			return new ArrayList<Long>();
+		lock.readLock().lock();
+		try {
+			final Data d = data;
+			final Comparator<int[]> worstFirst = new Comparator<int[]>() {
+				@Override
+				public int compare(int[] a, int[] b) {
+					if (a[1] != b[1])
+						return Integer.compare(a[1], b[1]);
+					return d.compareNames(b[0], a[0]);
+				}
+			};
+			final PriorityQueue<int[]> best = new PriorityQueue<int[]>(Math.min(limit, 1024) + 1, worstFirst);
+			d.match(tokens(query), allowDeactivated, new MatchHandler() {
+				@Override
+				public void matched(int slot, int score) {
+					int[] match = { slot, score };
+					if (best.size() < limit)
+						best.add(match);
+					else if (worstFirst.compare(match, best.peek()) > 0) {
+						best.poll();
+						best.add(match);
+					}
+				}
+			});
+			int[][] ranked = best.toArray(new int[best.size()][]);
+			Arrays.sort(ranked, Collections.reverseOrder(worstFirst));
+			List<Long> mids = new ArrayList<Long>(ranked.length);
+			for (int[] match : ranked)
+				mids.add(d.mids[match[0]]);
+			return mids;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static Timestamp getUpdateTime(Connection conn) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(UPDATE_TIME); ResultSet rs = ps.executeQuery()) {
+			return rs.next() ? rs.getTimestamp(1) : null;
+		}
+	}
+
+	/**
+	 * Splits a query the way the SQL search did; empty parts match everyone
+	 * and are dropped.
+	 */
+	private static List<String> tokens(String query) {
+		List<String> tokens = new ArrayList<String>();
+		for (String token : query.toLowerCase(Locale.ENGLISH).split(" ")) {
+			if (!token.isEmpty())
+				tokens.add(token);
+		}
+		return tokens;
+	}
+
+	private static String normalize(String name) {
+		return name == null ? "" : name.toLowerCase(Locale.ENGLISH);
+	}
+
+	private static long trigram(String s, int i) {
+		return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+	}
+
+	private interface MatchHandler {
+		void matched(int slot, int score);
+	}
+
+	/**
+	 * The index itself. Patients are numbered by slot in the order they were
+	 * added, so each trigram's list of slots stays sorted.
+	 */
+	private static class Data {
+		private final Map<Long, Integer> slotOf = new HashMap<Long, Integer>();
+		// each trigram's slots, sorted, after the number of them
+		private final Map<Long, int[]> postings = new HashMap<Long, int[]>();
+		private final BitSet deactivated = new BitSet();
+		private long[] mids = new long[1024];
+		private String[] firstNames = new String[1024];
+		private String[] lastNames = new String[1024];
+		private String[] midStrings = new String[1024];
+		private int slots;
+
+		private void put(long mid, String firstName, String lastName, boolean isDeactivated) {
+			Integer existing = slotOf.get(mid);
+			int slot;
+			if (existing == null) {
+				slot = slots++;
+				if (slot == mids.length) {
+					int capacity = mids.length * 2;
+					mids = Arrays.copyOf(mids, capacity);
+					firstNames = Arrays.copyOf(firstNames, capacity);
+					lastNames = Arrays.copyOf(lastNames, capacity);
+					midStrings = Arrays.copyOf(midStrings, capacity);
+				}
+				slotOf.put(mid, slot);
+				mids[slot] = mid;
+				midStrings[slot] = Long.toString(mid);
+				post(midStrings[slot], slot);
+			} else {
+				slot = existing;
+			}
+			firstNames[slot] = normalize(firstName);
+			lastNames[slot] = normalize(lastName);
+			deactivated.set(slot, isDeactivated);
+			// trigrams of an old name are left behind; matches are always checked against the current name
+			post(firstNames[slot], slot);
+			post(lastNames[slot], slot);
+		}
+
+		/**
+		 * Puts a patient as they are in another index, if they're in it.
+		 */
+		private void copy(Data from, long mid) {
+			Integer slot = from.slotOf.get(mid);
+			if (slot != null)
+				put(mid, from.firstNames[slot], from.lastNames[slot], from.deactivated.get(slot));
+		}
+
+		private void post(String s, int slot) {
+			for (int i = 0; i + 3 <= s.length(); i++) {
+				Long key = trigram(s, i);
+				int[] list = postings.get(key);
+				if (list == null) {
+					list = new int[4];
+					postings.put(key, list);
+				}
+				int size = list[0];
+				int at = size + 1;
+				if (size > 0 && list[size] >= slot) {
+					at = Arrays.binarySearch(list, 1, size + 1, slot);
+					if (at >= 0)
+						continue;
+					at = -at - 1;
+				}
+				if (size + 1 == list.length) {
+					list = Arrays.copyOf(list, list.length * 2);
+					postings.put(key, list);
+				}
+				System.arraycopy(list, at, list, at + 1, size + 1 - at);
+				list[at] = slot;
+				list[0] = size + 1;
+			}
+		}
+
+		private void match(List<String> tokens, boolean allowDeactivated, MatchHandler handler) {
+			if (tokens.isEmpty())
+				return;
+			long[] numbers = new long[tokens.size()];
+			boolean[] numeric = new boolean[tokens.size()];
+			for (int t = 0; t < tokens.size(); t++) {
+				try {
+					numbers[t] = Long.parseLong(tokens.get(t));
+					numeric[t] = true;
+				} catch (NumberFormatException e) {
+					numeric[t] = false;
+				}
+			}
+			// the trigrams every match must have, rarest first
+			List<int[]> required = new ArrayList<int[]>();
+			for (int t = 0; t < tokens.size(); t++) {
+				String token = tokens.get(t);
+				// "007" matches MIDs containing "7", which its own trigrams can't find
+				if (numeric[t] && !token.equals(Long.toString(numbers[t])))
+					continue;
+				for (int i = 0; i + 3 <= token.length(); i++) {
+					int[] list = postings.get(trigram(token, i));
+					if (list == null)
+						return;
+					required.add(list);
+				}
+			}
+			Collections.sort(required, new Comparator<int[]>() {
+				@Override
+				public int compare(int[] a, int[] b) {
+					return Integer.compare(a[0], b[0]);
+				}
+			});
+			// null to scan every slot
+			int[] candidates = null;
+			int candidateCount = slots;
+			for (int[] list : required) {
+				if (candidates == null) {
+					candidates = Arrays.copyOfRange(list, 1, list[0] + 1);
+					candidateCount = list[0];
+				} else if (candidateCount > INTERSECT_UNTIL) {
+					candidateCount = intersect(candidates, candidateCount, list);
+				}
+			}
+			for (int c = 0; c < candidateCount; c++) {
+				int slot = candidates == null ? c : candidates[c];
+				if (!allowDeactivated && deactivated.get(slot))
+					continue;
+				int score = 0;
+				for (int t = 0; t < tokens.size() && score >= 0; t++) {
+					int tokenScore = Math.max(score(firstNames[slot], tokens.get(t)),
+							score(lastNames[slot], tokens.get(t)));
+					if (numeric[t])
+						tokenScore = Math.max(tokenScore, score(midStrings[slot], Long.toString(numbers[t])));
+					score = tokenScore == 0 ? -1 : score + tokenScore;
+				}
+				if (score >= 0)
+					handler.matched(slot, score);
+			}
+		}
+
+		/**
+		 * Keeps only the candidates that are also in the list.
+		 * 
+		 * @return The number of candidates left
+		 */
+		private static int intersect(int[] candidates, int count, int[] list) {
+			int kept = 0;
+			int from = 1;
+			for (int c = 0; c < count && from <= list[0]; c++) {
+				int at = Arrays.binarySearch(list, from, list[0] + 1, candidates[c]);
+				if (at >= 0) {
+					candidates[kept++] = candidates[c];
+					from = at + 1;
+				} else {
+					from = -at - 1;
+				}
+			}
+			return kept;
+		}
+
+		/**
+		 * @return 3 if the token is the whole field, 2 if it starts it, 1 if
+		 *         it's elsewhere in it, 0 if it isn't in it
+		 */
+		private static int score(String field, String token) {
+			if (field.startsWith(token))
+				return field.length() == token.length() ? 3 : 2;
+			return field.contains(token) ? 1 : 0;
+		}
+
+		private int compareNames(int a, int b) {
+			int cmp = lastNames[a].compareTo(lastNames[b]);
+			if (cmp == 0)
+				cmp = firstNames[a].compareTo(firstNames[b]);
+			return cmp != 0 ? cmp : Long.compare(mids[a], mids[b]);
+		}
+	}
+}
@@ -4,7 +4,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.Vector;
 
 import edu.ncsu.csc.itrust.exception.DBException;
@@ -15,6 +22,7 @@ import edu.ncsu.csc.itrust.model.old.beans.loaders.HospitalBeanLoader;
 import edu.ncsu.csc.itrust.model.old.beans.loaders.PersonnelLoader;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.enums.Role;
+import edu.ncsu.csc.itrust.report.ReportResultCache;
 
 /**
  * Used for managing information related to personnel: HCPs, UAPs, Admins
@@ -30,6 +38,7 @@ import edu.ncsu.csc.itrust.model.old.enums.Role;
  * connections and/or accessing other DAOs.
  */
 public class PersonnelDAO {
+	private static final int MAX_IN_LIST = 500;
 
 	private transient final DAOFactory factory;
 	private transient final PersonnelLoader personnelLoader;
@@ -111,11 +120,19 @@ public class PersonnelDAO {
 	public long addEmptyPersonnel(final Role role) throws DBException, ITrustException {
 		final long nextID = getNextID(role);
 
+		final PersonnelIndex index = PersonnelIndex.getShared();
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = conn.prepareStatement("INSERT INTO personnel(MID, Role) VALUES(?,?)")) {
+			if (index != null) {
+				index.refreshIfChanged(conn);
+			}
 			stmt.setString(1, Long.valueOf(nextID).toString());
 			stmt.setString(2, role.name());
 			stmt.executeUpdate();
+			if (index != null) {
+				index.put(nextID, role.name(), null, null, null);
+				index.markSynced(conn);
+			}
 			return nextID;
 		} catch (SQLException e) {
 			throw new DBException(e);
@@ -161,8 +178,18 @@ public class PersonnelDAO {
 						.loadParameters(conn.prepareStatement("UPDATE personnel SET AMID=?,firstName=?,lastName=?,"
 								+ "phone=?, address1=?,address2=?,city=?, state=?, zip=?, specialty=?, email=?"
 								+ " WHERE MID=?"), pBean)) {
+			final PersonnelIndex index = PersonnelIndex.getShared();
+			if (index != null) {
+				index.refreshIfChanged(conn);
+			}
 			stmt.setLong(12, pBean.getMID());
 			stmt.executeUpdate();
+			// declared HCPs are filtered on by name
+			ReportResultCache.tableChanged("personnel");
+			if (index != null) {
+				index.put(pBean.getMID(), null, pBean.getFirstName(), pBean.getLastName(), pBean.getSpecialty());
+				index.markSynced(conn);
+			}
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -247,6 +274,11 @@ public class PersonnelDAO {
 	 * @throws DBException
 	 */
 	public List<PersonnelBean> getPersonnelFromHospital(final String hosid, final String specialty) throws DBException {
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			return getPersonnel(index.find(new PersonnelIndex.Query().role("hcp").hospital(hosid)
+					.specialty(specialty.equalsIgnoreCase("all") ? null : specialty)));
+		}
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = specialty.equalsIgnoreCase("all")
 						? conn.prepareStatement(
@@ -279,6 +311,10 @@ public class PersonnelDAO {
 	 * @throws DBException
 	 */
 	public List<PersonnelBean> getPersonnelFromHospital(final String hosid) throws DBException {
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			return getPersonnel(index.find(new PersonnelIndex.Query().role("hcp").hospital(hosid)));
+		}
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = conn.prepareStatement(
 						"SELECT * FROM hcpassignedhos hah inner join personnel p where hah.hosID = ? and hah.HCPID = p.MID and p.role = 'hcp'")) {
@@ -349,6 +385,10 @@ public class PersonnelDAO {
 		if ("%".equals(first) && "%".equals(last)) {
 			return new Vector<PersonnelBean>();
 		}
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			return getPersonnel(index.findLike(first, last, null));
+		}
 
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = conn
@@ -396,6 +436,10 @@ public class PersonnelDAO {
 		if (first.equals("%") && last.equals("%")) {
 			return new Vector<PersonnelBean>();
 		}
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			return getPersonnel(index.findLike("%" + first + "%", "%" + last + "%", "hcp"));
+		}
 		try (Connection conn = factory.getConnection();
 				PreparedStatement stmt = conn.prepareStatement(
 						"SELECT * FROM personnel WHERE firstName LIKE ? AND lastName LIKE ? AND role='hcp'");) {
@@ -411,10 +455,61 @@ public class PersonnelDAO {
 		}
 	}
 
+	/**
+	 * Returns the experts found by the expert search box: for each word of the
+	 * query, those whose last name and then those whose first name contains it
+	 * (as in {@link #fuzzySearchForExpertsWithName(String, String)}), each
+	 * expert once, most recently found first. With the shared
+	 * {@link PersonnelIndex} the words are all looked up in memory and the
+	 * experts fetched in one go.
+	 * 
+	 * @param query
+	 *            The search, as typed
+	 * @return A java.util.List of PersonnelBeans.
+	 * @throws DBException
+	 */
+	public List<PersonnelBean> fuzzySearchForExperts(String query) throws DBException {
+		final PersonnelIndex index = getIndex();
+		final Set<Long> found = new HashSet<Long>();
+		List<PersonnelBean> experts = new ArrayList<PersonnelBean>();
+		if (index != null) {
+			final List<Long> mids = new ArrayList<Long>();
+			for (String word : query.split(" ")) {
+				for (long mid : index.findLike("%%", "%" + word + "%", "hcp")) {
+					if (found.add(mid))
+						mids.add(mid);
+				}
+				for (long mid : index.findLike("%" + word + "%", "%%", "hcp")) {
+					if (found.add(mid))
+						mids.add(mid);
+				}
+			}
+			experts = getPersonnel(mids);
+		} else {
+			for (String word : query.split(" ")) {
+				List<PersonnelBean> first = fuzzySearchForExpertsWithName(word, "");
+				for (PersonnelBean p : fuzzySearchForExpertsWithName("", word)) {
+					if (found.add(p.getMID()))
+						experts.add(p);
+				}
+				for (PersonnelBean p : first) {
+					if (found.add(p.getMID()))
+						experts.add(p);
+				}
+			}
+		}
+		Collections.reverse(experts);
+		return experts;
+	}
+
 	/**
 	 * Returns all of the personnel who have a specialty of nutritionist
 	 */
 	public List<PersonnelBean> getAllNutritionists() throws DBException {
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			return getPersonnel(index.find(new PersonnelIndex.Query().specialty("Nutritionist")));
+		}
 		try (Connection conn = factory.getConnection();
 				PreparedStatement ps = conn
 						.prepareStatement("SELECT * FROM personnel WHERE UPPER(specialty) = 'NUTRITIONIST'; ");
@@ -435,6 +530,12 @@ public class PersonnelDAO {
 	 * @throws DBException
 	 */
 	public List<PersonnelBean> getAllOphthalmologyPersonnel() throws DBException {
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			final List<Long> mids = new ArrayList<Long>(index.find(new PersonnelIndex.Query().specialty("Optometrist")));
+			mids.addAll(index.find(new PersonnelIndex.Query().specialty("Ophthalmologist")));
+			return getPersonnel(mids);
+		}
 		try (Connection conn = factory.getConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM personnel "
 						+ "WHERE specialty = 'Optometrist' or specialty = 'Ophthalmologist'; ");
@@ -445,4 +546,159 @@ public class PersonnelDAO {
 			throw new DBException(e);
 		}
 	}
+
+	/**
+	 * Returns the personnel matching a search on any of name, role, specialty
+	 * and assigned hospital.
+	 * 
+	 * @param query
+	 *            The search; see {@link PersonnelIndex.Query}
+	 * @return A java.util.List of PersonnelBeans, in MID order.
+	 * @throws DBException
+	 */
+	public List<PersonnelBean> searchPersonnel(final PersonnelIndex.Query query) throws DBException {
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			return getPersonnel(index.find(query));
+		}
+		final List<String> params = new ArrayList<String>();
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(
+						"SELECT * FROM personnel p WHERE " + searchConditions(query, true, params) + " ORDER BY MID")) {
+			for (int i = 0; i < params.size(); i++) {
+				stmt.setString(i + 1, params.get(i));
+			}
+			final ResultSet results = stmt.executeQuery();
+			final List<PersonnelBean> matches = personnelLoader.loadList(results);
+			results.close();
+			return matches;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Counts the personnel matching a search in each specialty, for narrowing
+	 * the search down. The search's own specialty is ignored.
+	 * 
+	 * @param query
+	 *            The search; see {@link PersonnelIndex.Query}
+	 * @return Specialty to the number of matching personnel in it, by
+	 *         specialty.
+	 * @throws DBException
+	 */
+	public Map<String, Integer> getSpecialtyCounts(final PersonnelIndex.Query query) throws DBException {
+		final PersonnelIndex index = getIndex();
+		if (index != null) {
+			return index.countSpecialties(query);
+		}
+		final List<String> params = new ArrayList<String>();
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("SELECT specialty, COUNT(*) FROM personnel p WHERE "
+						+ searchConditions(query, false, params) + " AND specialty <> '' GROUP BY specialty")) {
+			for (int i = 0; i < params.size(); i++) {
+				stmt.setString(i + 1, params.get(i));
+			}
+			final Map<String, Integer> counts = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+			try (ResultSet results = stmt.executeQuery()) {
+				while (results.next()) {
+					counts.put(results.getString(1).trim(), results.getInt(2));
+				}
+			}
+			return counts;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * The SQL for a search when there's no index, for personnel aliased p.
+	 */
+	private static String searchConditions(final PersonnelIndex.Query query, final boolean withSpecialty,
+			final List<String> params) {
+		final StringBuilder sql = new StringBuilder("1=1");
+		if (query.getRole() != null) {
+			sql.append(" AND p.role = ?");
+			params.add(query.getRole());
+		}
+		if (withSpecialty && query.getSpecialty() != null) {
+			sql.append(" AND p.specialty = ?");
+			params.add(query.getSpecialty());
+		}
+		if (query.getHospitalID() != null) {
+			sql.append(" AND EXISTS (SELECT * FROM hcpassignedhos hah WHERE hah.HCPID = p.MID AND hah.hosID = ?)");
+			params.add(query.getHospitalID());
+		}
+		for (final String word : query.getNameWords()) {
+			final String pattern = word.endsWith("*")
+					? escapeLike(word.substring(0, word.length() - 1)) + "%" : "%" + escapeLike(word) + "%";
+			sql.append(" AND (p.firstName LIKE ? OR p.lastName LIKE ?)");
+			params.add(pattern);
+			params.add(pattern);
+		}
+		return sql.toString();
+	}
+
+	private static String escapeLike(final String s) {
+		return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+
+	/**
+	 * Returns the personnel with the given MIDs, querying for them in batches.
+	 * 
+	 * @param mids
+	 *            The MIDs of the personnel to retrieve.
+	 * @return A java.util.List of PersonnelBeans, in the same order as the MIDs;
+	 *         MIDs with no personnel are left out.
+	 * @throws DBException
+	 */
+	public List<PersonnelBean> getPersonnel(final List<Long> mids) throws DBException {
+		final Map<Long, PersonnelBean> found = new HashMap<Long, PersonnelBean>();
+		try (Connection conn = factory.getConnection()) {
+			for (int start = 0; start < mids.size(); start += MAX_IN_LIST) {
+				final List<Long> chunk = mids.subList(start, Math.min(mids.size(), start + MAX_IN_LIST));
+				final StringBuilder sql = new StringBuilder("SELECT * FROM personnel WHERE MID IN (");
+				for (int i = 0; i < chunk.size(); i++) {
+					sql.append(i == 0 ? "?" : ",?");
+				}
+				sql.append(")");
+				try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+					for (int i = 0; i < chunk.size(); i++) {
+						stmt.setLong(i + 1, chunk.get(i));
+					}
+					try (ResultSet results = stmt.executeQuery()) {
+						for (final PersonnelBean bean : personnelLoader.loadList(results)) {
+							found.put(bean.getMID(), bean);
+						}
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		final List<PersonnelBean> personnel = new ArrayList<PersonnelBean>(found.size());
+		for (final Long mid : mids) {
+			final PersonnelBean bean = found.get(mid);
+			if (bean != null) {
+				personnel.add(bean);
+			}
+		}
+		return personnel;
+	}
+
+	/**
+	 * @return The shared {@link PersonnelIndex}, brought up to date with the
+	 *         tables, or null if personnel are searched with SQL
+	 */
+	private PersonnelIndex getIndex() throws DBException {
+		final PersonnelIndex index = PersonnelIndex.getShared();
+		if (index != null) {
+			try (Connection conn = factory.getConnection()) {
+				index.refreshIfChanged(conn);
+			} catch (SQLException e) {
+				throw new DBException(e);
+			}
+		}
+		return index;
+	}
 }
@@ -0,0 +1,568 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory index of the personnel table and the hospitals each HCP is
+ * assigned to, for finding personnel by name, role, specialty and hospital.
+ * Each role, specialty and hospital has a bitmap of the personnel in it, and
+ * so does each trigram (three character substring) of their names, so a
+ * search like "cardiology HCPs named Kel* at hospital 9191919191" is an
+ * intersection of bitmaps followed by a check of the few personnel left.
+ *
+ * The shared index is built when the webapp starts and kept up to date by
+ * {@link PersonnelDAO} and {@link HospitalsDAO} as they write; changes made to
+ * the personnel or hcpassignedhos tables any other way are noticed from the
+ * tables' update times by {@link #refreshIfChanged(Connection)}, which then
+ * rebuilds the index.
+ *
+ * Like MySQL, specialties and roles are compared ignoring case and trailing
+ * spaces, and names ignoring case.
+ */
+public class PersonnelIndex {
+	private static final String UPDATE_TIMES = "SELECT TABLE_NAME, UPDATE_TIME FROM information_schema.TABLES "
+			+ "WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME IN ('personnel','hcpassignedhos') ORDER BY TABLE_NAME";
+
+	private static volatile PersonnelIndex shared;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Data data = new Data();
+	private volatile String syncedUpdateTimes;
+
+	/**
+	 * A search of the index. Anything not set matches everyone.
+	 */
+	public static class Query {
+		private String name;
+		private String role;
+		private String specialty;
+		private String hospitalID;
+
+		/**
+		 * @param name
+		 *            Words that must each be in the first or last name; a word
+		 *            ending in * must start one of them instead
+		 * @return This query
+		 */
+		public Query named(String name) {
+			this.name = name;
+			return this;
+		}
+
+		/**
+		 * @param role
+		 *            The role, e.g. "hcp"
+		 * @return This query
+		 */
+		public Query role(String role) {
+			this.role = role;
+			return this;
+		}
+
+		/**
+		 * @param specialty
+		 *            The specialty
+		 * @return This query
+		 */
+		public Query specialty(String specialty) {
+			this.specialty = specialty;
+			return this;
+		}
+
+		/**
+		 * @param hospitalID
+		 *            The ID of a hospital the personnel are assigned to
+		 * @return This query
+		 */
+		public Query hospital(String hospitalID) {
+			this.hospitalID = hospitalID;
+			return this;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getRole() {
+			return role;
+		}
+
+		public String getSpecialty() {
+			return specialty;
+		}
+
+		public String getHospitalID() {
+			return hospitalID;
+		}
+
+		/**
+		 * @return The words of the name, lower case
+		 */
+		public List<String> getNameWords() {
+			List<String> words = new ArrayList<String>();
+			if (name != null) {
+				for (String word : name.toLowerCase(Locale.ENGLISH).split(" ")) {
+					if (!word.isEmpty() && !word.equals("*"))
+						words.add(word);
+				}
+			}
+			return words;
+		}
+	}
+
+	/**
+	 * @return The index the DAOs use, or null if they search with SQL
+	 */
+	public static PersonnelIndex getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param index
+	 *            The index for the DAOs to use, or null to search with SQL
+	 */
+	public static void setShared(PersonnelIndex index) {
+		shared = index;
+	}
+
+	/**
+	 * Builds the index from scratch from the personnel and hcpassignedhos
+	 * tables.
+	 *
+	 * @param conn
+	 *            The connection to read them on
+	 * @throws SQLException
+	 */
+	public void build(Connection conn) throws SQLException {
+		String updateTimes = getUpdateTimes(conn);
+		Data fresh = new Data();
+		try (PreparedStatement ps = conn
+				.prepareStatement("SELECT MID, role, firstName, lastName, specialty FROM personnel");
+				ResultSet rs = ps.executeQuery()) {
+			while (rs.next())
+				fresh.put(rs.getLong("MID"), rs.getString("role"), rs.getString("firstName"),
+						rs.getString("lastName"), rs.getString("specialty"));
+		}
+		try (PreparedStatement ps = conn.prepareStatement("SELECT HCPID, HosID FROM hcpassignedhos");
+				ResultSet rs = ps.executeQuery()) {
+			while (rs.next())
+				fresh.assign(rs.getLong("HCPID"), rs.getString("HosID"), true);
+		}
+		lock.writeLock().lock();
+		try {
+			data = fresh;
+			syncedUpdateTimes = updateTimes;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuilds the index if the personnel or hcpassignedhos table has been
+	 * changed since the index was last in step with them.
+	 *
+	 * @param conn
+	 *            A connection to the primary database
+	 * @return true if the index was rebuilt
+	 * @throws SQLException
+	 */
+	public boolean refreshIfChanged(Connection conn) throws SQLException {
+		String updateTimes = getUpdateTimes(conn);
+		if (updateTimes.equals(syncedUpdateTimes))
+			return false;
+		synchronized (this) {
+			if (updateTimes.equals(syncedUpdateTimes))
+				return false;
+			build(conn);
+			return true;
+		}
+	}
+
+	/**
+	 * Records that the index reflects the tables as they are now, after the
+	 * caller has both written to them and updated the index.
+	 *
+	 * @param conn
+	 *            The connection the write was made on
+	 * @throws SQLException
+	 */
+	public void markSynced(Connection conn) throws SQLException {
+		syncedUpdateTimes = getUpdateTimes(conn);
+	}
+
+	/**
+	 * Adds personnel to the index, or updates them if they're already in it.
+	 * Their hospitals are left as they were, and so is their role if it's
+	 * null.
+	 */
+	public void put(long mid, String role, String firstName, String lastName, String specialty) {
+		lock.writeLock().lock();
+		try {
+			data.put(mid, role, firstName, lastName, specialty);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Records that an HCP was assigned to, or removed from, a hospital.
+	 */
+	public void assign(long mid, String hospitalID, boolean assigned) {
+		lock.writeLock().lock();
+		try {
+			data.assign(mid, hospitalID, assigned);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Records that an HCP was removed from all their hospitals.
+	 */
+	public void unassignAll(long mid) {
+		lock.writeLock().lock();
+		try {
+			Integer slot = data.slotOf.get(mid);
+			if (slot != null) {
+				for (BitSet hospital : data.hospitals.values())
+					hospital.clear(slot);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of personnel in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return data.slotOf.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param query
+	 *            The search
+	 * @return The MIDs of the matching personnel, in order
+	 */
+	public List<Long> find(Query query) {
+		lock.readLock().lock();
+		try {
+			Data d = data;
+			return d.mids(d.find(query, true));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds personnel the way <code>firstName LIKE ? AND lastName LIKE ?</code>
+	 * does.
+	 *
+	 * @param firstPattern
+	 *            The SQL LIKE pattern for the first name
+	 * @param lastPattern
+	 *            The SQL LIKE pattern for the last name
+	 * @param role
+	 *            The role they must have, or null for any
+	 * @return The MIDs of the matching personnel, in order
+	 */
+	public List<Long> findLike(String firstPattern, String lastPattern, String role) {
+		Pattern first = like(firstPattern);
+		Pattern last = like(lastPattern);
+		lock.readLock().lock();
+		try {
+			Data d = data;
+			BitSet matches = d.find(new Query().role(role), false);
+			for (String literal : literals(firstPattern + "%" + lastPattern))
+				d.requireGrams(matches, literal);
+			for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+				if (d.firstNames[slot] == null || d.lastNames[slot] == null
+						|| !first.matcher(d.firstNames[slot]).matches() || !last.matcher(d.lastNames[slot]).matches())
+					matches.clear(slot);
+			}
+			return d.mids(matches);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts the personnel matching a search in each specialty, as the facets
+	 * of a search page. The query's own specialty is ignored, so that the other
+	 * specialties can be offered.
+	 *
+	 * @param query
+	 *            The search
+	 * @return Specialty to the number of matching personnel in it, by
+	 *         specialty; personnel with no specialty aren't counted
+	 */
+	public Map<String, Integer> countSpecialties(Query query) {
+		lock.readLock().lock();
+		try {
+			Data d = data;
+			BitSet matches = d.find(new Query().named(query.getName()).role(query.getRole())
+					.hospital(query.getHospitalID()), true);
+			Map<String, Integer> counts = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+			for (Map.Entry<String, BitSet> specialty : d.specialties.entrySet()) {
+				if (specialty.getKey().isEmpty())
+					continue;
+				BitSet in = (BitSet) specialty.getValue().clone();
+				in.and(matches);
+				if (!in.isEmpty())
+					counts.put(d.specialtyNames.get(specialty.getKey()), in.cardinality());
+			}
+			return counts;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static String getUpdateTimes(Connection conn) throws SQLException {
+		StringBuilder times = new StringBuilder();
+		try (PreparedStatement ps = conn.prepareStatement(UPDATE_TIMES); ResultSet rs = ps.executeQuery()) {
+			while (rs.next())
+				times.append(rs.getString(1)).append('=').append(rs.getTimestamp(2)).append(';');
+		}
+		return times.toString();
+	}
+
+	/**
+	 * Lower case and without trailing spaces, as MySQL compares them; null
+	 * stays null
+	 */
+	private static String key(String s) {
+		if (s == null)
+			return null;
+		int end = s.length();
+		while (end > 0 && s.charAt(end - 1) == ' ')
+			end--;
+		return s.substring(0, end).toLowerCase(Locale.ENGLISH);
+	}
+
+	private static long trigram(String s, int i) {
+		return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+	}
+
+	/**
+	 * @return The runs of plain characters in a LIKE pattern, lower case
+	 */
+	private static List<String> literals(String pattern) {
+		List<String> literals = new ArrayList<String>();
+		StringBuilder run = new StringBuilder();
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '\\' && i + 1 < pattern.length()) {
+				run.append(pattern.charAt(++i));
+			} else if (c == '%' || c == '_') {
+				literals.add(run.toString().toLowerCase(Locale.ENGLISH));
+				run.setLength(0);
+			} else {
+				run.append(c);
+			}
+		}
+		literals.add(run.toString().toLowerCase(Locale.ENGLISH));
+		return literals;
+	}
+
+	/**
+	 * @return A regular expression matching what a LIKE pattern matches
+	 */
+	private static Pattern like(String pattern) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '\\' && i + 1 < pattern.length())
+				regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+			else if (c == '%')
+				regex.append(".*");
+			else if (c == '_')
+				regex.append('.');
+			else
+				regex.append(Pattern.quote(String.valueOf(c)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+	}
+
+	/**
+	 * The index itself, with personnel numbered by slot.
+	 */
+	private static class Data {
+		private final Map<Long, Integer> slotOf = new HashMap<Long, Integer>();
+		private final BitSet live = new BitSet();
+		private final Map<Long, BitSet> nameGrams = new HashMap<Long, BitSet>();
+		private final Map<String, BitSet> roles = new HashMap<String, BitSet>();
+		private final Map<String, BitSet> specialties = new HashMap<String, BitSet>();
+		private final Map<String, String> specialtyNames = new HashMap<String, String>();
+		private final Map<String, BitSet> hospitals = new HashMap<String, BitSet>();
+		private long[] mids = new long[64];
+		private String[] firstNames = new String[64];
+		private String[] lastNames = new String[64];
+		private String[] roleKeys = new String[64];
+		private String[] specialtyKeys = new String[64];
+		private int slots;
+
+		private int slot(long mid) {
+			Integer slot = slotOf.get(mid);
+			if (slot != null)
+				return slot;
+			if (slots == mids.length) {
+				int capacity = mids.length * 2;
+				mids = Arrays.copyOf(mids, capacity);
+				firstNames = Arrays.copyOf(firstNames, capacity);
+				lastNames = Arrays.copyOf(lastNames, capacity);
+				roleKeys = Arrays.copyOf(roleKeys, capacity);
+				specialtyKeys = Arrays.copyOf(specialtyKeys, capacity);
+			}
+			mids[slots] = mid;
+			slotOf.put(mid, slots);
+			live.set(slots);
+			return slots++;
+		}
+
+		private void put(long mid, String role, String firstName, String lastName, String specialty) {
+			int slot = slot(mid);
+			if (role != null) {
+				move(roles, roleKeys[slot], key(role), slot);
+				roleKeys[slot] = key(role);
+			}
+			String specialtyKey = key(specialty);
+			move(specialties, specialtyKeys[slot], specialtyKey, slot);
+			specialtyKeys[slot] = specialtyKey;
+			if (specialtyKey != null && !specialtyNames.containsKey(specialtyKey))
+				specialtyNames.put(specialtyKey, specialty.trim());
+			// trigrams of an old name are left behind; matches are always checked against the current name
+			firstNames[slot] = firstName == null ? null : firstName.toLowerCase(Locale.ENGLISH);
+			lastNames[slot] = lastName == null ? null : lastName.toLowerCase(Locale.ENGLISH);
+			post(firstNames[slot], slot);
+			post(lastNames[slot], slot);
+		}
+
+		private void assign(long mid, String hospitalID, boolean assigned) {
+			Integer slot = slotOf.get(mid);
+			if (slot == null)
+				return;
+			BitSet hospital = hospitals.get(hospitalID);
+			if (hospital == null) {
+				hospital = new BitSet();
+				hospitals.put(hospitalID, hospital);
+			}
+			hospital.set(slot, assigned);
+		}
+
+		private static void move(Map<String, BitSet> facet, String from, String to, int slot) {
+			if (from != null)
+				facet.get(from).clear(slot);
+			if (to != null) {
+				BitSet set = facet.get(to);
+				if (set == null) {
+					set = new BitSet();
+					facet.put(to, set);
+				}
+				set.set(slot);
+			}
+		}
+
+		private void post(String name, int slot) {
+			if (name == null)
+				return;
+			for (int i = 0; i + 3 <= name.length(); i++) {
+				Long gram = trigram(name, i);
+				BitSet set = nameGrams.get(gram);
+				if (set == null) {
+					set = new BitSet();
+					nameGrams.put(gram, set);
+				}
+				set.set(slot);
+			}
+		}
+
+		/**
+		 * Narrows the matches to those with every trigram of the text in their
+		 * names.
+		 */
+		private void requireGrams(BitSet matches, String text) {
+			for (int i = 0; i + 3 <= text.length() && !matches.isEmpty(); i++) {
+				BitSet set = nameGrams.get(trigram(text, i));
+				if (set == null)
+					matches.clear();
+				else
+					matches.and(set);
+			}
+		}
+
+		private BitSet find(Query query, boolean checkNames) {
+			BitSet matches = (BitSet) live.clone();
+			and(matches, roles, key(query.getRole()));
+			and(matches, specialties, key(query.getSpecialty()));
+			if (query.getHospitalID() != null) {
+				BitSet hospital = hospitals.get(query.getHospitalID());
+				if (hospital == null)
+					matches.clear();
+				else
+					matches.and(hospital);
+			}
+			if (!checkNames)
+				return matches;
+			List<String> words = query.getNameWords();
+			for (String word : words)
+				requireGrams(matches, word.endsWith("*") ? word.substring(0, word.length() - 1) : word);
+			if (!words.isEmpty()) {
+				for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+					for (String word : words) {
+						if (!nameMatches(firstNames[slot], word) && !nameMatches(lastNames[slot], word)) {
+							matches.clear(slot);
+							break;
+						}
+					}
+				}
+			}
+			return matches;
+		}
+
+		private static void and(BitSet matches, Map<String, BitSet> facet, String key) {
+			if (key == null)
+				return;
+			BitSet set = facet.get(key);
+			if (set == null)
+				matches.clear();
+			else
+				matches.and(set);
+		}
+
+		private static boolean nameMatches(String name, String word) {
+			if (name == null)
+				return false;
+			if (word.endsWith("*"))
+				return name.startsWith(word.substring(0, word.length() - 1));
+			return name.contains(word);
+		}
+
+		private List<Long> mids(BitSet matches) {
+			List<Long> result = new ArrayList<Long>(matches.cardinality());
+			for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1))
+				result.add(mids[slot]);
+			Collections.sort(result);
+			return result;
+		}
+	}
+}
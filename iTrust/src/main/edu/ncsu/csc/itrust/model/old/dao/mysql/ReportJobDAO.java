@@ -0,0 +1,265 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.DBUtil;
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.ReportJobBean;
+import edu.ncsu.csc.itrust.model.old.beans.loaders.ReportJobBeanLoader;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.enums.ReportJobStatus;
+
+/**
+ * Used for keeping track of group reports run in the background, so that they
+ * survive a restart.
+ * 
+ * DAO stands for Database Access Object. All DAOs are intended to be
+ * reflections of the database, that is, one DAO per table in the database (most
+ * of the time). For more complex sets of queries, extra DAOs are added. DAOs
+ * can assume that all data has been validated and is correct.
+ * 
+ * DAOs should never have setters or any other parameter to the constructor than
+ * a factory. All DAOs should be accessed by DAOFactory (@see
+ * {@link DAOFactory}) and every DAO should have a factory - for obtaining JDBC
+ * connections and/or accessing other DAOs.
+ */
+public class ReportJobDAO {
+
+	private transient final DAOFactory factory;
+	private transient final ReportJobBeanLoader loader;
+
+	/**
+	 * The typical constructor.
+	 * 
+	 * @param factory
+	 *            The {@link DAOFactory} associated with this DAO, which is used
+	 *            for obtaining SQL connections, etc.
+	 */
+	public ReportJobDAO(final DAOFactory factory) {
+		this.factory = factory;
+		loader = new ReportJobBeanLoader();
+	}
+
+	/**
+	 * Adds a job.
+	 * 
+	 * @param job
+	 *            The job's owner, status, format and definition
+	 * @return The new job's ID
+	 * @throws DBException
+	 */
+	public long addJob(final ReportJobBean job) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = loader.loadParameters(conn.prepareStatement(
+						"INSERT INTO reportjobs (ownerMID, status, format, definition, createdAt) "
+								+ "VALUES (?, ?, ?, ?, NOW())"), job)) {
+			stmt.executeUpdate();
+			return DBUtil.getLastInsert(conn);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @param jobID
+	 *            The job's ID
+	 * @return The job, or null if there's no such job
+	 * @throws DBException
+	 */
+	public ReportJobBean getJob(final long jobID) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("SELECT * FROM reportjobs WHERE jobID = ?")) {
+			stmt.setLong(1, jobID);
+			try (ResultSet results = stmt.executeQuery()) {
+				return results.next() ? loader.loadSingle(results) : null;
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @param ownerMID
+	 *            The MID of the personnel who submitted the jobs
+	 * @return Their jobs, newest first
+	 * @throws DBException
+	 */
+	public List<ReportJobBean> getJobsForOwner(final long ownerMID) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn
+						.prepareStatement("SELECT * FROM reportjobs WHERE ownerMID = ? ORDER BY jobID DESC")) {
+			stmt.setLong(1, ownerMID);
+			try (ResultSet results = stmt.executeQuery()) {
+				return loader.loadList(results);
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @param status
+	 *            A status
+	 * @return The jobs with the status, oldest first
+	 * @throws DBException
+	 */
+	public List<ReportJobBean> getJobsWithStatus(final ReportJobStatus status) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn
+						.prepareStatement("SELECT * FROM reportjobs WHERE status = ? ORDER BY jobID")) {
+			stmt.setString(1, status.name());
+			try (ResultSet results = stmt.executeQuery()) {
+				return loader.loadList(results);
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @param before
+	 *            A time
+	 * @return The jobs that finished before it
+	 * @throws DBException
+	 */
+	public List<ReportJobBean> getJobsFinishedBefore(final Timestamp before) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("SELECT * FROM reportjobs "
+						+ "WHERE status IN ('DONE', 'FAILED', 'CANCELLED') AND finishedAt < ?")) {
+			stmt.setTimestamp(1, before);
+			try (ResultSet results = stmt.executeQuery()) {
+				return loader.loadList(results);
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @param ownerMID
+	 *            The MID of the personnel who submitted the jobs
+	 * @return How many of their jobs are queued or running
+	 * @throws DBException
+	 */
+	public int countUnfinishedJobs(final long ownerMID) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(
+						"SELECT COUNT(*) FROM reportjobs WHERE ownerMID = ? AND status IN ('QUEUED', 'RUNNING')")) {
+			stmt.setLong(1, ownerMID);
+			try (ResultSet results = stmt.executeQuery()) {
+				results.next();
+				return results.getInt(1);
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Marks a queued job as running.
+	 * 
+	 * @param jobID
+	 *            The job's ID
+	 * @return false if the job wasn't queued, e.g. because it's been cancelled
+	 * @throws DBException
+	 */
+	public boolean startJob(final long jobID) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("UPDATE reportjobs SET status = 'RUNNING', "
+						+ "rowsDone = 0, rowsEstimated = 0 WHERE jobID = ? AND status = 'QUEUED'")) {
+			stmt.setLong(1, jobID);
+			return stmt.executeUpdate() == 1;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Records how far a running job has got.
+	 * 
+	 * @param jobID
+	 *            The job's ID
+	 * @param rowsDone
+	 *            How many rows it's written
+	 * @param rowsEstimated
+	 *            How many rows it expects to write
+	 * @throws DBException
+	 */
+	public void updateProgress(final long jobID, final int rowsDone, final int rowsEstimated) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(
+						"UPDATE reportjobs SET rowsDone = ?, rowsEstimated = ? WHERE jobID = ? AND status = 'RUNNING'")) {
+			stmt.setInt(1, rowsDone);
+			stmt.setInt(2, rowsEstimated);
+			stmt.setLong(3, jobID);
+			stmt.executeUpdate();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Marks a queued or running job as finished.
+	 * 
+	 * @param jobID
+	 *            The job's ID
+	 * @param status
+	 *            DONE, FAILED or CANCELLED
+	 * @param message
+	 *            Why it failed, or an empty string
+	 * @return false if the job had already finished
+	 * @throws DBException
+	 */
+	public boolean finishJob(final long jobID, final ReportJobStatus status, final String message)
+			throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("UPDATE reportjobs SET status = ?, message = ?, "
+						+ "finishedAt = NOW() WHERE jobID = ? AND status IN ('QUEUED', 'RUNNING')")) {
+			stmt.setString(1, status.name());
+			stmt.setString(2, message.length() > 200 ? message.substring(0, 200) : message);
+			stmt.setLong(3, jobID);
+			return stmt.executeUpdate() == 1;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Puts jobs that were running when the server stopped back in the queue,
+	 * to be run again from the start.
+	 * 
+	 * @return How many were requeued
+	 * @throws DBException
+	 */
+	public int requeueRunningJobs() throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(
+						"UPDATE reportjobs SET status = 'QUEUED', rowsDone = 0 WHERE status = 'RUNNING'")) {
+			return stmt.executeUpdate();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Removes a job.
+	 * 
+	 * @param jobID
+	 *            The job's ID
+	 * @throws DBException
+	 */
+	public void removeJob(final long jobID) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("DELETE FROM reportjobs WHERE jobID = ?")) {
+			stmt.setLong(1, jobID);
+			stmt.executeUpdate();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+}
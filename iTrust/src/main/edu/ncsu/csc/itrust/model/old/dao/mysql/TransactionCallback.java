@@ -0,0 +1,22 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+
+/**
+ * Receives transactions one at a time as {@link TransactionDAO} streams them
+ * out of the database, so large parts of the log never have to be held in
+ * memory at once. The stream holds its connection until it ends, so a
+ * callback must not use the database itself: within a
+ * {@link edu.ncsu.csc.itrust.model.old.dao.ConnectionContext} that connection
+ * is shared with every other DAO.
+ */
+public interface TransactionCallback {
+	/**
+	 * @param transaction
+	 *            The next transaction
+	 * @return true to keep reading, false to stop
+	 * @throws DBException
+	 */
+	public boolean handle(TransactionBean transaction) throws DBException;
+}
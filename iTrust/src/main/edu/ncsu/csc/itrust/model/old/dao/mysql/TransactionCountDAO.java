@@ -0,0 +1,330 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.OperationalProfile;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCountBean;
+import edu.ncsu.csc.itrust.model.old.beans.loaders.OperationalProfileLoader;
+import edu.ncsu.csc.itrust.model.old.beans.loaders.TransactionCountBeanLoader;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+
+/**
+ * Maintains running counts of the transaction log so the operational profile
+ * does not have to scan transactionlog. transactioncounts holds one row per
+ * transaction code for all time, transactioncountsbyhour one row per code per
+ * hour; both split the count by whether the logged in MID was a patient or
+ * personnel. {@link TransactionDAO} adds to the counts as it logs, and
+ * {@link #reconcile()} / {@link #reconcileSince(Timestamp)} rebuild them from
+ * transactionlog to correct any drift (e.g. rows inserted directly with SQL).
+ * A reconciliation holds the counts and the log locked from its first
+ * statement to its last, and waits for every transaction being logged in this
+ * webapp to be counted, so it never counts a transaction twice or leaves one
+ * out and readers never see it half done.
+ * 
+ * DAO stands for Database Access Object. All DAOs are intended to be
+ * reflections of the database, that is, one DAO per table in the database (most
+ * of the time). For more complex sets of queries, extra DAOs are added. DAOs
+ * can assume that all data has been validated and is correct.
+ * 
+ * DAOs should never have setters or any other parameter to the constructor than
+ * a factory. All DAOs should be accessed by DAOFactory (@see
+ * {@link DAOFactory}) and every DAO should have a factory - for obtaining JDBC
+ * connections and/or accessing other DAOs.
+ */
+public class TransactionCountDAO {
+	/** MIDs at or above this belong to personnel, below it to patients */
+	public static final long PERSONNEL_MID_START = 9000000000L;
+
+	private static final String PATIENT_COUNT = "count(if(loggedInMID<" + PERSONNEL_MID_START
+			+ ", transactionID, null))";
+	private static final String PERSONNEL_COUNT = "count(if(loggedInMID>=" + PERSONNEL_MID_START
+			+ ", transactionID, null))";
+	private static final String HOUR = "DATE_FORMAT(timeLogged, '%Y-%m-%d %H:00:00')";
+	private static final String LOCK_TABLES = "LOCK TABLES transactionlog READ, transactioncounts WRITE, "
+			+ "transactioncounts AS c WRITE, transactioncountsbyhour WRITE";
+
+	/**
+	 * Held shared from inserting transactions into the log until they are
+	 * counted, and exclusively by reconciliation
+	 */
+	private static final ReadWriteLock COUNTING = new ReentrantReadWriteLock();
+
+	private DAOFactory factory;
+	private OperationalProfileLoader operationalProfileLoader = new OperationalProfileLoader();
+	private TransactionCountBeanLoader countLoader = new TransactionCountBeanLoader();
+
+	/**
+	 * The typical constructor.
+	 * 
+	 * @param factory
+	 *            The {@link DAOFactory} associated with this DAO, which is used
+	 *            for obtaining SQL connections, etc.
+	 */
+	public TransactionCountDAO(DAOFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Returns the operational profile from the all-time counts. Counts that
+	 * have never been built are left to the
+	 * {@link edu.ncsu.csc.itrust.logger.TransactionCountReconciler} rather than
+	 * rebuilt here.
+	 * 
+	 * @return The OperationalProfile as a bean.
+	 * @throws DBException
+	 */
+	public OperationalProfile getOperationalProfile() throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement ps = conn.prepareStatement("SELECT transactionCode AS TransactionCode, "
+						+ "patientCount + personnelCount AS TotalCount, patientCount AS PatientCount, "
+						+ "personnelCount AS PersonnelCount FROM transactioncounts ORDER BY transactionCode ASC");
+				ResultSet rs = ps.executeQuery()) {
+			return operationalProfileLoader.loadSingle(rs);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @return true if the all-time counts have any rows, i.e. they have been
+	 *         built at least once
+	 * @throws DBException
+	 */
+	public boolean hasCounts() throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM transactioncounts LIMIT 1");
+				ResultSet rs = ps.executeQuery()) {
+			return rs.next();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Returns the counts for each hour in the given range that had any
+	 * transactions, ordered by hour then transaction code.
+	 * 
+	 * @param from
+	 *            The first hour to include
+	 * @param to
+	 *            The end of the range (exclusive)
+	 * @return The hourly counts
+	 * @throws DBException
+	 */
+	public List<TransactionCountBean> getHourlyCounts(Timestamp from, Timestamp to) throws DBException {
+		return getCounts("hourStart", from, to);
+	}
+
+	/**
+	 * Returns the counts for each day in the given range that had any
+	 * transactions, ordered by day then transaction code. Rolled up from the
+	 * hourly counts.
+	 * 
+	 * @param from
+	 *            The first day to include
+	 * @param to
+	 *            The end of the range (exclusive)
+	 * @return The daily counts
+	 * @throws DBException
+	 */
+	public List<TransactionCountBean> getDailyCounts(Timestamp from, Timestamp to) throws DBException {
+		return getCounts("DATE(hourStart)", from, to);
+	}
+
+	private List<TransactionCountBean> getCounts(String bucket, Timestamp from, Timestamp to) throws DBException {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement ps = conn.prepareStatement("SELECT " + bucket + " AS bucketStart, transactionCode, "
+						+ "SUM(patientCount) AS patientCount, SUM(personnelCount) AS personnelCount "
+						+ "FROM transactioncountsbyhour WHERE hourStart >= ? AND hourStart < ? "
+						+ "GROUP BY bucketStart, transactionCode ORDER BY bucketStart, transactionCode")) {
+			ps.setTimestamp(1, from);
+			ps.setTimestamp(2, to);
+			try (ResultSet rs = ps.executeQuery()) {
+				return countLoader.loadList(rs);
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * The lock {@link TransactionDAO} holds from inserting transactions into
+	 * the log until it has called {@link #addTransactions}, so reconciliation
+	 * can't run in between.
+	 * 
+	 * @return The shared side of the counting lock
+	 */
+	Lock loggingLock() {
+		return COUNTING.readLock();
+	}
+
+	/**
+	 * Adds freshly logged transactions to the counts, using the connection
+	 * they were logged on. A failure here is only printed: the transactions
+	 * themselves were logged, and the next reconciliation fixes the counts.
+	 * 
+	 * @param conn
+	 *            The connection the transactions were logged on
+	 * @param transactions
+	 *            The logged transactions; a null timeLogged means now
+	 */
+	void addTransactions(Connection conn, List<TransactionBean> transactions) {
+		// hour -> code -> {patient, personnel}
+		Map<Long, Map<Integer, long[]>> byHour = new TreeMap<Long, Map<Integer, long[]>>();
+		Map<Integer, long[]> total = new TreeMap<Integer, long[]>();
+		Calendar cal = Calendar.getInstance();
+		for (TransactionBean t : transactions) {
+			cal.setTimeInMillis(t.getTimeLogged() == null ? System.currentTimeMillis() : t.getTimeLogged().getTime());
+			cal.set(Calendar.MINUTE, 0);
+			cal.set(Calendar.SECOND, 0);
+			cal.set(Calendar.MILLISECOND, 0);
+			Map<Integer, long[]> hour = byHour.get(cal.getTimeInMillis());
+			if (hour == null) {
+				hour = new TreeMap<Integer, long[]>();
+				byHour.put(cal.getTimeInMillis(), hour);
+			}
+			int code = t.getTransactionType().getCode();
+			int column = t.getLoggedInMID() < PERSONNEL_MID_START ? 0 : 1;
+			increment(hour, code, column);
+			increment(total, code, column);
+		}
+		try {
+			upsert(conn, total, null);
+			for (Map.Entry<Long, Map<Integer, long[]>> hour : byHour.entrySet())
+				upsert(conn, hour.getValue(), new Timestamp(hour.getKey()));
+		} catch (SQLException e) {
+			System.err.println("Unable to update transaction counts: " + e.getMessage());
+		}
+	}
+
+	private static void increment(Map<Integer, long[]> counts, int code, int column) {
+		long[] c = counts.get(code);
+		if (c == null) {
+			c = new long[2];
+			counts.put(code, c);
+		}
+		c[column]++;
+	}
+
+	private void upsert(Connection conn, Map<Integer, long[]> counts, Timestamp hour) throws SQLException {
+		StringBuilder sql = new StringBuilder(hour == null
+				? "INSERT INTO transactioncounts(transactionCode, patientCount, personnelCount) VALUES"
+				: "INSERT INTO transactioncountsbyhour(transactionCode, patientCount, personnelCount, hourStart) VALUES");
+		String row = hour == null ? "(?,?,?)" : "(?,?,?,?)";
+		for (int i = 0; i < counts.size(); i++)
+			sql.append(i == 0 ? "" : ",").append(row);
+		sql.append(" ON DUPLICATE KEY UPDATE patientCount=patientCount+VALUES(patientCount), "
+				+ "personnelCount=personnelCount+VALUES(personnelCount)");
+		try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+			int index = 1;
+			for (Map.Entry<Integer, long[]> c : counts.entrySet()) {
+				ps.setInt(index++, c.getKey());
+				ps.setLong(index++, c.getValue()[0]);
+				ps.setLong(index++, c.getValue()[1]);
+				if (hour != null)
+					ps.setTimestamp(index++, hour);
+			}
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Rebuilds all the counts from transactionlog. This scans the whole log,
+	 * so it should only be run in the background. Hours with no rows left in
+	 * the log (archived months) keep their counts.
+	 * 
+	 * @throws DBException
+	 */
+	public void reconcile() throws DBException {
+		COUNTING.writeLock().lock();
+		try (Connection conn = factory.getConnection(); Statement st = conn.createStatement()) {
+			st.execute(LOCK_TABLES);
+			try {
+				// The totals are summed from the hours rather than the log, since the
+				// hours of months moved to the TransactionArchive are left as they were.
+				st.executeUpdate("REPLACE INTO transactioncountsbyhour(transactionCode, hourStart, patientCount, "
+						+ "personnelCount) SELECT transactionCode, " + HOUR + " AS hour, " + PATIENT_COUNT + ", "
+						+ PERSONNEL_COUNT + " FROM transactionlog GROUP BY transactionCode, hour");
+				st.executeUpdate("REPLACE INTO transactioncounts(transactionCode, patientCount, personnelCount) "
+						+ "SELECT transactionCode, SUM(patientCount), SUM(personnelCount) "
+						+ "FROM transactioncountsbyhour GROUP BY transactionCode");
+			} finally {
+				st.execute("UNLOCK TABLES");
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			COUNTING.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuilds the hourly counts from the given time on, and corrects the
+	 * all-time counts by the difference. Only the recent part of the log is
+	 * scanned, so this is cheap enough to run every few minutes.
+	 * 
+	 * @param since
+	 *            The start of the first hour to rebuild; should be on an hour
+	 *            boundary
+	 * @throws DBException
+	 */
+	public void reconcileSince(Timestamp since) throws DBException {
+		COUNTING.writeLock().lock();
+		try (Connection conn = factory.getConnection(); Statement st = conn.createStatement()) {
+			st.execute(LOCK_TABLES);
+			try {
+				// take the old hourly counts out of the totals, rebuild the hours, put the new ones back in
+				adjustTotals(conn, since, "-");
+				try (PreparedStatement ps = conn
+						.prepareStatement("DELETE FROM transactioncountsbyhour WHERE hourStart >= ?")) {
+					ps.setTimestamp(1, since);
+					ps.executeUpdate();
+				}
+				try (PreparedStatement ps = conn.prepareStatement("INSERT INTO transactioncountsbyhour("
+						+ "transactionCode, hourStart, patientCount, personnelCount) SELECT transactionCode, " + HOUR
+						+ " AS hour, " + PATIENT_COUNT + ", " + PERSONNEL_COUNT + " FROM transactionlog "
+						+ "WHERE timeLogged >= ? GROUP BY transactionCode, hour")) {
+					ps.setTimestamp(1, since);
+					ps.executeUpdate();
+				}
+				adjustTotals(conn, since, "+");
+			} finally {
+				st.execute("UNLOCK TABLES");
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			COUNTING.writeLock().unlock();
+		}
+	}
+
+	private void adjustTotals(Connection conn, Timestamp since, String sign) throws SQLException {
+		String hours = "SELECT transactionCode, SUM(patientCount) AS p, SUM(personnelCount) AS q "
+				+ "FROM transactioncountsbyhour WHERE hourStart >= ? GROUP BY transactionCode";
+		String sql = "-".equals(sign)
+				? "UPDATE transactioncounts c JOIN (" + hours + ") h ON c.transactionCode=h.transactionCode "
+						+ "SET c.patientCount=GREATEST(0, CAST(c.patientCount AS SIGNED)-h.p), "
+						+ "c.personnelCount=GREATEST(0, CAST(c.personnelCount AS SIGNED)-h.q)"
+				: "INSERT INTO transactioncounts(transactionCode, patientCount, personnelCount) " + hours
+						+ " ON DUPLICATE KEY UPDATE patientCount=patientCount+VALUES(patientCount), "
+						+ "personnelCount=personnelCount+VALUES(personnelCount)";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setTimestamp(1, since);
+			ps.executeUpdate();
+		}
+	}
+}
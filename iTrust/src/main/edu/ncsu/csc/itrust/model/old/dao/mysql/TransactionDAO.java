@@ -1,18 +1,35 @@
 package edu.ncsu.csc.itrust.model.old.dao.mysql;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.logger.TransactionArchive;
 import edu.ncsu.csc.itrust.logger.TransactionLogger;
+import edu.ncsu.csc.itrust.logger.TransactionSpool;
 import edu.ncsu.csc.itrust.model.old.beans.OperationalProfile;
 import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
-import edu.ncsu.csc.itrust.model.old.beans.loaders.OperationalProfileLoader;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionPage;
 import edu.ncsu.csc.itrust.model.old.beans.loaders.TransactionBeanLoader;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 
@@ -31,9 +48,54 @@ import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
  */
 public class TransactionDAO {
 
+	/** Orders accesses by role, ignoring case */
+	private static final Comparator<TransactionBean> ROLE_ORDER = new Comparator<TransactionBean>() {
+		@Override
+		public int compare(TransactionBean a, TransactionBean b) {
+			return a.getRole().compareToIgnoreCase(b.getRole());
+		}
+	};
+
+	/** Seeks past a {@link TransactionCursor}, in {@link #NEWEST_FIRST} order */
+	static final String SEEK = " AND (timeLogged < ? OR (timeLogged = ? AND transactionID < ?))";
+	static final String NEWEST_FIRST = " ORDER BY timeLogged DESC, transactionID DESC";
+
+	/**
+	 * The roles accessors are shown with, in the order the access log sorts
+	 * them in; a role's index is its rank.
+	 */
+	private static final List<String> ROLES = Arrays.asList("", "DLHCP", "Emergency Responder", "LHCP", "Patient",
+			"Personal Health Representative", "UAP");
+
+	/**
+	 * Ranks a transaction's accessor the same way {@link RoleRanker} does.
+	 * Binds the patient's MID twice.
+	 */
+	private static final String ROLE_RANK = "CASE (SELECT Role FROM users WHERE MID=transactionlog.loggedInMID) "
+			+ "WHEN 'er' THEN 2 WHEN 'uap' THEN 6 "
+			+ "WHEN 'hcp' THEN IF(EXISTS (SELECT * FROM declaredhcp WHERE PatientID=? "
+			+ "AND HCPID=transactionlog.loggedInMID), 1, 3) "
+			+ "WHEN 'patient' THEN IF(EXISTS (SELECT * FROM representatives WHERE representeeMID=? "
+			+ "AND representerMID=transactionlog.loggedInMID), 5, 4) ELSE 0 END";
+	/** Seeks past a role {@link TransactionCursor}, in {@link #BY_ROLE} order */
+	static final String ROLE_SEEK = " WHERE roleRank > ? OR (roleRank = ?" + SEEK + ")";
+	static final String BY_ROLE = " ORDER BY roleRank, timeLogged DESC, transactionID DESC";
+
+	/** {@link #BY_ROLE} order, for transactions with their roles filled in */
+	private static final Comparator<TransactionBean> ROLE_RANK_ORDER = new Comparator<TransactionBean>() {
+		@Override
+		public int compare(TransactionBean a, TransactionBean b) {
+			int c = Integer.compare(ROLES.indexOf(a.getRole()), ROLES.indexOf(b.getRole()));
+			if (c == 0)
+				c = b.getTimeLogged().compareTo(a.getTimeLogged());
+			return c != 0 ? c : Long.compare(b.getTransactionID(), a.getTransactionID());
+		}
+	};
+
 	private DAOFactory factory;
 	private TransactionBeanLoader loader = new TransactionBeanLoader();
-	private OperationalProfileLoader operationalProfileLoader = new OperationalProfileLoader();
+	private TransactionCountDAO countDAO;
+	private ActivityFeedDAO feedDAO;
 
 	/**
 	 * The typical constructor.
@@ -44,6 +106,8 @@ public class TransactionDAO {
 	 */
 	public TransactionDAO(DAOFactory factory) {
 		this.factory = factory;
+		this.countDAO = factory.getTransactionCountDAO();
+		this.feedDAO = factory.getActivityFeedDAO();
 	}
 
 	/**
@@ -53,7 +117,7 @@ public class TransactionDAO {
 	 * @throws DBException
 	 */
 	public List<TransactionBean> getAllTransactions() throws DBException {
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM transactionlog ORDER BY timeLogged DESC");
 				ResultSet rs = ps.executeQuery()) {
 			List<TransactionBean> loadlist = loader.loadList(rs);
@@ -87,16 +151,116 @@ public class TransactionDAO {
 			secondaryMID = 0L;
 		}
 
-		try (Connection conn = factory.getConnection();
+		Lock counting = countDAO.loggingLock();
+		counting.lock();
+		try (Connection conn = getLogConnection();
 				PreparedStatement ps = conn.prepareStatement("INSERT INTO transactionlog(loggedInMID, secondaryMID, "
-						+ "transactionCode, addedInfo) VALUES(?,?,?,?)")) {
+						+ "transactionCode, addedInfo) VALUES(?,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
 			ps.setLong(1, loggedInMID);
 			ps.setLong(2, secondaryMID);
 			ps.setInt(3, type.getCode());
 			ps.setString(4, addedInfo);
 			ps.executeUpdate();
+			TransactionBean t = new TransactionBean();
+			t.setTransactionType(type);
+			t.setLoggedInMID(loggedInMID);
+			t.setSecondaryMID(secondaryMID);
+			List<TransactionBean> logged = Collections.singletonList(t);
+			countDAO.addTransactions(conn, logged);
+			addToFeeds(conn, ps, logged);
 		} catch (SQLException e) {
 			throw new DBException(e);
+		} finally {
+			counting.unlock();
+		}
+	}
+
+	/**
+	 * Logs several transactions with a single multi-row INSERT on one
+	 * connection. Each bean's timeLogged is written as-is, so a transaction
+	 * that is written after a delay keeps the time it actually happened.
+	 * 
+	 * @param transactions
+	 *            The transactions to write, in the order they occurred.
+	 * @throws DBException
+	 */
+	public void logTransactions(List<TransactionBean> transactions) throws DBException {
+		if (transactions.isEmpty()) {
+			return;
+		}
+		StringBuilder sql = new StringBuilder("INSERT INTO transactionlog(loggedInMID, secondaryMID, "
+				+ "transactionCode, timeLogged, addedInfo) VALUES");
+		for (int i = 0; i < transactions.size(); i++) {
+			sql.append(i == 0 ? "(?,?,?,?,?)" : ",(?,?,?,?,?)");
+		}
+		Lock counting = countDAO.loggingLock();
+		counting.lock();
+		try (Connection conn = getLogConnection();
+				PreparedStatement ps = conn.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+			int index = 1;
+			for (TransactionBean t : transactions) {
+				loader.loadParameters(ps, t, index);
+				index += 5;
+			}
+			ps.executeUpdate();
+			countDAO.addTransactions(conn, transactions);
+			addToFeeds(conn, ps, transactions);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			counting.unlock();
+		}
+	}
+
+	/**
+	 * Writes transactions replayed from a local {@link TransactionSpool}. Each
+	 * row is tagged with the spool's ID and the record's sequence number, and
+	 * rows that were already replayed are ignored by the unique key on those
+	 * two columns, so replaying the same records twice is harmless.
+	 * 
+	 * @param spoolID
+	 *            The ID of the spool the transactions came from
+	 * @param transactions
+	 *            The spooled transactions
+	 * @param sequences
+	 *            The spool sequence number of each transaction, in the same
+	 *            order
+	 * @return The number of rows actually inserted
+	 * @throws DBException
+	 */
+	public int logSpooledTransactions(long spoolID, List<TransactionBean> transactions, List<Long> sequences)
+			throws DBException {
+		if (transactions.isEmpty()) {
+			return 0;
+		}
+		StringBuilder sql = new StringBuilder("INSERT IGNORE INTO transactionlog(loggedInMID, secondaryMID, "
+				+ "transactionCode, timeLogged, addedInfo, spoolID, spoolSeq) VALUES");
+		for (int i = 0; i < transactions.size(); i++) {
+			sql.append(i == 0 ? "(?,?,?,?,?,?,?)" : ",(?,?,?,?,?,?,?)");
+		}
+		Lock counting = countDAO.loggingLock();
+		counting.lock();
+		try (Connection conn = getLogConnection();
+				PreparedStatement ps = conn.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+			int index = 1;
+			for (int i = 0; i < transactions.size(); i++) {
+				loader.loadParameters(ps, transactions.get(i), index);
+				ps.setLong(index + 5, spoolID);
+				ps.setLong(index + 6, sequences.get(i));
+				index += 7;
+			}
+			int inserted = ps.executeUpdate();
+			// if some rows were already replayed we can't tell which; leave those counts to reconciliation
+			// (and those feeds to their next rebuild)
+			if (inserted == transactions.size()) {
+				countDAO.addTransactions(conn, transactions);
+				addToFeeds(conn, ps, transactions);
+			}
+			return inserted;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			counting.unlock();
 		}
 	}
 
@@ -111,7 +275,7 @@ public class TransactionDAO {
 	 */
 	public List<TransactionBean> getAllRecordAccesses(long patientID, long dlhcpID, boolean getByRole)
 			throws DBException {
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn
 						.prepareStatement("SELECT * FROM transactionlog WHERE secondaryMID=? AND transactionCode "
 								+ "IN(" + TransactionType.patientViewableStr
@@ -120,11 +284,10 @@ public class TransactionDAO {
 			ps.setLong(2, dlhcpID);
 			ResultSet rs = ps.executeQuery();
 			List<TransactionBean> transactionList = loader.loadList(rs);
-
-			transactionList = addAndSortRoles(transactionList, patientID, getByRole);
-
 			rs.close();
-			return transactionList;
+			transactionList = withArchived(transactionList, patientID, dlhcpID, null, null, null, 0);
+
+			return addAndSortRoles(conn, transactionList, patientID, getByRole);
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -147,7 +310,7 @@ public class TransactionDAO {
 	 */
 	public List<TransactionBean> getTransactionsAffecting(long mid, long dlhcpID, java.util.Date start, int range)
 			throws DBException {
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn.prepareStatement("SELECT * FROM transactionlog WHERE ((timeLogged <= ?) "
 						+ "AND  (secondaryMID=? AND transactionCode " + "IN (" + TransactionType.patientViewableStr
 						+ ")) " + "OR (loggedInMID=? AND transactionCode=?) ) "
@@ -189,7 +352,7 @@ public class TransactionDAO {
 	 */
 	public List<TransactionBean> getRecordAccesses(long patientID, long dlhcpID, java.util.Date lower,
 			java.util.Date upper, boolean getByRole) throws DBException {
-		try (Connection conn = factory.getConnection();
+		try (Connection conn = factory.getReadConnection();
 				PreparedStatement ps = conn
 						.prepareStatement("SELECT * FROM transactionlog WHERE secondaryMID=? AND transactionCode IN ("
 								+ TransactionType.patientViewableStr + ") " + "AND timeLogged >= ? AND timeLogged <= ? "
@@ -201,164 +364,627 @@ public class TransactionDAO {
 			ps.setLong(4, dlhcpID);
 			ResultSet rs = ps.executeQuery();
 			List<TransactionBean> transactionList = loader.loadList(rs);
-
-			transactionList = addAndSortRoles(transactionList, patientID, getByRole);
 			rs.close();
-			return transactionList;
+			transactionList = withArchived(transactionList, patientID, dlhcpID, lower,
+					new Timestamp(upper.getTime() + 1000L * 60L * 60 * 24L), null, 0);
+
+			return addAndSortRoles(conn, transactionList, patientID, getByRole);
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
 	}
 	
 	/**
-	 * Returns the operation profile
+	 * Gets a connection of its own for writing to the log, outside any
+	 * request's shared connection, so what is logged is kept even if the
+	 * request's unit of work rolls back, and logging doesn't count as the
+	 * request writing (which would send its session's reads to the primary).
+	 */
+	private Connection getLogConnection() throws SQLException {
+		try (ConnectionContext.Suspension outside = ConnectionContext.suspend()) {
+			return factory.getConnection();
+		}
+	}
+
+	/**
+	 * Hands the rows just inserted by the statement to the
+	 * {@link ActivityFeedDAO}, with the ID each was logged under.
+	 */
+	private void addToFeeds(Connection conn, PreparedStatement ps, List<TransactionBean> transactions) {
+		try (ResultSet keys = ps.getGeneratedKeys()) {
+			List<Long> ids = new ArrayList<Long>();
+			while (keys.next())
+				ids.add(keys.getLong(1));
+			if (ids.size() == transactions.size())
+				feedDAO.addTransactions(conn, transactions, ids);
+		} catch (SQLException e) {
+			System.err.println("Unable to update activity feeds: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns one page of the accesses to a patient's records, newest first.
+	 * Pages are found by seeking past the last row of the previous page on
+	 * (timeLogged, transactionID), so deep pages cost the same as the first
+	 * and rows logged while paging do not shift later pages. Once the
+	 * database runs out, pages continue into the {@link TransactionArchive}.
 	 * 
-	 * @return The OperationalProfile as a bean.
+	 * @param patientID
+	 *            The patient whose record was accessed
+	 * @param dlhcpID
+	 *            The patient's DLHCP, whose accesses are hidden, or -1
+	 * @param lower
+	 *            The first day to include, or null for no lower bound
+	 * @param upper
+	 *            The last day to include, or null for no upper bound
+	 * @param after
+	 *            The end of the previous page, or null for the first page
+	 * @param pageSize
+	 *            The most accesses to return
+	 * @return The page, with its roles filled in
 	 * @throws DBException
 	 */
-	public OperationalProfile getOperationalProfile() throws DBException {
-		return getOperationalProfile(0L);
+	public TransactionPage getRecordAccessPage(long patientID, long dlhcpID, java.util.Date lower,
+			java.util.Date upper, TransactionCursor after, int pageSize) throws DBException {
+		try (Connection conn = factory.getReadConnection();
+				PreparedStatement ps = conn.prepareStatement(recordAccessQuery(lower, upper, after) + " LIMIT ?")) {
+			int i = bindRecordAccessQuery(ps, 1, patientID, dlhcpID, lower, upper, after);
+			ps.setInt(i, pageSize + 1);
+			List<TransactionBean> list = loader.loadList(ps.executeQuery());
+			if (list.size() <= pageSize) {
+				// the hot rows ran out, so carry on into the archive from where they stopped
+				TransactionCursor archiveAfter = list.isEmpty() ? after
+						: TransactionCursor.after(list.get(list.size() - 1));
+				list = withArchived(list, patientID, dlhcpID, lower,
+						upper == null ? null : new Timestamp(upper.getTime() + 1000L * 60L * 60 * 24L), archiveAfter,
+						pageSize + 1 - list.size());
+			}
+			TransactionPage page = toPage(list, pageSize);
+			addAndSortRoles(conn, page.getTransactions(), patientID, false);
+			return page;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
 	}
 
 	/**
-	 * Returns the operation profile
+	 * Returns one page of the accesses to a patient's records sorted by the
+	 * accessor's role, newest first within a role. The database ranks each
+	 * access's role and seeks past the previous page on (role rank,
+	 * timeLogged, transactionID), the same way {@link #getRecordAccessPage}
+	 * does on time. Archived accesses can have any role, so the patient's
+	 * archive is read for every page, keeping only a page's worth of it.
 	 * 
-	 * @return The OperationalProfile as a bean.
+	 * @param patientID
+	 *            The patient whose record was accessed
+	 * @param dlhcpID
+	 *            The patient's DLHCP, whose accesses are hidden, or -1
+	 * @param lower
+	 *            The first day to include, or null for no lower bound
+	 * @param upper
+	 *            The last day to include, or null for no upper bound
+	 * @param after
+	 *            The end of the previous page, which must be sorted by role,
+	 *            or null for the first page
+	 * @param pageSize
+	 *            The most accesses to return
+	 * @return The page, with its roles filled in
 	 * @throws DBException
 	 */
-	public OperationalProfile getOperationalProfile(long loggedInMID) throws DBException {
-		try (Connection conn = factory.getConnection();
-				PreparedStatement ps = conn
-						.prepareStatement("SELECT TransactionCode, count(transactionID) as TotalCount, "
-								+ "count(if(loggedInMID<9000000000, transactionID, null)) as PatientCount, "
-								+ "count(if(loggedInMID>=9000000000, transactionID, null)) as PersonnelCount "
-								+ "FROM transactionlog GROUP BY transactionCode ORDER BY transactionCode ASC");
-				ResultSet rs = ps.executeQuery()) {
-			TransactionLogger.getInstance().logTransaction(TransactionType.OPERATIONAL_PROFILE_VIEW, loggedInMID, 0L, "");
-			OperationalProfile result = operationalProfileLoader.loadSingle(rs);
-			return result;
+	public TransactionPage getRecordAccessPageByRole(long patientID, long dlhcpID, java.util.Date lower,
+			java.util.Date upper, TransactionCursor after, int pageSize) throws DBException {
+		if (after != null && !after.isByRole())
+			throw new IllegalArgumentException("The cursor is not sorted by role");
+		try (Connection conn = factory.getReadConnection();
+				PreparedStatement ps = conn.prepareStatement("SELECT * FROM (SELECT transactionlog.*, " + ROLE_RANK
+						+ " AS roleRank" + recordAccessFrom(lower, upper) + ") accesses" + (after == null ? "" : ROLE_SEEK) + BY_ROLE + " LIMIT ?")) {
+			ps.setLong(1, patientID);
+			ps.setLong(2, patientID);
+			int i = bindRecordAccessQuery(ps, 3, patientID, dlhcpID, lower, upper, null);
+			if (after != null) {
+				ps.setInt(i++, after.getRoleRank());
+				ps.setInt(i++, after.getRoleRank());
+				i = bindSeek(ps, i, after);
+			}
+			ps.setInt(i, pageSize + 1);
+			List<TransactionBean> list = new ArrayList<TransactionBean>(pageSize + 1);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					TransactionBean t = loader.loadSingle(rs);
+					t.setRole(ROLES.get(rs.getInt("roleRank")));
+					list.add(t);
+				}
+			}
+			list = withArchivedByRole(new RoleRanker(conn, patientID), list, patientID, dlhcpID, lower,
+					upper == null ? null : new Timestamp(upper.getTime() + 1000L * 60L * 60 * 24L), after,
+					pageSize + 1);
+			String nextToken = null;
+			if (list.size() > pageSize) {
+				list = new ArrayList<TransactionBean>(list.subList(0, pageSize));
+				TransactionBean last = list.get(pageSize - 1);
+				nextToken = TransactionCursor.after(ROLES.indexOf(last.getRole()), last).toToken();
+			}
+			return new TransactionPage(list, nextToken);
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
 	}
 
 	/**
+	 * Streams every access to a patient's records, newest first, without
+	 * holding them in memory. Roles are not filled in: the connection is busy
+	 * with the open result until the stream ends. Archived accesses follow the
+	 * ones still in the database.
 	 * 
-	 * @param transactionList
 	 * @param patientID
-	 * @param sortByRole
-	 * @return
+	 *            The patient whose record was accessed
+	 * @param dlhcpID
+	 *            The patient's DLHCP, whose accesses are hidden, or -1
+	 * @param lower
+	 *            The first day to include, or null for no lower bound
+	 * @param upper
+	 *            The last day to include, or null for no upper bound
+	 * @param callback
+	 *            Receives each access; returning false stops the stream
 	 * @throws DBException
 	 */
-	private List<TransactionBean> addAndSortRoles(List<TransactionBean> transactionList, long patientID,
-			boolean sortByRole) throws DBException {
-		for (TransactionBean t : transactionList) {
-			String rawRole = getRoleStringForMID(t.getLoggedInMID());
-			String formattedRole;
-			switch (rawRole) {
-			case "er":
-				formattedRole = "Emergency Responder";
-				break;
-			case "uap":
-				formattedRole = "UAP";
-				break;
-			case "hcp":
-				formattedRole = getHCPRole(patientID, t.getLoggedInMID());
-				break;
-			case "patient":
-				formattedRole = getPatientRole(patientID, t.getLoggedInMID());
-				break;
-			default:
-				formattedRole = "";
-				break;
+	public void streamRecordAccesses(long patientID, long dlhcpID, java.util.Date lower, java.util.Date upper,
+			TransactionCallback callback) throws DBException {
+		try (Connection conn = factory.getReadConnection();
+				PreparedStatement ps = prepareStreaming(conn, recordAccessQuery(lower, upper, null))) {
+			bindRecordAccessQuery(ps, 1, patientID, dlhcpID, lower, upper, null);
+			if (!stream(ps, callback))
+				return;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		TransactionArchive archive = TransactionArchive.getShared();
+		if (archive == null)
+			return;
+		try {
+			archive.stream(patientID, lower,
+					upper == null ? null : new Timestamp(upper.getTime() + 1000L * 60L * 60 * 24L), null,
+					recordAccessFilter(dlhcpID), callback);
+		} catch (IOException e) {
+			throw new DBException(new SQLException("Unable to read the transaction archive", e));
+		}
+	}
+
+	/**
+	 * Streams the whole transaction log, newest first, without holding it in
+	 * memory.
+	 * 
+	 * @param callback
+	 *            Receives each transaction; returning false stops the stream
+	 * @throws DBException
+	 */
+	public void streamAllTransactions(TransactionCallback callback) throws DBException {
+		try (Connection conn = factory.getReadConnection();
+				PreparedStatement ps = prepareStreaming(conn, "SELECT * FROM transactionlog" + NEWEST_FIRST)) {
+			stream(ps, callback);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Returns one page of a user's activity feed, newest first: the
+	 * patient-viewable actions taken on their records and their own logins.
+	 * Paged the same way as {@link #getRecordAccessPage}.
+	 * 
+	 * @param mid
+	 *            The user whose feed this is
+	 * @param dlhcpID
+	 *            The user's DLHCP, whose hidden actions are left out, or -1
+	 * @param after
+	 *            The end of the previous page, or null for the first page
+	 * @param pageSize
+	 *            The most transactions to return
+	 * @return The page
+	 * @throws DBException
+	 */
+	public TransactionPage getTransactionsAffectingPage(long mid, long dlhcpID, TransactionCursor after,
+			int pageSize) throws DBException {
+		try (Connection conn = factory.getReadConnection();
+				PreparedStatement ps = conn.prepareStatement("SELECT * FROM transactionlog WHERE ((secondaryMID=? "
+						+ "AND transactionCode IN (" + TransactionType.patientViewableStr + ")) "
+						+ "OR (loggedInMID=? AND transactionCode=?)) "
+						+ "AND NOT (loggedInMID=? AND transactionCode IN (" + TransactionType.dlhcpHiddenStr + "))"
+						+ (after == null ? "" : SEEK) + NEWEST_FIRST + " LIMIT ?")) {
+			ps.setLong(1, mid);
+			ps.setLong(2, mid);
+			ps.setInt(3, TransactionType.LOGIN_SUCCESS.getCode());
+			ps.setLong(4, dlhcpID);
+			int i = 5;
+			if (after != null)
+				i = bindSeek(ps, i, after);
+			ps.setInt(i, pageSize + 1);
+			return loadPage(ps, pageSize);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	private String recordAccessQuery(java.util.Date lower, java.util.Date upper, TransactionCursor after) {
+		return "SELECT *" + recordAccessFrom(lower, upper) + (after == null ? "" : SEEK) + NEWEST_FIRST;
+	}
+
+	private String recordAccessFrom(java.util.Date lower, java.util.Date upper) {
+		return " FROM transactionlog WHERE secondaryMID=? AND transactionCode IN ("
+				+ TransactionType.patientViewableStr + ") AND loggedInMID!=?"
+				+ (lower == null ? "" : " AND timeLogged >= ?") + (upper == null ? "" : " AND timeLogged <= ?");
+	}
+
+	private int bindRecordAccessQuery(PreparedStatement ps, int i, long patientID, long dlhcpID,
+			java.util.Date lower, java.util.Date upper, TransactionCursor after) throws SQLException {
+		ps.setLong(i++, patientID);
+		ps.setLong(i++, dlhcpID);
+		if (lower != null)
+			ps.setTimestamp(i++, new Timestamp(lower.getTime()));
+		// add 1 day's worth to include the upper
+		if (upper != null)
+			ps.setTimestamp(i++, new Timestamp(upper.getTime() + 1000L * 60L * 60 * 24L));
+		if (after != null)
+			i = bindSeek(ps, i, after);
+		return i;
+	}
+
+	private static int bindSeek(PreparedStatement ps, int i, TransactionCursor after) throws SQLException {
+		Timestamp time = new Timestamp(after.getTimeLogged());
+		ps.setTimestamp(i++, time);
+		ps.setTimestamp(i++, time);
+		ps.setLong(i++, after.getTransactionID());
+		return i;
+	}
+
+	/**
+	 * Reads up to pageSize rows; the query asks for one more so the last
+	 * page can be told apart without a count.
+	 */
+	private TransactionPage loadPage(PreparedStatement ps, int pageSize) throws SQLException {
+		List<TransactionBean> list = new ArrayList<TransactionBean>(pageSize + 1);
+		try (ResultSet rs = ps.executeQuery()) {
+			while (rs.next())
+				list.add(loader.loadSingle(rs));
+		}
+		return toPage(list, pageSize);
+	}
+
+	private TransactionPage toPage(List<TransactionBean> list, int pageSize) {
+		String nextToken = null;
+		if (list.size() > pageSize) {
+			list = new ArrayList<TransactionBean>(list.subList(0, pageSize));
+			nextToken = TransactionCursor.after(list.get(pageSize - 1)).toToken();
+		}
+		return new TransactionPage(list, nextToken);
+	}
+
+	/**
+	 * A forward-only, read-only statement with a fetch size of
+	 * Integer.MIN_VALUE, which tells the MySQL driver to stream rows one at a
+	 * time rather than buffering the whole result.
+	 */
+	private static PreparedStatement prepareStreaming(Connection conn, String sql) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(Integer.MIN_VALUE);
+		return ps;
+	}
+
+	/**
+	 * @return false if the callback stopped the stream
+	 */
+	private boolean stream(PreparedStatement ps, TransactionCallback callback) throws SQLException, DBException {
+		try (ResultSet rs = ps.executeQuery()) {
+			while (rs.next()) {
+				if (!callback.handle(loader.loadSingle(rs)))
+					return false;
 			}
-			t.setRole(formattedRole);
 		}
+		return true;
+	}
 
-		if (sortByRole) {
-			TransactionBean[] array = new TransactionBean[transactionList.size()];
-			array[0] = transactionList.get(0);
-			TransactionBean t;
-			for (int i = 1; i < transactionList.size(); i++) {
-				t = transactionList.get(i);
-				String role = t.getRole();
-				int j = 0;
-				while (array[j] != null && role.compareToIgnoreCase(array[j].getRole()) >= 0)
-					j++;
-				for (int k = i; k > j; k--) {
-					array[k] = array[k - 1];
+	/**
+	 * Appends the archived accesses to a patient's records to the ones read
+	 * from the database. Archived months are all older than the ones left in
+	 * the database, so the result stays newest first; a row found in both
+	 * (the archiver stopped between writing a month and deleting it) is only
+	 * kept once.
+	 */
+	private List<TransactionBean> withArchived(List<TransactionBean> hot, long patientID, long dlhcpID,
+			java.util.Date from, java.util.Date to, TransactionCursor before, int max) throws DBException {
+		TransactionArchive archive = TransactionArchive.getShared();
+		if (archive == null)
+			return hot;
+		List<TransactionBean> cold;
+		try {
+			cold = archive.read(patientID, from, to, before, recordAccessFilter(dlhcpID),
+					max == 0 ? 0 : max + hot.size()); // room for rows that are also hot
+		} catch (IOException e) {
+			throw new DBException(new SQLException("Unable to read the transaction archive", e));
+		}
+		Set<Long> ids = new HashSet<Long>();
+		for (TransactionBean t : hot)
+			ids.add(t.getTransactionID());
+		for (TransactionBean t : cold) {
+			if (ids.add(t.getTransactionID()))
+				hot.add(t);
+		}
+		return hot;
+	}
+
+	/**
+	 * Adds the archived accesses to a patient's records that come next after
+	 * the cursor in {@link #BY_ROLE} order, up to max of them, to the ones
+	 * read from the database, and sorts the lot. The archive is in time order,
+	 * so all of the patient's archived accesses in the range are ranked, but
+	 * only max are held at once.
+	 */
+	private List<TransactionBean> withArchivedByRole(final RoleRanker ranker, List<TransactionBean> hot,
+			long patientID, long dlhcpID, java.util.Date from, java.util.Date to, final TransactionCursor after,
+			final int max) throws DBException {
+		TransactionArchive archive = TransactionArchive.getShared();
+		if (archive == null)
+			return hot;
+		final Set<Long> ids = new HashSet<Long>();
+		for (TransactionBean t : hot)
+			ids.add(t.getTransactionID());
+		// the last of the kept accesses in role order is at the head, ready to make way
+		final PriorityQueue<TransactionBean> kept = new PriorityQueue<TransactionBean>(max + 1,
+				Collections.reverseOrder(ROLE_RANK_ORDER));
+		try {
+			archive.stream(patientID, from, to, null, recordAccessFilter(dlhcpID), new TransactionCallback() {
+				@Override
+				public boolean handle(TransactionBean t) throws DBException {
+					if (ids.contains(t.getTransactionID()))
+						return true;
+					int rank;
+					try {
+						rank = ranker.getRank(t.getLoggedInMID());
+					} catch (SQLException e) {
+						throw new DBException(e);
+					}
+					if (after != null && (rank < after.getRoleRank() || (rank == after.getRoleRank()
+							&& (t.getTimeLogged().getTime() > after.getTimeLogged()
+									|| (t.getTimeLogged().getTime() == after.getTimeLogged()
+											&& t.getTransactionID() >= after.getTransactionID())))))
+						return true;
+					t.setRole(ROLES.get(rank));
+					kept.add(t);
+					if (kept.size() > max)
+						kept.poll();
+					return true;
 				}
-				array[j] = t;
-			}
-			int size = transactionList.size();
-			for (int i = 0; i < size; i++)
-				transactionList.set(i, array[i]);
+			});
+		} catch (IOException e) {
+			throw new DBException(new SQLException("Unable to read the transaction archive", e));
 		}
+		hot.addAll(kept);
+		Collections.sort(hot, ROLE_RANK_ORDER);
+		return hot;
+	}
 
-		return transactionList;
+	/**
+	 * Picks the archived transactions a patient sees in their access log; the
+	 * archive itself picks the patient's.
+	 */
+	private static TransactionArchive.Filter recordAccessFilter(final long dlhcpID) {
+		return new TransactionArchive.Filter() {
+			@Override
+			public boolean accept(long loggedInMID, long secondaryMID, int code) {
+				return loggedInMID != dlhcpID && TransactionType.parse(code).isPatientViewable();
+			}
+		};
 	}
 
 	/**
-	 * Returns the role for the given MID, or empty string if no user exists for
-	 * the given MID.
+	 * @return The time of the oldest transaction in the database, or null if
+	 *         there are none
+	 * @throws DBException
 	 */
-	private String getRoleStringForMID(Long mid) throws DBException {
+	public Timestamp getOldestTransactionTime() throws DBException {
 		try (Connection conn = factory.getConnection();
-				PreparedStatement roleQuery = conn.prepareStatement("SELECT Role FROM users WHERE MID=?")) {
-			roleQuery.setLong(1, mid);
-			ResultSet rs = roleQuery.executeQuery();
-
-			String role = rs.next() ? rs.getString("Role") : "";
-			rs.close();
-			return role;
+				PreparedStatement ps = conn.prepareStatement("SELECT MIN(timeLogged) FROM transactionlog");
+				ResultSet rs = ps.executeQuery()) {
+			return rs.next() ? rs.getTimestamp(1) : null;
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
 	}
 
 	/**
-	 * Returns the HCP role (LHCP or DLHCP) for the given patient and HCP MIDs.
+	 * Streams the transactions logged in [from, to), oldest first. Used to
+	 * move old months into the {@link TransactionArchive}.
+	 * 
+	 * @param from
+	 *            The first time to include
+	 * @param to
+	 *            The time to stop before
+	 * @param callback
+	 *            Receives each transaction; returning false stops the stream
+	 * @throws DBException
 	 */
-	private String getHCPRole(Long patientID, Long hcpID) throws DBException {
+	public void streamTransactionsBetween(java.util.Date from, java.util.Date to, TransactionCallback callback)
+			throws DBException {
 		try (Connection conn = factory.getConnection();
-				PreparedStatement ps = conn.prepareStatement("SELECT PatientID FROM declaredhcp WHERE HCPID=?")) {
-			ps.setLong(1, hcpID);
-			ResultSet rs = ps.executeQuery();
-			String role = "LHCP";
-			while (rs.next()) {
-				if (rs.getLong("PatientID") == patientID) {
-					role = "DLHCP";
-					break;
-				}
-			}
-			rs.close();
-			return role;
+				PreparedStatement ps = prepareStreaming(conn, "SELECT * FROM transactionlog WHERE timeLogged >= ? "
+						+ "AND timeLogged < ? ORDER BY timeLogged, transactionID")) {
+			ps.setTimestamp(1, new Timestamp(from.getTime()));
+			ps.setTimestamp(2, new Timestamp(to.getTime()));
+			stream(ps, callback);
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
 	}
 
 	/**
-	 * Returns the patient role (Patient or Personal Health Representative) for
-	 * the given patient and HCP MIDs.
+	 * Deletes the transactions logged in [from, to) up to the given ID, once
+	 * they have been archived. The running counts are left alone: archived
+	 * transactions still count towards the operational profile.
+	 * 
+	 * @param from
+	 *            The first time to include
+	 * @param to
+	 *            The time to stop before
+	 * @param maxID
+	 *            The last transaction archived; later ones are kept
+	 * @return The number of transactions deleted
+	 * @throws DBException
 	 */
-	private String getPatientRole(Long patientID, Long mid) throws DBException {
+	public int deleteTransactionsBetween(java.util.Date from, java.util.Date to, long maxID) throws DBException {
 		try (Connection conn = factory.getConnection();
-				PreparedStatement ps = conn
-						.prepareStatement("SELECT representeeMID FROM representatives WHERE representerMID=?")) {
-			ps.setLong(1, mid);
-			ResultSet rs = ps.executeQuery();
-			String role = "Patient";
-			while (rs.next()) {
-				if (rs.getLong("representeeMID") == patientID) {
-					role = "Personal Health Representative";
+				PreparedStatement ps = conn.prepareStatement("DELETE FROM transactionlog WHERE timeLogged >= ? "
+						+ "AND timeLogged < ? AND transactionID <= ?")) {
+			ps.setTimestamp(1, new Timestamp(from.getTime()));
+			ps.setTimestamp(2, new Timestamp(to.getTime()));
+			ps.setLong(3, maxID);
+			return ps.executeUpdate();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * Returns the operation profile
+	 * 
+	 * @return The OperationalProfile as a bean.
+	 * @throws DBException
+	 */
+	public OperationalProfile getOperationalProfile() throws DBException {
+		return getOperationalProfile(0L);
+	}
+
+	/**
+	 * Returns the operation profile, read from the running counts kept by
+	 * {@link TransactionCountDAO} rather than by scanning the log.
+	 * 
+	 * @return The OperationalProfile as a bean.
+	 * @throws DBException
+	 */
+	public OperationalProfile getOperationalProfile(long loggedInMID) throws DBException {
+		OperationalProfile result = countDAO.getOperationalProfile();
+		TransactionLogger.getInstance().logTransaction(TransactionType.OPERATIONAL_PROFILE_VIEW, loggedInMID, 0L, "");
+		return result;
+	}
+
+	/**
+	 * Fills in the role each accessor had relative to the patient and
+	 * optionally sorts by it. All roles are resolved with at most two queries:
+	 * the users' roles (through the shared {@link UserRoleMemo}) and the
+	 * patient's declared HCPs and representatives.
+	 * 
+	 * @param conn
+	 *            The connection to query on
+	 * @param transactionList
+	 *            The accesses to fill in
+	 * @param patientID
+	 *            The patient whose record was accessed
+	 * @param sortByRole
+	 *            Whether to sort by role; the sort is stable, so accesses
+	 *            with the same role stay newest first
+	 * @return The same list
+	 * @throws SQLException
+	 */
+	private List<TransactionBean> addAndSortRoles(Connection conn, List<TransactionBean> transactionList,
+			long patientID, boolean sortByRole) throws SQLException {
+		if (transactionList.isEmpty()) {
+			return transactionList;
+		}
+		Set<Long> mids = new HashSet<Long>();
+		for (TransactionBean t : transactionList) {
+			mids.add(t.getLoggedInMID());
+		}
+		RoleRanker ranker = new RoleRanker(conn, patientID);
+		ranker.rank(mids);
+		for (TransactionBean t : transactionList) {
+			t.setRole(ROLES.get(ranker.getRank(t.getLoggedInMID())));
+		}
+
+		if (sortByRole) {
+			Collections.sort(transactionList, ROLE_ORDER);
+		}
+
+		return transactionList;
+	}
+
+	/**
+	 * Works out the role each accessor of one patient's records is shown
+	 * with, as its rank in {@link #ROLES}. Users' roles come from the shared
+	 * {@link UserRoleMemo}; the patient's declared HCPs and representatives
+	 * are read once, the first time an HCP or patient is ranked.
+	 * {@link #ROLE_RANK} ranks the same way in SQL.
+	 */
+	private static class RoleRanker {
+		private final Connection conn;
+		private final long patientID;
+		private final Map<Long, Integer> ranks = new HashMap<Long, Integer>();
+		private Set<Long> declaredHCPs;
+		private Set<Long> representatives;
+
+		RoleRanker(Connection conn, long patientID) {
+			this.conn = conn;
+			this.patientID = patientID;
+		}
+
+		/**
+		 * Ranks every MID not already ranked, looking up their users' roles
+		 * together.
+		 */
+		void rank(Collection<Long> mids) throws SQLException {
+			Set<Long> unranked = new HashSet<Long>(mids);
+			unranked.removeAll(ranks.keySet());
+			if (unranked.isEmpty())
+				return;
+			Map<Long, String> rawRoles = UserRoleMemo.getShared().getRoles(conn, unranked);
+			for (Long mid : unranked) {
+				String rawRole = rawRoles.get(mid);
+				String formattedRole;
+				switch (rawRole == null ? "" : rawRole) {
+				case "er":
+					formattedRole = "Emergency Responder";
+					break;
+				case "uap":
+					formattedRole = "UAP";
+					break;
+				case "hcp":
+					loadRelations();
+					formattedRole = declaredHCPs.contains(mid) ? "DLHCP" : "LHCP";
+					break;
+				case "patient":
+					loadRelations();
+					formattedRole = representatives.contains(mid) ? "Personal Health Representative" : "Patient";
+					break;
+				default:
+					formattedRole = "";
 					break;
 				}
+				ranks.put(mid, ROLES.indexOf(formattedRole));
+			}
+		}
+
+		int getRank(long mid) throws SQLException {
+			rank(Collections.singleton(mid));
+			return ranks.get(mid);
+		}
+
+		private void loadRelations() throws SQLException {
+			if (declaredHCPs != null)
+				return;
+			declaredHCPs = new HashSet<Long>();
+			representatives = new HashSet<Long>();
+			try (PreparedStatement ps = conn.prepareStatement("SELECT 'hcp' AS kind, HCPID AS mid FROM declaredhcp "
+					+ "WHERE PatientID=? UNION ALL SELECT 'patient', representerMID FROM representatives "
+					+ "WHERE representeeMID=?")) {
+				ps.setLong(1, patientID);
+				ps.setLong(2, patientID);
+				try (ResultSet rs = ps.executeQuery()) {
+					while (rs.next()) {
+						if ("hcp".equals(rs.getString("kind")))
+							declaredHCPs.add(rs.getLong("mid"));
+						else
+							representatives.add(rs.getLong("mid"));
+					}
+				}
 			}
-			rs.close();
-			return role;
-		} catch (SQLException e) {
-			throw new DBException(e);
 		}
 	}
-}
\ No newline at end of file
+}
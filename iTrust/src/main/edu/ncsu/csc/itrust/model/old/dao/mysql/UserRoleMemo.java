@@ -0,0 +1,101 @@
+package edu.ncsu.csc.itrust.model.old.dao.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A shared, size-bounded memo of MID to the raw Role column of the users
+ * table. A user's role never changes once the user is created, so entries
+ * never go stale in production; only MIDs that exist are remembered. Tests
+ * that reload the users table should call {@link #clear()}.
+ */
+public class UserRoleMemo {
+	private static final int MAX_ENTRIES = 20000;
+	/** Keep IN lists to a sane size */
+	private static final int MAX_IN_LIST = 500;
+
+	private static final UserRoleMemo shared = new UserRoleMemo();
+
+	private final Map<Long, String> roles = new LinkedHashMap<Long, String>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * @return The memo shared by all DAOs
+	 */
+	public static UserRoleMemo getShared() {
+		return shared;
+	}
+
+	/**
+	 * Looks up the raw role of each of the given MIDs, querying the users
+	 * table once for all MIDs not already in the memo.
+	 * 
+	 * @param conn
+	 *            The connection to query on
+	 * @param mids
+	 *            The MIDs to look up
+	 * @return MID to raw role; MIDs with no user are left out
+	 * @throws SQLException
+	 */
+	public Map<Long, String> getRoles(Connection conn, Collection<Long> mids) throws SQLException {
+		Map<Long, String> result = new HashMap<Long, String>();
+		Set<Long> notMemoized = new LinkedHashSet<Long>();
+		synchronized (roles) {
+			for (Long mid : mids) {
+				String role = roles.get(mid);
+				if (role != null)
+					result.put(mid, role);
+				else
+					notMemoized.add(mid);
+			}
+		}
+		List<Long> missing = new ArrayList<Long>(notMemoized);
+		for (int start = 0; start < missing.size(); start += MAX_IN_LIST) {
+			List<Long> chunk = missing.subList(start, Math.min(missing.size(), start + MAX_IN_LIST));
+			StringBuilder sql = new StringBuilder("SELECT MID, Role FROM users WHERE MID IN (");
+			for (int i = 0; i < chunk.size(); i++)
+				sql.append(i == 0 ? "?" : ",?");
+			sql.append(")");
+			try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+				for (int i = 0; i < chunk.size(); i++)
+					ps.setLong(i + 1, chunk.get(i));
+				try (ResultSet rs = ps.executeQuery()) {
+					synchronized (roles) {
+						while (rs.next()) {
+							long mid = rs.getLong("MID");
+							String role = rs.getString("Role");
+							result.put(mid, role);
+							roles.put(mid, role);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets every remembered role.
+	 */
+	public void clear() {
+		synchronized (roles) {
+			roles.clear();
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package edu.ncsu.csc.itrust.model.old.enums;
+
+/**
+ * Where a background report job is: waiting for a worker, being written, or
+ * finished one way or another.
+ */
+public enum ReportJobStatus {
+	QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+	/**
+	 * @return true if the job won't change any more
+	 */
+	public boolean isFinished() {
+		return this == DONE || this == FAILED || this == CANCELLED;
+	}
+}
@@ -1,5 +1,7 @@
 package edu.ncsu.csc.itrust.model.old.enums;
 
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * All of the possible transaction types, in no particular order, used in producing the operational profile.
@@ -505,6 +507,9 @@ public enum TransactionType {
 	 */
 	public static String patientViewableStr;
 	
+	/** code -> type, so {@link #parse(int)} doesn't search the values */
+	private static final Map<Integer, TransactionType> BY_CODE = new HashMap<Integer, TransactionType>();
+	
 	static {
 		for(TransactionType t : TransactionType.values())
 		{
@@ -512,6 +517,10 @@ public enum TransactionType {
 			{
 				patientViewableStr += "," + t.code;
 			}
+			if(!BY_CODE.containsKey(t.code))
+			{
+				BY_CODE.put(t.code, t);
+			}
 		}
 	}
 	/**
@@ -571,10 +580,9 @@ public enum TransactionType {
 	 * @return type
 	 */
 	public static TransactionType parse(int code) {
-		for (TransactionType type : TransactionType.values()) {
-			if (type.code == code)
-				return type;
-		}
+		TransactionType type = BY_CODE.get(code);
+		if (type != null)
+			return type;
 		throw new IllegalArgumentException("No transaction type exists for code " + code);
 	}
 	
@@ -9,16 +9,17 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
 import edu.ncsu.csc.itrust.model.old.beans.MedicationBean;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.beans.loaders.PatientLoader;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 
 public class PrescriptionMySQL {
     private DataSource ds;
@@ -38,8 +39,7 @@ public class PrescriptionMySQL {
     }
     
     protected DataSource getDataSource() throws NamingException {
-    	Context ctx = new InitialContext();
-    	return ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+    	return ConnectionContext.share(ConnectionPool.getProductionPool());
     }
     
     /**
@@ -85,7 +85,9 @@ public class PrescriptionMySQL {
     	}
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createAddPreparedStatement(conn, p);){
-            return pstring.executeUpdate() > 0;
+            boolean added = pstring.executeUpdate() > 0;
+            EmergencyRecordSnapshots.patientChanged(p.getPatientMID());
+            return added;
         }
     }
     
@@ -125,7 +127,11 @@ public class PrescriptionMySQL {
     public boolean remove(long id) throws SQLException{
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createRemovePreparedStatement(conn, id);){
-            return pstring.executeUpdate() > 0;
+            long patientMID = EmergencyRecordSnapshots.findPatient(conn,
+                    EmergencyRecordSnapshots.PATIENT_OF_PRESCRIPTION, id);
+            boolean removed = pstring.executeUpdate() > 0;
+            EmergencyRecordSnapshots.patientChanged(patientMID);
+            return removed;
         }
     }
     
@@ -143,7 +149,9 @@ public class PrescriptionMySQL {
     	}
         try (Connection conn = ds.getConnection();
                 PreparedStatement pstring = createUpdatePreparedStatement(conn, p);){
-            return pstring.executeUpdate() > 0;
+            boolean updated = pstring.executeUpdate() > 0;
+            EmergencyRecordSnapshots.patientChanged(p.getPatientMID());
+            return updated;
         }
     }
     
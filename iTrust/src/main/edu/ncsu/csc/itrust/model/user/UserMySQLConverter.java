@@ -11,8 +11,6 @@ import java.util.List;
 import javax.annotation.Resource;
 import javax.faces.bean.ManagedBean;
 import javax.faces.bean.RequestScoped;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
@@ -22,6 +20,8 @@ import edu.ncsu.csc.itrust.model.DataBean;
 import edu.ncsu.csc.itrust.model.SQLLoader;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.enums.Role;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
 @ManagedBean
 @RequestScoped
 public class UserMySQLConverter implements DataBean<User>, Serializable{
@@ -42,8 +42,7 @@ public class UserMySQLConverter implements DataBean<User>, Serializable{
 	public UserMySQLConverter() throws DBException{
 		loader = new UserSQLConvLoader();
 		try {
-			Context ctx = new InitialContext();
-				ds = ((DataSource) (((Context) ctx.lookup("java:comp/env"))).lookup("jdbc/itrust"));
+				ds = ConnectionContext.share(ConnectionPool.getProductionPool());
 		} catch (NamingException e) {
 			throw new DBException(new SQLException("Context Lookup Naming Exception: "+e.getMessage()));
 		}
@@ -0,0 +1,65 @@
+package edu.ncsu.csc.itrust.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes a group report as CSV (RFC 4180): a header line, then a line per
+ * patient. Values containing commas, quotes or line breaks are quoted.
+ */
+public class CsvReportWriter implements ReportWriter {
+	private final Writer writer;
+
+	/**
+	 * @param writer
+	 *            Where to write the report
+	 */
+	public CsvReportWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	@Override
+	public void writeHeaders(List<String> headers) throws IOException {
+		writeLine(headers);
+	}
+
+	@Override
+	public void writeRecord(List<String> record) throws IOException {
+		writeLine(record);
+	}
+
+	@Override
+	public void finish() throws IOException {
+		writer.flush();
+	}
+
+	private void writeLine(List<String> values) throws IOException {
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0)
+				writer.write(',');
+			writeValue(values.get(i));
+		}
+		writer.write("\r\n");
+	}
+
+	private void writeValue(String value) throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"')
+				writer.write('"');
+			writer.write(c);
+		}
+		writer.write('"');
+	}
+}
@@ -1,12 +1,18 @@
 package edu.ncsu.csc.itrust.report;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import edu.ncsu.csc.itrust.model.CompressedBitmap;
 import edu.ncsu.csc.itrust.model.old.beans.FamilyMemberBean;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.FamilyDAO;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDemographicIndex;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDemographicIndex.Attribute;
+import edu.ncsu.csc.itrust.model.old.enums.Gender;
 
 /**
  * 
@@ -67,6 +73,12 @@ public class DemographicReportFilter extends ReportFilter {
 		}
 	}
 
+	/**
+	 * Whole 365-day years since birth, as {@link PatientBean#getAge()} counts
+	 * them; a patient without a birth date is loaded as born today
+	 */
+	private static final String AGE = "COALESCE(DATEDIFF(CURDATE(), p.DateOfBirth) DIV 365, 0)";
+
 	private DemographicReportFilterType filterType;
 	private String filterValue;
 	private FamilyDAO fDAO;
@@ -284,6 +296,179 @@ public class DemographicReportFilter extends ReportFilter {
 		return prunedList;
 	}
 
+	/**
+	 * Compiles the filter into a condition on patients <code>p</code>. Family
+	 * members are looked up with EXISTS subqueries, one per parent column, so
+	 * that each can use its index.
+	 */
+	@Override
+	public String toSQL(List<Object> params) {
+		if (filterValue == null || filterValue.isEmpty())
+			return "FALSE";
+		switch (filterType) {
+		case MID:
+			try {
+				long mid = Long.parseLong(filterValue);
+				if (!Long.toString(mid).equals(filterValue))
+					return "FALSE";
+				params.add(mid);
+				return "p.MID = ?";
+			} catch (NumberFormatException e) {
+				return "FALSE";
+			}
+		case GENDER:
+			for (Gender gender : Gender.values()) {
+				if (filterValue.equalsIgnoreCase(gender.toString())) {
+					if (gender != Gender.NotSpecified)
+						return equalsExactly("p.Gender", gender.getName(), params);
+					// anything that doesn't parse as male or female
+					params.add(Gender.Male.getName());
+					params.add(Gender.Female.getName());
+					return "(p.Gender IS NULL OR BINARY p.Gender NOT IN (?, ?))";
+				}
+			}
+			return "FALSE";
+		case LAST_NAME:
+			return equalsIgnoreCase("p.lastName", filterValue, params);
+		case FIRST_NAME:
+			return equalsIgnoreCase("p.firstName", filterValue, params);
+		case CONTACT_EMAIL:
+			return equalsIgnoreCase("p.email", filterValue, params);
+		case STREET_ADDR:
+			return "(" + equalsIgnoreCase("p.address1", filterValue, params) + " OR "
+					+ equalsIgnoreCase("p.address2", filterValue, params) + " OR "
+					+ equalsIgnoreCase("CONCAT(p.address1, ' ', p.address2)", filterValue, params) + ")";
+		case CITY:
+			return equalsIgnoreCase("p.city", filterValue, params);
+		case STATE:
+			return equalsIgnoreCase("p.state", filterValue, params);
+		case ZIP:
+			params.add(filterValue);
+			return "INSTR(BINARY p.zip, ?) > 0";
+		case PHONE:
+			return equalsIgnoreCase("p.phone", filterValue, params);
+		case EMER_CONTACT_NAME:
+			return equalsIgnoreCase("p.eName", filterValue, params);
+		case EMER_CONTACT_PHONE:
+			return equalsIgnoreCase("p.ePhone", filterValue, params);
+		case INSURE_NAME:
+			return equalsIgnoreCase("p.icName", filterValue, params);
+		case INSURE_ADDR:
+			return "(" + equalsIgnoreCase("p.icAddress1", filterValue, params) + " OR "
+					+ equalsIgnoreCase("p.icAddress2", filterValue, params) + " OR "
+					+ equalsIgnoreCase("CONCAT(p.icAddress1, ' ', p.icAddress2)", filterValue, params) + ")";
+		case INSURE_CITY:
+			return equalsIgnoreCase("p.icCity", filterValue, params);
+		case INSURE_STATE:
+			return equalsIgnoreCase("p.icState", filterValue, params);
+		case INSURE_ZIP:
+			return equalsIgnoreCase("p.icZip", filterValue, params);
+		case INSURE_PHONE:
+			return equalsIgnoreCase("p.icPhone", filterValue, params);
+		case INSURE_ID:
+			return equalsIgnoreCase("p.icID", filterValue, params);
+		case PARENT_FIRST_NAME:
+			return "(" + parentExists("MotherMID", equalsIgnoreCase("f.firstName", filterValue, params)) + " OR "
+					+ parentExists("FatherMID", equalsIgnoreCase("f.firstName", filterValue, params)) + ")";
+		case PARENT_LAST_NAME:
+			return "(" + parentExists("MotherMID", equalsExactly("f.lastName", filterValue, params)) + " OR "
+					+ parentExists("FatherMID", equalsExactly("f.lastName", filterValue, params)) + ")";
+		case CHILD_FIRST_NAME:
+			return "(" + childExists("MotherMID", equalsExactly("f.firstName", filterValue, params)) + " OR "
+					+ childExists("FatherMID", equalsExactly("f.firstName", filterValue, params)) + ")";
+		case CHILD_LAST_NAME:
+			return "(" + childExists("MotherMID", equalsExactly("f.lastName", filterValue, params)) + " OR "
+					+ childExists("FatherMID", equalsExactly("f.lastName", filterValue, params)) + ")";
+		case SIBLING_FIRST_NAME:
+			return "(" + siblingExists("MotherMID", equalsExactly("f.firstName", filterValue, params)) + " OR "
+					+ siblingExists("FatherMID", equalsExactly("f.firstName", filterValue, params)) + ")";
+		case SIBLING_LAST_NAME:
+			return "(" + siblingExists("MotherMID", equalsExactly("f.lastName", filterValue, params)) + " OR "
+					+ siblingExists("FatherMID", equalsExactly("f.lastName", filterValue, params)) + ")";
+		case LOWER_AGE_LIMIT:
+			params.add(parseAge());
+			return AGE + " >= ?";
+		case UPPER_AGE_LIMIT:
+			params.add(parseAge());
+			return "(" + AGE + " > 0 AND " + AGE + " <= ?)";
+		case DEACTIVATED:
+			if (filterValue.equals("exclude"))
+				return "p.DateOfDeactivation IS NULL";
+			if (filterValue.equals("only"))
+				return "p.DateOfDeactivation IS NOT NULL";
+			return "TRUE";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Selects the patients for the filters on attributes the index keeps,
+	 * testing each distinct value the way {@link #filter(List)} tests each
+	 * patient's.
+	 */
+	@Override
+	public CompressedBitmap select(PatientDemographicIndex index) {
+		final String value = filterValue;
+		switch (filterType) {
+		case GENDER:
+			return index.matching(Attribute.GENDER, v -> value.equalsIgnoreCase(v));
+		case CITY:
+			return index.matching(Attribute.CITY, v -> v.equalsIgnoreCase(value));
+		case STATE:
+			return index.matching(Attribute.STATE, v -> v.equalsIgnoreCase(value));
+		case ZIP:
+			return index.matching(Attribute.ZIP, v -> v.contains(value));
+		case INSURE_NAME:
+			return index.matching(Attribute.INSURE_NAME, v -> v.equalsIgnoreCase(value));
+		case INSURE_CITY:
+			return index.matching(Attribute.INSURE_CITY, v -> v.equalsIgnoreCase(value));
+		case INSURE_STATE:
+			return index.matching(Attribute.INSURE_STATE, v -> v.equalsIgnoreCase(value));
+		case DEACTIVATED:
+			if (value.equals("exclude"))
+				return index.matching(Attribute.DEACTIVATED, v -> v.equals("false"));
+			if (value.equals("only"))
+				return index.matching(Attribute.DEACTIVATED, v -> v.equals("true"));
+			return index.all();
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Family filters read the parents' and children's rows of patients too.
+	 * Age limits aren't cached, since who they match changes as days pass.
+	 */
+	@Override
+	public Collection<String> getTables() {
+		if (filterType == DemographicReportFilterType.LOWER_AGE_LIMIT
+				|| filterType == DemographicReportFilterType.UPPER_AGE_LIMIT)
+			return null;
+		return Collections.singleton("patients");
+	}
+
+	private int parseAge() {
+		int age = Integer.parseInt(filterValue);
+		if (age < 0) {
+			throw new NumberFormatException("Age must be GTE 0!");
+		}
+		return age;
+	}
+
+	private static String parentExists(String parentColumn, String condition) {
+		return "EXISTS (SELECT 1 FROM patients f WHERE f.MID = p." + parentColumn + " AND " + condition + ")";
+	}
+
+	private static String childExists(String parentColumn, String condition) {
+		return "EXISTS (SELECT 1 FROM patients f WHERE f." + parentColumn + " = p.MID AND " + condition + ")";
+	}
+
+	private static String siblingExists(String parentColumn, String condition) {
+		return "(p." + parentColumn + " <> 0 AND EXISTS (SELECT 1 FROM patients f WHERE f." + parentColumn
+				+ " = p." + parentColumn + " AND f.MID <> p.MID AND " + condition + "))";
+	}
+
 	/**
 	 * 
 	 * @return
@@ -0,0 +1,44 @@
+package edu.ncsu.csc.itrust.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes a group report as a JSON array with an object per patient, keyed by
+ * the report's headers.
+ */
+public class JsonReportWriter implements ReportWriter {
+	private final JsonWriter json;
+	private List<String> headers;
+
+	/**
+	 * @param writer
+	 *            Where to write the report
+	 */
+	public JsonReportWriter(Writer writer) {
+		json = new JsonWriter(writer);
+	}
+
+	@Override
+	public void writeHeaders(List<String> headers) throws IOException {
+		this.headers = headers;
+		json.beginArray();
+	}
+
+	@Override
+	public void writeRecord(List<String> record) throws IOException {
+		json.beginObject();
+		for (int i = 0; i < record.size() && i < headers.size(); i++)
+			json.name(headers.get(i)).value(record.get(i));
+		json.endObject();
+	}
+
+	@Override
+	public void finish() throws IOException {
+		json.endArray();
+		json.flush();
+	}
+}
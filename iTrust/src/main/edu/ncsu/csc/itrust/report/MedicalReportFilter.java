@@ -1,6 +1,8 @@
 package edu.ncsu.csc.itrust.report;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import edu.ncsu.csc.itrust.model.old.beans.AllergyBean;
@@ -110,6 +112,34 @@ public class MedicalReportFilter extends ReportFilter {
 		return prunedList;
 	}
 
+	/**
+	 * Compiles the filter into a condition on patients <code>p</code>. Only
+	 * allergies are filtered on so far; the other types match no one, as
+	 * {@link #filter(List)} does.
+	 */
+	@Override
+	public String toSQL(List<Object> params) {
+		if (filterValue == null || filterValue.isEmpty())
+			return "FALSE";
+		switch (filterType) {
+		case ALLERGY:
+			return "EXISTS (SELECT 1 FROM allergies a WHERE a.PatientID = p.MID AND "
+					+ equalsIgnoreCase("a.Code", filterValue, params) + ")";
+		default:
+			return "FALSE";
+		}
+	}
+
+	/**
+	 * The types other than allergies match no one, whatever's written.
+	 */
+	@Override
+	public Collection<String> getTables() {
+		if (filterType == MedicalReportFilterType.ALLERGY && filterValue != null && !filterValue.isEmpty())
+			return Collections.singleton("allergies");
+		return Collections.emptySet();
+	}
+
 	/**
 	 * 
 	 * @return
@@ -1,6 +1,8 @@
 package edu.ncsu.csc.itrust.report;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
@@ -99,6 +101,27 @@ public class PersonnelReportFilter extends ReportFilter {
 		return prunedList;
 	}
 
+	/**
+	 * Compiles the filter into a condition on patients <code>p</code>.
+	 */
+	@Override
+	public String toSQL(List<Object> params) {
+		if (filterValue == null || filterValue.isEmpty())
+			return "FALSE";
+		switch (filterType) {
+		case DLHCP:
+			return "EXISTS (SELECT 1 FROM declaredhcp d, personnel h WHERE d.PatientID = p.MID AND h.MID = d.HCPID AND "
+					+ equalsIgnoreCase("CONCAT(h.firstName, ' ', h.lastName)", filterValue, params) + ")";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public Collection<String> getTables() {
+		return Arrays.asList("declaredhcp", "personnel");
+	}
+
 	/**
 	 * 
 	 */
@@ -1,8 +1,11 @@
 package edu.ncsu.csc.itrust.report;
 
+import java.util.Collection;
 import java.util.List;
 
+import edu.ncsu.csc.itrust.model.CompressedBitmap;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDemographicIndex;
 
 /**
  * 
@@ -22,4 +25,82 @@ public abstract class ReportFilter {
 	public abstract String toString();
 	public abstract String getFilterTypeString();
 	public abstract String getFilterValue();
+
+	/**
+	 * Compiles the filter into a condition on the patients table, aliased
+	 * <code>p</code>, that matches the same patients {@link #filter(List)}
+	 * keeps. Filters that can't be expressed in SQL return null and are applied
+	 * in Java instead (see {@link ReportQuery}).
+	 * 
+	 * @param params
+	 *            The condition's parameters are appended to this, in order
+	 * @return The condition, or null
+	 */
+	public String toSQL(List<Object> params) {
+		return null;
+	}
+
+	/**
+	 * Picks the patients {@link #filter(List)} would keep out of the in-memory
+	 * demographic index. Filters on anything the index doesn't keep return
+	 * null, and the report is run with SQL instead.
+	 * 
+	 * @param index
+	 *            The index
+	 * @return The matching patients, or null
+	 */
+	public CompressedBitmap select(PatientDemographicIndex index) {
+		return null;
+	}
+
+	/**
+	 * Names the tables the filter reads, so that cached results can be dropped
+	 * when they're written to (see {@link ReportResultCache}). Filters whose
+	 * matches can change without a write, or that read tables nobody tells
+	 * the cache about, return null and aren't cached.
+	 * 
+	 * @return The tables, or null
+	 */
+	public Collection<String> getTables() {
+		return null;
+	}
+
+	/**
+	 * ANDs together what each filter selects from the index.
+	 * 
+	 * @param filters
+	 *            A report's filters
+	 * @param index
+	 *            The index
+	 * @return The patients matching every filter, or null if any of them
+	 *         can't be answered from the index
+	 */
+	public static CompressedBitmap selectAll(List<ReportFilter> filters, PatientDemographicIndex index) {
+		CompressedBitmap patients = index.all();
+		for (ReportFilter filter : filters) {
+			CompressedBitmap selected = filter.select(index);
+			if (selected == null)
+				return null;
+			patients = CompressedBitmap.and(patients, selected);
+		}
+		return patients;
+	}
+
+	/**
+	 * @return A condition that's true when the column equals the value,
+	 *         ignoring case, as {@link String#equalsIgnoreCase(String)} does
+	 */
+	protected static String equalsIgnoreCase(String column, String value, List<Object> params) {
+		params.add(value);
+		return "BINARY LOWER(" + column + ") = LOWER(?)";
+	}
+
+	/**
+	 * @return A condition that's true when the column equals the value exactly,
+	 *         as {@link String#equals(Object)} does
+	 */
+	protected static String equalsExactly(String column, String value, List<Object> params) {
+		params.add(value);
+		return "BINARY " + column + " = ?";
+	}
 }
@@ -0,0 +1,533 @@
+package edu.ncsu.csc.itrust.report;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.ncsu.csc.itrust.action.GroupReportGeneratorAction;
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.exception.ITrustException;
+import edu.ncsu.csc.itrust.model.old.beans.ReportJobBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.ReportJobDAO;
+import edu.ncsu.csc.itrust.model.old.enums.ReportJobStatus;
+
+/**
+ * Runs group reports in the background, off the request thread. A report is
+ * submitted as the request parameters groupReport.jsp would post, saved in
+ * the reportjobs table, and run by one of a fixed number of workers when one
+ * is free and its owner has fewer than <code>perUser</code> reports running.
+ * The output is spooled to a file, written as <code>.part</code> and renamed
+ * once complete, which is kept until the job expires.
+ *
+ * Because the queue is the table, jobs survive a restart: those that were
+ * queued are queued again by {@link #start()}, and those that were running are
+ * run again from the start.
+ */
+public class ReportJobManager {
+	/** How many records are written between progress updates */
+	public static final int PROGRESS_INTERVAL = 500;
+
+	private static volatile ReportJobManager shared;
+
+	private final DAOFactory factory;
+	private final ReportJobDAO dao;
+	private final File spoolDir;
+	private final int workers;
+	private final int perUser;
+	private final int perUserQueued;
+	private final int maxQueued;
+	private final long expiryMillis;
+
+	/** Guarded by this */
+	private final Deque<ReportJobBean> queue = new ArrayDeque<ReportJobBean>();
+	/** Guarded by this */
+	private final Map<Long, Integer> runningByOwner = new HashMap<Long, Integer>();
+	private final Map<Long, AtomicBoolean> cancelFlags = new ConcurrentHashMap<Long, AtomicBoolean>();
+	private int running;
+	/** Replaced on every start, so workers can tell they've been stopped */
+	private volatile ExecutorService pool;
+	private ScheduledExecutorService sweeper;
+
+	/**
+	 * @param factory
+	 *            The DAOFactory to run reports and keep jobs with
+	 * @param spoolDir
+	 *            Where to write finished reports
+	 * @param workers
+	 *            How many reports to run at once
+	 * @param perUser
+	 *            How many of one user's reports to run at once
+	 * @param perUserQueued
+	 *            How many reports one user may have queued or running
+	 * @param maxQueued
+	 *            How many reports may be queued altogether
+	 * @param expiryMillis
+	 *            How long finished reports are kept
+	 */
+	public ReportJobManager(DAOFactory factory, File spoolDir, int workers, int perUser, int perUserQueued,
+			int maxQueued, long expiryMillis) {
+		this.factory = factory;
+		this.dao = factory.getReportJobDAO();
+		this.spoolDir = spoolDir;
+		this.workers = Math.max(1, workers);
+		this.perUser = Math.max(1, perUser);
+		this.perUserQueued = Math.max(1, perUserQueued);
+		this.maxQueued = Math.max(1, maxQueued);
+		this.expiryMillis = expiryMillis;
+	}
+
+	/**
+	 * @return The manager reports are submitted to, or null if background
+	 *         reports aren't running
+	 */
+	public static ReportJobManager getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param manager
+	 *            The manager to submit reports to, or null
+	 */
+	public static void setShared(ReportJobManager manager) {
+		shared = manager;
+	}
+
+	/**
+	 * Requeues the jobs left over from the last run, clears out partial
+	 * output, and starts the workers and the hourly sweep of expired jobs.
+	 *
+	 * @throws DBException
+	 * @throws IOException
+	 *             If the spool directory can't be created
+	 */
+	public synchronized void start() throws DBException, IOException {
+		if (pool != null)
+			return;
+		if (!spoolDir.isDirectory() && !spoolDir.mkdirs())
+			throw new IOException("Unable to create " + spoolDir);
+		File[] parts = spoolDir.listFiles();
+		if (parts != null) {
+			for (File part : parts) {
+				if (part.getName().endsWith(".part"))
+					part.delete();
+			}
+		}
+		dao.requeueRunningJobs();
+		queue.addAll(dao.getJobsWithStatus(ReportJobStatus.QUEUED));
+		pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-ReportJob-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-ReportJobSweeper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		sweeper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					removeExpiredJobs();
+				} catch (DBException e) {
+					System.err.println("Unable to remove expired report jobs: " + e.getExtendedMessage());
+				}
+			}
+		}, 0, 1, TimeUnit.HOURS);
+		dispatch();
+	}
+
+	/**
+	 * Stops the workers. Reports that are running are abandoned and left
+	 * marked as running, so that they're run again by the next
+	 * {@link #start()}; the workers running them no longer count against the
+	 * limits once they're stopped.
+	 */
+	public synchronized void stop() {
+		if (pool == null)
+			return;
+		pool.shutdownNow();
+		sweeper.shutdownNow();
+		pool = null;
+		sweeper = null;
+		queue.clear();
+		running = 0;
+		runningByOwner.clear();
+		cancelFlags.clear();
+	}
+
+	/**
+	 * Queues a group report.
+	 *
+	 * @param ownerMID
+	 *            The MID of the personnel submitting it
+	 * @param format
+	 *            xml, csv or json
+	 * @param params
+	 *            The report's filters, as groupReport.jsp posts them
+	 * @return The new job's ID
+	 * @throws ITrustException
+	 *             If the format is unknown or too many reports are waiting
+	 * @throws DBException
+	 */
+	public long submit(long ownerMID, String format, Map<String, String[]> params)
+			throws ITrustException, DBException {
+		if (!"xml".equals(format) && !"csv".equals(format) && !"json".equals(format))
+			throw new ITrustException("Unknown report format: " + format);
+		ReportJobBean job = new ReportJobBean();
+		job.setOwnerMID(ownerMID);
+		job.setStatus(ReportJobStatus.QUEUED);
+		job.setFormat(format);
+		job.setDefinition(encodeDefinition(params));
+		// counted and added under the same lock, so two submits can't both fit under the limit
+		synchronized (this) {
+			if (dao.countUnfinishedJobs(ownerMID) >= perUserQueued)
+				throw new ITrustException("You already have " + perUserQueued
+						+ " reports waiting or running; wait for one to finish or cancel one");
+			if (pool == null)
+				throw new ITrustException("Background reports aren't running");
+			if (queue.size() >= maxQueued)
+				throw new ITrustException("Too many reports are waiting to run; try again later");
+			job.setJobID(dao.addJob(job));
+			queue.add(job);
+			dispatch();
+		}
+		return job.getJobID();
+	}
+
+	/**
+	 * @param jobID
+	 *            The job's ID
+	 * @param ownerMID
+	 *            The MID of the personnel asking
+	 * @return The job, or null if there's no such job or it isn't theirs
+	 * @throws DBException
+	 */
+	public ReportJobBean getJob(long jobID, long ownerMID) throws DBException {
+		ReportJobBean job = dao.getJob(jobID);
+		return job == null || job.getOwnerMID() != ownerMID ? null : job;
+	}
+
+	/**
+	 * @param ownerMID
+	 *            The MID of the personnel asking
+	 * @return Their jobs that haven't expired, newest first
+	 * @throws DBException
+	 */
+	public List<ReportJobBean> getJobs(long ownerMID) throws DBException {
+		return dao.getJobsForOwner(ownerMID);
+	}
+
+	/**
+	 * Cancels a job that hasn't finished. A running report stops at its next
+	 * record.
+	 *
+	 * @param jobID
+	 *            The job's ID
+	 * @param ownerMID
+	 *            The MID of the personnel asking
+	 * @return false if there's no such job, it isn't theirs or it had already
+	 *         finished
+	 * @throws DBException
+	 */
+	public boolean cancel(long jobID, long ownerMID) throws DBException {
+		if (getJob(jobID, ownerMID) == null)
+			return false;
+		synchronized (this) {
+			Iterator<ReportJobBean> it = queue.iterator();
+			while (it.hasNext()) {
+				if (it.next().getJobID() == jobID)
+					it.remove();
+			}
+		}
+		AtomicBoolean flag = cancelFlags.get(jobID);
+		if (flag != null)
+			flag.set(true);
+		return dao.finishJob(jobID, ReportJobStatus.CANCELLED, "Cancelled");
+	}
+
+	/**
+	 * @param job
+	 *            A job
+	 * @return Its finished report, or null if it isn't done or has expired
+	 */
+	public File getOutput(ReportJobBean job) {
+		if (job.getStatus() != ReportJobStatus.DONE)
+			return null;
+		File file = outputFile(job);
+		return file.isFile() ? file : null;
+	}
+
+	/**
+	 * Deletes the jobs, and their reports, that finished longer ago than the
+	 * expiry time.
+	 *
+	 * @return How many were removed
+	 * @throws DBException
+	 */
+	public int removeExpiredJobs() throws DBException {
+		List<ReportJobBean> expired = dao
+				.getJobsFinishedBefore(new Timestamp(System.currentTimeMillis() - expiryMillis));
+		for (ReportJobBean job : expired) {
+			outputFile(job).delete();
+			dao.removeJob(job.getJobID());
+		}
+		return expired.size();
+	}
+
+	/**
+	 * Writes a report's parameters as a query string.
+	 *
+	 * @param params
+	 *            The parameters
+	 * @return The query string
+	 */
+	public static String encodeDefinition(Map<String, String[]> params) {
+		StringBuilder definition = new StringBuilder();
+		try {
+			for (Map.Entry<String, String[]> param : params.entrySet()) {
+				for (String value : param.getValue()) {
+					if (definition.length() > 0)
+						definition.append('&');
+					definition.append(URLEncoder.encode(param.getKey(), "UTF-8")).append('=')
+							.append(URLEncoder.encode(value, "UTF-8"));
+				}
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return definition.toString();
+	}
+
+	/**
+	 * Reads a report's parameters back from a query string.
+	 *
+	 * @param definition
+	 *            The query string
+	 * @return The parameters, in the order they were written
+	 */
+	public static Map<String, String[]> decodeDefinition(String definition) {
+		Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+		try {
+			for (String pair : definition.split("&")) {
+				if (pair.isEmpty())
+					continue;
+				int eq = pair.indexOf('=');
+				String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+				String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+				List<String> list = values.get(name);
+				if (list == null) {
+					list = new ArrayList<String>();
+					values.put(name, list);
+				}
+				list.add(value);
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		Map<String, String[]> params = new LinkedHashMap<String, String[]>();
+		for (Map.Entry<String, List<String>> entry : values.entrySet())
+			params.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+		return params;
+	}
+
+	/**
+	 * Starts queued jobs, oldest first, while there are free workers, skipping
+	 * those whose owners are already at their limit.
+	 */
+	private synchronized void dispatch() {
+		if (pool == null)
+			return;
+		final ExecutorService workersOf = pool;
+		Iterator<ReportJobBean> it = queue.iterator();
+		while (running < workers && it.hasNext()) {
+			final ReportJobBean job = it.next();
+			int owned = runningByOwner.containsKey(job.getOwnerMID()) ? runningByOwner.get(job.getOwnerMID()) : 0;
+			if (owned >= perUser)
+				continue;
+			it.remove();
+			running++;
+			runningByOwner.put(job.getOwnerMID(), owned + 1);
+			final AtomicBoolean cancelled = new AtomicBoolean();
+			cancelFlags.put(job.getJobID(), cancelled);
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						runJob(job, cancelled, workersOf);
+					} finally {
+						jobEnded(job, cancelled, workersOf);
+					}
+				}
+			});
+		}
+	}
+
+	private synchronized void jobEnded(ReportJobBean job, AtomicBoolean cancelled, ExecutorService workersOf) {
+		// a worker stopped by stop() was already let go of
+		if (workersOf != pool)
+			return;
+		cancelFlags.remove(job.getJobID(), cancelled);
+		running--;
+		int owned = runningByOwner.get(job.getOwnerMID()) - 1;
+		if (owned == 0)
+			runningByOwner.remove(job.getOwnerMID());
+		else
+			runningByOwner.put(job.getOwnerMID(), owned);
+		dispatch();
+	}
+
+	private void runJob(ReportJobBean job, AtomicBoolean cancelled, ExecutorService workersOf) {
+		File part = new File(spoolDir, outputFile(job).getName() + ".part");
+		File output = outputFile(job);
+		ReportJobStatus status = ReportJobStatus.FAILED;
+		String message = "";
+		try {
+			if (!dao.startJob(job.getJobID()))
+				return;
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(part), "UTF-8"))) {
+				GroupReportGeneratorAction report = new GroupReportGeneratorAction(factory,
+						decodeDefinition(job.getDefinition()), job.getOwnerMID());
+				report.writeReport(new ProgressWriter(newWriter(job.getFormat(), out), job.getJobID(), cancelled,
+						workersOf));
+			}
+			Files.move(part.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			status = ReportJobStatus.DONE;
+		} catch (InterruptedIOException e) {
+			status = workersOf != pool ? null : ReportJobStatus.CANCELLED;
+			message = "Cancelled";
+		} catch (NumberFormatException e) {
+			message = "Invalid age range: " + e.getMessage();
+		} catch (DBException e) {
+			message = e.getExtendedMessage();
+			if (workersOf != pool)
+				status = null;
+		} catch (IOException | RuntimeException e) {
+			message = e.toString();
+			if (workersOf != pool)
+				status = null;
+		} finally {
+			part.delete();
+		}
+		if (status == null)
+			return;
+		try {
+			if (!dao.finishJob(job.getJobID(), status, message == null ? "" : message))
+				output.delete();
+		} catch (DBException e) {
+			System.err.println("Unable to finish report job " + job.getJobID() + ": " + e.getExtendedMessage());
+		}
+		if (status != ReportJobStatus.DONE)
+			output.delete();
+	}
+
+	private File outputFile(ReportJobBean job) {
+		return new File(spoolDir, "report-" + job.getJobID() + "." + job.getFormat());
+	}
+
+	private static ReportWriter newWriter(String format, Writer out) throws IOException {
+		if ("csv".equals(format))
+			return new CsvReportWriter(out);
+		if ("json".equals(format))
+			return new JsonReportWriter(out);
+		return new XmlReportWriter(out);
+	}
+
+	/**
+	 * Counts the records as they're written, saving the count every
+	 * {@value ReportJobManager#PROGRESS_INTERVAL} records, and stops the
+	 * report if it's been cancelled or its worker has been stopped.
+	 */
+	private class ProgressWriter implements ReportWriter {
+		private final ReportWriter writer;
+		private final long jobID;
+		private final AtomicBoolean cancelled;
+		private final ExecutorService workersOf;
+		private int done;
+		private int expected;
+
+		ProgressWriter(ReportWriter writer, long jobID, AtomicBoolean cancelled, ExecutorService workersOf) {
+			this.writer = writer;
+			this.jobID = jobID;
+			this.cancelled = cancelled;
+			this.workersOf = workersOf;
+		}
+
+		@Override
+		public void writeHeaders(List<String> headers) throws IOException {
+			checkCancelled();
+			writer.writeHeaders(headers);
+		}
+
+		@Override
+		public void expectRecords(int count) {
+			expected = count;
+			writer.expectRecords(count);
+			saveProgress();
+		}
+
+		@Override
+		public void writeRecord(List<String> record) throws IOException {
+			checkCancelled();
+			writer.writeRecord(record);
+			if (++done % PROGRESS_INTERVAL == 0)
+				saveProgress();
+		}
+
+		@Override
+		public void finish() throws IOException {
+			checkCancelled();
+			writer.finish();
+			expected = done;
+			saveProgress();
+		}
+
+		private void checkCancelled() throws InterruptedIOException {
+			if (cancelled.get() || workersOf != pool || Thread.currentThread().isInterrupted())
+				throw new InterruptedIOException("Report job " + jobID + " was cancelled");
+		}
+
+		private void saveProgress() {
+			try {
+				dao.updateProgress(jobID, done, Math.max(done, expected));
+			} catch (DBException e) {
+				System.err.println("Unable to save progress of report job " + jobID + ": " + e.getExtendedMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package edu.ncsu.csc.itrust.report;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group report's filters compiled into one parameterized condition on the
+ * patients table, aliased <code>p</code>, so that the database returns only
+ * the matching patients rather than every patient being loaded and filtered in
+ * Java. Filters that can't be compiled (their {@link ReportFilter#toSQL(List)}
+ * returns null) are left over, to be applied in Java to what the query
+ * returns.
+ */
+public class ReportQuery {
+	private final String condition;
+	private final List<Object> params;
+	private final List<ReportFilter> compiledFilters;
+	private final List<ReportFilter> remainingFilters;
+
+	private ReportQuery(String condition, List<Object> params, List<ReportFilter> compiledFilters,
+			List<ReportFilter> remainingFilters) {
+		this.condition = condition;
+		this.params = Collections.unmodifiableList(params);
+		this.compiledFilters = Collections.unmodifiableList(compiledFilters);
+		this.remainingFilters = Collections.unmodifiableList(remainingFilters);
+	}
+
+	/**
+	 * Compiles the filters, ANDing together the conditions of those that can be
+	 * compiled.
+	 *
+	 * @param filters
+	 *            The report's filters
+	 * @return The compiled query
+	 * @throws NumberFormatException
+	 *             If an age limit isn't a number of years
+	 */
+	public static ReportQuery compile(List<ReportFilter> filters) {
+		StringBuilder condition = new StringBuilder();
+		List<Object> params = new ArrayList<Object>();
+		List<ReportFilter> compiled = new ArrayList<ReportFilter>();
+		List<ReportFilter> remaining = new ArrayList<ReportFilter>();
+		for (ReportFilter filter : filters) {
+			List<Object> filterParams = new ArrayList<Object>();
+			String sql = filter.toSQL(filterParams);
+			if (sql == null) {
+				remaining.add(filter);
+				continue;
+			}
+			if (condition.length() > 0)
+				condition.append(" AND ");
+			condition.append('(').append(sql).append(')');
+			params.addAll(filterParams);
+			compiled.add(filter);
+		}
+		return new ReportQuery(condition.length() == 0 ? "TRUE" : condition.toString(), params, compiled,
+				remaining);
+	}
+
+	/**
+	 * @return The condition on patients <code>p</code>
+	 */
+	public String getCondition() {
+		return condition;
+	}
+
+	/**
+	 * @return The condition's parameters, in order
+	 */
+	public List<Object> getParams() {
+		return params;
+	}
+
+	/**
+	 * @return The filters the condition was compiled from, in the order given
+	 */
+	public List<ReportFilter> getCompiledFilters() {
+		return compiledFilters;
+	}
+
+	/**
+	 * @return The filters that couldn't be compiled, in the order given
+	 */
+	public List<ReportFilter> getRemainingFilters() {
+		return remainingFilters;
+	}
+}
@@ -0,0 +1,384 @@
+package edu.ncsu.csc.itrust.report;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+
+/**
+ * Remembers which patients group reports matched, so that running the same
+ * filters again doesn't repeat the query. Results are keyed by the set of
+ * filters (type and value), so the order they were given in doesn't matter,
+ * and the MIDs are kept delta-encoded as varints, a byte or two per patient.
+ *
+ * Each result depends on the tables its filters read (see
+ * {@link ReportFilter#getTables()}). The DAOs call
+ * {@link #tableChanged(String)} after writing to patients, allergies,
+ * declaredhcp, representatives or personnel, which drops the results that
+ * depend on that table and no others. Every table has a generation that the
+ * write bumps, and a result is only kept if none of its tables' generations
+ * changed while it was being computed, so a write can't be missed by a report
+ * that was running at the time.
+ *
+ * Reports may be read from a replica that hasn't caught up with a write yet,
+ * so a result isn't kept if one of its tables was written to just before it
+ * was computed. Writes made outside the DAOs aren't seen, so results also
+ * expire after a while. Least recently used results are evicted to keep the
+ * cache under its size in bytes.
+ */
+public class ReportResultCache {
+	private static volatile ReportResultCache shared;
+
+	/**
+	 * Computes a report's MIDs when they aren't cached.
+	 */
+	public interface Loader {
+		List<Long> load() throws DBException;
+	}
+
+	private static class Entry {
+		final byte[] mids;
+		final int count;
+		final Set<String> tables;
+		final long[] generations;
+		final long createdAt;
+
+		Entry(byte[] mids, int count, Set<String> tables, long[] generations, long createdAt) {
+			this.mids = mids;
+			this.count = count;
+			this.tables = tables;
+			this.generations = generations;
+			this.createdAt = createdAt;
+		}
+
+		long sizeInBytes(String key) {
+			return 64 + mids.length + key.length() * 2L + generations.length * 8L;
+		}
+	}
+
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	private final long settleMillis;
+	private final Map<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+	/** Guarded by this; in least recently used order */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	/** Guarded by this; the keys of the results that depend on each table */
+	private final Map<String, Set<String>> keysByTable = new HashMap<String, Set<String>>();
+	private final Map<String, Long> changedAt = new ConcurrentHashMap<String, Long>();
+	private long bytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong uncacheable = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxBytes
+	 *            How big the cached results may get altogether
+	 * @param maxAgeMillis
+	 *            How long a result is kept
+	 * @param settleMillis
+	 *            How long after a table is written to before results that
+	 *            depend on it are kept again
+	 */
+	public ReportResultCache(long maxBytes, long maxAgeMillis, long settleMillis) {
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		this.settleMillis = settleMillis;
+	}
+
+	/**
+	 * @return The cache group reports use, or null if they aren't cached
+	 */
+	public static ReportResultCache getShared() {
+		return shared;
+	}
+
+	/**
+	 * @param cache
+	 *            The cache for group reports to use, or null to not cache them
+	 */
+	public static void setShared(ReportResultCache cache) {
+		shared = cache;
+	}
+
+	/**
+	 * Tells the shared cache, if there is one, that a table has been written
+	 * to.
+	 *
+	 * @param table
+	 *            The table's name
+	 */
+	public static void tableChanged(String table) {
+		ReportResultCache cache = shared;
+		if (cache != null)
+			cache.invalidate(table);
+	}
+
+	/**
+	 * Finds a report's MIDs in the cache, or loads and caches them.
+	 *
+	 * @param filters
+	 *            The filters the MIDs are for
+	 * @param loader
+	 *            Finds the MIDs if they aren't cached
+	 * @return The MIDs, in the order the loader gave them
+	 * @throws DBException
+	 */
+	public List<Long> getMIDs(List<ReportFilter> filters, Loader loader) throws DBException {
+		Set<String> tables = new TreeSet<String>();
+		for (ReportFilter filter : filters) {
+			Collection<String> read = filter.getTables();
+			if (read == null) {
+				uncacheable.incrementAndGet();
+				return loader.load();
+			}
+			tables.addAll(read);
+		}
+		String key = keyOf(filters);
+		long started = System.currentTimeMillis();
+		long[] before = generationsOf(tables);
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (Arrays.equals(entry.generations, before)
+						&& System.currentTimeMillis() - entry.createdAt < maxAgeMillis) {
+					hits.incrementAndGet();
+					return decode(entry.mids, entry.count);
+				}
+				remove(key);
+			}
+		}
+		misses.incrementAndGet();
+		List<Long> mids = loader.load();
+		byte[] encoded = encode(mids);
+		synchronized (this) {
+			// a table written to while the report ran may have changed its result
+			if (Arrays.equals(before, generationsOf(tables)) && settled(tables, started)
+					&& !entries.containsKey(key)) {
+				Entry entry = new Entry(encoded, mids.size(), tables, before, System.currentTimeMillis());
+				if (entry.sizeInBytes(key) <= maxBytes) {
+					entries.put(key, entry);
+					bytes += entry.sizeInBytes(key);
+					for (String table : tables) {
+						Set<String> keys = keysByTable.get(table);
+						if (keys == null) {
+							keys = new HashSet<String>();
+							keysByTable.put(table, keys);
+						}
+						keys.add(key);
+					}
+					evict();
+				}
+			}
+		}
+		return mids;
+	}
+
+	/**
+	 * Drops the results that depend on a table.
+	 *
+	 * @param table
+	 *            The table that was written to
+	 */
+	public void invalidate(String table) {
+		changedAt.put(table, System.currentTimeMillis());
+		generation(table).incrementAndGet();
+		synchronized (this) {
+			Set<String> keys = keysByTable.get(table);
+			if (keys == null)
+				return;
+			for (String key : new ArrayList<String>(keys)) {
+				remove(key);
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Drops every result.
+	 */
+	public synchronized void clear() {
+		for (AtomicLong generation : generations.values())
+			generation.incrementAndGet();
+		entries.clear();
+		keysByTable.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return How many results are cached
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return Roughly how many bytes the cached results take up
+	 */
+	public synchronized long sizeInBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return How many reports were answered from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return How many reports had to be run
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return How many reports had a filter the cache can't track
+	 */
+	public long getUncacheable() {
+		return uncacheable.get();
+	}
+
+	/**
+	 * @return How many results were dropped because a table they depend on
+	 *         was written to
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * @return How many results were dropped to make room
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		long h = hits.get();
+		long m = misses.get();
+		return "Report cache: " + size() + " results, " + sizeInBytes() / 1024 + " KB, " + h + " hits, " + m
+				+ " misses (" + (h + m == 0 ? 0 : 100 * h / (h + m)) + "% hit), " + uncacheable.get()
+				+ " uncacheable, " + invalidations.get() + " invalidated, " + evictions.get() + " evicted";
+	}
+
+	/**
+	 * @param filters
+	 *            A report's filters
+	 * @return The same key for the same filters in any order, repeated or not
+	 */
+	static String keyOf(List<ReportFilter> filters) {
+		Set<String> parts = new TreeSet<String>();
+		for (ReportFilter filter : filters)
+			parts.add(filter.getClass().getName() + '\u0000' + filter.getFilterTypeString() + '\u0000'
+					+ filter.getFilterValue());
+		StringBuilder key = new StringBuilder();
+		for (String part : parts)
+			key.append(part).append('\u0001');
+		return key.toString();
+	}
+
+	/**
+	 * Writes each MID as the zigzag varint of its difference from the one
+	 * before.
+	 */
+	static byte[] encode(List<Long> mids) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(mids.size() * 2);
+		long previous = 0;
+		for (long mid : mids) {
+			long delta = mid - previous;
+			long zigzag = (delta << 1) ^ (delta >> 63);
+			while ((zigzag & ~0x7FL) != 0) {
+				out.write((int) ((zigzag & 0x7F) | 0x80));
+				zigzag >>>= 7;
+			}
+			out.write((int) zigzag);
+			previous = mid;
+		}
+		return out.toByteArray();
+	}
+
+	static List<Long> decode(byte[] encoded, int count) {
+		List<Long> mids = new ArrayList<Long>(count);
+		long previous = 0;
+		int i = 0;
+		while (i < encoded.length) {
+			long zigzag = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = encoded[i++];
+				zigzag |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			previous += (zigzag >>> 1) ^ -(zigzag & 1);
+			mids.add(previous);
+		}
+		return mids;
+	}
+
+	private AtomicLong generation(String table) {
+		AtomicLong generation = generations.get(table);
+		if (generation == null) {
+			generations.putIfAbsent(table, new AtomicLong());
+			generation = generations.get(table);
+		}
+		return generation;
+	}
+
+	private long[] generationsOf(Set<String> tables) {
+		long[] current = new long[tables.size()];
+		int i = 0;
+		for (String table : tables)
+			current[i++] = generation(table).get();
+		return current;
+	}
+
+	private boolean settled(Set<String> tables, long started) {
+		for (String table : tables) {
+			Long changed = changedAt.get(table);
+			if (changed != null && started - changed < settleMillis)
+				return false;
+		}
+		return true;
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry == null)
+			return;
+		bytes -= entry.sizeInBytes(key);
+		for (String table : entry.tables) {
+			Set<String> keys = keysByTable.get(table);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty())
+					keysByTable.remove(table);
+			}
+		}
+	}
+
+	private void evict() {
+		while (bytes > maxBytes && !entries.isEmpty()) {
+			Iterator<String> eldest = entries.keySet().iterator();
+			remove(eldest.next());
+			evictions.incrementAndGet();
+		}
+	}
+}
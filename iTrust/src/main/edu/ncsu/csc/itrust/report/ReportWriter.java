@@ -0,0 +1,45 @@
+package edu.ncsu.csc.itrust.report;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a group report out as it's generated, one record at a time, so that
+ * the whole report never has to be held in memory.
+ */
+public interface ReportWriter {
+	/**
+	 * Starts the report. Called once, before any records.
+	 * 
+	 * @param headers
+	 *            The name of each column
+	 * @throws IOException
+	 */
+	void writeHeaders(List<String> headers) throws IOException;
+
+	/**
+	 * Says roughly how many records are coming, once it's known. Records may
+	 * still be left out by filters that are applied as they're written.
+	 * 
+	 * @param count
+	 *            The number of records expected
+	 */
+	default void expectRecords(int count) {
+	}
+
+	/**
+	 * Writes one patient's record.
+	 * 
+	 * @param record
+	 *            A value for each column
+	 * @throws IOException
+	 */
+	void writeRecord(List<String> record) throws IOException;
+
+	/**
+	 * Ends the report and flushes it. Doesn't close the underlying stream.
+	 * 
+	 * @throws IOException
+	 */
+	void finish() throws IOException;
+}
@@ -0,0 +1,145 @@
+package edu.ncsu.csc.itrust.report;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a group report as XML with StAX, in the format
+ * {@link edu.ncsu.csc.itrust.XmlGenerator} builds:
+ * <code>&lt;PatientReport&gt;&lt;Patient FIRST_NAME="..." .../&gt;...&lt;/PatientReport&gt;</code>
+ * The headers are turned into attribute names once, up front.
+ *
+ * StAX writes line breaks and tabs in attribute values as they are, and a
+ * parser normalizes those to spaces, so the output goes through
+ * {@link WhitespaceEscaper} to write them as character references instead.
+ */
+public class XmlReportWriter implements ReportWriter {
+	private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+	private final XMLStreamWriter xml;
+	private String[] attributes;
+
+	/**
+	 * @param writer
+	 *            Where to write the report
+	 * @throws IOException
+	 */
+	public XmlReportWriter(Writer writer) throws IOException {
+		try {
+			xml = FACTORY.createXMLStreamWriter(new WhitespaceEscaper(writer));
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void writeHeaders(List<String> headers) throws IOException {
+		attributes = new String[headers.size()];
+		for (int i = 0; i < attributes.length; i++)
+			attributes[i] = sanitize(headers.get(i));
+		try {
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.writeStartElement("PatientReport");
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void writeRecord(List<String> record) throws IOException {
+		try {
+			xml.writeEmptyElement("Patient");
+			for (int i = 0; i < record.size() && i < attributes.length; i++)
+				xml.writeAttribute(attributes[i], sanitize(record.get(i)));
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		try {
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Turns newlines, carriage returns and tabs into character references.
+	 * Nothing but attribute values can hold those in a report, since no
+	 * whitespace is written between elements.
+	 */
+	private static class WhitespaceEscaper extends FilterWriter {
+		WhitespaceEscaper(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			if (c == '\n')
+				out.write("&#10;");
+			else if (c == '\r')
+				out.write("&#13;");
+			else if (c == '\t')
+				out.write("&#9;");
+			else
+				out.write(c);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			int start = off;
+			for (int i = off; i < off + len; i++) {
+				char c = cbuf[i];
+				if (c == '\n' || c == '\r' || c == '\t') {
+					out.write(cbuf, start, i - start);
+					write(c);
+					start = i + 1;
+				}
+			}
+			out.write(cbuf, start, off + len - start);
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			write(str.toCharArray(), off, len);
+		}
+	}
+
+	/**
+	 * Makes a header usable as an attribute name: spaces become underscores,
+	 * '#' becomes NUMBER and apostrophes are dropped. Values get the same
+	 * treatment, as they always have.
+	 * 
+	 * @param s
+	 *            The header or value
+	 * @return The sanitized string
+	 */
+	public static String sanitize(String s) {
+		StringBuilder out = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c != ' ' && c != '#' && c != '\'') {
+				if (out != null)
+					out.append(c);
+				continue;
+			}
+			if (out == null)
+				out = new StringBuilder(s.length() + 8).append(s, 0, i);
+			if (c == ' ')
+				out.append('_');
+			else if (c == '#')
+				out.append("NUMBER");
+		}
+		return out == null ? s : out.toString();
+	}
+}
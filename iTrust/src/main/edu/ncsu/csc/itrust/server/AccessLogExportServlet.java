@@ -0,0 +1,47 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import edu.ncsu.csc.itrust.action.ViewMyAccessLogAction;
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.exception.ITrustException;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+
+/**
+ * Downloads a patient's access log as CSV, for the same
+ * <code>logMID</code>, <code>startDate</code> and <code>endDate</code> as
+ * viewAccessLog.jsp. The log is streamed from the database as it is written,
+ * so exporting a long log takes no more memory than a short one.
+ */
+public class AccessLogExportServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		Object mid = request.getSession().getAttribute("loggedInMID");
+		if (!(mid instanceof Long)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		ViewMyAccessLogAction action = new ViewMyAccessLogAction(DAOFactory.getProductionInstance(), (Long) mid);
+		response.setContentType("text/csv;charset=UTF-8");
+		response.setHeader("Content-Disposition", "attachment; filename=accessLog.csv");
+		try {
+			action.exportAccesses(request.getParameter("startDate"), request.getParameter("endDate"),
+					request.getParameter("logMID"), response.getWriter());
+		} catch (FormValidationException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getErrorList().toString());
+		} catch (DBException e) {
+			throw new ServletException(e.getExtendedMessage(), e);
+		} catch (ITrustException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.ReplicaRouter;
+
+/**
+ * Opens a {@link ConnectionContext} around each request, so that all the DAOs
+ * the request uses share one pooled connection instead of borrowing one per
+ * query. The context is available to the request as the
+ * {@value #CONTEXT_ATTRIBUTE} attribute.
+ *
+ * When reads are routed to replicas (see {@link ReplicaRouter}), a request
+ * that writes - any request that isn't a GET, or that wrote through the
+ * context - keeps its session reading from the primary for the router's
+ * sticky period, so users see their own changes.
+ *
+ * Init parameters (all optional):
+ * <ul>
+ * <li><code>unitOfWork</code> - true to make each request a unit of work,
+ * committed when the request completes and rolled back if it throws</li>
+ * <li><code>logBorrows</code> - true to log, per request, how many connections
+ * the DAOs asked for and how many were borrowed from the pool</li>
+ * </ul>
+ */
+public class ConnectionContextFilter implements Filter {
+	/** The request attribute holding the request's {@link ConnectionContext} */
+	public static final String CONTEXT_ATTRIBUTE = "connectionContext";
+	/** The session attribute holding when the session can read from replicas again */
+	public static final String PRIMARY_UNTIL_ATTRIBUTE = "readFromPrimaryUntil";
+
+	private boolean unitOfWork;
+	private boolean logBorrows;
+
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+		unitOfWork = Boolean.parseBoolean(config.getInitParameter("unitOfWork"));
+		logBorrows = Boolean.parseBoolean(config.getInitParameter("logBorrows"));
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		ConnectionContext context;
+		try {
+			context = unitOfWork ? ConnectionContext.beginUnitOfWork() : ConnectionContext.open();
+		} catch (SQLException e) {
+			throw new ServletException("Unable to begin a unit of work", e);
+		}
+		request.setAttribute(CONTEXT_ATTRIBUTE, context);
+		ReplicaRouter router = DAOFactory.getProductionInstance().getReplicaRouter();
+		if (router != null && request instanceof HttpServletRequest)
+			startReads((HttpServletRequest) request, context);
+		try {
+			chain.doFilter(request, response);
+			if (unitOfWork)
+				context.commit();
+		} catch (SQLException e) {
+			throw new ServletException("Unable to commit the request's unit of work", e);
+		} finally {
+			if (router != null && context.hasWritten() && request instanceof HttpServletRequest) {
+				HttpSession session = ((HttpServletRequest) request).getSession(false);
+				if (session != null)
+					session.setAttribute(PRIMARY_UNTIL_ATTRIBUTE,
+							System.currentTimeMillis() + router.getStickyMillis());
+			}
+			try {
+				context.close();
+			} catch (SQLException e) {
+				System.err.println("Unable to release the request's connection: " + e.getMessage());
+			}
+			if (logBorrows && request instanceof HttpServletRequest) {
+				System.out.println(((HttpServletRequest) request).getRequestURI() + ": "
+						+ context.getRequestCount() + " connection requests, " + context.getBorrowCount()
+						+ " borrowed");
+			}
+		}
+	}
+
+	/**
+	 * Sends the request's reads to the primary if it writes or its session
+	 * wrote recently.
+	 */
+	private static void startReads(HttpServletRequest request, ConnectionContext context) {
+		String method = request.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method))
+			context.markWritten();
+		HttpSession session = request.getSession(false);
+		if (session == null)
+			return;
+		Object until = session.getAttribute(PRIMARY_UNTIL_ATTRIBUTE);
+		if (until instanceof Long && (Long) until > System.currentTimeMillis())
+			context.setReadFromPrimary(true);
+	}
+
+	@Override
+	public void destroy() {
+		// nothing to release
+	}
+}
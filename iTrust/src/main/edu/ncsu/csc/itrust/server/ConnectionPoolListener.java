@@ -0,0 +1,127 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.sql.DataSource;
+
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.ReplicaRouter;
+
+/**
+ * Sets up the shared {@link ConnectionPool} when the webapp is deployed.
+ * Configured with the <code>connectionPool.*</code> context parameters in
+ * web.xml: <code>leakThresholdSeconds</code> is how long a connection can be
+ * held before it's reported as leaked (0 to not look), <code>leakTraces</code>
+ * records where each connection was borrowed so leaks can be traced, and
+ * <code>metricsMinutes</code> logs the pool's metrics that often (0 to not log
+ * them). The pool itself is sized in context.xml.
+ *
+ * If <code>replicas.dataSources</code> lists the JNDI names of read replicas'
+ * pools (comma separated), it also sets up the {@link ReplicaRouter} that sends
+ * the production DAOFactory's reads to them, configured with
+ * <code>replicas.maxLagSeconds</code>, <code>replicas.stickySeconds</code>,
+ * <code>replicas.checkSeconds</code> and <code>replicas.retrySeconds</code>.
+ */
+public class ConnectionPoolListener implements ServletContextListener {
+	private static final long DEFAULT_LEAK_SECONDS = 60;
+	private static final long DEFAULT_MAX_LAG_SECONDS = 5;
+	private static final long DEFAULT_STICKY_SECONDS = 10;
+	private static final long DEFAULT_CHECK_SECONDS = 5;
+	private static final long DEFAULT_RETRY_SECONDS = 30;
+
+	private ScheduledExecutorService executor;
+	private ReplicaRouter router;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		final ConnectionPool pool;
+		try {
+			pool = ConnectionPool.getProductionPool();
+		} catch (NamingException e) {
+			System.err.println("Unable to look up the connection pool: " + e.getMessage());
+			return;
+		}
+		pool.setLeakThresholdMillis(getLong(ctx, "connectionPool.leakThresholdSeconds", DEFAULT_LEAK_SECONDS) * 1000L);
+		pool.setLeakTraces(Boolean.parseBoolean(ctx.getInitParameter("connectionPool.leakTraces")));
+		startReplicas(ctx);
+		long minutes = getLong(ctx, "connectionPool.metricsMinutes", 0);
+		if (minutes <= 0)
+			return;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-ConnectionPoolMetrics");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				System.out.println(pool);
+			}
+		}, minutes, minutes, TimeUnit.MINUTES);
+	}
+
+	private void startReplicas(ServletContext ctx) {
+		String names = ctx.getInitParameter("replicas.dataSources");
+		if (names == null || names.trim().isEmpty())
+			return;
+		List<ConnectionPool> replicas = new ArrayList<ConnectionPool>();
+		try {
+			Context env = (Context) new InitialContext().lookup("java:comp/env");
+			for (String name : names.split(",")) {
+				if (!name.trim().isEmpty())
+					replicas.add(new ConnectionPool(name.trim(), (DataSource) env.lookup(name.trim())));
+			}
+		} catch (NamingException e) {
+			System.err.println("Unable to look up the read replicas, reading from the primary: " + e.getMessage());
+			return;
+		}
+		router = new ReplicaRouter(replicas, ReplicaRouter.MYSQL_LAG,
+				getLong(ctx, "replicas.maxLagSeconds", DEFAULT_MAX_LAG_SECONDS) * 1000L,
+				getLong(ctx, "replicas.stickySeconds", DEFAULT_STICKY_SECONDS) * 1000L,
+				getLong(ctx, "replicas.retrySeconds", DEFAULT_RETRY_SECONDS) * 1000L);
+		router.start(getLong(ctx, "replicas.checkSeconds", DEFAULT_CHECK_SECONDS) * 1000L);
+		DAOFactory.getProductionInstance().setReplicaRouter(router);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		if (router != null) {
+			DAOFactory.getProductionInstance().setReplicaRouter(null);
+			router.stop();
+			router = null;
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		ConnectionPool.setProductionPool(null);
+	}
+
+	private static long getLong(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + name + ", defaulting to " + defaultValue);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecord;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordLoader;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordMySQL;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+
+/**
+ * Sets up the shared {@link EmergencyRecordLoader} and
+ * {@link EmergencyRecordSnapshots} when the webapp is deployed, and stops
+ * their threads when it's undeployed. Configured with the
+ * <code>emergencyRecord.*</code> context parameters in web.xml:
+ * <code>threads</code> is how many section queries may run at once (0 to load
+ * each record's sections one after another), <code>queueCapacity</code> how
+ * many may wait for a thread, <code>deadlineMillis</code> how long a record
+ * may take before its unfinished sections are shown as unavailable (0 for no
+ * deadline), <code>snapshotMegabytes</code> bounds the snapshots (0 to always
+ * assemble records live), <code>snapshotSettleSeconds</code> is how long after
+ * a write before the patient's snapshot is rebuilt (at least the replicas'
+ * lag), <code>snapshotWarm</code> builds snapshots for every active patient at
+ * startup, and <code>metricsMinutes</code> logs each section's latency and the
+ * snapshots' hit rate that often (0 to not log them).
+ */
+public class EmergencyRecordListener implements ServletContextListener {
+	private static final long DEFAULT_THREADS = 8;
+	private static final long DEFAULT_QUEUE_CAPACITY = 64;
+	private static final long DEFAULT_DEADLINE_MILLIS = 2000;
+	private static final long DEFAULT_SNAPSHOT_MEGABYTES = 32;
+	private static final long DEFAULT_SNAPSHOT_SETTLE_SECONDS = 5;
+
+	private EmergencyRecordLoader loader;
+	private EmergencyRecordSnapshots snapshots;
+	private ScheduledExecutorService executor;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		long threads = getLong(ctx, "emergencyRecord.threads", DEFAULT_THREADS);
+		if (threads > 0) {
+			loader = new EmergencyRecordLoader((int) threads,
+					(int) getLong(ctx, "emergencyRecord.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+					getLong(ctx, "emergencyRecord.deadlineMillis", DEFAULT_DEADLINE_MILLIS));
+			EmergencyRecordLoader.setShared(loader);
+		}
+		long megabytes = getLong(ctx, "emergencyRecord.snapshotMegabytes", DEFAULT_SNAPSHOT_MEGABYTES);
+		if (megabytes > 0)
+			startSnapshots(ctx, megabytes);
+		long minutes = getLong(ctx, "emergencyRecord.metricsMinutes", 0);
+		if (minutes <= 0 || loader == null && snapshots == null)
+			return;
+		final EmergencyRecordLoader loaderMetrics = loader;
+		final EmergencyRecordSnapshots snapshotMetrics = snapshots;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-EmergencyRecordMetrics");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if (loaderMetrics != null)
+					System.out.println(loaderMetrics);
+				if (snapshotMetrics != null)
+					System.out.println(snapshotMetrics);
+			}
+		}, minutes, minutes, TimeUnit.MINUTES);
+	}
+
+	private void startSnapshots(ServletContext ctx, long megabytes) {
+		final EmergencyRecordMySQL sql;
+		try {
+			sql = new EmergencyRecordMySQL();
+		} catch (DBException e) {
+			System.err.println("Unable to keep emergency record snapshots: " + e.getExtendedMessage());
+			return;
+		}
+		snapshots = new EmergencyRecordSnapshots(new EmergencyRecordSnapshots.Builder() {
+			@Override
+			public EmergencyRecord build(long mid) throws DBException {
+				return sql.getEmergencyRecordForPatient(mid);
+			}
+		}, megabytes * 1024 * 1024,
+				getLong(ctx, "emergencyRecord.snapshotSettleSeconds", DEFAULT_SNAPSHOT_SETTLE_SECONDS) * 1000);
+		snapshots.start();
+		EmergencyRecordSnapshots.setShared(snapshots);
+		if (!Boolean.parseBoolean(ctx.getInitParameter("emergencyRecord.snapshotWarm")))
+			return;
+		try {
+			snapshots.warm(DAOFactory.getProductionInstance().getPatientDAO()
+					.getPatientMIDsWhere("p.DateOfDeactivation IS NULL", new ArrayList<Object>()));
+		} catch (DBException e) {
+			System.err.println("Unable to warm emergency record snapshots: " + e.getExtendedMessage());
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		EmergencyRecordLoader.setShared(null);
+		EmergencyRecordSnapshots.setShared(null);
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (snapshots != null) {
+			snapshots.stop();
+			snapshots = null;
+		}
+		if (loader != null) {
+			loader.shutdown();
+			loader = null;
+		}
+	}
+
+	private static long getLong(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + name + ", defaulting to " + defaultValue);
+			return defaultValue;
+		}
+	}
+}
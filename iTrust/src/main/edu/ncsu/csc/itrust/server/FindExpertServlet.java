@@ -15,6 +15,10 @@ import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 
 /**
  * Servlet implementation class FindExpertServlet
+ * 
+ * Lists the experts matching <code>query</code>, optionally only those with
+ * the given <code>specialty</code> and/or assigned to the given
+ * <code>hospital</code>.
  */
 public class FindExpertServlet extends HttpServlet {
 	private SearchUsersAction sua;
@@ -42,7 +46,11 @@ public class FindExpertServlet extends HttpServlet {
 		response.setContentType("text/plain");
 		String q = request.getParameter("query");
 		PrintWriter pw = response.getWriter();
-		List<PersonnelBean> exp = sua.fuzzySearchForExperts(q);
+		String specialty = request.getParameter("specialty");
+		String hospital = request.getParameter("hospital");
+		//narrowed down to a specialty or hospital, every word of the name must match
+		List<PersonnelBean> exp = specialty == null && hospital == null ? sua.fuzzySearchForExperts(q)
+				: sua.searchForExperts(q, specialty, hospital);
 		StringBuffer resp = new StringBuffer("<table class=\"fTable\" width=\"80%\"><tr>"
 				+ "<th width=\"30%\">Name</th>"
 				+ "<th width=\"30%\">Specialty</th>"
@@ -1,24 +1,25 @@
 package edu.ncsu.csc.itrust.server;
 
+import java.io.BufferedWriter;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Calendar;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Document;
-import edu.ncsu.csc.itrust.XmlGenerator;
 import edu.ncsu.csc.itrust.action.GroupReportGeneratorAction;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.report.CsvReportWriter;
+import edu.ncsu.csc.itrust.report.JsonReportWriter;
+import edu.ncsu.csc.itrust.report.ReportWriter;
+import edu.ncsu.csc.itrust.report.XmlReportWriter;
 
 /**
- * GroupReportGeneratorServlet is a generic servlet that serves a xml document
- * 
+ * GroupReportGeneratorServlet is a generic servlet that serves a group report
+ * for download as XML, or as CSV or JSON if the format parameter asks for it.
+ * The report is written out as it's generated rather than built in memory
+ * first.
  *
  */
 public class GroupReportGeneratorServlet extends HttpServlet{
@@ -33,18 +34,13 @@ public class GroupReportGeneratorServlet extends HttpServlet{
 	 */
 	protected DAOFactory factory = DAOFactory.getProductionInstance();
 	
-	/**
-	 * Document to be served to client
-	 */
-	Document doc;
-	
 	/**
 	 * Randomly generated servlet ID
 	 */
 	private static final long serialVersionUID = 4343961065799365553L;
 
 	/**
-	 * doPost method that takes a user request and serves them a downloadable xml based on their defined search criteria.
+	 * doPost method that takes a user request and serves them a downloadable report based on their defined search criteria.
 	 */
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response){
@@ -56,17 +52,26 @@ public class GroupReportGeneratorServlet extends HttpServlet{
 		}
 		
 		try{
-			grga.generateReport();
-			doc = XmlGenerator.generateXml(grga.getReportHeaders(), grga.getReportData());
+			String format = request.getParameter("format");
+			if (!"csv".equals(format) && !"json".equals(format)) {
+				format = "xml";
+			}
 			
 			//Set the headers.
 			response.setContentType("application/x-download"); 
-			response.setHeader("Content-Disposition", "attachment; filename=patientReport-" + Calendar.getInstance().getTimeInMillis() + ".xml");
-			DOMSource source = new DOMSource(doc);
-			Transformer transformer = TransformerFactory.newInstance().newTransformer();
-			Writer writer = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
-			StreamResult result = new StreamResult(writer);
-			transformer.transform(source, result);
+			response.setHeader("Content-Disposition", "attachment; filename=patientReport-" + Calendar.getInstance().getTimeInMillis() + "." + format);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
+			ReportWriter reportWriter;
+			if (format.equals("csv")) {
+				reportWriter = new CsvReportWriter(writer);
+			} else if (format.equals("json")) {
+				reportWriter = new JsonReportWriter(writer);
+			} else {
+				reportWriter = new XmlReportWriter(writer);
+			}
+			
+			//Write each record out as it's generated
+			grga.writeReport(reportWriter);
 		}catch(Exception e){
 			System.out.println(e);
 		}			
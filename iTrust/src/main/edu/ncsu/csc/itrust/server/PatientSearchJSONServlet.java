@@ -0,0 +1,120 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.stream.JsonWriter;
+
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+
+/**
+ * Searches for patients by name or MID and returns one page of the matches as
+ * JSON:
+ *
+ * <pre>
+ * {"total":1234,"truncated":true,"offset":0,"limit":20,"next":"1234567",
+ *  "patients":[{"mid":1,"firstName":"Random","lastName":"Person","deactivated":""}, ...]}
+ * </pre>
+ *
+ * Parameters: <code>q</code>, the search; <code>allowDeactivated</code>
+ * (true to include deactivated patients); <code>limit</code>, the page size
+ * (default {@value #DEFAULT_LIMIT}, at most {@value #MAX_LIMIT}); and either
+ * <code>offset</code> or <code>after</code>, the <code>next</code> cursor from
+ * the previous page. <code>total</code> counts every match, but only the first
+ * {@value PatientSearcher#MAX_MATCHES} can be paged through; past that,
+ * <code>truncated</code> is true.
+ */
+public class PatientSearchJSONServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	/** The page size when none is asked for */
+	public static final int DEFAULT_LIMIT = 20;
+	/** The largest page that can be asked for */
+	public static final int MAX_LIMIT = 100;
+
+	private PatientSearcher searcher;
+
+	/**
+	 * @see HttpServlet#HttpServlet()
+	 */
+	public PatientSearchJSONServlet() {
+		super();
+		searcher = PatientSearcher.getProductionInstance();
+	}
+
+	protected PatientSearchJSONServlet(DAOFactory factory) {
+		super();
+		searcher = new PatientSearcher(factory, 0, 1);
+	}
+
+	/**
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse
+	 *      response)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String query = request.getParameter("q");
+		if (query == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "q is required");
+			return;
+		}
+		boolean deactivated = "true".equals(request.getParameter("allowDeactivated"))
+				|| "checked".equals(request.getParameter("allowDeactivated"));
+		int limit;
+		int offset;
+		Long after;
+		try {
+			limit = getInt(request, "limit", DEFAULT_LIMIT);
+			offset = getInt(request, "offset", 0);
+			after = request.getParameter("after") == null ? null : Long.valueOf(request.getParameter("after"));
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit, offset and after must be numbers");
+			return;
+		}
+		limit = Math.max(1, Math.min(MAX_LIMIT, limit));
+
+		PatientSearcher.Matches matches = searcher.search(PatientSearcher.getRole(request), query, deactivated);
+		if (after != null)
+			offset = matches.offsetAfter(after);
+		offset = Math.max(0, offset);
+		List<Long> page = matches.page(offset, limit);
+		List<PatientBean> patients = searcher.getPatients(page);
+
+		response.setContentType("application/json;charset=UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		JsonWriter json = new JsonWriter(response.getWriter());
+		json.beginObject();
+		json.name("total").value(matches.getTotal());
+		json.name("truncated").value(matches.isTruncated());
+		json.name("offset").value(offset);
+		json.name("limit").value(limit);
+		json.name("next");
+		if (offset + page.size() < matches.getKept())
+			json.value(String.valueOf(page.get(page.size() - 1)));
+		else
+			json.nullValue();
+		json.name("patients").beginArray();
+		for (PatientBean p : patients) {
+			json.beginObject();
+			json.name("mid").value(p.getMID());
+			json.name("firstName").value(p.getFirstName());
+			json.name("lastName").value(p.getLastName());
+			json.name("deactivated").value(p.getDateOfDeactivationStr() == null ? "" : p.getDateOfDeactivationStr());
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
+		json.flush();
+	}
+
+	private static int getInt(HttpServletRequest request, String name, int defaultValue) {
+		String value = request.getParameter(name);
+		return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+	}
+}
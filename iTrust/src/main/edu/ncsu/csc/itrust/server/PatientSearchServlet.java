@@ -11,32 +11,35 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringEscapeUtils;
 
-import edu.ncsu.csc.itrust.action.SearchUsersAction;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 
 /**
  * Servlet implementation class PateintSearchServlet
+ * 
+ * Renders the search box's results as an HTML table, showing the first
+ * {@value #MAX_ROWS} of them; the searching itself, and its caching, is done
+ * by {@link PatientSearcher}, as for {@link PatientSearchJSONServlet}.
  */
 public class PatientSearchServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private SearchUsersAction sua;
+	/** The most patients listed */
+	public static final int MAX_ROWS = 100;
+	private PatientSearcher searcher;
 	
     /**
      * @see HttpServlet#HttpServlet()
      */
     public PatientSearchServlet() {
         super();
-        //We don't ever use the second parameter, so we don't need to give it meaning.
-        sua = new SearchUsersAction(DAOFactory.getProductionInstance(), -1);
+        searcher = PatientSearcher.getProductionInstance();
     }
     /**
      * @see HttpServlet#HttpServlet()
      */
     protected PatientSearchServlet(DAOFactory factory) {
         super();
-        //We don't ever use the second parameter, so we don't need to give it meaning.
-        sua = new SearchUsersAction(factory, -1);
+        searcher = new PatientSearcher(factory, 0, 1);
     }
 
 	/**
@@ -50,49 +53,49 @@ public class PatientSearchServlet extends HttpServlet {
 		}
 		boolean isAudit = request.getParameter("isAudit") != null && request.getParameter("isAudit").equals("true");
 		boolean deactivated = request.getParameter("allowDeactivated") != null && request.getParameter("allowDeactivated").equals("checked");
-		String forward = request.getParameter("forward");
-		List<PatientBean> search = null;
-		if(query.isEmpty() && deactivated){
-			search = sua.getDeactivated();
-		} else {
-			search = sua.fuzzySearchForPatients(query, deactivated);
-		}
-		StringBuffer result = new StringBuffer("<span class=\"searchResults\">Found " + search.size() + " Records</span>");
+		String forward = StringEscapeUtils.escapeHtml("" + request.getParameter("forward"));
+		PatientSearcher.Matches matches = searcher.search(PatientSearcher.getRole(request), query, deactivated);
+		List<PatientBean> search = searcher.getPatients(matches.page(0, MAX_ROWS));
+		response.setContentType("text/plain");
+		PrintWriter result = response.getWriter();
+		result.write("<span class=\"searchResults\">Found " + matches.getTotal() + " Records");
+		if (matches.getTotal() > search.size())
+			result.write(", showing the first " + search.size() + "; refine the search to see the rest");
+		result.write("</span>");
 		if(isAudit){
-			result.append("<table class='fTable' width=80%><tr><th width=10%>MID</th><th width=20%>First Name</th><th width=20%>Last Name</th><th width=30%>Status</th><th width=20%>Action</th></tr>");
+			result.write("<table class='fTable' width=80%><tr><th width=10%>MID</th><th width=20%>First Name</th><th width=20%>Last Name</th><th width=30%>Status</th><th width=20%>Action</th></tr>");
 			for(PatientBean p : search){
 				boolean isActivated = p.getDateOfDeactivationStr() == null || p.getDateOfDeactivationStr().isEmpty();
 				String change = isActivated ? "Deactivate" : "Activate";
-				result.append("<tr>");
-				result.append("<td>" + p.getMID() + "</td>");
-				result.append("<td>" + p.getFirstName() + "</td>");
-				result.append("<td>" + p.getLastName() + "</td>");
+				String first = StringEscapeUtils.escapeHtml("" + p.getFirstName());
+				String last = StringEscapeUtils.escapeHtml("" + p.getLastName());
+				result.write("<tr>");
+				result.write("<td>" + p.getMID() + "</td>");
+				result.write("<td>" + first + "</td>");
+				result.write("<td>" + last + "</td>");
 				if(isActivated){
-					result.append("<td>" + p.getFirstName() + " " + p.getLastName() + " is activated.</td>");
+					result.write("<td>" + first + " " + last + " is activated.</td>");
 				} else {
-					result.append("<td>" + p.getFirstName() + " " + p.getLastName() + " deactivated on: " + p.getDateOfDeactivationStr() + "</td>");
+					result.write("<td>" + first + " " + last + " deactivated on: " + StringEscapeUtils.escapeHtml(p.getDateOfDeactivationStr()) + "</td>");
 				}
-				result.append("<td>");
-				result.append("<input type='button' style='width:100px;' onclick=\"parent.location.href='getPatientID.jsp?UID_PATIENTID=" + StringEscapeUtils.escapeHtml("" + p.getMID()) + "&forward=" + StringEscapeUtils.escapeHtml("" + forward ) + "';\" value=" + StringEscapeUtils.escapeHtml("" + change) + " />");
-				result.append("</td></tr>");
+				result.write("<td>");
+				result.write("<input type='button' style='width:100px;' onclick=\"parent.location.href='getPatientID.jsp?UID_PATIENTID=" + p.getMID() + "&forward=" + forward + "';\" value=" + change + " />");
+				result.write("</td></tr>");
 			}
-			result.append("<table>");
+			result.write("</table>");
 		} else {
-			result.append("<table class='fTable' width=80%><tr><th width=20%>MID</th><th width=40%>First Name</th><th width=40%>Last Name</th></tr>");
+			result.write("<table class='fTable' width=80%><tr><th width=20%>MID</th><th width=40%>First Name</th><th width=40%>Last Name</th></tr>");
 			for(PatientBean p : search){
-				result.append("<tr>");
-				result.append("<td>");
-				result.append("<input type='button' style='width:100px;' onclick=\"parent.location.href='getPatientID.jsp?UID_PATIENTID=" + StringEscapeUtils.escapeHtml("" + p.getMID()) + "&forward=" + StringEscapeUtils.escapeHtml("" + forward ) +"';\" value=" + StringEscapeUtils.escapeHtml("" + p.getMID()) + " />");
-				result.append("</td>");
-				result.append("<td>" + p.getFirstName() + "</td>");
-				result.append("<td>" + p.getLastName() + "</td>");
-				result.append("</tr>");
+				result.write("<tr>");
+				result.write("<td>");
+				result.write("<input type='button' style='width:100px;' onclick=\"parent.location.href='getPatientID.jsp?UID_PATIENTID=" + p.getMID() + "&forward=" + forward + "';\" value=" + p.getMID() + " />");
+				result.write("</td>");
+				result.write("<td>" + StringEscapeUtils.escapeHtml("" + p.getFirstName()) + "</td>");
+				result.write("<td>" + StringEscapeUtils.escapeHtml("" + p.getLastName()) + "</td>");
+				result.write("</tr>");
 			}
-			result.append("</table>");
+			result.write("</table>");
 		}
-		response.setContentType("text/plain");
-		PrintWriter resp = response.getWriter();
-		resp.write(result.toString());
 	}
 
 }
@@ -0,0 +1,231 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import edu.ncsu.csc.itrust.action.SearchUsersAction;
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+
+/**
+ * Runs the patient search box's searches for {@link PatientSearchServlet} and
+ * {@link PatientSearchJSONServlet}. The search box searches on every
+ * keystroke, so:
+ * <ul>
+ * <li>only the first {@value #MAX_MATCHES} matches (in MID order) are kept,
+ * along with how many there were in all; the servlets page through those;</li>
+ * <li>results are cached for a few seconds, separately for each role, so
+ * paging and retyping don't search again;</li>
+ * <li>when the same search is already running, it is waited on rather than
+ * run twice.</li>
+ * </ul>
+ */
+public class PatientSearcher {
+	/** The most matches a search keeps */
+	public static final int MAX_MATCHES = 1000;
+	private static final long TTL_MILLIS = 10000;
+	private static final int MAX_CACHED = 256;
+
+	private static PatientSearcher production;
+
+	private final SearchUsersAction sua;
+	private final long ttlMillis;
+	private final Map<String, Matches> cache;
+	private final ConcurrentHashMap<String, FutureTask<Matches>> running = new ConcurrentHashMap<String, FutureTask<Matches>>();
+
+	/**
+	 * @return The searcher shared by the production servlets
+	 */
+	public static synchronized PatientSearcher getProductionInstance() {
+		if (production == null)
+			production = new PatientSearcher(DAOFactory.getProductionInstance(), TTL_MILLIS, MAX_CACHED);
+		return production;
+	}
+
+	/**
+	 * @param factory
+	 *            The factory to search with
+	 * @param ttlMillis
+	 *            How long results are cached
+	 * @param maxCached
+	 *            The most searches to cache
+	 */
+	public PatientSearcher(DAOFactory factory, long ttlMillis, final int maxCached) {
+		//We don't ever use the second parameter, so we don't need to give it meaning.
+		this.sua = new SearchUsersAction(factory, -1);
+		this.ttlMillis = ttlMillis;
+		this.cache = new LinkedHashMap<String, Matches>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Matches> eldest) {
+				return size() > maxCached;
+			}
+		};
+	}
+
+	/**
+	 * Searches for patients, as the search box does.
+	 *
+	 * @param role
+	 *            The role of the user searching
+	 * @param query
+	 *            The search, as typed; empty with allowDeactivated to find
+	 *            every deactivated patient
+	 * @param allowDeactivated
+	 *            true to include deactivated patients
+	 * @return The matches
+	 */
+	public Matches search(String role, final String query, final boolean allowDeactivated) {
+		final String key = role + "\n" + allowDeactivated + "\n" + query.toLowerCase(Locale.ENGLISH);
+		Matches matches = getCached(key);
+		if (matches != null)
+			return matches;
+		FutureTask<Matches> task = new FutureTask<Matches>(new Callable<Matches>() {
+			@Override
+			public Matches call() {
+				List<Long> mids = sua.fuzzySearchForPatientMIDs(query, allowDeactivated);
+				Matches found = new Matches(mids.size() > MAX_MATCHES
+						? new ArrayList<Long>(mids.subList(0, MAX_MATCHES)) : mids, mids.size());
+				synchronized (cache) {
+					cache.put(key, found);
+				}
+				return found;
+			}
+		});
+		FutureTask<Matches> search = running.putIfAbsent(key, task);
+		if (search == null) {
+			search = task;
+			try {
+				task.run();
+			} finally {
+				running.remove(key, task);
+			}
+		}
+		try {
+			return search.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the same search", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Looks up a page of the patients found by a search.
+	 *
+	 * @param mids
+	 *            The MIDs, from {@link Matches#page(int, int)}
+	 * @return The patients, in the same order
+	 */
+	public List<PatientBean> getPatients(List<Long> mids) {
+		if (mids.isEmpty())
+			return new ArrayList<PatientBean>();
+		return sua.getPatients(mids);
+	}
+
+	/**
+	 * Forgets every cached search.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private Matches getCached(String key) {
+		synchronized (cache) {
+			Matches matches = cache.get(key);
+			if (matches == null)
+				return null;
+			if (System.currentTimeMillis() - matches.created < ttlMillis)
+				return matches;
+			cache.remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * @param request
+	 *            A request from a logged in user
+	 * @return The user's role, as global.jsp keeps it in the session, or ""
+	 *         if it isn't known yet
+	 */
+	public static String getRole(HttpServletRequest request) {
+		HttpSession session = request.getSession(false);
+		Object role = session == null ? null : session.getAttribute("userRole");
+		return role instanceof String ? (String) role : "";
+	}
+
+	/**
+	 * The MIDs a search found.
+	 */
+	public static class Matches {
+		private final List<Long> mids;
+		private final int total;
+		private final long created = System.currentTimeMillis();
+
+		private Matches(List<Long> mids, int total) {
+			this.mids = Collections.unmodifiableList(mids);
+			this.total = total;
+		}
+
+		/**
+		 * @return How many patients matched
+		 */
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return How many of the matches were kept
+		 */
+		public int getKept() {
+			return mids.size();
+		}
+
+		/**
+		 * @return true if there were more than {@value PatientSearcher#MAX_MATCHES}
+		 *         matches and the rest were dropped
+		 */
+		public boolean isTruncated() {
+			return total > mids.size();
+		}
+
+		/**
+		 * @param offset
+		 *            How many matches to skip
+		 * @param limit
+		 *            The most MIDs to return
+		 * @return The MIDs on the page
+		 */
+		public List<Long> page(int offset, int limit) {
+			int from = Math.max(0, Math.min(offset, mids.size()));
+			return mids.subList(from, Math.min(mids.size(), from + Math.max(0, limit)));
+		}
+
+		/**
+		 * @param mid
+		 *            The last MID seen
+		 * @return The offset of the first match after it
+		 */
+		public int offsetAfter(long mid) {
+			int at = Collections.binarySearch(mids, mid);
+			return at >= 0 ? at + 1 : -at - 1;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import edu.ncsu.csc.itrust.report.ReportResultCache;
+
+/**
+ * Sets up the shared {@link ReportResultCache} when the webapp is deployed.
+ * Configured with the <code>reportCache.*</code> context parameters in
+ * web.xml: <code>maxMegabytes</code> bounds the cached results (0 to not cache
+ * them), <code>maxAgeMinutes</code> is how long a result is kept,
+ * <code>settleSeconds</code> is how long after a write before results that
+ * depend on it are cached again (at least the replicas' lag), and
+ * <code>metricsMinutes</code> logs the cache's metrics that often (0 to not log
+ * them).
+ */
+public class ReportCacheListener implements ServletContextListener {
+	private static final long DEFAULT_MAX_MEGABYTES = 16;
+	private static final long DEFAULT_MAX_AGE_MINUTES = 60;
+	private static final long DEFAULT_SETTLE_SECONDS = 5;
+
+	private ScheduledExecutorService executor;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		long megabytes = getLong(ctx, "reportCache.maxMegabytes", DEFAULT_MAX_MEGABYTES);
+		if (megabytes <= 0)
+			return;
+		final ReportResultCache cache = new ReportResultCache(megabytes * 1024 * 1024,
+				getLong(ctx, "reportCache.maxAgeMinutes", DEFAULT_MAX_AGE_MINUTES) * 60 * 1000,
+				getLong(ctx, "reportCache.settleSeconds", DEFAULT_SETTLE_SECONDS) * 1000);
+		ReportResultCache.setShared(cache);
+		long minutes = getLong(ctx, "reportCache.metricsMinutes", 0);
+		if (minutes <= 0)
+			return;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-ReportCacheMetrics");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				System.out.println(cache);
+			}
+		}, minutes, minutes, TimeUnit.MINUTES);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ReportResultCache.setShared(null);
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private static long getLong(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + name + ", defaulting to " + defaultValue);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.report.ReportJobManager;
+
+/**
+ * Starts the workers that run group reports in the background (see
+ * {@link ReportJobManager}) when the webapp is deployed, and stops them when
+ * it's undeployed. Leave the <code>reportJobs.spoolDirectory</code> context
+ * parameter empty to turn background reports off.
+ */
+public class ReportJobListener implements ServletContextListener {
+	private static final int DEFAULT_WORKERS = 2;
+	private static final int DEFAULT_PER_USER = 1;
+	private static final int DEFAULT_PER_USER_QUEUED = 5;
+	private static final int DEFAULT_MAX_QUEUED = 100;
+	private static final long DEFAULT_EXPIRY_HOURS = 24;
+
+	private ReportJobManager manager;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		String value = ctx.getInitParameter("reportJobs.spoolDirectory");
+		if (value == null || value.trim().isEmpty())
+			return;
+		File dir = new File(value.trim());
+		if (!dir.isAbsolute())
+			dir = new File(System.getProperty("catalina.base", System.getProperty("java.io.tmpdir")), value.trim());
+		manager = new ReportJobManager(DAOFactory.getProductionInstance(), dir,
+				getInt(ctx, "reportJobs.workers", DEFAULT_WORKERS),
+				getInt(ctx, "reportJobs.perUser", DEFAULT_PER_USER),
+				getInt(ctx, "reportJobs.perUserQueued", DEFAULT_PER_USER_QUEUED),
+				getInt(ctx, "reportJobs.maxQueued", DEFAULT_MAX_QUEUED),
+				getLong(ctx, "reportJobs.expiryHours", DEFAULT_EXPIRY_HOURS) * 60 * 60 * 1000);
+		try {
+			manager.start();
+			ReportJobManager.setShared(manager);
+		} catch (DBException e) {
+			System.err.println("Unable to start background reports: " + e.getExtendedMessage());
+			manager.stop();
+			manager = null;
+		} catch (IOException e) {
+			System.err.println("Unable to start background reports: " + e.getMessage());
+			manager.stop();
+			manager = null;
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ReportJobManager.setShared(null);
+		if (manager != null) {
+			manager.stop();
+			manager = null;
+		}
+	}
+
+	private static int getInt(ServletContext ctx, String name, int defaultValue) {
+		return (int) getLong(ctx, name, defaultValue);
+	}
+
+	private static long getLong(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + name + ", defaulting to " + defaultValue);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.stream.JsonWriter;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.exception.ITrustException;
+import edu.ncsu.csc.itrust.model.old.beans.ReportJobBean;
+import edu.ncsu.csc.itrust.report.ReportJobManager;
+
+/**
+ * Submits group reports to run in the background and serves their progress
+ * and output. Every job belongs to the HCP who submitted it, and only they can
+ * see, cancel or download it.
+ *
+ * <ul>
+ * <li>POST the group report form (with <code>format</code>) to queue a report;
+ * redirects to <code>reportJobs.jsp?job=ID</code> with the new job's ID.</li>
+ * <li>POST <code>action=cancel&amp;job=ID</code> to cancel one.</li>
+ * <li>GET with no parameters for every job, or <code>job=ID</code> for one, as
+ * JSON:
+ * <code>{"id":1,"status":"RUNNING","format":"csv","rowsDone":500,"rowsEstimated":2000,"message":"","created":...,"finished":...}</code>
+ * </li>
+ * <li>GET <code>job=ID&amp;download=true</code> for a finished report.</li>
+ * </ul>
+ */
+public class ReportJobServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		ReportJobManager manager = ReportJobManager.getShared();
+		Long mid = getLoggedInMID(request, response, manager);
+		if (mid == null)
+			return;
+		try {
+			if ("cancel".equals(request.getParameter("action"))) {
+				Long jobID = getJobID(request, response);
+				if (jobID == null)
+					return;
+				manager.cancel(jobID, mid);
+				response.sendRedirect("reportJobs.jsp");
+				return;
+			}
+			@SuppressWarnings("unchecked")
+			Map<String, String[]> params = request.getParameterMap();
+			String format = request.getParameter("format");
+			long jobID = manager.submit(mid, format == null ? "xml" : format, params);
+			response.sendRedirect("reportJobs.jsp?job=" + jobID);
+		} catch (DBException e) {
+			throw new ServletException(e.getExtendedMessage(), e);
+		} catch (ITrustException e) {
+			response.sendRedirect("reportJobs.jsp?error=" + URLEncoder.encode(e.getMessage(), "UTF-8"));
+		}
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		ReportJobManager manager = ReportJobManager.getShared();
+		Long mid = getLoggedInMID(request, response, manager);
+		if (mid == null)
+			return;
+		try {
+			if (request.getParameter("job") == null) {
+				writeJSON(response, manager.getJobs(mid).toArray(new ReportJobBean[0]), true);
+				return;
+			}
+			Long jobID = getJobID(request, response);
+			if (jobID == null)
+				return;
+			ReportJobBean job = manager.getJob(jobID, mid);
+			if (job == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such report");
+				return;
+			}
+			if (!"true".equals(request.getParameter("download"))) {
+				writeJSON(response, new ReportJobBean[] { job }, false);
+				return;
+			}
+			File output = manager.getOutput(job);
+			if (output == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND, "The report isn't ready or has expired");
+				return;
+			}
+			response.setContentType("application/x-download");
+			response.setHeader("Content-Disposition",
+					"attachment; filename=patientReport-" + job.getJobID() + "." + job.getFormat());
+			response.setHeader("Content-Length", Long.toString(output.length()));
+			try (OutputStream out = response.getOutputStream()) {
+				Files.copy(output.toPath(), out);
+			}
+		} catch (DBException e) {
+			throw new ServletException(e.getExtendedMessage(), e);
+		}
+	}
+
+	private static Long getLoggedInMID(HttpServletRequest request, HttpServletResponse response,
+			ReportJobManager manager) throws IOException {
+		if (manager == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Background reports aren't running");
+			return null;
+		}
+		Object mid = request.getSession().getAttribute("loggedInMID");
+		if (!(mid instanceof Long)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return null;
+		}
+		return (Long) mid;
+	}
+
+	private static Long getJobID(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try {
+			return Long.valueOf(request.getParameter("job"));
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "job must be a number");
+			return null;
+		}
+	}
+
+	private static void writeJSON(HttpServletResponse response, ReportJobBean[] jobs, boolean asArray)
+			throws IOException {
+		response.setContentType("application/json;charset=UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		JsonWriter json = new JsonWriter(response.getWriter());
+		if (asArray)
+			json.beginArray();
+		for (ReportJobBean job : jobs) {
+			json.beginObject();
+			json.name("id").value(job.getJobID());
+			json.name("status").value(job.getStatus().name());
+			json.name("format").value(job.getFormat());
+			json.name("rowsDone").value(job.getRowsDone());
+			json.name("rowsEstimated").value(job.getRowsEstimated());
+			json.name("message").value(job.getMessage() == null ? "" : job.getMessage());
+			json.name("created").value(job.getCreatedAt() == null ? null : job.getCreatedAt().getTime());
+			json.name("finished").value(job.getFinishedAt() == null ? null : job.getFinishedAt().getTime());
+			json.endObject();
+		}
+		if (asArray)
+			json.endArray();
+		json.flush();
+	}
+}
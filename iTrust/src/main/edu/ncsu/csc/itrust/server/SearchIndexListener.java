@@ -0,0 +1,164 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.cptcode.CPTCodeMySQL;
+import edu.ncsu.csc.itrust.model.icdcode.ICDCodeMySQL;
+import edu.ncsu.csc.itrust.model.labProcedure.LabQueueIndex;
+import edu.ncsu.csc.itrust.model.loinccode.LOINCCodeMySQL;
+import edu.ncsu.csc.itrust.model.ndcode.NDCCodeMySQL;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDemographicIndex;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientNameIndex;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelIndex;
+
+/**
+ * Builds the in-memory search indexes when the webapp is deployed. They're
+ * built in the background so that deploying isn't held up; until an index is
+ * ready, searches go to the database as before. Set the
+ * <code>searchIndex.patients</code>, <code>searchIndex.personnel</code> or
+ * <code>searchIndex.codes</code> context parameter in web.xml to false to
+ * always search patients, personnel or the ICD-10, NDC, CPT and LOINC codes
+ * with SQL, <code>searchIndex.demographics</code> to false to always run
+ * group reports with SQL, or <code>searchIndex.labQueues</code> to false to
+ * always count and list lab technicians' queues with SQL.
+ */
+public class SearchIndexListener implements ServletContextListener {
+	private ExecutorService executor;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		final boolean patients = isEnabled(event, "searchIndex.patients");
+		final boolean personnel = isEnabled(event, "searchIndex.personnel");
+		final boolean codes = isEnabled(event, "searchIndex.codes");
+		final boolean demographics = isEnabled(event, "searchIndex.demographics");
+		final boolean labQueues = isEnabled(event, "searchIndex.labQueues");
+		if (!patients && !personnel && !codes && !demographics && !labQueues)
+			return;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "iTrust-SearchIndex");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (patients)
+					buildPatientIndex();
+				if (personnel)
+					buildPersonnelIndex();
+				if (codes)
+					loadCodeLookups();
+				if (demographics)
+					buildDemographicIndex();
+				if (labQueues)
+					buildLabQueueIndex();
+			}
+		});
+		executor.shutdown();
+	}
+
+	private static boolean isEnabled(ServletContextEvent event, String name) {
+		String value = event.getServletContext().getInitParameter(name);
+		return value == null || Boolean.parseBoolean(value.trim());
+	}
+
+	private static void buildPatientIndex() {
+		PatientNameIndex index = new PatientNameIndex();
+		long start = System.currentTimeMillis();
+		try (Connection conn = DAOFactory.getProductionInstance().getConnection()) {
+			index.build(conn);
+		} catch (SQLException e) {
+			System.err.println("Unable to build the patient name index, searching with SQL: " + e.getMessage());
+			return;
+		}
+		PatientNameIndex.setShared(index);
+		System.out.println("Indexed " + index.size() + " patients' names in " + (System.currentTimeMillis() - start)
+				+ " ms");
+	}
+
+	private static void buildPersonnelIndex() {
+		PersonnelIndex index = new PersonnelIndex();
+		long start = System.currentTimeMillis();
+		try (Connection conn = DAOFactory.getProductionInstance().getConnection()) {
+			index.build(conn);
+		} catch (SQLException e) {
+			System.err.println("Unable to build the personnel index, searching with SQL: " + e.getMessage());
+			return;
+		}
+		PersonnelIndex.setShared(index);
+		System.out.println("Indexed " + index.size() + " personnel in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static void buildDemographicIndex() {
+		PatientDemographicIndex index = new PatientDemographicIndex();
+		long start = System.currentTimeMillis();
+		try (Connection conn = DAOFactory.getProductionInstance().getConnection()) {
+			index.build(conn);
+		} catch (SQLException e) {
+			System.err.println("Unable to build the demographic index, running group reports with SQL: "
+					+ e.getMessage());
+			return;
+		}
+		PatientDemographicIndex.setShared(index);
+		System.out.println("Indexed " + index.size() + " patients' demographics in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static void buildLabQueueIndex() {
+		LabQueueIndex index = new LabQueueIndex();
+		long start = System.currentTimeMillis();
+		try (Connection conn = DAOFactory.getProductionInstance().getConnection()) {
+			index.build(conn);
+		} catch (SQLException e) {
+			System.err.println("Unable to build the lab queue index, counting lab queues with SQL: "
+					+ e.getMessage());
+			return;
+		}
+		LabQueueIndex.setShared(index);
+		System.out.println("Indexed " + index.size() + " lab technicians' queues in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static void loadCodeLookups() {
+		long start = System.currentTimeMillis();
+		try {
+			new ICDCodeMySQL().loadLookup();
+			new NDCCodeMySQL().loadLookup();
+			new CPTCodeMySQL().loadLookup();
+			new LOINCCodeMySQL().loadLookup();
+		} catch (DBException | SQLException e) {
+			System.err.println("Unable to load the code lookups, searching codes with SQL: " + e.getMessage());
+			return;
+		}
+		System.out.println("Loaded the ICD-10, NDC, CPT and LOINC codes in " + (System.currentTimeMillis() - start)
+				+ " ms");
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		PatientNameIndex.setShared(null);
+		PersonnelIndex.setShared(null);
+		PatientDemographicIndex.setShared(null);
+		LabQueueIndex.setShared(null);
+		ICDCodeMySQL.LOOKUP.clear();
+		NDCCodeMySQL.LOOKUP.clear();
+		CPTCodeMySQL.LOOKUP.clear();
+		LOINCCodeMySQL.LOOKUP.clear();
+	}
+}
@@ -0,0 +1,130 @@
+package edu.ncsu.csc.itrust.server;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import edu.ncsu.csc.itrust.logger.QueueFullPolicy;
+import edu.ncsu.csc.itrust.logger.TransactionArchive;
+import edu.ncsu.csc.itrust.logger.TransactionArchiver;
+import edu.ncsu.csc.itrust.logger.TransactionCountReconciler;
+import edu.ncsu.csc.itrust.logger.TransactionLogger;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+
+/**
+ * Starts the asynchronous transaction writer when the webapp is deployed and
+ * drains it when the webapp is stopped. Configured with the
+ * <code>transactionLogger.*</code> context parameters in web.xml; if
+ * <code>transactionLogger.async</code> is not "true" the logger stays
+ * synchronous. If <code>transactionLogger.spoolDirectory</code> is set, failed
+ * writes go to a local spool there (relative paths are resolved against
+ * catalina.base) and are replayed once the database is back. It also runs the
+ * {@link TransactionCountReconciler} behind the operational profile and, if
+ * <code>transactionArchive.retentionMonths</code> is set, the
+ * {@link TransactionArchiver} that moves old months of the log into
+ * <code>transactionArchive.directory</code>.
+ */
+public class TransactionLoggerListener implements ServletContextListener {
+	private static final int DEFAULT_CAPACITY = 10000;
+	private static final int DEFAULT_BATCH_SIZE = 100;
+	private static final long DEFAULT_FLUSH_MILLIS = 200;
+	private static final long DEFAULT_DRAIN_MILLIS = 10000;
+	private static final int DEFAULT_SEGMENT_RECORDS = 8192;
+	private static final long DEFAULT_REPLAY_MILLIS = 5000;
+	private static final int DEFAULT_RECONCILE_HOURS = 2;
+	private static final long DEFAULT_RECONCILE_MINUTES = 15;
+	private static final long DEFAULT_FULL_RECONCILE_HOURS = 24;
+	private static final long DEFAULT_ARCHIVE_HOURS = 24;
+
+	private TransactionCountReconciler reconciler;
+	private TransactionArchiver archiver;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		reconciler = new TransactionCountReconciler(DAOFactory.getProductionInstance().getTransactionCountDAO(),
+				getInt(ctx, "transactionCounts.reconcileHours", DEFAULT_RECONCILE_HOURS));
+		reconciler.start(getLong(ctx, "transactionCounts.reconcileMinutes", DEFAULT_RECONCILE_MINUTES),
+				getLong(ctx, "transactionCounts.fullReconcileHours", DEFAULT_FULL_RECONCILE_HOURS));
+		File archiveDir = getDirectory(ctx, "transactionArchive.directory");
+		if (archiveDir != null) {
+			try {
+				TransactionArchive archive = new TransactionArchive(archiveDir);
+				TransactionArchive.setShared(archive);
+				int retentionMonths = getInt(ctx, "transactionArchive.retentionMonths", 0);
+				if (retentionMonths > 0) {
+					archiver = new TransactionArchiver(DAOFactory.getProductionInstance().getTransactionDAO(),
+							archive, retentionMonths);
+					archiver.start(getLong(ctx, "transactionArchive.intervalHours", DEFAULT_ARCHIVE_HOURS));
+				}
+			} catch (IOException e) {
+				System.err.println("Unable to open transaction archive in " + archiveDir + ": " + e.getMessage());
+			}
+		}
+		File dir = getDirectory(ctx, "transactionLogger.spoolDirectory");
+		if (dir != null) {
+			try {
+				TransactionLogger.getInstance().startSpool(dir,
+						getInt(ctx, "transactionLogger.spoolSegmentRecords", DEFAULT_SEGMENT_RECORDS),
+						getInt(ctx, "transactionLogger.batchSize", DEFAULT_BATCH_SIZE),
+						getLong(ctx, "transactionLogger.spoolReplayMillis", DEFAULT_REPLAY_MILLIS));
+			} catch (IOException e) {
+				System.err.println("Unable to open transaction spool in " + dir + ": " + e.getMessage());
+			}
+		}
+		if (!Boolean.parseBoolean(ctx.getInitParameter("transactionLogger.async")))
+			return;
+		TransactionLogger.getInstance().startAsync(
+				getInt(ctx, "transactionLogger.queueCapacity", DEFAULT_CAPACITY),
+				getInt(ctx, "transactionLogger.batchSize", DEFAULT_BATCH_SIZE),
+				getLong(ctx, "transactionLogger.flushIntervalMillis", DEFAULT_FLUSH_MILLIS),
+				QueueFullPolicy.parse(ctx.getInitParameter("transactionLogger.queueFullPolicy"),
+						QueueFullPolicy.SPILL));
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		if (reconciler != null)
+			reconciler.stop();
+		if (archiver != null)
+			archiver.stop();
+		long drain = getLong(event.getServletContext(), "transactionLogger.drainTimeoutMillis", DEFAULT_DRAIN_MILLIS);
+		int left = TransactionLogger.getInstance().stopAsync(drain);
+		if (left > 0)
+			System.err.println("Transaction logger shut down with " + left + " unwritten transactions");
+		TransactionLogger.getInstance().stopSpool(drain);
+	}
+
+	/**
+	 * @return The directory named by the parameter, relative to catalina.base
+	 *         unless absolute, or null if it is not set
+	 */
+	private static File getDirectory(ServletContext ctx, String name) {
+		String value = ctx.getInitParameter(name);
+		if (value == null || value.trim().isEmpty())
+			return null;
+		File dir = new File(value.trim());
+		if (!dir.isAbsolute())
+			dir = new File(System.getProperty("catalina.base", System.getProperty("java.io.tmpdir")), value.trim());
+		return dir;
+	}
+
+	private static int getInt(ServletContext ctx, String name, int defaultValue) {
+		return (int) getLong(ctx, name, defaultValue);
+	}
+
+	private static long getLong(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + name + ", defaulting to " + defaultValue);
+			return defaultValue;
+		}
+	}
+}
@@ -87,6 +87,39 @@ public class SessionUtils {
 		return variable;
 	}
 
+	/**
+	 * Seeks an attribute of the current HTTP request, for state that should
+	 * only live as long as the request does.
+	 *
+	 * @param varname
+	 *            attribute name in the HTTP request
+	 * @return the attribute, or null if it isn't set or there is no request
+	 */
+	public Object getRequestVariable(String varname) {
+		HttpServletRequest req = getHttpServletRequest();
+		return (req == null) ? null : req.getAttribute(varname);
+	}
+
+	/**
+	 * Sets an attribute of the current HTTP request, if there is one.
+	 *
+	 * @param varname
+	 *            attribute name in the HTTP request
+	 * @param value
+	 *            the attribute, or null to remove it
+	 */
+	public void setRequestVariable(String varname, Object value) {
+		HttpServletRequest req = getHttpServletRequest();
+		if (req == null) {
+			return;
+		}
+		if (value == null) {
+			req.removeAttribute(varname);
+		} else {
+			req.setAttribute(varname, value);
+		}
+	}
+
 	/**
 	 * Returns the session variable in string form.
 	 * 
@@ -0,0 +1,146 @@
+package edu.ncsu.csc.itrust.logger;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+public class AsyncTransactionWriterTest {
+	private TransactionDAO mockDAO;
+	private List<Integer> batchSizes;
+	private CountDownLatch release;
+
+	@Before
+	public void setUp() throws Exception {
+		mockDAO = mock(TransactionDAO.class);
+		batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+		release = new CountDownLatch(0);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				release.await();
+				batchSizes.add(((List<?>) invocation.getArguments()[0]).size());
+				return null;
+			}
+		}).when(mockDAO).logTransactions(anyListOf(TransactionBean.class));
+	}
+
+	private TransactionBean bean() {
+		TransactionBean t = new TransactionBean();
+		t.setTransactionType(TransactionType.HOME_VIEW);
+		t.setLoggedInMID(9000000000L);
+		t.setAddedInfo("");
+		t.setTimeLogged(new Timestamp(System.currentTimeMillis()));
+		return t;
+	}
+
+	private int total() {
+		int sum = 0;
+		synchronized (batchSizes) {
+			for (int size : batchSizes)
+				sum += size;
+		}
+		return sum;
+	}
+
+	@Test
+	public void testDrainsEverythingOnShutdown() {
+		AsyncTransactionWriter writer = new AsyncTransactionWriter(mockDAO, 1000, 10, 50, QueueFullPolicy.BLOCK);
+		writer.start();
+		for (int i = 0; i < 95; i++)
+			writer.submit(bean());
+		Assert.assertEquals(0, writer.shutdown(5000));
+		Assert.assertEquals(95, total());
+		Assert.assertEquals(95, writer.getWrittenCount());
+		for (int size : batchSizes)
+			Assert.assertTrue(size <= 10);
+	}
+
+	@Test
+	public void testSubmitDuringShutdown() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			batchSizes.clear();
+			final AsyncTransactionWriter writer = new AsyncTransactionWriter(mockDAO, 10000, 10, 5,
+					QueueFullPolicy.BLOCK);
+			writer.start();
+			final CountDownLatch go = new CountDownLatch(1);
+			List<Thread> submitters = new ArrayList<Thread>();
+			for (int i = 0; i < 4; i++) {
+				Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							go.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						for (int j = 0; j < 200; j++)
+							writer.submit(bean());
+					}
+				});
+				t.start();
+				submitters.add(t);
+			}
+			go.countDown();
+			Thread.sleep(1);
+			Assert.assertEquals(0, writer.shutdown(5000));
+			for (Thread t : submitters)
+				t.join(5000);
+			// whether a transaction was queued, caught in the shutdown or
+			// written on its caller, it was written exactly once
+			Assert.assertEquals(800, total());
+			Assert.assertEquals(800, writer.getWrittenCount());
+			Assert.assertEquals(0, writer.getQueueDepth());
+		}
+	}
+
+	@Test
+	public void testFlushesByTime() throws Exception {
+		AsyncTransactionWriter writer = new AsyncTransactionWriter(mockDAO, 1000, 100, 20, QueueFullPolicy.BLOCK);
+		writer.start();
+		writer.submit(bean());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (total() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		Assert.assertEquals(1, total());
+		writer.shutdown(5000);
+	}
+
+	@Test
+	public void testDropWhenFull() {
+		release = new CountDownLatch(1);
+		AsyncTransactionWriter writer = new AsyncTransactionWriter(mockDAO, 2, 1, 10, QueueFullPolicy.DROP);
+		writer.start();
+		for (int i = 0; i < 20; i++)
+			writer.submit(bean());
+		Assert.assertTrue(writer.getDroppedCount() > 0);
+		release.countDown();
+		writer.shutdown(5000);
+		Assert.assertEquals(20, writer.getDroppedCount() + writer.getWrittenCount());
+	}
+
+	@Test
+	public void testSpillWritesOnCaller() {
+		AsyncTransactionWriter writer = new AsyncTransactionWriter(mockDAO, 1, 1, 10, QueueFullPolicy.SPILL);
+		// not started: everything is written on the calling thread
+		writer.submit(bean());
+		writer.submit(bean());
+		Assert.assertEquals(2, total());
+		Assert.assertEquals(0, writer.getDroppedCount());
+	}
+}
@@ -0,0 +1,180 @@
+package edu.ncsu.csc.itrust.logger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCallback;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+public class TransactionArchiveTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionArchive archive;
+	private SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyyy HH:mm");
+
+	@Before
+	public void setUp() throws Exception {
+		archive = new TransactionArchive(folder.newFolder("archive"));
+	}
+
+	private TransactionBean bean(long id, String time, long secondaryMID, String info) throws Exception {
+		TransactionBean t = new TransactionBean();
+		t.setTransactionID(id);
+		t.setTransactionType(TransactionType.OFFICE_VISIT_EDIT);
+		t.setLoggedInMID(9000000000L);
+		t.setSecondaryMID(secondaryMID);
+		t.setAddedInfo(info);
+		t.setTimeLogged(new Timestamp(format.parse(time).getTime()));
+		return t;
+	}
+
+	private void write(TransactionBean... transactions) throws Exception {
+		TransactionArchive.MonthWriter writer = archive.openMonth(transactions[0].getTimeLogged());
+		for (TransactionBean t : transactions)
+			writer.add(t);
+		writer.commit();
+	}
+
+	private static final TransactionArchive.Filter PATIENT_2 = new TransactionArchive.Filter() {
+		@Override
+		public boolean accept(long loggedInMID, long secondaryMID, int code) {
+			return secondaryMID == 2L;
+		}
+	};
+
+	@Test
+	public void testRoundTripNewestFirst() throws Exception {
+		write(bean(1, "06/01/2007 10:00", 2, "first"), bean(2, "06/01/2007 10:00", 1, ""),
+				bean(3, "06/20/2007 09:30", 2, "café"));
+		write(bean(7, "07/04/2007 12:00", 2, null));
+		Assert.assertEquals(2, archive.getMonths().size());
+
+		List<TransactionBean> read = archive.read(null, null, null, PATIENT_2, 0);
+		Assert.assertEquals(3, read.size());
+		Assert.assertEquals(7L, read.get(0).getTransactionID());
+		Assert.assertEquals("", read.get(0).getAddedInfo());
+		Assert.assertEquals(3L, read.get(1).getTransactionID());
+		Assert.assertEquals("café", read.get(1).getAddedInfo());
+		Assert.assertEquals(format.parse("06/20/2007 09:30").getTime(), read.get(1).getTimeLogged().getTime());
+		Assert.assertEquals(9000000000L, read.get(2).getLoggedInMID());
+		Assert.assertEquals(TransactionType.OFFICE_VISIT_EDIT, read.get(2).getTransactionType());
+	}
+
+	@Test
+	public void testRangeCursorAndMax() throws Exception {
+		write(bean(1, "06/01/2007 10:00", 2, "a"), bean(2, "06/01/2007 10:00", 2, "b"),
+				bean(3, "06/20/2007 09:30", 2, "c"));
+		write(bean(7, "07/04/2007 12:00", 2, "d"));
+
+		Assert.assertEquals(3, archive.read(null, format.parse("07/01/2007 00:00"), null, PATIENT_2, 0).size());
+		Assert.assertEquals(1, archive.read(format.parse("07/01/2007 00:00"), null, null, PATIENT_2, 0).size());
+		Assert.assertEquals(2, archive.read(null, null, null, PATIENT_2, 2).size());
+
+		TransactionBean second = bean(2, "06/01/2007 10:00", 2, "b");
+		List<TransactionBean> older = archive.read(null, null, TransactionCursor.after(second), PATIENT_2, 0);
+		Assert.assertEquals(1, older.size());
+		Assert.assertEquals(1L, older.get(0).getTransactionID());
+	}
+
+	@Test
+	public void testReopenedMonthKeepsArchivedRows() throws Exception {
+		write(bean(1, "06/01/2007 10:00", 2, "a"));
+		TransactionArchive.MonthWriter writer = archive.openMonth(format.parse("06/15/2007 00:00"));
+		Assert.assertTrue(writer.contains(1L));
+		Assert.assertFalse(writer.contains(2L));
+		writer.add(bean(2, "06/02/2007 10:00", 2, "b"));
+		writer.commit();
+		Assert.assertEquals(2, archive.read(null, null, null, PATIENT_2, 0).size());
+		Assert.assertFalse(new File(archive.getDirectory(), "transactionlog-2007-06.tla.tmp").exists());
+	}
+
+	@Test
+	public void testSegmentsSpillAndPatientReads() throws Exception {
+		int rows = TransactionArchive.RUN_ROWS + 3 * TransactionArchive.SEGMENT_ROWS;
+		long start = format.parse("06/01/2007 00:00").getTime();
+		TransactionArchive.MonthWriter writer = archive.openMonth(new Date(start));
+		for (int i = 1; i <= rows; i++) {
+			TransactionBean t = bean(i, "06/01/2007 00:00", 1 + i % 100, "row " + i);
+			t.setTimeLogged(new Timestamp(start + i * 1000L));
+			writer.add(t);
+		}
+		writer.commit();
+		Assert.assertEquals(1, archive.getDirectory().list().length);
+
+		// patient 7 has rows 6, 106, 206, ...
+		List<TransactionBean> read = archive.read(7L, null, null, null, null, 0);
+		Assert.assertEquals((rows - 6) / 100 + 1, read.size());
+		for (int i = 0; i < read.size(); i++)
+			Assert.assertEquals(6 + 100L * (read.size() - 1 - i), read.get(i).getTransactionID());
+		Assert.assertEquals("row 6", read.get(read.size() - 1).getAddedInfo());
+
+		writer = archive.openMonth(new Date(start));
+		Assert.assertEquals(rows, writer.getRowCount());
+		Assert.assertTrue(writer.contains(rows));
+		Assert.assertFalse(writer.contains(rows + 1));
+		TransactionBean late = bean(rows + 1, "06/30/2007 10:00", 7, "late");
+		writer.add(late);
+		writer.commit();
+		read = archive.read(7L, null, null, null, null, 1);
+		Assert.assertEquals("late", read.get(0).getAddedInfo());
+		Assert.assertEquals(rows + 1, archive.read(null, null, null, null, 0).size());
+	}
+
+	@Test
+	public void testArchiverMovesOldMonths() throws Exception {
+		final List<TransactionBean> june = new ArrayList<TransactionBean>();
+		june.add(bean(1, "06/01/2007 10:00", 2, "a"));
+		june.add(bean(2, "06/02/2007 10:00", 2, "b"));
+		TransactionDAO dao = mock(TransactionDAO.class);
+		when(dao.getOldestTransactionTime()).thenReturn(june.get(0).getTimeLogged());
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				Date from = (Date) invocation.getArguments()[0];
+				TransactionCallback callback = (TransactionCallback) invocation.getArguments()[2];
+				if (from.equals(TransactionArchive.startOfMonth(june.get(0).getTimeLogged()))) {
+					for (TransactionBean t : june)
+						callback.handle(t);
+				}
+				return null;
+			}
+		}).when(dao).streamTransactionsBetween(any(Date.class), any(Date.class), any(TransactionCallback.class));
+
+		TransactionArchiver archiver = new TransactionArchiver(dao, archive, 1);
+		Assert.assertEquals(2, archiver.archiveOldMonths());
+		verify(dao).deleteTransactionsBetween(eq(format.parse("06/01/2007 00:00")),
+				eq(format.parse("07/01/2007 00:00")), eq(2L));
+		Assert.assertEquals(2, archive.read(null, null, null, PATIENT_2, 0).size());
+
+		// running again after a crash before the delete does not archive twice
+		Assert.assertEquals(0, archiver.archiveMonth(june.get(0).getTimeLogged()));
+		Assert.assertEquals(2, archive.read(null, null, null, PATIENT_2, 0).size());
+		verify(dao, times(2)).deleteTransactionsBetween(any(Date.class), any(Date.class),
+				anyLong());
+	}
+}
@@ -0,0 +1,145 @@
+package edu.ncsu.csc.itrust.logger;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+
+public class TransactionSpoolTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dir;
+	private TransactionSpool spool;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = folder.newFolder("spool");
+		spool = new TransactionSpool(dir, 4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		spool.close();
+	}
+
+	private TransactionBean bean(long secondaryMID, String info) {
+		TransactionBean t = new TransactionBean();
+		t.setTransactionType(TransactionType.OFFICE_VISIT_EDIT);
+		t.setLoggedInMID(9000000000L);
+		t.setSecondaryMID(secondaryMID);
+		t.setAddedInfo(info);
+		t.setTimeLogged(new Timestamp(1000000L + secondaryMID));
+		return t;
+	}
+
+	@Test
+	public void testAppendAndRead() throws Exception {
+		spool.append(bean(1, "first"));
+		spool.append(bean(2, "café"));
+		Assert.assertEquals(2, spool.getDepth());
+		List<Long> seqs = new ArrayList<Long>();
+		List<TransactionBean> pending = spool.readPending(10, seqs);
+		Assert.assertEquals(2, pending.size());
+		Assert.assertEquals(2L, pending.get(1).getSecondaryMID());
+		Assert.assertEquals("café", pending.get(1).getAddedInfo());
+		Assert.assertEquals(TransactionType.OFFICE_VISIT_EDIT, pending.get(0).getTransactionType());
+		Assert.assertEquals(1000001L, pending.get(0).getTimeLogged().getTime());
+		Assert.assertEquals(seqs.get(0) + 1, (long) seqs.get(1));
+	}
+
+	@Test
+	public void testRotationAndCleanup() throws Exception {
+		for (int i = 0; i < 10; i++)
+			spool.append(bean(i, ""));
+		Assert.assertEquals(3, spool.getSegmentCount());
+		List<Long> seqs = new ArrayList<Long>();
+		Assert.assertEquals(10, spool.readPending(100, seqs).size());
+		spool.markReplayed(seqs.get(7));
+		Assert.assertEquals(1, spool.getSegmentCount());
+		Assert.assertEquals(2, spool.getDepth());
+	}
+
+	@Test
+	public void testRecoveryAfterReopen() throws Exception {
+		for (int i = 0; i < 6; i++)
+			spool.append(bean(i, "x" + i));
+		List<Long> seqs = new ArrayList<Long>();
+		spool.readPending(2, seqs);
+		spool.markReplayed(seqs.get(1));
+		long id = spool.getSpoolID();
+		spool.close();
+
+		spool = new TransactionSpool(dir, 4);
+		Assert.assertEquals(id, spool.getSpoolID());
+		Assert.assertEquals(4, spool.getDepth());
+		seqs.clear();
+		List<TransactionBean> pending = spool.readPending(10, seqs);
+		Assert.assertEquals("x2", pending.get(0).getAddedInfo());
+		long next = spool.append(bean(7, ""));
+		Assert.assertEquals(seqs.get(3) + 1, next);
+	}
+
+	@Test
+	public void testCorruptRecordSkipped() throws Exception {
+		spool.append(bean(1, "good"));
+		spool.append(bean(2, "bad"));
+		spool.append(bean(3, "good"));
+		spool.close();
+		File[] segments = dir.listFiles((d, name) -> name.endsWith(".seg"));
+		try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+			raf.seek(TransactionSpool.RECORD_SIZE + 40);
+			raf.write(0x7f);
+		}
+		spool = new TransactionSpool(dir, 4);
+		List<Long> seqs = new ArrayList<Long>();
+		List<TransactionBean> pending = spool.readPending(10, seqs);
+		Assert.assertEquals(2, pending.size());
+		Assert.assertEquals(3L, pending.get(1).getSecondaryMID());
+	}
+
+	@Test
+	public void testReplayer() throws Exception {
+		TransactionDAO dao = mock(TransactionDAO.class);
+		TransactionSpoolReplayer replayer = new TransactionSpoolReplayer(spool, dao, 3, 1000);
+		for (int i = 0; i < 5; i++)
+			spool.append(bean(i, ""));
+
+		doThrow(new DBException(new SQLException("down"))).when(dao).logSpooledTransactions(anyLong(),
+				anyListOf(TransactionBean.class), anyListOf(Long.class));
+		try {
+			replayer.replayOnce();
+			Assert.fail("expected the database failure to propagate");
+		} catch (DBException e) {
+			// the records must still be in the spool
+		}
+		Assert.assertEquals(5, spool.getDepth());
+
+		reset(dao);
+		Assert.assertEquals(3, replayer.replayOnce());
+		Assert.assertEquals(2, replayer.replayOnce());
+		Assert.assertEquals(0, replayer.replayOnce());
+		Assert.assertEquals(0, spool.getDepth());
+		Assert.assertEquals(0, spool.getReplayLagMillis());
+	}
+}
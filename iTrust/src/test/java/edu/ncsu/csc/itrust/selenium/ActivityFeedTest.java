@@ -49,11 +49,11 @@ public class ActivityFeedTest extends iTrustSeleniumTest {
 		panels = driver.findElements(By.className("panel-group"));
 		activityPanel = panels.get(panels.size() - 1);
 
-		// Get the list items and count how many items there are, should be 40
+		// Get the list items and count how many items there are, should be the
+		// next 20
 		listItems = activityPanel.findElements(By.tagName("li"));
-		// Plus three because of the two refresh links and then the one padding
-		// <li>
-		assertEquals(40 + 3, listItems.size());
+		// Plus one for the refresh/older links <li>
+		assertEquals(20 + 1, listItems.size());
 	}
 
 	/**
@@ -69,7 +69,7 @@ public class ActivityFeedTest extends iTrustSeleniumTest {
 		driver = login("2", "pw");
 		assertEquals("iTrust - Patient Home", driver.getTitle());
 
-		// Click on Older Activities to show all activity
+		// Click on Older Activities to show older activity
 		driver.findElement(By.linkText("Older Activities")).click();
 		// Then refresh to show only newest 20
 		driver.findElement(By.linkText("Refresh")).click();
@@ -9,6 +9,7 @@ import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.htmlunit.HtmlUnitDriver;
 
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 import edu.ncsu.csc.itrust.selenium.iTrustSeleniumTest;
 
@@ -225,6 +226,44 @@ public class ViewAccessLogTest extends iTrustSeleniumTest {
 		assertEquals("Enter dates in MM/dd/yyyy", driver.findElement(By.cssSelector("div.errorList")).getText());
 	}
 
+	@Test
+	public void testViewAccessLogPageToken() throws Exception {
+		gen.transactionLog3();
+
+		// This logs us into iTrust and returns the HtmlUnitDriver for use in
+		// this case
+		HtmlUnitDriver driver = (HtmlUnitDriver) login("1", "pw");
+		assertEquals("iTrust - Patient Home", driver.getTitle());
+
+		// a token past the newest access pages from the start of the range
+		String range = "logMID=1&startDate=02/01/2008&endDate=09/22/2009&after="
+				+ new TransactionCursor(Long.MAX_VALUE, Long.MAX_VALUE).toToken();
+		driver.get(ADDRESS + "auth/patient/viewAccessLog.jsp?" + range);
+		assertEquals("iTrust - View My Access Log", driver.getTitle());
+		assertEquals("LHCP",
+				driver.findElement(By.xpath("//div[@id='iTrustContent']/table/tbody/tr[2]/td[3]")).getText());
+		assertEquals("02/01/2008", driver.findElement(By.name("startDate")).getAttribute("value"));
+
+		// sorted by role in the database, keeping the range in the form
+		String roleRange = "sortBy=role&logMID=1&startDate=02/01/2008&endDate=09/22/2009";
+		driver.get(ADDRESS + "auth/patient/viewAccessLog.jsp?" + roleRange);
+		assertEquals("iTrust - View My Access Log", driver.getTitle());
+		assertEquals("Emergency Responder",
+				driver.findElement(By.xpath("//div[@id='iTrustContent']/table/tbody/tr[2]/td[3]")).getText());
+		assertEquals("LHCP",
+				driver.findElement(By.xpath("//div[@id='iTrustContent']/table/tbody/tr[3]/td[3]")).getText());
+		assertEquals("02/01/2008", driver.findElement(By.name("startDate")).getAttribute("value"));
+
+		// a role token seeks past the roles before it
+		driver.get(ADDRESS + "auth/patient/viewAccessLog.jsp?" + roleRange + "&after="
+				+ new TransactionCursor(3, Long.MAX_VALUE, Long.MAX_VALUE).toToken());
+		assertEquals("LHCP",
+				driver.findElement(By.xpath("//div[@id='iTrustContent']/table/tbody/tr[2]/td[3]")).getText());
+		assertEquals("Personal Health Representative",
+				driver.findElement(By.xpath("//div[@id='iTrustContent']/table/tbody/tr[5]/td[3]")).getText());
+		assertLogged(TransactionType.ACCESS_LOG_VIEW, 1L, 0L, "");
+	}
+
 	@Override
 	@After
 	public void tearDown() throws Exception {
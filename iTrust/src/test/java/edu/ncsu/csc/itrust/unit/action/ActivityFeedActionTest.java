@@ -7,6 +7,8 @@ import java.text.SimpleDateFormat;
 import edu.ncsu.csc.itrust.action.ActivityFeedAction;
 import edu.ncsu.csc.itrust.exception.DBException;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
+import edu.ncsu.csc.itrust.model.old.beans.ActivityBean;
+import edu.ncsu.csc.itrust.model.old.beans.ActivityPage;
 import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
@@ -42,6 +44,41 @@ public class ActivityFeedActionTest extends TestCase {
 		}
 	}
 
+	public void testGetActivityPages() throws Exception {
+		gen.transactionLog6();
+		ActivityFeedAction feed = new ActivityFeedAction(factory, 2L);
+		ActivityPage first = feed.getActivityPage(null);
+		assertEquals(ActivityFeedAction.PAGE_SIZE, first.getActivities().size());
+		assertTrue(first.hasMore());
+		ActivityPage second = feed.getActivityPage(first.getNextToken());
+		assertEquals(ActivityFeedAction.PAGE_SIZE, second.getActivities().size());
+		ActivityBean last = first.getActivities().get(ActivityFeedAction.PAGE_SIZE - 1);
+		ActivityBean next = second.getActivities().get(0);
+		assertTrue(next.getTransactionID() < last.getTransactionID());
+		assertEquals("You", next.getActorName());
+	}
+
+	public void testLoggedActivityAddedToFeed() throws Exception {
+		ActivityFeedAction feed = new ActivityFeedAction(factory, 2L);
+		int before = feed.getActivityPage(null).getActivities().size();
+		factory.getTransactionDAO().logTransaction(TransactionType.OFFICE_VISIT_VIEW, 9000000000L, 2L, "");
+		ActivityPage page = feed.getActivityPage(null);
+		assertEquals(Math.min(before + 1, ActivityFeedAction.PAGE_SIZE), page.getActivities().size());
+		ActivityBean newest = page.getActivities().get(0);
+		assertEquals(9000000000L, newest.getActorMID());
+		assertEquals(TransactionType.OFFICE_VISIT_VIEW, newest.getTransactionType());
+		assertEquals("Kelly Doctor", newest.getActorName());
+	}
+
+	public void testBadPageToken() throws Exception {
+		try {
+			action.getActivityPage("not a token");
+			fail();
+		} catch (FormValidationException e) {
+			// expected
+		}
+	}
+
 	public void testGetMessageAsSentence() {
 		Date dNow = new Date();
 		Timestamp tsNow = new Timestamp(dNow.getTime());
@@ -1,6 +1,8 @@
 package edu.ncsu.csc.itrust.unit.action;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import edu.ncsu.csc.itrust.action.GroupReportAction;
@@ -9,7 +11,10 @@ import edu.ncsu.csc.itrust.model.old.beans.GroupReportBean;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
 import edu.ncsu.csc.itrust.report.DemographicReportFilter;
+import edu.ncsu.csc.itrust.report.MedicalReportFilter;
 import edu.ncsu.csc.itrust.report.MedicalReportFilter.MedicalReportFilterType;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter.PersonnelReportFilterType;
 import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
 import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
 import edu.ncsu.csc.itrust.report.ReportFilter;
@@ -37,6 +42,54 @@ public class GroupReportActionTest extends TestCase {
 		assertEquals(1L, res.getPatients().get(0).getMID());
 	}
 
+	public void testCompiledFiltersMatchJavaFilters() throws DBException {
+		String[][] cases = { { "MID", "2" }, { "GENDER", "male" }, { "GENDER", "Not Specified" },
+				{ "LAST_NAME", "programmer" }, { "FIRST_NAME", "Baby" }, { "CONTACT_EMAIL", "fake@email.com" },
+				{ "STREET_ADDR", "1247 Noname Dr" }, { "CITY", "raleigh" }, { "STATE", "NC" }, { "ZIP", "276" },
+				{ "INSURE_ADDR", "Street1 Street2" }, { "INSURE_ZIP", "19003-2715" },
+				{ "PARENT_FIRST_NAME", "random" }, { "PARENT_LAST_NAME", "Person" },
+				{ "CHILD_FIRST_NAME", "Baby" }, { "CHILD_LAST_NAME", "programmer" },
+				{ "SIBLING_FIRST_NAME", "Bowser" }, { "SIBLING_LAST_NAME", "Koopa" },
+				{ "LOWER_AGE_LIMIT", "20" }, { "UPPER_AGE_LIMIT", "20" }, { "DEACTIVATED", "exclude" },
+				{ "DEACTIVATED", "only" } };
+		List<PatientBean> all = factory.getPatientDAO().getAllPatients();
+		for (String[] c : cases) {
+			ReportFilter filter = new DemographicReportFilter(DemographicReportFilter.filterTypeFromString(c[0]),
+					c[1], factory);
+			assertEquals(c[0] + " " + c[1], mids(filter.filter(all)),
+					mids(action.generateReport(Arrays.asList(filter)).getPatients()));
+		}
+		ReportFilter allergy = new MedicalReportFilter(MedicalReportFilterType.ALLERGY, "664662530", factory);
+		assertEquals(mids(allergy.filter(all)), mids(action.generateReport(Arrays.asList(allergy)).getPatients()));
+		ReportFilter dlhcp = new PersonnelReportFilter(PersonnelReportFilterType.DLHCP, "kelly doctor", factory);
+		assertEquals(mids(dlhcp.filter(all)), mids(action.generateReport(Arrays.asList(dlhcp)).getPatients()));
+	}
+
+	public void testPrefetchedInfoMatchesQueried() throws DBException {
+		List<PatientBean> all = factory.getPatientDAO().getAllPatients();
+		GroupReportAction prefetched = new GroupReportAction(factory, 1l);
+		prefetched.prefetch(all);
+		for (PatientBean patient : all) {
+			for (DemographicReportFilterType type : DemographicReportFilterType.values())
+				assertEquals(patient.getMID() + " " + type, action.getComprehensiveDemographicInfo(patient, type),
+						prefetched.getComprehensiveDemographicInfo(patient, type));
+			for (MedicalReportFilterType type : MedicalReportFilterType.values())
+				assertEquals(patient.getMID() + " " + type, action.getComprehensiveMedicalInfo(patient, type),
+						prefetched.getComprehensiveMedicalInfo(patient, type));
+			for (PersonnelReportFilterType type : PersonnelReportFilterType.values())
+				assertEquals(patient.getMID() + " " + type, action.getComprehensivePersonnelInfo(patient, type),
+						prefetched.getComprehensivePersonnelInfo(patient, type));
+		}
+	}
+
+	private static List<Long> mids(List<PatientBean> patients) {
+		List<Long> mids = new ArrayList<Long>();
+		for (PatientBean patient : patients)
+			mids.add(patient.getMID());
+		Collections.sort(mids);
+		return mids;
+	}
+
 	public void testGetComprehensiveDemographicInfo() throws DBException {
 		PatientBean b = factory.getPatientDAO().getPatient(2L);
 		for (DemographicReportFilterType filterType : DemographicReportFilterType.values()) {
@@ -1,5 +1,7 @@
 package edu.ncsu.csc.itrust.unit.action;
 
+import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.List;
 
 import edu.ncsu.csc.itrust.action.EditPatientAction;
@@ -7,6 +9,7 @@ import edu.ncsu.csc.itrust.action.SearchUsersAction;
 import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
 import edu.ncsu.csc.itrust.model.old.beans.PersonnelBean;
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientNameIndex;
 import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
 import edu.ncsu.csc.itrust.unit.testutils.EvilDAOFactory;
 import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
@@ -95,6 +98,45 @@ public class SearchUsersActionTest extends TestCase {
 		assertEquals("Fake Baby", patient.get(0).getFullName());
 	}
 
+	/**
+	 * testFuzzySearchForPatientIndexed
+	 */
+	public void testFuzzySearchForPatientIndexed() throws Exception {
+		SearchUsersAction act = new SearchUsersAction(factory, 9000000003L);
+		String[] queries = { "Andy", "nd grammer", "2", "314159", "a", "zzz", " ", "_" };
+		List<List<PatientBean>> bySQL = new ArrayList<List<PatientBean>>();
+		for (String query : queries)
+			bySQL.add(act.fuzzySearchForPatients(query, true));
+		PatientNameIndex index = new PatientNameIndex();
+		try (Connection conn = factory.getConnection()) {
+			index.build(conn);
+		}
+		PatientNameIndex.setShared(index);
+		try {
+			for (int i = 0; i < queries.length; i++)
+				assertEquals(queries[i], bySQL.get(i), act.fuzzySearchForPatients(queries[i], true));
+			assertEquals(0, act.fuzzySearchForPatients("314159").size());
+			assertEquals("Andy Programmer", act.fuzzySearchForPatients("programmer", false, 1).get(0).getFullName());
+
+			long mid = factory.getPatientDAO().addEmptyPatient();
+			PatientBean p = factory.getPatientDAO().getPatient(mid);
+			p.setFirstName("Indexed");
+			p.setLastName("Newcomer");
+			factory.getPatientDAO().editPatient(p, 9000000000L);
+			assertEquals(mid, act.fuzzySearchForPatients("newcom").get(0).getMID());
+
+			gen.clearAllTables();
+			gen.standardData();
+			// searches only notice in the background; wait for it here
+			try (Connection conn = factory.getConnection()) {
+				index.refreshIfChanged(conn);
+			}
+			assertEquals(0, act.fuzzySearchForPatients("newcom").size());
+		} finally {
+			PatientNameIndex.setShared(null);
+		}
+	}
+
 	/**
 	 * testSearchForPersonnelWithName
 	 */
@@ -1,5 +1,6 @@
 package edu.ncsu.csc.itrust.unit.action;
 
+import java.io.StringWriter;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -10,6 +11,8 @@ import junit.framework.TestCase;
 import edu.ncsu.csc.itrust.action.ViewMyAccessLogAction;
 import edu.ncsu.csc.itrust.exception.FormValidationException;
 import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionPage;
 import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
 import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
 
@@ -91,6 +94,41 @@ public class ViewMyAccessLogActionTest extends TestCase {
 		assertEquals("UAP", accesses.get(5).getRole());
 	}
 
+	public void testGetAccessPageByRole() throws Exception {
+		gen.transactionLog3();
+		action = new ViewMyAccessLogAction(TestDAOFactory.getTestInstance(), 1L);
+		List<TransactionBean> sorted = action.getAccesses(null, null, null, true);
+		TransactionPage page = action.getAccessPage("", "", null, null, true);
+		assertFalse(page.hasMore());
+		assertEquals(sorted.size(), page.getTransactions().size());
+		for (int i = 0; i < sorted.size(); i++) {
+			assertEquals(sorted.get(i).getTransactionID(), page.getTransactions().get(i).getTransactionID());
+			assertEquals(sorted.get(i).getRole(), page.getTransactions().get(i).getRole());
+		}
+
+		// seeking past the emergency responder starts at the LHCPs
+		TransactionCursor afterER = TransactionCursor.after(2, sorted.get(0));
+		page = action.getAccessPage(null, null, null, afterER.toToken(), true);
+		assertEquals(sorted.size() - 1, page.getTransactions().size());
+		assertEquals("LHCP", page.getTransactions().get(0).getRole());
+		try {
+			action.getAccessPage(null, null, null, TransactionCursor.after(sorted.get(0)).toToken(), true);
+			fail("exception should have been thrown");
+		} catch (FormValidationException e) {
+			assertEquals("Page of the access log.", e.getErrorList().get(0));
+		}
+	}
+
+	public void testExportAccesses() throws Exception {
+		gen.transactionLog3();
+		action = new ViewMyAccessLogAction(TestDAOFactory.getTestInstance(), 1L);
+		StringWriter out = new StringWriter();
+		action.exportAccesses("", "", null, out);
+		String[] lines = out.toString().split("\r\n");
+		assertEquals("Date,Accessor MID,Description", lines[0]);
+		assertEquals(action.getAccesses(null, null, null, false).size() + 1, lines.length);
+	}
+
 	/**
 	 * Verifies that none of the transactions returned in the access log are the
 	 * patient's DLHCP per use case 8
@@ -0,0 +1,39 @@
+package edu.ncsu.csc.itrust.unit.bean;
+
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import junit.framework.TestCase;
+
+public class TransactionCursorTest extends TestCase {
+
+	public void testRoundTrip() throws Exception {
+		TransactionCursor cursor = TransactionCursor.parse(new TransactionCursor(1182614400000L, 1234L).toToken());
+		assertEquals(1182614400000L, cursor.getTimeLogged());
+		assertEquals(1234L, cursor.getTransactionID());
+		assertFalse(cursor.isByRole());
+	}
+
+	public void testRoleRoundTrip() throws Exception {
+		TransactionCursor cursor = TransactionCursor.parse(new TransactionCursor(3, 1182614400000L, 1234L)
+				.toToken());
+		assertTrue(cursor.isByRole());
+		assertEquals(3, cursor.getRoleRank());
+		assertEquals(1182614400000L, cursor.getTimeLogged());
+		assertEquals(1234L, cursor.getTransactionID());
+	}
+
+	public void testEmptyIsStart() throws Exception {
+		assertNull(TransactionCursor.parse(null));
+		assertNull(TransactionCursor.parse(""));
+	}
+
+	public void testMalformed() throws Exception {
+		for (String token : new String[] { "abc", ".12", "12.", "1.2.3", "1!.2", ":1.2", "1:.2", "-1:1.2", "1:2" }) {
+			try {
+				TransactionCursor.parse(token);
+				fail("Accepted " + token);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package edu.ncsu.csc.itrust.unit.controller.officeVisit;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.controller.officeVisit.PatientOfficeVisits;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisit;
+import junit.framework.TestCase;
+
+public class PatientOfficeVisitsTest extends TestCase {
+	private static final LocalDate BIRTH = LocalDate.of(2000, 6, 15);
+
+	public void testBucketsByAgeAtVisit() {
+		OfficeVisit beforeBirth = visit(1999, 1, 1);
+		OfficeVisit newborn = visit(2000, 6, 15);
+		OfficeVisit almostThree = visit(2003, 6, 14);
+		OfficeVisit three = visit(2003, 6, 15);
+		OfficeVisit almostTwelve = visit(2012, 6, 14);
+		OfficeVisit twelve = visit(2012, 6, 15);
+		OfficeVisit adult = visit(2030, 1, 1);
+		List<OfficeVisit> visits = Arrays.asList(adult, twelve, almostTwelve, three, almostThree, newborn,
+				beforeBirth);
+		PatientOfficeVisits patientVisits = new PatientOfficeVisits(visits, BIRTH);
+
+		assertEquals(visits, patientVisits.getVisits());
+		assertEquals(Arrays.asList(almostThree, newborn), patientVisits.getBabyVisits());
+		assertEquals(Arrays.asList(almostTwelve, three), patientVisits.getChildVisits());
+		assertEquals(Arrays.asList(adult, twelve), patientVisits.getAdultVisits());
+		assertTrue(patientVisits.hasVisited());
+	}
+
+	public void testUnknownBirthDate() {
+		PatientOfficeVisits patientVisits = new PatientOfficeVisits(Arrays.asList(visit(2010, 1, 1)), null);
+		assertTrue(patientVisits.hasVisited());
+		assertTrue(patientVisits.getBabyVisits().isEmpty());
+		assertTrue(patientVisits.getChildVisits().isEmpty());
+		assertTrue(patientVisits.getAdultVisits().isEmpty());
+	}
+
+	public void testNoVisits() {
+		PatientOfficeVisits patientVisits = new PatientOfficeVisits(Arrays.<OfficeVisit> asList(), BIRTH);
+		assertFalse(patientVisits.hasVisited());
+		assertTrue(patientVisits.getVisits().isEmpty());
+	}
+
+	private static OfficeVisit visit(int year, int month, int day) {
+		OfficeVisit visit = new OfficeVisit();
+		visit.setPatientMID(1L);
+		visit.setDate(LocalDateTime.of(year, month, day, 9, 30));
+		return visit;
+	}
+}
@@ -0,0 +1,201 @@
+package edu.ncsu.csc.itrust.unit.dao;
+
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import junit.framework.TestCase;
+
+public class ConnectionContextTest extends TestCase {
+	private DataSource ds;
+	private Connection conn;
+
+	@Override
+	protected void setUp() throws Exception {
+		ds = mock(DataSource.class);
+		conn = mock(Connection.class);
+		when(ds.getConnection()).thenReturn(conn);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		while (ConnectionContext.current() != null)
+			ConnectionContext.current().close();
+	}
+
+	public void testNoContext() throws Exception {
+		assertSame(conn, ConnectionContext.share(ds).getConnection());
+		verify(ds, times(1)).getConnection();
+	}
+
+	public void testShared() throws Exception {
+		DataSource shared = ConnectionContext.share(ds);
+		try (ConnectionContext context = ConnectionContext.open()) {
+			for (int i = 0; i < 5; i++) {
+				try (Connection c = shared.getConnection()) {
+					c.prepareStatement("SELECT 1");
+				}
+			}
+			verify(conn, times(5)).prepareStatement("SELECT 1");
+			verify(conn, never()).close();
+			assertEquals(5, context.getRequestCount());
+			assertEquals(1, context.getBorrowCount());
+		}
+		verify(ds, times(1)).getConnection();
+		verify(conn, times(1)).close();
+		assertNull(ConnectionContext.current());
+	}
+
+	public void testClosedHandle() throws Exception {
+		try (ConnectionContext context = ConnectionContext.open()) {
+			Connection c = ConnectionContext.getConnection(ds);
+			c.close();
+			assertTrue(c.isClosed());
+			try {
+				c.prepareStatement("SELECT 1");
+				fail("Exception should have been thrown");
+			} catch (SQLException e) {
+				assertEquals("Connection is closed", e.getMessage());
+			}
+			assertFalse(ConnectionContext.getConnection(ds).isClosed());
+		}
+	}
+
+	public void testNestedContextShares() throws Exception {
+		try (ConnectionContext outer = ConnectionContext.open()) {
+			ConnectionContext.getConnection(ds);
+			try (ConnectionContext inner = ConnectionContext.open()) {
+				ConnectionContext.getConnection(ds);
+				assertSame(inner, ConnectionContext.current());
+			}
+			verify(conn, never()).close();
+			assertSame(outer, ConnectionContext.current());
+			assertEquals(2, outer.getRequestCount());
+			assertEquals(1, outer.getBorrowCount());
+		}
+		verify(conn, times(1)).close();
+	}
+
+	public void testUnitOfWorkCommits() throws Exception {
+		try (ConnectionContext uow = ConnectionContext.beginUnitOfWork()) {
+			ConnectionContext.getConnection(ds);
+			verify(conn).setAutoCommit(false);
+			uow.commit();
+		}
+		verify(conn).commit();
+		verify(conn, never()).rollback();
+		verify(conn).setAutoCommit(true);
+		verify(conn).close();
+	}
+
+	public void testUnitOfWorkRollsBack() throws Exception {
+		try (ConnectionContext uow = ConnectionContext.beginUnitOfWork()) {
+			ConnectionContext.getConnection(ds);
+		}
+		verify(conn, never()).commit();
+		verify(conn).rollback();
+		verify(conn).close();
+	}
+
+	public void testUnitOfWorkInsideRequest() throws Exception {
+		try (ConnectionContext request = ConnectionContext.open()) {
+			ConnectionContext.getConnection(ds);
+			try (ConnectionContext uow = ConnectionContext.beginUnitOfWork()) {
+				verify(conn).setAutoCommit(false);
+				uow.commit();
+			}
+			verify(conn).commit();
+			verify(conn).setAutoCommit(true);
+			verify(conn, never()).close();
+		}
+		verify(conn).close();
+	}
+
+	public void testAfterCompletion() throws Exception {
+		final List<String> ran = new ArrayList<String>();
+		ConnectionContext.afterCompletion(task(ran, "no unit of work"));
+		assertEquals(1, ran.size());
+		try (ConnectionContext outer = ConnectionContext.beginUnitOfWork()) {
+			ConnectionContext.getConnection(ds);
+			try (ConnectionContext inner = ConnectionContext.beginUnitOfWork()) {
+				ConnectionContext.afterCompletion(task(ran, "inner"));
+				inner.commit();
+			}
+			ConnectionContext.afterCompletion(task(ran, "outer"));
+			outer.commit();
+			assertEquals(1, ran.size());
+		}
+		assertEquals(3, ran.size());
+		assertEquals("outer", ran.get(2));
+		verify(conn).setAutoCommit(true);
+	}
+
+	public void testAfterCompletionOfRollback() throws Exception {
+		final List<String> ran = new ArrayList<String>();
+		try (ConnectionContext uow = ConnectionContext.beginUnitOfWork()) {
+			ConnectionContext.getConnection(ds);
+			ConnectionContext.afterCompletion(task(ran, "rolled back"));
+			assertTrue(ran.isEmpty());
+		}
+		verify(conn).rollback();
+		assertEquals(1, ran.size());
+		try (ConnectionContext uow = ConnectionContext.beginUnitOfWork()) {
+			ConnectionContext.getConnection(ds);
+			uow.commit();
+		}
+		assertEquals(1, ran.size());
+	}
+
+	private static Runnable task(final List<String> ran, final String name) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				ran.add(name);
+			}
+		};
+	}
+
+	public void testInnerRollbackFailsOuterCommit() throws Exception {
+		try (ConnectionContext outer = ConnectionContext.beginUnitOfWork()) {
+			ConnectionContext.getConnection(ds);
+			try (ConnectionContext inner = ConnectionContext.beginUnitOfWork()) {
+				// closed without committing
+			}
+			try {
+				outer.commit();
+				fail("Exception should have been thrown");
+			} catch (SQLException e) {
+				assertTrue(e.getMessage().contains("rolled back"));
+			}
+		}
+		verify(conn, never()).commit();
+		verify(conn).rollback();
+	}
+
+	public void testSuspendedWritesStandApart() throws Exception {
+		Connection own = mock(Connection.class);
+		when(ds.getConnection()).thenReturn(conn, own);
+		try (ConnectionContext uow = ConnectionContext.beginUnitOfWork()) {
+			ConnectionContext.getConnection(ds);
+			try (ConnectionContext.Suspension outside = ConnectionContext.suspend()) {
+				assertNull(ConnectionContext.current());
+				Connection c = ConnectionContext.getConnection(ds);
+				assertSame(own, c);
+				c.prepareStatement("INSERT INTO transactionlog VALUES(1)");
+				c.close();
+			}
+			assertSame(uow, ConnectionContext.current());
+			assertFalse(uow.hasWritten());
+		}
+		verify(conn).rollback();
+		verify(own, never()).setAutoCommit(false);
+		verify(own, never()).rollback();
+		verify(own).close();
+	}
+}
@@ -0,0 +1,91 @@
+package edu.ncsu.csc.itrust.unit.dao;
+
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import javax.sql.DataSource;
+
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionPool;
+import junit.framework.TestCase;
+
+public class ConnectionPoolTest extends TestCase {
+	private DataSource ds;
+	private Connection conn;
+	private ConnectionPool pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		ds = mock(DataSource.class);
+		conn = mock(Connection.class);
+		when(ds.getConnection()).thenReturn(conn);
+		pool = new ConnectionPool("test", ds);
+	}
+
+	public void testBorrowAndReturn() throws Exception {
+		Connection c1 = pool.getConnection();
+		Connection c2 = pool.getConnection();
+		assertEquals(2, pool.getActiveCount());
+		assertEquals(2, pool.getBorrowCount());
+		c1.close();
+		c1.close();
+		assertEquals(1, pool.getActiveCount());
+		c2.close();
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(2, pool.getPeakActiveCount());
+		verify(conn, times(2)).close();
+	}
+
+	public void testWaitHistogram() throws Exception {
+		pool.getConnection().close();
+		long[] waits = pool.getWaitHistogram();
+		assertEquals(ConnectionPool.WAIT_BUCKETS_MILLIS.length + 1, waits.length);
+		long total = 0;
+		for (long count : waits)
+			total += count;
+		assertEquals(1, total);
+	}
+
+	public void testTimeoutsAndFailures() throws Exception {
+		when(ds.getConnection()).thenThrow(new SQLException("Timeout waiting for idle object",
+				new NoSuchElementException())).thenThrow(new SQLException("Communications link failure"));
+		for (int i = 0; i < 2; i++) {
+			try {
+				pool.getConnection();
+				fail("Exception should have been thrown");
+			} catch (SQLException e) {
+				// expected
+			}
+		}
+		assertEquals(1, pool.getTimeoutCount());
+		assertEquals(1, pool.getFailureCount());
+		assertEquals(0, pool.getBorrowCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+
+	public void testFindLeaks() throws Exception {
+		pool.setLeakThresholdMillis(1);
+		pool.setLeakTraces(true);
+		Connection held = pool.getConnection();
+		Thread.sleep(5);
+		assertEquals(1, pool.findLeaks().size());
+		assertTrue(pool.findLeaks().get(0).contains("testFindLeaks"));
+		held.close();
+		assertTrue(pool.findLeaks().isEmpty());
+	}
+
+	public void testLeaksOff() throws Exception {
+		pool.setLeakThresholdMillis(0);
+		pool.getConnection();
+		Thread.sleep(5);
+		assertTrue(pool.findLeaks().isEmpty());
+	}
+
+	public void testUnknownIdle() throws Exception {
+		assertEquals(-1, pool.getIdleCount());
+		assertEquals(-1, pool.getMaxTotal());
+		assertSame(ds, pool.unwrap(DataSource.class));
+	}
+}
@@ -0,0 +1,132 @@
+package edu.ncsu.csc.itrust.unit.dao;
+
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import javax.sql.DataSource;
+
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.ReplicaRouter;
+import junit.framework.TestCase;
+
+public class ReplicaRouterTest extends TestCase {
+	private DAOFactory primary;
+	private Connection primaryConn;
+	private DataSource replica1;
+	private DataSource replica2;
+	private Connection replicaConn1;
+	private Connection replicaConn2;
+	private long[] lags;
+	private ReplicaRouter router;
+
+	@Override
+	protected void setUp() throws Exception {
+		primary = mock(DAOFactory.class);
+		primaryConn = mock(Connection.class);
+		when(primary.getConnection()).thenReturn(primaryConn);
+		replica1 = mock(DataSource.class);
+		replica2 = mock(DataSource.class);
+		replicaConn1 = mock(Connection.class);
+		replicaConn2 = mock(Connection.class);
+		when(replica1.getConnection()).thenReturn(replicaConn1);
+		when(replica2.getConnection()).thenReturn(replicaConn2);
+		lags = new long[] { 0, 0 };
+		router = new ReplicaRouter(Arrays.asList(replica1, replica2), new ReplicaRouter.LagProbe() {
+			@Override
+			public long getLagMillis(Connection replica) {
+				return replica == replicaConn1 ? lags[0] : lags[1];
+			}
+		}, 1000, 10000, 60000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		while (ConnectionContext.current() != null)
+			ConnectionContext.current().close();
+	}
+
+	public void testReadsSpreadOverReplicas() throws Exception {
+		Connection first = router.getReadConnection(primary);
+		Connection second = router.getReadConnection(primary);
+		assertNotSame(primaryConn, first);
+		assertNotSame(primaryConn, second);
+		assertNotSame(first, second);
+		verify(primary, never()).getConnection();
+	}
+
+	public void testOneReplicaPerRequest() throws Exception {
+		try (ConnectionContext context = ConnectionContext.open()) {
+			for (int i = 0; i < 4; i++)
+				router.getReadConnection(primary).close();
+			assertEquals(1, context.getBorrowCount());
+		}
+	}
+
+	public void testLaggingReplicaSkipped() throws Exception {
+		lags[0] = 5000;
+		router.checkReplicas();
+		assertEquals(1, router.getUsableCount());
+		for (int i = 0; i < 3; i++)
+			assertSame(replicaConn2, router.getReadConnection(primary));
+		lags[1] = -1;
+		router.checkReplicas();
+		assertEquals(0, router.getUsableCount());
+		assertSame(primaryConn, router.getReadConnection(primary));
+	}
+
+	public void testFailedReplicaFallsBack() throws Exception {
+		when(replica1.getConnection()).thenThrow(new SQLException("down"));
+		when(replica2.getConnection()).thenThrow(new SQLException("down"));
+		assertSame(primaryConn, router.getReadConnection(primary));
+		assertEquals(0, router.getUsableCount());
+		assertSame(primaryConn, router.getReadConnection(primary));
+		verify(replica1, times(1)).getConnection();
+		verify(replica2, times(1)).getConnection();
+	}
+
+	public void testReadYourWrites() throws Exception {
+		try (ConnectionContext context = ConnectionContext.open()) {
+			assertNotSame(primaryConn, router.getReadConnection(primary));
+			context.markWritten();
+			assertSame(primaryConn, router.getReadConnection(primary));
+		}
+		try (ConnectionContext context = ConnectionContext.open()) {
+			context.setReadFromPrimary(true);
+			assertSame(primaryConn, router.getReadConnection(primary));
+		}
+	}
+
+	public void testWriteDetected() throws Exception {
+		DataSource ds = mock(DataSource.class);
+		when(ds.getConnection()).thenReturn(mock(Connection.class));
+		try (ConnectionContext context = ConnectionContext.open()) {
+			ConnectionContext.getConnection(ds).prepareStatement("SELECT * FROM patients");
+			assertFalse(context.hasWritten());
+			ConnectionContext.getConnection(ds).prepareStatement(" UPDATE patients SET firstName=?");
+			assertTrue(context.hasWritten());
+			assertSame(primaryConn, router.getReadConnection(primary));
+		}
+	}
+
+	public void testMySQLLag() throws Exception {
+		Connection conn = mock(Connection.class);
+		Statement stmt = mock(Statement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(conn.createStatement()).thenReturn(stmt);
+		when(stmt.executeQuery("SHOW SLAVE STATUS")).thenReturn(rs);
+		when(rs.next()).thenReturn(false);
+		assertEquals(-1, ReplicaRouter.MYSQL_LAG.getLagMillis(conn));
+		when(rs.next()).thenReturn(true);
+		when(rs.getLong("Seconds_Behind_Master")).thenReturn(3L);
+		assertEquals(3000, ReplicaRouter.MYSQL_LAG.getLagMillis(conn));
+		when(rs.getLong("Seconds_Behind_Master")).thenReturn(0L);
+		when(rs.wasNull()).thenReturn(true);
+		assertEquals(-1, ReplicaRouter.MYSQL_LAG.getLagMillis(conn));
+	}
+}
@@ -0,0 +1,114 @@
+package edu.ncsu.csc.itrust.unit.dao.patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDemographicIndex;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDemographicIndex.Attribute;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter.DemographicReportFilterType;
+import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+import junit.framework.TestCase;
+
+public class PatientDemographicIndexTest extends TestCase {
+	private DAOFactory factory = TestDAOFactory.getTestInstance();
+	private PatientDemographicIndex index;
+	private List<PatientBean> patients;
+
+	@Override
+	protected void setUp() throws Exception {
+		index = new PatientDemographicIndex();
+		patients = new ArrayList<PatientBean>();
+		add(1L, "Male", "Raleigh", "NC", "27606", "");
+		add(2L, "Female", "raleigh", "NC", "27607", "");
+		add(5L, "Female", "Durham", "NC", "27705", "2016-01-01");
+		add(42L, "Not Specified", "Columbia", "SC", "29201", "");
+		add(100L, "Male", "Cary", "NC", "27513-1234", "");
+	}
+
+	public void testMatchesJavaFilters() throws Exception {
+		assertSameAsJava(DemographicReportFilterType.GENDER, "female");
+		assertSameAsJava(DemographicReportFilterType.GENDER, "Not Specified");
+		assertSameAsJava(DemographicReportFilterType.CITY, "RALEIGH");
+		assertSameAsJava(DemographicReportFilterType.STATE, "sc");
+		assertSameAsJava(DemographicReportFilterType.ZIP, "276");
+		assertSameAsJava(DemographicReportFilterType.ZIP, "1234");
+		assertSameAsJava(DemographicReportFilterType.DEACTIVATED, "exclude");
+		assertSameAsJava(DemographicReportFilterType.DEACTIVATED, "only");
+		assertSameAsJava(DemographicReportFilterType.DEACTIVATED, "include");
+	}
+
+	public void testFiltersAreAnded() throws Exception {
+		List<ReportFilter> filters = Arrays.<ReportFilter> asList(
+				new DemographicReportFilter(DemographicReportFilterType.STATE, "NC", factory),
+				new DemographicReportFilter(DemographicReportFilterType.GENDER, "Female", factory),
+				new DemographicReportFilter(DemographicReportFilterType.DEACTIVATED, "exclude", factory));
+		assertEquals(Arrays.asList(2L), index.findMIDs(i -> ReportFilter.selectAll(filters, i)));
+		assertEquals(1, index.count(i -> ReportFilter.selectAll(filters, i)));
+	}
+
+	public void testUnindexedFilters() throws Exception {
+		List<ReportFilter> filters = Arrays.<ReportFilter> asList(
+				new DemographicReportFilter(DemographicReportFilterType.STATE, "NC", factory),
+				new DemographicReportFilter(DemographicReportFilterType.LAST_NAME, "Person", factory));
+		assertNull(index.findMIDs(i -> ReportFilter.selectAll(filters, i)));
+		assertEquals(-1, index.count(i -> ReportFilter.selectAll(filters, i)));
+	}
+
+	public void testEdits() throws Exception {
+		PatientBean moved = patient(42L, "Not Specified", "Cary", "NC", "27513", "");
+		index.put(moved);
+		assertEquals(5, index.size());
+		assertEquals(Arrays.asList(42L, 100L),
+				index.getMIDs(index.matching(Attribute.CITY, v -> v.equals("Cary"))));
+		assertTrue(index.matching(Attribute.STATE, v -> v.equals("SC")).isEmpty());
+		assertFalse(index.getValues(Attribute.STATE).contains("SC"));
+		index.put(patient(7L, "Male", null, "NC", "27606", ""));
+		assertEquals(6, index.size());
+		assertEquals(Arrays.asList(1L, 7L), index.getMIDs(index.matching(Attribute.ZIP, v -> v.equals("27606"))));
+		assertEquals(Arrays.asList(1L, 2L, 5L, 7L, 42L, 100L), index.getMIDs(index.all()));
+	}
+
+	public void testOtherAttributes() throws Exception {
+		PatientBean patient = patient(3L, "Male", "Apex", "NC", "27502", "");
+		patient.setBloodTypeStr("O-");
+		patient.setEthnicityStr("Hispanic");
+		patient.setIcName("Aetna");
+		index.put(patient);
+		assertEquals(Arrays.asList(3L), index.getMIDs(index.matching(Attribute.BLOOD_TYPE, v -> v.equals("O-"))));
+		assertEquals(Arrays.asList(3L),
+				index.getMIDs(index.matching(Attribute.ETHNICITY, v -> v.equals("Hispanic"))));
+		assertEquals(Arrays.asList(3L),
+				index.getMIDs(index.matching(Attribute.INSURE_NAME, v -> v.equalsIgnoreCase("aetna"))));
+	}
+
+	private void assertSameAsJava(DemographicReportFilterType type, String value) {
+		DemographicReportFilter filter = new DemographicReportFilter(type, value, factory);
+		List<Long> expected = new ArrayList<Long>();
+		for (PatientBean patient : filter.filter(patients))
+			expected.add(patient.getMID());
+		assertEquals(type + " " + value, expected, index.getMIDs(filter.select(index)));
+	}
+
+	private void add(long mid, String gender, String city, String state, String zip, String deactivated) {
+		PatientBean patient = patient(mid, gender, city, state, zip, deactivated);
+		patients.add(patient);
+		index.put(patient);
+	}
+
+	private static PatientBean patient(long mid, String gender, String city, String state, String zip,
+			String deactivated) {
+		PatientBean patient = new PatientBean();
+		patient.setMID(mid);
+		patient.setGenderStr(gender);
+		patient.setCity(city);
+		patient.setState(state);
+		patient.setZip(zip);
+		patient.setDateOfDeactivationStr(deactivated);
+		return patient;
+	}
+}
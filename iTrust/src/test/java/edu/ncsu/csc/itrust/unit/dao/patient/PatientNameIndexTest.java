@@ -0,0 +1,138 @@
+package edu.ncsu.csc.itrust.unit.dao.patient;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientNameIndex;
+import junit.framework.TestCase;
+
+public class PatientNameIndexTest extends TestCase {
+	private PatientNameIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		index = new PatientNameIndex();
+		index.put(1L, "Random", "Person", false);
+		index.put(2L, "Andy", "Programmer", false);
+		index.put(5L, "Baby", "Programmer", false);
+		index.put(42L, "Bad", "Horse", false);
+		index.put(314159L, "Fulton", "Gray", true);
+		index.put(100L, "Programmer", "Smith", false);
+	}
+
+	public void testSubstringOfEitherName() throws Exception {
+		assertEquals(Arrays.asList(2L, 5L, 100L), index.findAll("gram", false));
+		assertEquals(Arrays.asList(1L), index.findAll("ers", false));
+	}
+
+	public void testShortQueries() throws Exception {
+		assertEquals(Arrays.asList(1L, 2L), index.findAll("an", false));
+		assertEquals(Arrays.asList(42L, 100L), index.findAll("h", false));
+	}
+
+	public void testEveryPartMustMatch() throws Exception {
+		assertEquals(Arrays.asList(5L), index.findAll("Programmer bab", false));
+		assertEquals(Collections.emptyList(), index.findAll("Programmer horse", false));
+		assertEquals(Arrays.asList(2L), index.findAll("an  prog", false));
+	}
+
+	public void testMID() throws Exception {
+		assertEquals(Arrays.asList(42L), index.findAll("42", false));
+		assertEquals(Arrays.asList(1L, 100L, 314159L), index.findAll("1", true));
+		assertEquals(Arrays.asList(314159L), index.findAll("159", true));
+		assertEquals(Arrays.asList(314159L), index.findAll("00159", true));
+	}
+
+	public void testDeactivated() throws Exception {
+		assertEquals(Collections.emptyList(), index.findAll("Fulton", false));
+		assertEquals(Arrays.asList(314159L), index.findAll("Fulton", true));
+		index.put(314159L, "Fulton", "Gray", false);
+		assertEquals(Arrays.asList(314159L), index.findAll("Fulton", false));
+	}
+
+	public void testRenamed() throws Exception {
+		index.put(42L, "Good", "Horse", false);
+		assertEquals(Collections.emptyList(), index.findAll("bad", false));
+		assertEquals(Arrays.asList(42L), index.findAll("good", false));
+		index.put(7L, null, null, false);
+		assertEquals(7, index.size());
+		index.put(7L, "Goodwin", "Tester", false);
+		assertEquals(Arrays.asList(7L, 42L), index.findAll("good", false));
+	}
+
+	public void testEmptyQuery() throws Exception {
+		assertEquals(Collections.emptyList(), index.findAll("", false));
+		assertEquals(Collections.emptyList(), index.findAll("  ", false));
+	}
+
+	public void testTopRanksWholeThenPrefixThenSubstring() throws Exception {
+		index.put(6L, "Program", "Jones", false);
+		index.put(3L, "Deprogram", "Adams", false);
+		assertEquals(Arrays.asList(6L, 2L, 5L, 100L, 3L), index.findTop("program", false, 10));
+		assertEquals(Arrays.asList(6L, 2L), index.findTop("program", false, 2));
+		assertEquals(Collections.emptyList(), index.findTop("program", false, 0));
+	}
+
+	public void testTopMID() throws Exception {
+		index.put(420L, "Someone", "Else", false);
+		assertEquals(Arrays.asList(42L, 420L), index.findTop("42", false, 10));
+	}
+
+	public void testManyPatients() throws Exception {
+		index = new PatientNameIndex();
+		for (long mid = 1; mid <= 5000; mid++)
+			index.put(mid, "First" + mid, mid % 1000 == 0 ? "Needle" : "Last", false);
+		assertEquals(5000, index.size());
+		assertEquals(Arrays.asList(1000L, 2000L, 3000L, 4000L, 5000L), index.findAll("needle", false));
+		assertEquals(Arrays.asList(4321L), index.findAll("first4321", false));
+		assertEquals(Arrays.asList(4321L), index.findTop("4321", false, 1));
+	}
+
+	public void testPutDuringBuildIsKept() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement timesPs = mock(PreparedStatement.class);
+		ResultSet times = mock(ResultSet.class);
+		when(conn.prepareStatement(anyString())).thenReturn(timesPs);
+		when(timesPs.executeQuery()).thenReturn(times);
+		when(times.next()).thenReturn(true);
+		when(times.getTimestamp(1)).thenReturn(new Timestamp(0));
+		when(times.getTimestamp(2)).thenReturn(new Timestamp(1000));
+		PreparedStatement patientsPs = mock(PreparedStatement.class);
+		ResultSet patients = mock(ResultSet.class);
+		when(conn.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(patientsPs);
+		when(patientsPs.executeQuery()).thenReturn(patients);
+		// the table was read before patient 7 was added, which lands while the rebuild is under way
+		when(patients.next()).thenAnswer(new Answer<Boolean>() {
+			private boolean first = true;
+
+			@Override
+			public Boolean answer(InvocationOnMock invocation) {
+				if (!first)
+					return false;
+				first = false;
+				index.put(7L, "Late", "Comer", false);
+				return true;
+			}
+		});
+		when(patients.getLong("MID")).thenReturn(1L);
+		when(patients.getString("firstName")).thenReturn("Random");
+		when(patients.getString("lastName")).thenReturn("Person");
+		index.build(conn);
+		assertEquals(2, index.size());
+		assertEquals(Arrays.asList(7L), index.findAll("comer", false));
+		assertEquals(Arrays.asList(1L), index.findAll("random", false));
+		assertEquals(Collections.emptyList(), index.findAll("programmer", false));
+	}
+}
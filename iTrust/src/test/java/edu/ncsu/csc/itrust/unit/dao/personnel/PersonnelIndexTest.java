@@ -0,0 +1,80 @@
+package edu.ncsu.csc.itrust.unit.dao.personnel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelIndex;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelIndex.Query;
+import junit.framework.TestCase;
+
+public class PersonnelIndexTest extends TestCase {
+	private PersonnelIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		index = new PersonnelIndex();
+		index.put(9000000000L, "hcp", "Kelly", "Doctor", "surgeon");
+		index.put(9000000003L, "hcp", "Gandalf", "Stormcrow", "General Physician");
+		index.put(9000000004L, "hcp", "Kelvin", "Heart", "Cardiology ");
+		index.put(9000000005L, "hcp", "Nick", "Kelson", "cardiology");
+		index.put(8000000009L, "uap", "Kelly", "Assistant", null);
+		index.put(9000000010L, "hcp", "Spencer", "Reid", "Nutritionist");
+		index.put(9000000011L, "hcp", null, null, null);
+		index.assign(9000000000L, "9191919191", true);
+		index.assign(9000000004L, "9191919191", true);
+		index.assign(9000000005L, "8181818181", true);
+	}
+
+	public void testFacets() throws Exception {
+		assertEquals(Arrays.asList(9000000004L, 9000000005L), index.find(new Query().specialty("CARDIOLOGY")));
+		assertEquals(Arrays.asList(9000000004L),
+				index.find(new Query().specialty("cardiology").role("hcp").hospital("9191919191")));
+		assertEquals(Arrays.asList(8000000009L), index.find(new Query().role("uap")));
+		assertEquals(Collections.emptyList(), index.find(new Query().hospital("1")));
+		assertEquals(Collections.emptyList(), index.find(new Query().specialty("dentist")));
+	}
+
+	public void testNames() throws Exception {
+		assertEquals(Arrays.asList(8000000009L, 9000000000L, 9000000004L, 9000000005L),
+				index.find(new Query().named("Kel*")));
+		assertEquals(Arrays.asList(9000000005L), index.find(new Query().named("nick kel*")));
+		assertEquals(Arrays.asList(8000000009L, 9000000000L, 9000000004L, 9000000005L),
+				index.find(new Query().named("kel")));
+		assertEquals(Arrays.asList(9000000004L),
+				index.find(new Query().named("Kel*").role("hcp").specialty("Cardiology").hospital("9191919191")));
+		assertEquals(Arrays.asList(9000000000L), index.find(new Query().named("kelly doc")));
+		assertEquals(Arrays.asList(9000000003L), index.find(new Query().named("al")));
+	}
+
+	public void testLike() throws Exception {
+		assertEquals(Arrays.asList(9000000000L), index.findLike("Kelly", "Doctor", null));
+		assertEquals(Arrays.asList(8000000009L, 9000000000L), index.findLike("kelly", "%", null));
+		assertEquals(Arrays.asList(9000000000L), index.findLike("%ell%", "%%", "hcp"));
+		assertEquals(Arrays.asList(9000000004L), index.findLike("%", "%e%_t%", "hcp"));
+		assertEquals(Collections.emptyList(), index.findLike("Kel", "%", null));
+	}
+
+	public void testUpdates() throws Exception {
+		index.put(9000000011L, null, "Julie", "Kellerman", "Cardiology");
+		assertEquals(Arrays.asList(9000000004L, 9000000005L, 9000000011L),
+				index.find(new Query().specialty("cardiology").role("hcp")));
+		index.put(9000000004L, null, "Kelvin", "Heart", "surgeon");
+		assertEquals(Arrays.asList(9000000005L, 9000000011L), index.find(new Query().specialty("cardiology")));
+		index.assign(9000000000L, "9191919191", false);
+		assertEquals(Arrays.asList(9000000004L), index.find(new Query().hospital("9191919191")));
+		index.unassignAll(9000000004L);
+		assertEquals(Collections.emptyList(), index.find(new Query().hospital("9191919191")));
+		assertEquals(7, index.size());
+	}
+
+	public void testSpecialtyCounts() throws Exception {
+		Map<String, Integer> counts = index.countSpecialties(new Query().role("hcp").specialty("surgeon"));
+		assertEquals(4, counts.size());
+		assertEquals(Integer.valueOf(2), counts.get("cardiology"));
+		assertEquals(Integer.valueOf(1), counts.get("Surgeon"));
+		counts = index.countSpecialties(new Query().named("Kel*").hospital("9191919191"));
+		assertEquals(2, counts.size());
+		assertEquals(Integer.valueOf(1), counts.get("Cardiology"));
+	}
+}
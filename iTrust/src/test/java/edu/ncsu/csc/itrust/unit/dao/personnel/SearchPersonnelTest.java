@@ -0,0 +1,91 @@
+package edu.ncsu.csc.itrust.unit.dao.personnel;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import edu.ncsu.csc.itrust.model.old.beans.PersonnelBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.HospitalsDAO;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelDAO;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelIndex;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PersonnelIndex.Query;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+import junit.framework.TestCase;
+
+public class SearchPersonnelTest extends TestCase {
+	private DAOFactory factory = TestDAOFactory.getTestInstance();
+	private PersonnelDAO personnelDAO = factory.getPersonnelDAO();
+	private HospitalsDAO hospitalsDAO = factory.getHospitalsDAO();
+
+	@Override
+	protected void setUp() throws Exception {
+		TestDataGenerator gen = new TestDataGenerator();
+		gen.clearAllTables();
+		gen.standardData();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		PersonnelIndex.setShared(null);
+	}
+
+	private static List<Long> mids(List<PersonnelBean> personnel) {
+		List<Long> mids = new ArrayList<Long>();
+		for (PersonnelBean p : personnel)
+			mids.add(p.getMID());
+		return mids;
+	}
+
+	public void testSearchPersonnel() throws Exception {
+		List<PersonnelBean> kelly = personnelDAO.searchPersonnel(new Query().named("Kel*").role("hcp")
+				.specialty("surgeon").hospital("9191919191"));
+		assertEquals(1, kelly.size());
+		assertEquals("Kelly", kelly.get(0).getFirstName());
+		assertEquals(Integer.valueOf(1),
+				personnelDAO.getSpecialtyCounts(new Query().named("Kel*").role("hcp")).get("surgeon"));
+	}
+
+	public void testIndexMatchesSQL() throws Exception {
+		Query[] queries = { new Query().named("Kel*"), new Query().named("a").role("hcp"),
+				new Query().role("hcp").hospital("9191919191"), new Query().specialty("SURGEON") };
+		List<List<Long>> bySQL = new ArrayList<List<Long>>();
+		for (Query query : queries)
+			bySQL.add(mids(personnelDAO.searchPersonnel(query)));
+		List<Long> nutritionists = mids(personnelDAO.getAllNutritionists());
+		List<Long> named = mids(personnelDAO.fuzzySearchForExpertsWithName("", "oct"));
+		List<Long> experts = mids(personnelDAO.fuzzySearchForExperts("kel oct"));
+		List<Long> atHospital = mids(personnelDAO.getPersonnelFromHospital("9191919191", "surgeon"));
+
+		PersonnelIndex index = new PersonnelIndex();
+		try (Connection conn = factory.getConnection()) {
+			index.build(conn);
+		}
+		PersonnelIndex.setShared(index);
+		for (int i = 0; i < queries.length; i++)
+			assertEquals(bySQL.get(i), mids(personnelDAO.searchPersonnel(queries[i])));
+		assertEquals(nutritionists.size(), personnelDAO.getAllNutritionists().size());
+		assertEquals(named.size(), personnelDAO.fuzzySearchForExpertsWithName("", "oct").size());
+		assertEquals(new TreeSet<Long>(experts),
+				new TreeSet<Long>(mids(personnelDAO.fuzzySearchForExperts("kel oct"))));
+		assertEquals(atHospital.size(), personnelDAO.getPersonnelFromHospital("9191919191", "surgeon").size());
+	}
+
+	public void testIndexKeptUpToDate() throws Exception {
+		PersonnelIndex index = new PersonnelIndex();
+		try (Connection conn = factory.getConnection()) {
+			index.build(conn);
+		}
+		PersonnelIndex.setShared(index);
+		hospitalsDAO.removeAllHospitalAssignmentsFrom(9000000000L);
+		assertTrue(personnelDAO.searchPersonnel(new Query().named("Kelly").hospital("9191919191")).isEmpty());
+		hospitalsDAO.assignHospital(9000000000L, "9191919191");
+		PersonnelBean kelly = personnelDAO.getPersonnel(9000000000L);
+		kelly.setSpecialty("Cardiology");
+		personnelDAO.editPersonnel(kelly);
+		assertEquals(1, personnelDAO.searchPersonnel(new Query().named("Kelly").specialty("cardiology")
+				.hospital("9191919191")).size());
+	}
+}
@@ -0,0 +1,99 @@
+package edu.ncsu.csc.itrust.unit.dao.reportjob;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import junit.framework.TestCase;
+import edu.ncsu.csc.itrust.model.old.beans.ReportJobBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.ReportJobDAO;
+import edu.ncsu.csc.itrust.model.old.enums.ReportJobStatus;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+
+public class ReportJobDAOTest extends TestCase {
+	private DAOFactory factory = TestDAOFactory.getTestInstance();
+	private ReportJobDAO dao = factory.getReportJobDAO();
+
+	@Override
+	protected void setUp() throws Exception {
+		new TestDataGenerator().clearAllTables();
+	}
+
+	public void testAddAndGet() throws Exception {
+		long id = dao.addJob(newJob(9000000000L, "csv"));
+		ReportJobBean job = dao.getJob(id);
+		assertEquals(9000000000L, job.getOwnerMID());
+		assertEquals(ReportJobStatus.QUEUED, job.getStatus());
+		assertEquals("csv", job.getFormat());
+		assertEquals("demoparams=LAST_NAME&LAST_NAME=Person", job.getDefinition());
+		assertNotNull(job.getCreatedAt());
+		assertNull(job.getFinishedAt());
+		assertNull(dao.getJob(id + 1));
+	}
+
+	public void testLifecycle() throws Exception {
+		long id = dao.addJob(newJob(9000000000L, "xml"));
+		assertEquals(1, dao.countUnfinishedJobs(9000000000L));
+		assertTrue(dao.startJob(id));
+		assertFalse(dao.startJob(id));
+		dao.updateProgress(id, 500, 2000);
+		ReportJobBean job = dao.getJob(id);
+		assertEquals(ReportJobStatus.RUNNING, job.getStatus());
+		assertEquals(500, job.getRowsDone());
+		assertEquals(2000, job.getRowsEstimated());
+		assertTrue(dao.finishJob(id, ReportJobStatus.DONE, ""));
+		assertFalse(dao.finishJob(id, ReportJobStatus.CANCELLED, "Cancelled"));
+		job = dao.getJob(id);
+		assertEquals(ReportJobStatus.DONE, job.getStatus());
+		assertNotNull(job.getFinishedAt());
+		assertEquals(0, dao.countUnfinishedJobs(9000000000L));
+	}
+
+	public void testCancelQueued() throws Exception {
+		long id = dao.addJob(newJob(9000000000L, "xml"));
+		assertTrue(dao.finishJob(id, ReportJobStatus.CANCELLED, "Cancelled"));
+		assertFalse(dao.startJob(id));
+		assertEquals("Cancelled", dao.getJob(id).getMessage());
+	}
+
+	public void testRequeueRunning() throws Exception {
+		long running = dao.addJob(newJob(9000000000L, "xml"));
+		long queued = dao.addJob(newJob(9000000003L, "json"));
+		dao.startJob(running);
+		dao.updateProgress(running, 100, 200);
+		assertEquals(1, dao.requeueRunningJobs());
+		List<ReportJobBean> jobs = dao.getJobsWithStatus(ReportJobStatus.QUEUED);
+		assertEquals(2, jobs.size());
+		assertEquals(running, jobs.get(0).getJobID());
+		assertEquals(queued, jobs.get(1).getJobID());
+	}
+
+	public void testJobsForOwnerAndExpiry() throws Exception {
+		long first = dao.addJob(newJob(9000000000L, "xml"));
+		long second = dao.addJob(newJob(9000000000L, "csv"));
+		dao.addJob(newJob(9000000003L, "csv"));
+		List<ReportJobBean> jobs = dao.getJobsForOwner(9000000000L);
+		assertEquals(2, jobs.size());
+		assertEquals(second, jobs.get(0).getJobID());
+		assertEquals(first, jobs.get(1).getJobID());
+
+		dao.finishJob(first, ReportJobStatus.FAILED, "Age must be GTE 0!");
+		Timestamp later = new Timestamp(System.currentTimeMillis() + 60000);
+		List<ReportJobBean> expired = dao.getJobsFinishedBefore(later);
+		assertEquals(1, expired.size());
+		assertEquals(first, expired.get(0).getJobID());
+		dao.removeJob(first);
+		assertNull(dao.getJob(first));
+		assertEquals(1, dao.getJobsForOwner(9000000000L).size());
+	}
+
+	private static ReportJobBean newJob(long owner, String format) {
+		ReportJobBean job = new ReportJobBean();
+		job.setOwnerMID(owner);
+		job.setStatus(ReportJobStatus.QUEUED);
+		job.setFormat(format);
+		job.setDefinition("demoparams=LAST_NAME&LAST_NAME=Person");
+		return job;
+	}
+}
@@ -0,0 +1,70 @@
+package edu.ncsu.csc.itrust.unit.dao.transaction;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+
+/**
+ * Times {@link TransactionDAO#getAllRecordAccesses(long, long, boolean)} for
+ * growing access logs, to check that role resolution and sorting scale
+ * linearithmically rather than quadratically. Not a unit test; run it by hand
+ * against the test database (it clears all tables):
+ * 
+ * <pre>
+ * java edu.ncsu.csc.itrust.unit.dao.transaction.AccessLogBenchmark [sizes...]
+ * </pre>
+ */
+public class AccessLogBenchmark {
+	private static final long[] ACCESSORS = { 9000000000L, 9000000003L, 8000000009L, 2L };
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 100, 1000, 5000, 20000 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		TransactionDAO dao = TestDAOFactory.getTestInstance().getTransactionDAO();
+		TestDataGenerator gen = new TestDataGenerator();
+		System.out.println("accesses\tbyDate(ms)\tbyRole(ms)");
+		for (int size : sizes) {
+			gen.clearAllTables();
+			gen.hcp0();
+			gen.hcp3();
+			gen.uap1();
+			gen.patient1();
+			gen.patient2();
+			List<TransactionBean> batch = new ArrayList<TransactionBean>();
+			for (int i = 0; i < size; i++) {
+				TransactionBean t = new TransactionBean();
+				t.setTransactionType(TransactionType.PRESCRIPTION_REPORT_VIEW);
+				t.setLoggedInMID(ACCESSORS[i % ACCESSORS.length]);
+				t.setSecondaryMID(1L);
+				t.setAddedInfo("");
+				t.setTimeLogged(new Timestamp(1420070400000L + i * 60000L));
+				batch.add(t);
+				if (batch.size() == 1000) {
+					dao.logTransactions(batch);
+					batch.clear();
+				}
+			}
+			dao.logTransactions(batch);
+			dao.getAllRecordAccesses(1L, -1, true); // warm up
+			System.out.println(size + "\t" + time(dao, false) + "\t" + time(dao, true));
+		}
+	}
+
+	private static double time(TransactionDAO dao, boolean byRole) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++)
+			dao.getAllRecordAccesses(1L, -1, byRole);
+		return (System.nanoTime() - start) / 1e6 / RUNS;
+	}
+}
@@ -1,11 +1,20 @@
 package edu.ncsu.csc.itrust.unit.dao.transaction;
 
+import java.io.File;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
+import edu.ncsu.csc.itrust.logger.TransactionArchive;
+import edu.ncsu.csc.itrust.logger.TransactionArchiver;
 import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionPage;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCallback;
 import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
 import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
 import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
 
@@ -20,6 +29,11 @@ public class AccessRecordTest extends TestCase {
 		gen.transactionLog();
 	}
 
+	@Override
+	protected void tearDown() throws Exception {
+		TransactionArchive.setShared(null);
+	}
+
 	// note - testing the actual loader is done elsewhere. Just check that we're
 	// getting the right
 	// ones here
@@ -41,4 +55,106 @@ public class AccessRecordTest extends TestCase {
 				new SimpleDateFormat("MM/dd/yyyy").parse("06/24/2007"), false);
 		assertEquals(0, transactions.size());
 	}
+
+	public void testAccessPages() throws Exception {
+		List<TransactionBean> all = tranDAO.getAllRecordAccesses(2L, -1, false);
+		List<TransactionBean> paged = new ArrayList<TransactionBean>();
+		TransactionCursor after = null;
+		int pages = 0;
+		do {
+			TransactionPage page = tranDAO.getRecordAccessPage(2L, -1, null, null, after, 2);
+			assertTrue(page.getTransactions().size() <= 2);
+			paged.addAll(page.getTransactions());
+			after = TransactionCursor.parse(page.getNextToken());
+			pages++;
+		} while (after != null);
+		assertEquals(3, pages);
+		assertEquals(all.size(), paged.size());
+		for (int i = 0; i < all.size(); i++) {
+			assertEquals(all.get(i).getTransactionID(), paged.get(i).getTransactionID());
+			assertEquals(all.get(i).getRole(), paged.get(i).getRole());
+		}
+	}
+
+	public void testAccessPageInRange() throws Exception {
+		TransactionPage page = tranDAO.getRecordAccessPage(2L, -1,
+				new SimpleDateFormat("MM/dd/yyyy").parse("06/23/2007"),
+				new SimpleDateFormat("MM/dd/yyyy").parse("06/24/2007"), null, 10);
+		assertEquals(3, page.getTransactions().size());
+		assertFalse(page.hasMore());
+	}
+
+	public void testStreamAccesses() throws Exception {
+		final List<TransactionBean> streamed = new ArrayList<TransactionBean>();
+		tranDAO.streamRecordAccesses(2L, -1, null, null, new TransactionCallback() {
+			@Override
+			public boolean handle(TransactionBean transaction) {
+				streamed.add(transaction);
+				return streamed.size() < 4;
+			}
+		});
+		assertEquals(4, streamed.size());
+		List<TransactionBean> all = tranDAO.getAllRecordAccesses(2L, -1, false);
+		for (int i = 0; i < streamed.size(); i++) {
+			assertEquals(all.get(i).getTransactionID(), streamed.get(i).getTransactionID());
+		}
+	}
+
+	public void testArchivedAccessesMerged() throws Exception {
+		List<TransactionBean> before = tranDAO.getAllRecordAccesses(2L, -1, false);
+		File dir = File.createTempFile("archive", "");
+		dir.delete();
+		TransactionArchive archive = new TransactionArchive(dir);
+		TransactionArchive.setShared(archive);
+		try {
+			assertTrue(new TransactionArchiver(tranDAO, archive, 1).archiveOldMonths() > 0);
+			assertEquals(0, tranDAO.getAllTransactions().size());
+
+			List<TransactionBean> after = tranDAO.getAllRecordAccesses(2L, -1, false);
+			assertEquals(before.size(), after.size());
+			for (int i = 0; i < before.size(); i++) {
+				assertEquals(before.get(i).getTransactionID(), after.get(i).getTransactionID());
+				assertEquals(before.get(i).getRole(), after.get(i).getRole());
+			}
+			TransactionPage page = tranDAO.getRecordAccessPage(2L, -1, null, null, null, 2);
+			assertEquals(2, page.getTransactions().size());
+			assertTrue(page.hasMore());
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	public void testRolesSortedStably() throws Exception {
+		gen.hcp0();
+		gen.uap1();
+		gen.patient1();
+		gen.patient2();
+		long[] accessors = { 9000000000L, 2L, 8000000009L, 9000000000L };
+		List<TransactionBean> accesses = new ArrayList<TransactionBean>();
+		for (int i = 0; i < accessors.length; i++) {
+			TransactionBean t = new TransactionBean();
+			t.setTransactionType(TransactionType.PRESCRIPTION_REPORT_VIEW);
+			t.setLoggedInMID(accessors[i]);
+			t.setSecondaryMID(1L);
+			t.setAddedInfo("access " + i);
+			t.setTimeLogged(Timestamp.valueOf("2015-01-0" + (i + 1) + " 12:00:00"));
+			accesses.add(t);
+		}
+		tranDAO.logTransactions(accesses);
+
+		List<TransactionBean> byRole = tranDAO.getAllRecordAccesses(1L, -1, true);
+		assertEquals(4, byRole.size());
+		assertEquals("LHCP", byRole.get(0).getRole());
+		assertEquals("access 3", byRole.get(0).getAddedInfo());
+		assertEquals("LHCP", byRole.get(1).getRole());
+		assertEquals("access 0", byRole.get(1).getAddedInfo());
+		assertEquals("Personal Health Representative", byRole.get(2).getRole());
+		assertEquals("UAP", byRole.get(3).getRole());
+	}
+
+	public void testNoAccessesSortedByRole() throws Exception {
+		assertEquals(0, tranDAO.getAllRecordAccesses(1L, -1, true).size());
+	}
 }
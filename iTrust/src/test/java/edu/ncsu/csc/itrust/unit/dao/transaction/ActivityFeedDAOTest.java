@@ -0,0 +1,88 @@
+package edu.ncsu.csc.itrust.unit.dao.transaction;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import edu.ncsu.csc.itrust.model.old.beans.ActivityBean;
+import edu.ncsu.csc.itrust.model.old.beans.ActivityPage;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionBean;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCursor;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.ActivityFeedDAO;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+
+public class ActivityFeedDAOTest extends TestCase {
+	private ActivityFeedDAO feedDAO = TestDAOFactory.getTestInstance().getActivityFeedDAO();
+	private TransactionDAO tranDAO = TestDAOFactory.getTestInstance().getTransactionDAO();
+
+	@Override
+	protected void setUp() throws Exception {
+		TestDataGenerator gen = new TestDataGenerator();
+		gen.clearAllTables();
+		gen.hcp0();
+		gen.patient2();
+		gen.transactionLog();
+	}
+
+	private List<ActivityBean> readAll(long patientMID) throws Exception {
+		List<ActivityBean> all = new ArrayList<ActivityBean>();
+		TransactionCursor after = null;
+		do {
+			ActivityPage page = feedDAO.getFeedPage(patientMID, -1, after, 7);
+			all.addAll(page.getActivities());
+			after = TransactionCursor.parse(page.getNextToken());
+		} while (after != null);
+		return all;
+	}
+
+	public void testBuiltFromLog() throws Exception {
+		List<ActivityBean> feed = readAll(2L);
+		assertEquals(5, feed.size());
+		for (ActivityBean a : feed) {
+			assertEquals(2L, a.getPatientMID());
+			assertEquals(TransactionType.PRESCRIPTION_REPORT_VIEW, a.getTransactionType());
+			assertEquals("Kelly Doctor", a.getActorName());
+		}
+		assertFalse(feed.get(0).getTimeLogged().before(feed.get(1).getTimeLogged()));
+	}
+
+	public void testPagesPastTrimmedEntries() throws Exception {
+		readAll(2L);
+		List<TransactionBean> batch = new ArrayList<TransactionBean>();
+		int logged = ActivityFeedDAO.FEED_CAPACITY + ActivityFeedDAO.TRIM_BATCH + 10;
+		for (int i = 0; i < logged; i++) {
+			TransactionBean t = new TransactionBean();
+			t.setTransactionType(TransactionType.OFFICE_VISIT_VIEW);
+			t.setLoggedInMID(9000000000L);
+			t.setSecondaryMID(2L);
+			t.setAddedInfo("");
+			t.setTimeLogged(new Timestamp(System.currentTimeMillis() - i * 1000L));
+			batch.add(t);
+		}
+		tranDAO.logTransactions(batch);
+		List<ActivityBean> feed = readAll(2L);
+		assertEquals(logged + 5, feed.size());
+		Set<Long> ids = new HashSet<Long>();
+		for (int i = 0; i < feed.size(); i++) {
+			assertTrue(ids.add(feed.get(i).getTransactionID()));
+			assertEquals("Kelly Doctor", feed.get(i).getActorName());
+			if (i > 0)
+				assertFalse(feed.get(i).getTimeLogged().after(feed.get(i - 1).getTimeLogged()));
+		}
+		assertEquals(TransactionType.PRESCRIPTION_REPORT_VIEW, feed.get(feed.size() - 1).getTransactionType());
+	}
+
+	public void testInvalidateRebuilds() throws Exception {
+		readAll(2L);
+		new TestDataGenerator().transactionLog2();
+		assertEquals(5, readAll(2L).size());
+		feedDAO.invalidate(2L);
+		assertEquals(tranDAO.getAllRecordAccesses(2L, -1, false).size(), readAll(2L).size());
+	}
+}
@@ -1,5 +1,7 @@
 package edu.ncsu.csc.itrust.unit.dao.transaction;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -68,4 +70,22 @@ public class LogTransactionTest extends TestCase {
 		assertEquals(9000000001L, list.get(0).getLoggedInMID());
 		assertEquals(98L, list.get(0).getSecondaryMID());
 	}
+
+	public void testLogBatch() throws Exception {
+		List<TransactionBean> batch = new ArrayList<TransactionBean>();
+		for (int i = 0; i < 3; i++) {
+			TransactionBean t = new TransactionBean();
+			t.setTransactionType(TransactionType.OFFICE_VISIT_EDIT);
+			t.setLoggedInMID(9000000000L);
+			t.setSecondaryMID(i + 1);
+			t.setAddedInfo("batch " + i);
+			t.setTimeLogged(new Timestamp(System.currentTimeMillis() + i * 1000L));
+			batch.add(t);
+		}
+		tranDAO.logTransactions(batch);
+		List<TransactionBean> list = tranDAO.getAllTransactions();
+		assertEquals(11, list.size());
+		assertEquals(3L, list.get(0).getSecondaryMID());
+		assertEquals("batch 2", list.get(0).getAddedInfo());
+	}
 }
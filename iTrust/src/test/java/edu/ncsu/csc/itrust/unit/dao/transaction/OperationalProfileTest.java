@@ -22,6 +22,7 @@ public class OperationalProfileTest extends TestCase {
 		gen.clearAllTables();
 		gen.operationalProfile();
 		gen.tester();
+		TestDAOFactory.getTestInstance().getTransactionCountDAO().reconcile();
 	}
 
 	/**
@@ -0,0 +1,68 @@
+package edu.ncsu.csc.itrust.unit.dao.transaction;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import junit.framework.TestCase;
+import edu.ncsu.csc.itrust.model.old.beans.OperationalProfile;
+import edu.ncsu.csc.itrust.model.old.beans.TransactionCountBean;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionCountDAO;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.TransactionDAO;
+import edu.ncsu.csc.itrust.model.old.enums.TransactionType;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+
+public class TransactionCountDAOTest extends TestCase {
+	private TransactionDAO tranDAO = TestDAOFactory.getTestInstance().getTransactionDAO();
+	private TransactionCountDAO countDAO = TestDAOFactory.getTestInstance().getTransactionCountDAO();
+	private TestDataGenerator gen;
+
+	@Override
+	protected void setUp() throws Exception {
+		gen = new TestDataGenerator();
+		gen.clearAllTables();
+		gen.operationalProfile();
+	}
+
+	public void testCountsBuiltFromLog() throws Exception {
+		assertFalse(countDAO.hasCounts());
+		assertEquals(0, countDAO.getOperationalProfile().getNumTotalTransactions());
+		countDAO.reconcile();
+		assertTrue(countDAO.hasCounts());
+		OperationalProfile op = countDAO.getOperationalProfile();
+		assertEquals(1, op.getNumTotalTransactions());
+		assertEquals(1, (int) op.getPersonnelCount().get(TransactionType.LOGIN_FAILURE));
+	}
+
+	public void testLoggingUpdatesCounts() throws Exception {
+		countDAO.reconcile();
+		tranDAO.logTransaction(TransactionType.OFFICE_VISIT_EDIT, 9000000000L, 1L, "");
+		tranDAO.logTransaction(TransactionType.OFFICE_VISIT_EDIT, 1L, 1L, "");
+		OperationalProfile op = countDAO.getOperationalProfile();
+		assertEquals(3, op.getNumTotalTransactions());
+		assertEquals(2, (int) op.getTotalCount().get(TransactionType.OFFICE_VISIT_EDIT));
+		assertEquals(1, (int) op.getPatientCount().get(TransactionType.OFFICE_VISIT_EDIT));
+		assertEquals(1, (int) op.getPersonnelCount().get(TransactionType.OFFICE_VISIT_EDIT));
+	}
+
+	public void testHourlyAndDailyRollups() throws Exception {
+		countDAO.reconcile();
+		Timestamp from = Timestamp.valueOf("2007-06-23 00:00:00");
+		Timestamp to = Timestamp.valueOf("2007-06-24 00:00:00");
+		List<TransactionCountBean> hours = countDAO.getHourlyCounts(from, to);
+		assertEquals(1, hours.size());
+		assertEquals(Timestamp.valueOf("2007-06-23 06:00:00"), hours.get(0).getBucketStart());
+		assertEquals(1, hours.get(0).getPersonnelCount());
+		List<TransactionCountBean> days = countDAO.getDailyCounts(from, to);
+		assertEquals(1, days.size());
+		assertEquals(from, days.get(0).getBucketStart());
+		assertEquals(1, days.get(0).getTotalCount());
+	}
+
+	public void testReconcileSinceCorrectsDrift() throws Exception {
+		countDAO.reconcile();
+		gen.transactionLog();
+		countDAO.reconcileSince(Timestamp.valueOf("2000-01-01 00:00:00"));
+		assertEquals(tranDAO.getAllTransactions().size(), countDAO.getOperationalProfile().getNumTotalTransactions());
+	}
+}
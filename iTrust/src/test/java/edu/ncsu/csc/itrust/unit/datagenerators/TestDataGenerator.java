@@ -8,6 +8,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.UserRoleMemo;
 import edu.ncsu.csc.itrust.unit.DBBuilder;
 import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
 
@@ -84,6 +85,8 @@ public class TestDataGenerator {
 
 	public void clearAllTables() throws SQLException, FileNotFoundException, IOException {
 		new DBBuilder(factory).executeSQLFile(DIR + "/deleteFromAllTables.sql");
+		// MIDs get reused with different roles from test to test
+		UserRoleMemo.getShared().clear();
 	}
 
 	public void clearAppointments() throws SQLException, FileNotFoundException, IOException {
@@ -0,0 +1,73 @@
+package edu.ncsu.csc.itrust.unit.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.CodeIndex;
+import edu.ncsu.csc.itrust.model.icdcode.ICDCode;
+import junit.framework.TestCase;
+
+public class CodeIndexTest extends TestCase {
+	private CodeIndex<ICDCode> index;
+
+	@Override
+	protected void setUp() throws Exception {
+		index = CodeIndex.build(Arrays.asList(new ICDCode("J45", "Asthma", true),
+				new ICDCode("J45.909", "Unspecified asthma, uncomplicated", true),
+				new ICDCode("E11.9", "Type 2 diabetes mellitus without complications", true),
+				new ICDCode("I50.9", "Heart failure, unspecified", true),
+				new ICDCode("B45.1", "Cerebral cryptococcosis", false),
+				new ICDCode("R50.9", "Fever, unspecified", false)), ICDCode::getCode, ICDCode::getName);
+	}
+
+	private static List<String> codes(List<ICDCode> found) {
+		List<String> codes = new ArrayList<String>();
+		for (ICDCode code : found)
+			codes.add(code.getCode());
+		return codes;
+	}
+
+	public void testFilterLikeContains() throws Exception {
+		assertEquals(Arrays.asList("B45.1", "J45", "J45.909"), codes(index.filter("45")));
+		assertEquals(Arrays.asList("E11.9", "I50.9", "J45.909", "R50.9"), codes(index.filter(".9")));
+		assertEquals(Arrays.asList("J45.909"), codes(index.filter("j45.90")));
+		assertEquals(0, index.filter("X").size());
+		assertEquals(6, index.filter("").size());
+	}
+
+	public void testSuggestRanksCodesThenNames() throws Exception {
+		// the code itself, then codes it starts, then codes containing it...
+		assertEquals(Arrays.asList("J45", "J45.909"), codes(index.suggest("j45", 10)));
+		assertEquals(Arrays.asList("J45", "B45.1", "J45.909"), codes(index.suggest("45", 10)));
+		// ...names starting with it before names with a later word starting with it
+		assertEquals(Arrays.asList("J45", "J45.909"), codes(index.suggest("asth", 10)));
+		assertEquals(Arrays.asList("I50.9", "R50.9"), codes(index.suggest("unspecified", 10).subList(1, 3)));
+		assertEquals(Arrays.asList("J45.909"), codes(index.suggest("asthma uncompl", 10)));
+		assertEquals(Arrays.asList("E11.9"), codes(index.suggest("diabetes type", 10)));
+		assertEquals(Arrays.asList("J45"), codes(index.suggest("j45", 1)));
+		assertEquals(0, index.suggest("  ", 10).size());
+	}
+
+	public void testLongPrefixes() throws Exception {
+		// longer than the tries branch, narrowed by binary search
+		assertEquals(Arrays.asList("E11.9"), codes(index.suggest("diabetes mell", 10)));
+		assertEquals(Arrays.asList("I50.9"), codes(index.suggest("Heart Failure, Unspec", 10)));
+		assertEquals(0, index.suggest("heart failure, unspecifies", 10).size());
+	}
+
+	public void testSnapshotsAreImmutable() throws Exception {
+		CodeIndex<ICDCode> added = index.with(new ICDCode("J45.20", "Mild intermittent asthma", true));
+		CodeIndex<ICDCode> changed = added.with(new ICDCode("J45", "Asthma, other", true));
+		CodeIndex<ICDCode> removed = changed.without("j45.909");
+
+		assertEquals(6, index.size());
+		assertEquals(Arrays.asList("J45", "J45.909"), codes(index.filter("J45")));
+		assertEquals(Arrays.asList("J45", "J45.20", "J45.909"), codes(added.filter("J45")));
+		assertEquals("Asthma", added.get("J45").getName());
+		assertEquals("Asthma, other", changed.get("j45").getName());
+		assertEquals(Arrays.asList("J45", "J45.20"), codes(removed.filter("J45")));
+		assertNull(removed.get("J45.909"));
+		assertSame(removed, removed.without("Z00"));
+	}
+}
@@ -0,0 +1,89 @@
+package edu.ncsu.csc.itrust.unit.model;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import edu.ncsu.csc.itrust.model.CompressedBitmap;
+import junit.framework.TestCase;
+
+public class CompressedBitmapTest extends TestCase {
+
+	public void testAddRemoveContains() {
+		CompressedBitmap bitmap = CompressedBitmap.of(5, 3, 70000, 3);
+		assertEquals(3, bitmap.cardinality());
+		assertTrue(bitmap.contains(3));
+		assertTrue(bitmap.contains(70000));
+		assertFalse(bitmap.contains(4));
+		assertFalse(bitmap.contains(4464));
+		bitmap.remove(70000);
+		bitmap.remove(9);
+		assertEquals("[3, 5]", bitmap.toString());
+		bitmap.remove(3);
+		bitmap.remove(5);
+		assertTrue(bitmap.isEmpty());
+	}
+
+	public void testDenseChunks() {
+		CompressedBitmap bitmap = new CompressedBitmap();
+		for (int i = 0; i < 20000; i += 2)
+			bitmap.add(i);
+		assertEquals(10000, bitmap.cardinality());
+		assertTrue(bitmap.contains(19998));
+		assertFalse(bitmap.contains(19999));
+		long dense = bitmap.sizeInBytes();
+		assertTrue("a dense chunk is a bitmap: " + dense, dense < 10000);
+		for (int i = 0; i < 20000; i += 4)
+			bitmap.remove(i);
+		assertEquals(5000, bitmap.cardinality());
+		assertEquals(2, bitmap.toArray()[0]);
+	}
+
+	public void testOperationsMatchBitSet() {
+		Random random = new Random(326);
+		for (int round = 0; round < 20; round++) {
+			BitSet expectedA = new BitSet();
+			BitSet expectedB = new BitSet();
+			CompressedBitmap a = new CompressedBitmap();
+			CompressedBitmap b = new CompressedBitmap();
+			// vary how dense the chunks are so that both kinds get combined
+			int range = 1 << (12 + random.nextInt(7));
+			for (int i = 0; i < 6000; i++) {
+				int x = random.nextInt(range);
+				int y = random.nextInt(range * 2);
+				expectedA.set(x);
+				a.add(x);
+				expectedB.set(y);
+				b.add(y);
+			}
+			BitSet and = (BitSet) expectedA.clone();
+			and.and(expectedB);
+			BitSet or = (BitSet) expectedA.clone();
+			or.or(expectedB);
+			BitSet andNot = (BitSet) expectedA.clone();
+			andNot.andNot(expectedB);
+			assertEquals(and.toString(), toBitSet(CompressedBitmap.and(a, b)).toString());
+			assertEquals(or.toString(), toBitSet(CompressedBitmap.or(a, b)).toString());
+			assertEquals(andNot.toString(), toBitSet(CompressedBitmap.andNot(a, b)).toString());
+			assertEquals(and.cardinality(), CompressedBitmap.and(b, a).cardinality());
+		}
+	}
+
+	public void testResultsAreIndependent() {
+		CompressedBitmap a = CompressedBitmap.of(1, 2, 3);
+		CompressedBitmap b = CompressedBitmap.of(3, 4);
+		CompressedBitmap or = CompressedBitmap.or(a, b);
+		CompressedBitmap copy = a.copy();
+		or.add(100);
+		copy.remove(1);
+		assertEquals(CompressedBitmap.of(1, 2, 3), a);
+		assertEquals(CompressedBitmap.of(3, 4), b);
+		assertEquals(CompressedBitmap.of(1, 2, 3, 4, 100), or);
+	}
+
+	private static BitSet toBitSet(CompressedBitmap bitmap) {
+		BitSet bits = new BitSet();
+		for (int value : bitmap.toArray())
+			bits.set(value);
+		return bits;
+	}
+}
@@ -0,0 +1,81 @@
+package edu.ncsu.csc.itrust.unit.model.emergencyRecord;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecord.Section;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordLoader;
+import junit.framework.TestCase;
+
+public class EmergencyRecordLoaderTest extends TestCase {
+	private EmergencyRecordLoader loader;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (loader != null)
+			loader.shutdown();
+	}
+
+	public void testInline() throws Exception {
+		loader = new EmergencyRecordLoader();
+		final String caller = Thread.currentThread().getName();
+		Future<String> result = loader.submit(Section.ALLERGIES, () -> Thread.currentThread().getName());
+		assertTrue(result.isDone());
+		assertEquals(caller, loader.await(Section.ALLERGIES, result, loader.startDeadline()));
+		assertEquals(1, loader.getCount(Section.ALLERGIES));
+		assertEquals(0, loader.getCount(Section.DIAGNOSES));
+	}
+
+	public void testRunsSectionsSideBySide() throws Exception {
+		loader = new EmergencyRecordLoader(4, 4, 5000);
+		final CountDownLatch started = new CountDownLatch(2);
+		long deadline = loader.startDeadline();
+		Future<Integer> first = loader.submit(Section.PRESCRIPTIONS, () -> {
+			started.countDown();
+			started.await();
+			return 1;
+		});
+		Future<Integer> second = loader.submit(Section.IMMUNIZATIONS, () -> {
+			started.countDown();
+			started.await();
+			return 2;
+		});
+		assertEquals(Integer.valueOf(1), loader.await(Section.PRESCRIPTIONS, first, deadline));
+		assertEquals(Integer.valueOf(2), loader.await(Section.IMMUNIZATIONS, second, deadline));
+		assertEquals(0, loader.getTimeoutCount(Section.PRESCRIPTIONS));
+	}
+
+	public void testDeadline() throws Exception {
+		loader = new EmergencyRecordLoader(2, 2, 100);
+		final CountDownLatch release = new CountDownLatch(1);
+		long deadline = loader.startDeadline();
+		Future<String> fast = loader.submit(Section.ALLERGIES, () -> "fast");
+		Future<String> slow = loader.submit(Section.DIAGNOSES, () -> {
+			release.await();
+			return "slow";
+		});
+		assertEquals("fast", loader.await(Section.ALLERGIES, fast, deadline));
+		assertNull(loader.await(Section.DIAGNOSES, slow, deadline));
+		assertTrue(slow.isCancelled());
+		assertEquals(1, loader.getTimeoutCount(Section.DIAGNOSES));
+		assertEquals(0, loader.getTimeoutCount(Section.ALLERGIES));
+		release.countDown();
+	}
+
+	public void testFailure() throws Exception {
+		loader = new EmergencyRecordLoader(1, 1, 1000);
+		Future<String> result = loader.submit(Section.IMMUNIZATIONS, () -> {
+			throw new SQLException("down");
+		});
+		try {
+			loader.await(Section.IMMUNIZATIONS, result, loader.startDeadline());
+			fail();
+		} catch (SQLException e) {
+			assertEquals("down", e.getMessage());
+		}
+		assertEquals(1, loader.getFailureCount(Section.IMMUNIZATIONS));
+		assertEquals(1, loader.getCount(Section.IMMUNIZATIONS));
+		assertTrue(loader.toString().contains("immunizations[count=1 failures=1"));
+	}
+}
@@ -0,0 +1,180 @@
+package edu.ncsu.csc.itrust.unit.model.emergencyRecord;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+
+import edu.ncsu.csc.itrust.exception.DBException;
+import edu.ncsu.csc.itrust.model.cptcode.CPTCode;
+import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecord;
+import edu.ncsu.csc.itrust.model.emergencyRecord.EmergencyRecordSnapshots;
+import edu.ncsu.csc.itrust.model.icdcode.ICDCode;
+import edu.ncsu.csc.itrust.model.immunization.Immunization;
+import edu.ncsu.csc.itrust.model.old.beans.AllergyBean;
+import edu.ncsu.csc.itrust.model.old.beans.MedicationBean;
+import edu.ncsu.csc.itrust.model.prescription.Prescription;
+import junit.framework.TestCase;
+
+public class EmergencyRecordSnapshotsTest extends TestCase {
+	private int builds;
+	private EmergencyRecordSnapshots snapshots;
+	private Runnable duringBuild;
+	private boolean partial;
+
+	@Override
+	protected void setUp() throws Exception {
+		snapshots = new EmergencyRecordSnapshots(new EmergencyRecordSnapshots.Builder() {
+			@Override
+			public EmergencyRecord build(long mid) throws DBException {
+				builds++;
+				if (duringBuild != null)
+					duringBuild.run();
+				return mid < 0 ? null : record(mid);
+			}
+		}, 1024 * 1024, 0);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		EmergencyRecordSnapshots.setShared(null);
+	}
+
+	public void testServesSnapshot() throws Exception {
+		EmergencyRecord live = snapshots.get(201L);
+		EmergencyRecord snapshot = snapshots.get(201L);
+		assertEquals(1, builds);
+		assertEquals(1, snapshots.getHits());
+		assertEquals(1, snapshots.getMisses());
+		assertNotSame(live, snapshot);
+
+		assertEquals("Sandy Sky", snapshot.getName());
+		assertEquals(24, snapshot.getAge());
+		assertEquals("Male", snapshot.getGender());
+		assertEquals("Susan Sky-Walker", snapshot.getContactName());
+		assertEquals("444-332-4309", snapshot.getContactPhone());
+		assertEquals("O-", snapshot.getBloodType());
+
+		Prescription p = snapshot.getPrescriptions().get(0);
+		assertEquals(7L, p.getId());
+		assertEquals(201L, p.getPatientMID());
+		assertEquals("63739-291", p.getDrugCode().getNDCode());
+		assertEquals("Oyster Shell Calcium", p.getName());
+		assertEquals(LocalDate.of(2016, 10, 1), p.getStartDate());
+		assertEquals(LocalDate.of(2016, 10, 15), p.getEndDate());
+		assertNull(p.getInstructions());
+		assertEquals(100L, p.getDosage());
+
+		AllergyBean a = snapshot.getAllergies().get(0);
+		assertEquals("Pollen", a.getDescription());
+		assertEquals(new Date(1462406400000L), a.getFirstFound());
+
+		Diagnosis d = snapshot.getDiagnoses().get(0);
+		assertEquals("J45", d.getCode());
+		assertEquals("Asthma", d.getName());
+		assertTrue(d.getIcdCode().isChronic());
+
+		Immunization i = snapshot.getImmunizations().get(0);
+		assertEquals("90715", i.getCode());
+		assertEquals("TDAP", i.getName());
+	}
+
+	public void testPatientChangedDropsSnapshot() throws Exception {
+		EmergencyRecordSnapshots.setShared(snapshots);
+		snapshots.get(201L);
+		snapshots.get(202L);
+		EmergencyRecordSnapshots.patientChanged(201L);
+		assertFalse(snapshots.contains(201L));
+		assertTrue(snapshots.contains(202L));
+		assertEquals(1, snapshots.getInvalidations());
+		snapshots.get(201L);
+		assertEquals(3, builds);
+		assertTrue(snapshots.contains(201L));
+	}
+
+	public void testWriteDuringBuildIsNotKept() throws Exception {
+		duringBuild = new Runnable() {
+			@Override
+			public void run() {
+				snapshots.invalidate(201L);
+			}
+		};
+		assertNotNull(snapshots.get(201L));
+		assertFalse(snapshots.contains(201L));
+		duringBuild = null;
+		snapshots.get(201L);
+		assertTrue(snapshots.contains(201L));
+	}
+
+	public void testNotKeptUntilSettled() throws Exception {
+		snapshots = new EmergencyRecordSnapshots(new EmergencyRecordSnapshots.Builder() {
+			@Override
+			public EmergencyRecord build(long mid) throws DBException {
+				return record(mid);
+			}
+		}, 1024 * 1024, 60000);
+		snapshots.invalidate(201L);
+		snapshots.get(201L);
+		assertFalse(snapshots.contains(201L));
+		snapshots.get(202L);
+		assertTrue(snapshots.contains(202L));
+	}
+
+	public void testPartialAndMissingRecordsNotKept() throws Exception {
+		assertNull(snapshots.get(-1L));
+		assertEquals(0, snapshots.size());
+		partial = true;
+		assertFalse(snapshots.get(201L).isAvailable(EmergencyRecord.Section.ALLERGIES));
+		assertFalse(snapshots.contains(201L));
+	}
+
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		snapshots.get(1L);
+		long perSnapshot = snapshots.sizeInBytes();
+		snapshots = new EmergencyRecordSnapshots(new EmergencyRecordSnapshots.Builder() {
+			@Override
+			public EmergencyRecord build(long mid) throws DBException {
+				return record(mid);
+			}
+		}, perSnapshot * 2, 0);
+		snapshots.get(1L);
+		snapshots.get(2L);
+		snapshots.get(1L);
+		snapshots.get(3L);
+		assertEquals(2, snapshots.size());
+		assertTrue(snapshots.contains(1L));
+		assertFalse(snapshots.contains(2L));
+		assertEquals(1, snapshots.getEvictions());
+	}
+
+	private EmergencyRecord record(long mid) {
+		EmergencyRecord record = new EmergencyRecord();
+		record.setName("Sandy Sky");
+		record.setAge(24);
+		record.setGender("Male");
+		record.setContactName("Susan Sky-Walker");
+		record.setContactPhone("444-332-4309");
+		record.setBloodType("O-");
+
+		Prescription p = new Prescription();
+		p.setId(7L);
+		p.setPatientMID(mid);
+		p.setDrugCode(new MedicationBean("63739-291", "Oyster Shell Calcium"));
+		p.setStartDate(LocalDate.of(2016, 10, 1));
+		p.setEndDate(LocalDate.of(2016, 10, 15));
+		p.setDosage(100L);
+		record.setPrescriptions(Arrays.asList(p));
+
+		AllergyBean a = new AllergyBean();
+		a.setPatientID(mid);
+		a.setDescription("Pollen");
+		a.setFirstFound(new Date(1462406400000L));
+		record.setAllergies(Arrays.asList(a));
+
+		record.setDiagnoses(Arrays.asList(new Diagnosis(3L, 11L, new ICDCode("J45", "Asthma", true))));
+		record.setImmunizations(Arrays.asList(new Immunization(4L, 12L, new CPTCode("90715", "TDAP"))));
+		if (partial)
+			record.setUnavailable(EmergencyRecord.Section.ALLERGIES);
+		return record;
+	}
+}
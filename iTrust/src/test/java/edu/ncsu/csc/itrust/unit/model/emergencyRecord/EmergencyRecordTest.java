@@ -109,4 +109,13 @@ public class EmergencyRecordTest extends TestCase {
         r.setImmunizations(null);
         Assert.assertNull(r.getImmunizations());
     }
+    
+    @Test
+    public void testUnavailableSections(){
+        Assert.assertTrue(r.isAvailable(EmergencyRecord.Section.ALLERGIES));
+        r.setUnavailable(EmergencyRecord.Section.ALLERGIES);
+        Assert.assertFalse(r.isAvailable(EmergencyRecord.Section.ALLERGIES));
+        Assert.assertTrue(r.isAvailable(EmergencyRecord.Section.DIAGNOSES));
+        Assert.assertEquals(1, r.getUnavailableSections().size());
+    }
 }
@@ -150,6 +150,34 @@ public class ICDCodeMySQLTest extends TestCase {
         Assert.assertFalse(mysql.update(code1));
 	}
 
+	@Test
+	public void testLookup() throws Exception {
+	    TestDataGenerator gen = new TestDataGenerator();
+        gen.clearAllTables();
+        Assert.assertTrue(mysql.add(new ICDCode("J45", "Asthma", true)));
+        Assert.assertTrue(mysql.add(new ICDCode("I50", "Heart failure", true)));
+        try {
+            mysql.loadLookup();
+            Assert.assertEquals(2, mysql.getAll().size());
+            Assert.assertEquals("J45", mysql.getSuggestions("asth", 10).get(0).getCode());
+
+            // edits swap in a new snapshot straight away
+            Assert.assertTrue(mysql.add(new ICDCode("J45909", "Unspecified asthma", true)));
+            Assert.assertEquals(2, mysql.getCodesWithFilter("J45").size());
+            Assert.assertEquals(2, mysql.getSuggestions("asthma", 10).size());
+            Assert.assertTrue(mysql.update(new ICDCode("I50", "Congestive heart failure", true)));
+            Assert.assertEquals("Congestive heart failure", mysql.getSuggestions("cong", 10).get(0).getName());
+            Assert.assertTrue(mysql.delete(new ICDCode("J45909", null, false)));
+            Assert.assertEquals(1, mysql.getCodesWithFilter("J45").size());
+
+            // the beans handed out are copies
+            mysql.getAll().get(0).setName("changed");
+            Assert.assertEquals("Congestive heart failure", mysql.getAll().get(0).getName());
+        } finally {
+            ICDCodeMySQL.LOOKUP.clear();
+        }
+	}
+
 	@Test
 	public void testProdConstructor(){
 	    try {
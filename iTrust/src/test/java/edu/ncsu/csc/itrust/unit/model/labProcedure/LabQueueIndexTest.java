@@ -0,0 +1,132 @@
+package edu.ncsu.csc.itrust.unit.model.labProcedure;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc.itrust.model.ConverterDAO;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedure.LabProcedureStatus;
+import edu.ncsu.csc.itrust.model.labProcedure.LabProcedureMySQL;
+import edu.ncsu.csc.itrust.model.labProcedure.LabQueueIndex;
+import edu.ncsu.csc.itrust.model.old.dao.ConnectionContext;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+
+/**
+ * Tests that the lab queue index gives the same queues and counts as SQL, and
+ * that LabProcedureMySQL keeps it in step with its writes.
+ */
+public class LabQueueIndexTest {
+	private static final long TECHNICIAN = 5000000001L;
+	private static final long OTHER_TECHNICIAN = 5000000002L;
+
+	private DataSource ds;
+	private LabProcedureMySQL data;
+	private LabQueueIndex index;
+	private TestDataGenerator gen;
+
+	@Before
+	public void setUp() throws Exception {
+		ds = ConverterDAO.getDataSource();
+		data = new LabProcedureMySQL(ds);
+		gen = new TestDataGenerator();
+		gen.clearAllTables();
+		gen.labProcedure0();
+		gen.labProcedure1();
+		gen.labProcedure2();
+		gen.labProcedure3();
+		gen.labProcedure4();
+		gen.labProcedure5();
+		index = new LabQueueIndex();
+		try (Connection conn = ds.getConnection()) {
+			index.build(conn);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		LabQueueIndex.setShared(null);
+		gen.clearAllTables();
+	}
+
+	@Test
+	public void testBuild() throws Exception {
+		Assert.assertEquals(2, index.size());
+		Assert.assertEquals(Arrays.asList(1L), ids(index.getQueue(TECHNICIAN, LabProcedureStatus.PENDING)));
+		Assert.assertEquals(Arrays.asList(2L), ids(index.getQueue(TECHNICIAN, LabProcedureStatus.IN_TRANSIT)));
+		Assert.assertEquals(Arrays.asList(3L), ids(index.getQueue(TECHNICIAN, LabProcedureStatus.RECEIVED)));
+		Assert.assertEquals(Arrays.asList(4L), ids(index.getQueue(TECHNICIAN, LabProcedureStatus.TESTING)));
+		Assert.assertEquals(Long.valueOf(1), index.getCounts(TECHNICIAN, LabProcedureStatus.COMPLETED).get(2));
+		Assert.assertTrue(index.getCounts(9000000000L, LabProcedureStatus.PENDING).isEmpty());
+	}
+
+	@Test
+	public void testMatchesSQL() throws Exception {
+		List<Long> technicians = Arrays.asList(TECHNICIAN, OTHER_TECHNICIAN, 9000000000L);
+		EnumSet<LabProcedureStatus> statuses = EnumSet.of(LabProcedureStatus.PENDING,
+				LabProcedureStatus.IN_TRANSIT, LabProcedureStatus.TESTING);
+		Map<Long, Map<Integer, Long>> counts = data.countLabQueues(technicians, statuses);
+		List<List<Long>> queues = new ArrayList<List<Long>>();
+		for (LabProcedureStatus status : LabProcedureStatus.values())
+			queues.add(ids(data.getLabQueue(TECHNICIAN, status)));
+
+		LabQueueIndex.setShared(index);
+		Assert.assertEquals(counts, data.countLabQueues(technicians, statuses));
+		for (LabProcedureStatus status : LabProcedureStatus.values())
+			Assert.assertEquals(queues.get(status.ordinal()), ids(data.getLabQueue(TECHNICIAN, status)));
+		Assert.assertEquals(Long.valueOf(1), counts.get(TECHNICIAN).get(LabProcedure.PRIORITY_HIGH));
+		Assert.assertEquals(Long.valueOf(2), counts.get(TECHNICIAN).get(LabProcedure.PRIORITY_LOW));
+		Assert.assertTrue(counts.get(9000000000L).isEmpty());
+	}
+
+	@Test
+	public void testWritesReloadQueues() throws Exception {
+		LabQueueIndex.setShared(index);
+		LabProcedure procedure = data.getByID(1L);
+		procedure.setLabTechnicianID(OTHER_TECHNICIAN);
+		procedure.setPriority(LabProcedure.PRIORITY_HIGH);
+		Assert.assertTrue(data.update(procedure));
+		Assert.assertTrue(index.getQueue(TECHNICIAN, LabProcedureStatus.PENDING).isEmpty());
+		Assert.assertEquals(Arrays.asList(1L, 6L), ids(index.getQueue(OTHER_TECHNICIAN,
+				LabProcedureStatus.PENDING)));
+
+		Assert.assertTrue(data.removeLabProcedure(6L));
+		Assert.assertEquals(Arrays.asList(1L), ids(index.getQueue(OTHER_TECHNICIAN, LabProcedureStatus.PENDING)));
+
+		procedure.setLabTechnicianID(TECHNICIAN);
+		Assert.assertTrue(data.add(procedure));
+		Assert.assertEquals(1, index.getQueue(TECHNICIAN, LabProcedureStatus.PENDING).size());
+	}
+
+	@Test
+	public void testReloadWaitsForUnitOfWork() throws Exception {
+		LabQueueIndex.setShared(index);
+		LabProcedureMySQL shared = new LabProcedureMySQL(ConnectionContext.share(ds));
+		LabProcedure procedure = shared.getByID(1L);
+		procedure.setLabTechnicianID(OTHER_TECHNICIAN);
+		try (ConnectionContext uow = ConnectionContext.beginUnitOfWork()) {
+			Assert.assertTrue(shared.update(procedure));
+			Assert.assertEquals(Arrays.asList(1L), ids(index.getQueue(TECHNICIAN, LabProcedureStatus.PENDING)));
+			uow.commit();
+		}
+		Assert.assertTrue(index.getQueue(TECHNICIAN, LabProcedureStatus.PENDING).isEmpty());
+		Assert.assertTrue(ids(index.getQueue(OTHER_TECHNICIAN, LabProcedureStatus.PENDING)).contains(1L));
+	}
+
+	private static List<Long> ids(List<LabProcedure> procedures) {
+		List<Long> ids = new ArrayList<Long>();
+		for (LabProcedure procedure : procedures)
+			ids.add(procedure.getLabProcedureID());
+		return ids;
+	}
+}
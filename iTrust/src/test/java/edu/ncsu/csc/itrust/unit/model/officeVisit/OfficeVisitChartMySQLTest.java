@@ -0,0 +1,78 @@
+package edu.ncsu.csc.itrust.unit.model.officeVisit;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+
+import edu.ncsu.csc.itrust.model.ConverterDAO;
+import edu.ncsu.csc.itrust.model.diagnosis.Diagnosis;
+import edu.ncsu.csc.itrust.model.diagnosis.DiagnosisMySQL;
+import edu.ncsu.csc.itrust.model.immunization.Immunization;
+import edu.ncsu.csc.itrust.model.immunization.ImmunizationMySQL;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisit;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChart;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitChartMySQL;
+import edu.ncsu.csc.itrust.model.officeVisit.OfficeVisitMySQL;
+import edu.ncsu.csc.itrust.model.prescription.Prescription;
+import edu.ncsu.csc.itrust.model.prescription.PrescriptionMySQL;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import junit.framework.TestCase;
+
+public class OfficeVisitChartMySQLTest extends TestCase {
+
+	DataSource ds;
+	OfficeVisitChartMySQL sql;
+	TestDataGenerator gen;
+
+	@Override
+	public void setUp() throws Exception {
+		ds = ConverterDAO.getDataSource();
+		sql = new OfficeVisitChartMySQL(ds);
+		gen = new TestDataGenerator();
+		gen.clearAllTables();
+		gen.uc21();
+	}
+
+	@Test
+	public void testMatchesPerTableQueries() throws Exception {
+		List<OfficeVisit> visits = new OfficeVisitMySQL(ds).getVisitsForPatient(201L);
+		assertEquals(3, visits.size());
+		for (OfficeVisit visit : visits) {
+			long visitID = visit.getVisitID();
+			OfficeVisitChart chart = sql.getChart(visitID);
+			assertEquals(visitID, chart.getVisit().getVisitID().longValue());
+
+			List<Diagnosis> diagnoses = new DiagnosisMySQL(ds).getAllDiagnosisByOfficeVisit(visitID);
+			assertEquals(diagnoses.size(), chart.getDiagnoses().size());
+			for (int i = 0; i < diagnoses.size(); i++) {
+				assertEquals(diagnoses.get(i).getId(), chart.getDiagnoses().get(i).getId());
+				assertEquals(diagnoses.get(i).getCode(), chart.getDiagnoses().get(i).getCode());
+			}
+
+			List<Immunization> immunizations = new ImmunizationMySQL(ds).getImmunizationsForOfficeVisit(visitID);
+			assertEquals(immunizations.size(), chart.getImmunizations().size());
+			for (int i = 0; i < immunizations.size(); i++) {
+				assertEquals(immunizations.get(i).getId(), chart.getImmunizations().get(i).getId());
+			}
+
+			List<Prescription> prescriptions = new PrescriptionMySQL(ds).getPrescriptionsForOfficeVisit(visitID);
+			assertEquals(prescriptions.size(), chart.getPrescriptions().size());
+			for (int i = 0; i < prescriptions.size(); i++) {
+				assertEquals(prescriptions.get(i).getId(), chart.getPrescriptions().get(i).getId());
+			}
+		}
+	}
+
+	@Test
+	public void testNoSuchVisit() throws Exception {
+		OfficeVisitChart chart = sql.getChart(-1L);
+		assertNull(chart.getVisit());
+		assertTrue(chart.getDiagnoses().isEmpty());
+		assertTrue(chart.getPrescriptions().isEmpty());
+		assertTrue(chart.getImmunizations().isEmpty());
+		assertTrue(chart.getMedicalProcedures().isEmpty());
+		assertTrue(chart.getLabProcedures().isEmpty());
+	}
+}
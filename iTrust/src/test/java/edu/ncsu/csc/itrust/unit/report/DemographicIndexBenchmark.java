@@ -0,0 +1,101 @@
+package edu.ncsu.csc.itrust.unit.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDemographicIndex;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter.DemographicReportFilterType;
+import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+
+/**
+ * Times demographic cohort queries answered from a
+ * {@link PatientDemographicIndex} against the same filters run over the
+ * patients in memory with {@link ReportFilter#filter(List)}, for growing
+ * numbers of made-up patients. Neither side touches the database, so this
+ * measures the bitmaps against the filter loop alone. Not a unit test; run it
+ * by hand, with a heap big enough for a million PatientBeans (about -Xmx2g):
+ *
+ * <pre>
+ * java edu.ncsu.csc.itrust.unit.report.DemographicIndexBenchmark [sizes...]
+ * </pre>
+ */
+public class DemographicIndexBenchmark {
+	private static final String[] CITIES = { "Raleigh", "Durham", "Cary", "Apex", "Garner", "Chapel Hill",
+			"Wake Forest", "Holly Springs" };
+	private static final String[] STATES = { "NC", "SC", "VA", "GA" };
+	private static final String[] INSURERS = { "Aetna", "Cigna", "BCBS", "Humana", "Medicaid" };
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 10000, 100000, 1000000 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		DAOFactory factory = TestDAOFactory.getTestInstance();
+		List<List<ReportFilter>> reports = Arrays.asList(
+				Arrays.<ReportFilter> asList(
+						new DemographicReportFilter(DemographicReportFilterType.GENDER, "Female", factory),
+						new DemographicReportFilter(DemographicReportFilterType.DEACTIVATED, "exclude", factory)),
+				Arrays.<ReportFilter> asList(
+						new DemographicReportFilter(DemographicReportFilterType.CITY, "cary", factory),
+						new DemographicReportFilter(DemographicReportFilterType.STATE, "NC", factory),
+						new DemographicReportFilter(DemographicReportFilterType.INSURE_NAME, "Aetna", factory),
+						new DemographicReportFilter(DemographicReportFilterType.DEACTIVATED, "exclude", factory)),
+				Arrays.<ReportFilter> asList(
+						new DemographicReportFilter(DemographicReportFilterType.ZIP, "275", factory),
+						new DemographicReportFilter(DemographicReportFilterType.GENDER, "Male", factory)));
+		System.out.println("patients\tindex(KB)\treport\tmatches\tbitmaps(ms)\tfilter loop(ms)");
+		for (int size : sizes) {
+			List<PatientBean> patients = makePatients(size);
+			PatientDemographicIndex index = new PatientDemographicIndex();
+			for (PatientBean patient : patients)
+				index.put(patient);
+			for (int r = 0; r < reports.size(); r++) {
+				List<ReportFilter> filters = reports.get(r);
+				List<Long> mids = null;
+				long start = System.nanoTime();
+				for (int run = 0; run < RUNS; run++)
+					mids = index.findMIDs(i -> ReportFilter.selectAll(filters, i));
+				double bitmaps = (System.nanoTime() - start) / 1e6 / RUNS;
+
+				List<PatientBean> matches = null;
+				start = System.nanoTime();
+				for (int run = 0; run < RUNS; run++) {
+					matches = patients;
+					for (ReportFilter filter : filters)
+						matches = filter.filter(matches);
+				}
+				double loop = (System.nanoTime() - start) / 1e6 / RUNS;
+				if (matches.size() != mids.size())
+					throw new IllegalStateException("report " + (r + 1) + " found " + mids.size()
+							+ " patients with bitmaps but " + matches.size() + " with the filter loop");
+				System.out.println(size + "\t" + index.sizeInBytes() / 1024 + "\t" + (r + 1) + "\t" + mids.size()
+						+ "\t" + bitmaps + "\t" + loop);
+			}
+		}
+	}
+
+	private static List<PatientBean> makePatients(int size) {
+		List<PatientBean> patients = new ArrayList<PatientBean>(size);
+		for (int i = 1; i <= size; i++) {
+			PatientBean patient = new PatientBean();
+			patient.setMID(i);
+			patient.setGenderStr(i % 2 == 0 ? "Female" : i % 7 == 0 ? "Not Specified" : "Male");
+			patient.setCity(CITIES[i % CITIES.length]);
+			patient.setState(STATES[i % 13 % STATES.length]);
+			patient.setZip(Integer.toString(27500 + i % 300));
+			patient.setIcName(INSURERS[i % 11 % INSURERS.length]);
+			if (i % 50 == 0)
+				patient.setDateOfDeactivationStr("01/01/2015");
+			patients.add(patient);
+		}
+		return patients;
+	}
+}
@@ -0,0 +1,124 @@
+package edu.ncsu.csc.itrust.unit.report;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter.DemographicReportFilterType;
+import edu.ncsu.csc.itrust.report.MedicalReportFilter;
+import edu.ncsu.csc.itrust.report.MedicalReportFilter.MedicalReportFilterType;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter.PersonnelReportFilterType;
+import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.report.ReportQuery;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+
+/**
+ * Times group reports run as one compiled query ({@link ReportQuery}) against
+ * loading every patient and filtering in Java, as they used to be run, for
+ * growing numbers of patients. Not a unit test; run it by hand against the
+ * test database (it clears all tables). The Java side makes a query per
+ * patient for the family, allergy and declared HCP filters, so expect it to
+ * take minutes at a million patients:
+ *
+ * <pre>
+ * java edu.ncsu.csc.itrust.unit.report.GroupReportBenchmark [sizes...]
+ * </pre>
+ */
+public class GroupReportBenchmark {
+	private static final String[] LAST_NAMES = { "Smith", "Jones", "Brown", "Garcia", "Nguyen", "Patel", "Lee",
+			"Miller", "Davis", "Wilson" };
+	private static final String[] CITIES = { "Raleigh", "Durham", "Cary", "Apex", "Garner" };
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 10000, 100000, 1000000 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		DAOFactory factory = TestDAOFactory.getTestInstance();
+		TestDataGenerator gen = new TestDataGenerator();
+		List<List<ReportFilter>> reports = Arrays.asList(
+				Arrays.<ReportFilter> asList(
+						new DemographicReportFilter(DemographicReportFilterType.CITY, "Cary", factory),
+						new DemographicReportFilter(DemographicReportFilterType.GENDER, "Female", factory),
+						new DemographicReportFilter(DemographicReportFilterType.LOWER_AGE_LIMIT, "40", factory)),
+				Arrays.<ReportFilter> asList(
+						new DemographicReportFilter(DemographicReportFilterType.LAST_NAME, "Smith", factory),
+						new MedicalReportFilter(MedicalReportFilterType.ALLERGY, "664662530", factory)),
+				Arrays.<ReportFilter> asList(
+						new DemographicReportFilter(DemographicReportFilterType.PARENT_LAST_NAME, "Jones", factory),
+						new PersonnelReportFilter(PersonnelReportFilterType.DLHCP, "Kelly Doctor", factory)));
+		System.out.println("patients\treport\tmatches\tcompiled(ms)\tjava(ms)");
+		for (int size : sizes) {
+			gen.clearAllTables();
+			gen.hcp0();
+			insertPatients(factory, size);
+			for (int r = 0; r < reports.size(); r++) {
+				List<ReportFilter> filters = reports.get(r);
+				long start = System.nanoTime();
+				ReportQuery query = ReportQuery.compile(filters);
+				int matches = factory.getPatientDAO().getPatientsWhere(query.getCondition(), query.getParams())
+						.size();
+				double compiled = (System.nanoTime() - start) / 1e6;
+
+				start = System.nanoTime();
+				List<PatientBean> patients = factory.getPatientDAO().getAllPatients();
+				for (ReportFilter filter : filters)
+					patients = filter.filter(patients);
+				double java = (System.nanoTime() - start) / 1e6;
+				if (patients.size() != matches)
+					throw new IllegalStateException("report " + (r + 1) + " found " + matches + " patients compiled but "
+							+ patients.size() + " in Java");
+				System.out.println(size + "\t" + (r + 1) + "\t" + matches + "\t" + compiled + "\t" + java);
+			}
+		}
+	}
+
+	/**
+	 * Every tenth patient is the parent of the nine after it; one in twenty is
+	 * allergic to the drug and one in ten has declared Kelly Doctor.
+	 */
+	private static void insertPatients(DAOFactory factory, int size) throws Exception {
+		try (Connection conn = factory.getConnection();
+				PreparedStatement patient = conn.prepareStatement("INSERT INTO patients "
+						+ "(MID, lastName, firstName, city, state, zip, Gender, DateOfBirth, MotherMID, FatherMID) "
+						+ "VALUES (?, ?, ?, ?, 'NC', ?, ?, ?, ?, 0)");
+				PreparedStatement allergy = conn.prepareStatement(
+						"INSERT INTO allergies (PatientID, Description, Code) VALUES (?, 'Penicillin', '664662530')");
+				PreparedStatement dlhcp = conn
+						.prepareStatement("INSERT INTO declaredhcp (PatientID, HCPID) VALUES (?, 9000000000)")) {
+			for (int i = 1; i <= size; i++) {
+				patient.setLong(1, i);
+				patient.setString(2, LAST_NAMES[i % LAST_NAMES.length]);
+				patient.setString(3, "Patient" + i);
+				patient.setString(4, CITIES[i % CITIES.length]);
+				patient.setString(5, Integer.toString(27500 + i % 200));
+				patient.setString(6, i % 2 == 0 ? "Female" : "Male");
+				patient.setDate(7, Date.valueOf((1930 + i % 85) + "-" + (1 + i % 12) + "-" + (1 + i % 28)));
+				patient.setLong(8, i % 10 == 1 ? 0 : i - (i - 1) % 10);
+				patient.addBatch();
+				if (i % 20 == 0) {
+					allergy.setLong(1, i);
+					allergy.addBatch();
+				}
+				if (i % 10 == 0) {
+					dlhcp.setLong(1, i);
+					dlhcp.addBatch();
+				}
+				if (i % 10000 == 0 || i == size) {
+					patient.executeBatch();
+					allergy.executeBatch();
+					dlhcp.executeBatch();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package edu.ncsu.csc.itrust.unit.report;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.ncsu.csc.itrust.exception.ITrustException;
+import edu.ncsu.csc.itrust.model.old.beans.ReportJobBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.enums.ReportJobStatus;
+import edu.ncsu.csc.itrust.report.ReportJobManager;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+import junit.framework.TestCase;
+
+public class ReportJobManagerTest extends TestCase {
+	private DAOFactory factory = TestDAOFactory.getTestInstance();
+	private File spoolDir;
+	private ReportJobManager manager;
+
+	@Override
+	protected void setUp() throws Exception {
+		TestDataGenerator gen = new TestDataGenerator();
+		gen.clearAllTables();
+		gen.standardData();
+		spoolDir = Files.createTempDirectory("reportjobs").toFile();
+		manager = new ReportJobManager(factory, spoolDir, 1, 1, 2, 10, 60 * 60 * 1000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		manager.stop();
+		File[] files = spoolDir.listFiles();
+		if (files != null) {
+			for (File file : files)
+				file.delete();
+		}
+		spoolDir.delete();
+	}
+
+	public void testDefinitionRoundTrip() {
+		Map<String, String[]> params = new LinkedHashMap<String, String[]>();
+		params.put("demoparams", new String[] { "LAST_NAME CITY" });
+		params.put("LAST_NAME", new String[] { "O'Brien & Sons" });
+		params.put("CITY", new String[] { "Raleigh=NC" });
+		params.put("ALLERGY", new String[] { "664662530", "" });
+		Map<String, String[]> decoded = ReportJobManager
+				.decodeDefinition(ReportJobManager.encodeDefinition(params));
+		assertEquals(params.keySet(), decoded.keySet());
+		for (String name : params.keySet())
+			assertEquals(Arrays.asList(params.get(name)), Arrays.asList(decoded.get(name)));
+		assertTrue(ReportJobManager.decodeDefinition("").isEmpty());
+	}
+
+	public void testRunsReport() throws Exception {
+		manager.start();
+		long id = manager.submit(9000000000L, "csv", lastName("Person"));
+		ReportJobBean job = waitFor(id, 9000000000L);
+		assertEquals(job.getMessage(), ReportJobStatus.DONE, job.getStatus());
+		assertEquals(job.getRowsEstimated(), job.getRowsDone());
+		File output = manager.getOutput(job);
+		assertNotNull(output);
+		String report = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+		assertTrue(report, report.contains("Person"));
+		assertNull("other HCPs can't see the job", manager.getJob(id, 9000000003L));
+	}
+
+	public void testRestartFreesWorkers() throws Exception {
+		manager.start();
+		manager.submit(9000000000L, "csv", lastName("Person"));
+		manager.stop();
+		manager.start();
+		ReportJobBean job = waitFor(manager.submit(9000000000L, "csv", lastName("Person")), 9000000000L);
+		assertEquals(job.getMessage(), ReportJobStatus.DONE, job.getStatus());
+	}
+
+	public void testBadReportFails() throws Exception {
+		manager.start();
+		Map<String, String[]> params = new LinkedHashMap<String, String[]>();
+		params.put("demoparams", new String[] { "LOWER_AGE_LIMIT" });
+		params.put("LOWER_AGE_LIMIT", new String[] { "-1" });
+		ReportJobBean job = waitFor(manager.submit(9000000000L, "xml", params), 9000000000L);
+		assertEquals(ReportJobStatus.FAILED, job.getStatus());
+		assertNull(manager.getOutput(job));
+	}
+
+	public void testLimitsAndCancel() throws Exception {
+		try {
+			manager.submit(9000000000L, "pdf", lastName("Person"));
+			fail("unknown formats should be rejected");
+		} catch (ITrustException e) {
+			// expected
+		}
+		try {
+			manager.submit(9000000000L, "xml", lastName("Person"));
+			fail("nothing should be queued before the manager is started");
+		} catch (ITrustException e) {
+			// expected
+		}
+		long queued = factory.getReportJobDAO().addJob(job(9000000000L));
+		factory.getReportJobDAO().addJob(job(9000000000L));
+		try {
+			manager.submit(9000000000L, "xml", lastName("Person"));
+			fail("HCPs are limited to two unfinished reports");
+		} catch (ITrustException e) {
+			assertTrue(e.getMessage().startsWith("You already have 2 reports"));
+		}
+		assertFalse("other HCPs can't cancel the job", manager.cancel(queued, 9000000003L));
+		assertTrue(manager.cancel(queued, 9000000000L));
+		assertEquals(ReportJobStatus.CANCELLED, manager.getJob(queued, 9000000000L).getStatus());
+		assertFalse(manager.cancel(queued, 9000000000L));
+	}
+
+	public void testRemovesExpiredJobs() throws Exception {
+		manager = new ReportJobManager(factory, spoolDir, 1, 1, 2, 10, -60000);
+		long id = factory.getReportJobDAO().addJob(job(9000000000L));
+		factory.getReportJobDAO().finishJob(id, ReportJobStatus.DONE, "");
+		File output = new File(spoolDir, "report-" + id + ".xml");
+		assertTrue(output.createNewFile());
+		assertEquals(1, manager.removeExpiredJobs());
+		assertFalse(output.exists());
+		assertNull(manager.getJob(id, 9000000000L));
+	}
+
+	private static Map<String, String[]> lastName(String name) {
+		Map<String, String[]> params = new LinkedHashMap<String, String[]>();
+		params.put("demoparams", new String[] { "LAST_NAME" });
+		params.put("LAST_NAME", new String[] { name });
+		return params;
+	}
+
+	private static ReportJobBean job(long owner) {
+		ReportJobBean job = new ReportJobBean();
+		job.setOwnerMID(owner);
+		job.setStatus(ReportJobStatus.QUEUED);
+		job.setFormat("xml");
+		job.setDefinition(ReportJobManager.encodeDefinition(lastName("Person")));
+		return job;
+	}
+
+	private ReportJobBean waitFor(long id, long owner) throws Exception {
+		long deadline = System.currentTimeMillis() + 30000;
+		ReportJobBean job = manager.getJob(id, owner);
+		while (!job.getStatus().isFinished() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+			job = manager.getJob(id, owner);
+		}
+		return job;
+	}
+}
@@ -0,0 +1,122 @@
+package edu.ncsu.csc.itrust.unit.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter.DemographicReportFilterType;
+import edu.ncsu.csc.itrust.report.MedicalReportFilter;
+import edu.ncsu.csc.itrust.report.MedicalReportFilter.MedicalReportFilterType;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter.PersonnelReportFilterType;
+import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.report.ReportQuery;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+import junit.framework.TestCase;
+
+public class ReportQueryTest extends TestCase {
+	private DAOFactory factory = TestDAOFactory.getTestInstance();
+
+	private static class JavaOnlyFilter extends ReportFilter {
+		@Override
+		public List<PatientBean> filter(List<PatientBean> patients) {
+			return patients;
+		}
+
+		@Override
+		public String toString() {
+			return "Java only";
+		}
+
+		@Override
+		public String getFilterTypeString() {
+			return "JAVA ONLY";
+		}
+
+		@Override
+		public String getFilterValue() {
+			return "";
+		}
+	}
+
+	public void testNoFilters() {
+		ReportQuery query = ReportQuery.compile(Collections.<ReportFilter> emptyList());
+		assertEquals("TRUE", query.getCondition());
+		assertTrue(query.getParams().isEmpty());
+		assertTrue(query.getRemainingFilters().isEmpty());
+	}
+
+	public void testFiltersAreAnded() {
+		ReportQuery query = ReportQuery.compile(Arrays.<ReportFilter> asList(
+				new DemographicReportFilter(DemographicReportFilterType.LAST_NAME, "Programmer", factory),
+				new DemographicReportFilter(DemographicReportFilterType.ZIP, "276", factory),
+				new MedicalReportFilter(MedicalReportFilterType.ALLERGY, "664662530", factory),
+				new PersonnelReportFilter(PersonnelReportFilterType.DLHCP, "Kelly Doctor", factory)));
+		assertEquals("(BINARY LOWER(p.lastName) = LOWER(?)) AND (INSTR(BINARY p.zip, ?) > 0)"
+				+ " AND (EXISTS (SELECT 1 FROM allergies a WHERE a.PatientID = p.MID AND BINARY LOWER(a.Code) = LOWER(?)))"
+				+ " AND (EXISTS (SELECT 1 FROM declaredhcp d, personnel h WHERE d.PatientID = p.MID AND h.MID = d.HCPID"
+				+ " AND BINARY LOWER(CONCAT(h.firstName, ' ', h.lastName)) = LOWER(?)))", query.getCondition());
+		assertEquals(Arrays.<Object> asList("Programmer", "276", "664662530", "Kelly Doctor"), query.getParams());
+	}
+
+	public void testFamilyParamsInOrder() {
+		List<Object> params = new ArrayList<Object>();
+		String sql = new DemographicReportFilter(DemographicReportFilterType.SIBLING_LAST_NAME, "Koopa", factory)
+				.toSQL(params);
+		assertEquals("((p.MotherMID <> 0 AND EXISTS (SELECT 1 FROM patients f WHERE f.MotherMID = p.MotherMID"
+				+ " AND f.MID <> p.MID AND BINARY f.lastName = ?)) OR (p.FatherMID <> 0 AND EXISTS"
+				+ " (SELECT 1 FROM patients f WHERE f.FatherMID = p.FatherMID AND f.MID <> p.MID"
+				+ " AND BINARY f.lastName = ?)))", sql);
+		assertEquals(Arrays.<Object> asList("Koopa", "Koopa"), params);
+	}
+
+	public void testValuesMatchingNoOne() {
+		assertEquals("FALSE", compile(DemographicReportFilterType.LAST_NAME, ""));
+		assertEquals("FALSE", compile(DemographicReportFilterType.MID, "007"));
+		assertEquals("FALSE", compile(DemographicReportFilterType.MID, "Andy"));
+		assertEquals("FALSE", compile(DemographicReportFilterType.GENDER, "Unknown"));
+		assertEquals("FALSE",
+				new MedicalReportFilter(MedicalReportFilterType.PROCEDURE, "1270F", factory).toSQL(new ArrayList<Object>()));
+	}
+
+	public void testGenderAndDeactivation() {
+		assertEquals("BINARY p.Gender = ?", compile(DemographicReportFilterType.GENDER, "female"));
+		assertEquals("(p.Gender IS NULL OR BINARY p.Gender NOT IN (?, ?))",
+				compile(DemographicReportFilterType.GENDER, "not specified"));
+		assertEquals("p.DateOfDeactivation IS NULL", compile(DemographicReportFilterType.DEACTIVATED, "exclude"));
+		assertEquals("p.DateOfDeactivation IS NOT NULL", compile(DemographicReportFilterType.DEACTIVATED, "only"));
+		assertEquals("TRUE", compile(DemographicReportFilterType.DEACTIVATED, "include"));
+	}
+
+	public void testBadAgeLimit() {
+		try {
+			compile(DemographicReportFilterType.LOWER_AGE_LIMIT, "-1");
+			fail("negative ages should be rejected");
+		} catch (NumberFormatException e) {
+			assertEquals("Age must be GTE 0!", e.getMessage());
+		}
+		try {
+			compile(DemographicReportFilterType.UPPER_AGE_LIMIT, "ten");
+			fail("ages should be numbers");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+	}
+
+	public void testUncompiledFiltersRemain() {
+		ReportFilter javaOnly = new JavaOnlyFilter();
+		ReportQuery query = ReportQuery.compile(Arrays.<ReportFilter> asList(javaOnly,
+				new DemographicReportFilter(DemographicReportFilterType.MID, "2", factory)));
+		assertEquals("(p.MID = ?)", query.getCondition());
+		assertEquals(Arrays.<Object> asList(2L), query.getParams());
+		assertEquals(Arrays.asList(javaOnly), query.getRemainingFilters());
+	}
+
+	private String compile(DemographicReportFilterType type, String value) {
+		return new DemographicReportFilter(type, value, factory).toSQL(new ArrayList<Object>());
+	}
+}
@@ -0,0 +1,161 @@
+package edu.ncsu.csc.itrust.unit.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter;
+import edu.ncsu.csc.itrust.report.DemographicReportFilter.DemographicReportFilterType;
+import edu.ncsu.csc.itrust.report.MedicalReportFilter;
+import edu.ncsu.csc.itrust.report.MedicalReportFilter.MedicalReportFilterType;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter;
+import edu.ncsu.csc.itrust.report.PersonnelReportFilter.PersonnelReportFilterType;
+import edu.ncsu.csc.itrust.report.ReportFilter;
+import edu.ncsu.csc.itrust.report.ReportResultCache;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+import junit.framework.TestCase;
+
+public class ReportResultCacheTest extends TestCase {
+	private DAOFactory factory = TestDAOFactory.getTestInstance();
+	private ReportResultCache cache;
+	private int loads;
+
+	private ReportFilter female = new DemographicReportFilter(DemographicReportFilterType.GENDER, "Female", factory);
+	private ReportFilter raleigh = new DemographicReportFilter(DemographicReportFilterType.CITY, "Raleigh", factory);
+	private ReportFilter penicillin = new MedicalReportFilter(MedicalReportFilterType.ALLERGY, "664662530",
+			factory);
+	private ReportFilter kelly = new PersonnelReportFilter(PersonnelReportFilterType.DLHCP, "Kelly Doctor", factory);
+
+	@Override
+	protected void setUp() throws Exception {
+		cache = new ReportResultCache(1024 * 1024, 60 * 1000, 0);
+		loads = 0;
+	}
+
+	public void testFilterOrderDoesNotMatter() throws Exception {
+		List<Long> mids = Arrays.asList(2L, 5L, 42L);
+		assertEquals(mids, load(Arrays.asList(female, raleigh), mids));
+		assertEquals(mids, load(Arrays.asList(raleigh, female, raleigh), Arrays.asList(0L)));
+		assertEquals(mids, load(Arrays.asList(raleigh,
+				new DemographicReportFilter(DemographicReportFilterType.GENDER, "Female", factory)), null));
+		assertEquals(1, loads);
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		load(Arrays.asList(raleigh,
+				new DemographicReportFilter(DemographicReportFilterType.GENDER, "Male", factory)), mids);
+		assertEquals(2, loads);
+		assertEquals(2, cache.size());
+	}
+
+	public void testMIDsRoundTrip() throws Exception {
+		List<Long> mids = new ArrayList<Long>();
+		for (long mid = 1; mid < 100000; mid += mid / 3 + 1)
+			mids.add(mid);
+		mids.add(9000000000L);
+		mids.add(7L);
+		mids.add(Long.MAX_VALUE);
+		mids.add(0L);
+		load(Arrays.asList(female), mids);
+		assertEquals(mids, load(Arrays.asList(female), null));
+		assertEquals(Arrays.asList(), load(Arrays.asList(raleigh), new ArrayList<Long>()));
+		assertEquals(Arrays.asList(), load(Arrays.asList(raleigh), null));
+		assertEquals(2, cache.getHits());
+	}
+
+	public void testWritesDropOnlyDependentResults() throws Exception {
+		load(Arrays.asList(female), Arrays.asList(1L));
+		load(Arrays.asList(penicillin), Arrays.asList(2L));
+		load(Arrays.asList(kelly), Arrays.asList(3L));
+		load(Arrays.asList(female, penicillin), Arrays.asList(4L));
+		assertEquals(4, cache.size());
+
+		cache.invalidate("representatives");
+		assertEquals(4, cache.size());
+		cache.invalidate("allergies");
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getInvalidations());
+		assertEquals(Arrays.asList(1L), load(Arrays.asList(female), null));
+		assertEquals(Arrays.asList(3L), load(Arrays.asList(kelly), null));
+		assertEquals(Arrays.asList(5L), load(Arrays.asList(penicillin), Arrays.asList(5L)));
+
+		cache.invalidate("personnel");
+		assertEquals(Arrays.asList(6L), load(Arrays.asList(kelly), Arrays.asList(6L)));
+		cache.invalidate("patients");
+		assertEquals(2, cache.size());
+		assertEquals(Arrays.asList(5L), load(Arrays.asList(penicillin), null));
+		assertEquals(Arrays.asList(6L), load(Arrays.asList(kelly), null));
+	}
+
+	public void testWriteWhileLoadingIsNotCached() throws Exception {
+		cache.getMIDs(Arrays.asList(female), () -> {
+			cache.invalidate("patients");
+			return Arrays.asList(1L);
+		});
+		assertEquals(0, cache.size());
+		load(Arrays.asList(penicillin), Arrays.asList(2L));
+		cache.getMIDs(Arrays.asList(female), () -> {
+			cache.invalidate("allergies");
+			return Arrays.asList(1L);
+		});
+		assertEquals(1, cache.size());
+	}
+
+	public void testRecentWritesAreNotCached() throws Exception {
+		cache = new ReportResultCache(1024 * 1024, 60 * 1000, 60 * 1000);
+		load(Arrays.asList(female), Arrays.asList(1L));
+		assertEquals(1, cache.size());
+		cache.invalidate("patients");
+		load(Arrays.asList(female), Arrays.asList(1L));
+		assertEquals(0, cache.size());
+		load(Arrays.asList(penicillin), Arrays.asList(2L));
+		assertEquals(1, cache.size());
+	}
+
+	public void testAgeLimitsAreNotCached() throws Exception {
+		ReportFilter adults = new DemographicReportFilter(DemographicReportFilterType.LOWER_AGE_LIMIT, "18",
+				factory);
+		load(Arrays.asList(female, adults), Arrays.asList(1L));
+		load(Arrays.asList(female, adults), Arrays.asList(1L));
+		assertEquals(2, loads);
+		assertEquals(2, cache.getUncacheable());
+		assertEquals(0, cache.size());
+	}
+
+	public void testLeastRecentlyUsedAreEvicted() throws Exception {
+		List<Long> mids = new ArrayList<Long>();
+		for (long mid = 1; mid <= 400; mid++)
+			mids.add(mid * 1000);
+		cache = new ReportResultCache(2500, 60 * 1000, 0);
+		load(Arrays.asList(female), mids);
+		load(Arrays.asList(raleigh), mids);
+		load(Arrays.asList(female), null);
+		load(Arrays.asList(penicillin), mids);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, cache.size());
+		assertTrue(cache.sizeInBytes() <= 2500);
+		// raleigh was used least recently, so it went
+		load(Arrays.asList(female), null);
+		load(Arrays.asList(raleigh), mids);
+		assertEquals(4, loads);
+	}
+
+	public void testTooOldIsReloaded() throws Exception {
+		cache = new ReportResultCache(1024 * 1024, -1, 0);
+		load(Arrays.asList(female), Arrays.asList(1L));
+		load(Arrays.asList(female), Arrays.asList(1L));
+		assertEquals(2, loads);
+	}
+
+	/**
+	 * Gets a report's MIDs, failing if they have to be loaded and
+	 * <code>mids</code> is null.
+	 */
+	private List<Long> load(List<ReportFilter> filters, final List<Long> mids) throws Exception {
+		return cache.getMIDs(filters, () -> {
+			assertNotNull("should have been cached", mids);
+			loads++;
+			return mids;
+		});
+	}
+}
@@ -0,0 +1,82 @@
+package edu.ncsu.csc.itrust.unit.report;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import edu.ncsu.csc.itrust.report.CsvReportWriter;
+import edu.ncsu.csc.itrust.report.JsonReportWriter;
+import edu.ncsu.csc.itrust.report.ReportWriter;
+import edu.ncsu.csc.itrust.report.XmlReportWriter;
+import junit.framework.TestCase;
+
+public class ReportWriterTest extends TestCase {
+	private StringWriter out = new StringWriter();
+
+	private void writeReport(ReportWriter writer) throws Exception {
+		writer.writeHeaders(Arrays.asList("FIRST NAME", "PHONE #", "PARENT'S LAST NAME"));
+		writer.writeRecord(Arrays.asList("Andy", "555-555-5555", "Person\n"));
+		writer.writeRecord(Arrays.asList("Care \"CJ\"", "", "Needs, Jr"));
+		writer.finish();
+	}
+
+	public void testXml() throws Exception {
+		writeReport(new XmlReportWriter(out));
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><PatientReport>"
+				+ "<Patient FIRST_NAME=\"Andy\" PHONE_NUMBER=\"555-555-5555\" PARENTS_LAST_NAME=\"Person&#10;\"/>"
+				+ "<Patient FIRST_NAME=\"Care_&quot;CJ&quot;\" PHONE_NUMBER=\"\" PARENTS_LAST_NAME=\"Needs,_Jr\"/>"
+				+ "</PatientReport>", out.toString());
+		NodeList patients = parse().getElementsByTagName("Patient");
+		assertEquals(2, patients.getLength());
+		assertEquals("Person\n", ((Element) patients.item(0)).getAttribute("PARENTS_LAST_NAME"));
+		assertEquals("Care_\"CJ\"", ((Element) patients.item(1)).getAttribute("FIRST_NAME"));
+	}
+
+	public void testXmlWhitespaceRoundTrips() throws Exception {
+		ReportWriter writer = new XmlReportWriter(out);
+		writer.writeHeaders(Arrays.asList("NOTES"));
+		writer.writeRecord(Arrays.asList("line\r\nbreak\ttab"));
+		writer.finish();
+		Element patient = (Element) parse().getElementsByTagName("Patient").item(0);
+		assertEquals("line\r\nbreak\ttab", patient.getAttribute("NOTES"));
+	}
+
+	private Document parse() throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new InputSource(new StringReader(out.toString())));
+	}
+
+	public void testXmlEmpty() throws Exception {
+		ReportWriter writer = new XmlReportWriter(out);
+		writer.writeHeaders(Arrays.<String> asList());
+		writer.finish();
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><PatientReport></PatientReport>", out.toString());
+	}
+
+	public void testCsv() throws Exception {
+		writeReport(new CsvReportWriter(out));
+		assertEquals("FIRST NAME,PHONE #,PARENT'S LAST NAME\r\n" + "Andy,555-555-5555,\"Person\n\"\r\n"
+				+ "\"Care \"\"CJ\"\"\",,\"Needs, Jr\"\r\n", out.toString());
+	}
+
+	public void testJson() throws Exception {
+		writeReport(new JsonReportWriter(out));
+		assertEquals("[{\"FIRST NAME\":\"Andy\",\"PHONE #\":\"555-555-5555\",\"PARENT'S LAST NAME\":\"Person\\n\"},"
+				+ "{\"FIRST NAME\":\"Care \\\"CJ\\\"\",\"PHONE #\":\"\",\"PARENT'S LAST NAME\":\"Needs, Jr\"}]",
+				out.toString());
+	}
+
+	public void testSanitize() {
+		assertEquals("PARENTS_FIRST_NAME", XmlReportWriter.sanitize("PARENT'S FIRST NAME"));
+		assertEquals("PHONE_NUMBER", XmlReportWriter.sanitize("PHONE #"));
+		String clean = "CITY";
+		assertSame(clean, XmlReportWriter.sanitize(clean));
+	}
+}
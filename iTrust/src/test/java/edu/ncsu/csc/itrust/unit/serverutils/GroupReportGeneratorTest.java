@@ -54,6 +54,7 @@ public class GroupReportGeneratorTest extends TestCase {
 		expect(req.getParameter("demoparams")).andReturn(demo).anyTimes();
 		expect(req.getParameter("medparams")).andReturn(med).anyTimes();
 		expect(req.getParameter("persparams")).andReturn(pers).anyTimes();
+		expect(req.getParameter("format")).andReturn(null).anyTimes();
 		resp.sendRedirect("");
 		expectLastCall();
 
@@ -0,0 +1,112 @@
+package edu.ncsu.csc.itrust.unit.serverutils;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import edu.ncsu.csc.itrust.server.PatientSearchJSONServlet;
+import edu.ncsu.csc.itrust.unit.datagenerators.TestDataGenerator;
+import edu.ncsu.csc.itrust.unit.testutils.TestDAOFactory;
+
+public class PatientSearchJSONServletTest {
+
+	private LittleDelegatorServlet subject;
+	private HttpServletRequest request;
+	private HttpServletResponse response;
+	private StringWriter out;
+	private TestDataGenerator gen = new TestDataGenerator();
+
+	@Before
+	public void setUp() throws Exception {
+		gen.clearAllTables();
+		gen.standardData();
+		subject = new LittleDelegatorServlet();
+		request = mock(HttpServletRequest.class);
+		response = mock(HttpServletResponse.class);
+		out = new StringWriter();
+		when(response.getWriter()).thenReturn(new PrintWriter(out));
+	}
+
+	private JsonObject get() throws Exception {
+		subject.testDoGet(request, response);
+		return new JsonParser().parse(out.toString()).getAsJsonObject();
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		when(request.getParameter("q")).thenReturn("Julia Roberts");
+		JsonObject json = get();
+		assertEquals(1, json.get("total").getAsInt());
+		assertFalse(json.get("truncated").getAsBoolean());
+		assertTrue(json.get("next").isJsonNull());
+		JsonObject patient = json.getAsJsonArray("patients").get(0).getAsJsonObject();
+		assertEquals("Julia", patient.get("firstName").getAsString());
+		assertEquals("Roberts", patient.get("lastName").getAsString());
+	}
+
+	@Test
+	public void testPages() throws Exception {
+		when(request.getParameter("q")).thenReturn("a");
+		when(request.getParameter("limit")).thenReturn("2");
+		JsonObject json = get();
+		assertTrue(json.get("total").getAsInt() > 2);
+		JsonArray first = json.getAsJsonArray("patients");
+		assertEquals(2, first.size());
+		String next = json.get("next").getAsString();
+		assertEquals(first.get(1).getAsJsonObject().get("mid").getAsString(), next);
+
+		out.getBuffer().setLength(0);
+		when(request.getParameter("after")).thenReturn(next);
+		json = get();
+		assertEquals(2, json.get("offset").getAsInt());
+		assertTrue(json.getAsJsonArray("patients").get(0).getAsJsonObject().get("mid").getAsLong() > Long
+				.parseLong(next));
+	}
+
+	@Test
+	public void testDeactivated() throws Exception {
+		when(request.getParameter("q")).thenReturn("314159");
+		assertEquals(0, get().get("total").getAsInt());
+		out.getBuffer().setLength(0);
+		when(request.getParameter("allowDeactivated")).thenReturn("true");
+		JsonObject json = get();
+		assertEquals(1, json.get("total").getAsInt());
+		assertFalse(json.getAsJsonArray("patients").get(0).getAsJsonObject().get("deactivated").getAsString()
+				.isEmpty());
+	}
+
+	@Test
+	public void testNoQuery() throws Exception {
+		subject.testDoGet(request, response);
+		verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "q is required");
+	}
+
+	private class LittleDelegatorServlet extends PatientSearchJSONServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		public LittleDelegatorServlet() {
+			super(TestDAOFactory.getTestInstance());
+		}
+
+		public void testDoGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+			super.doGet(req, resp);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package edu.ncsu.csc.itrust.unit.serverutils;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import edu.ncsu.csc.itrust.model.old.beans.PatientBean;
+import edu.ncsu.csc.itrust.model.old.dao.DAOFactory;
+import edu.ncsu.csc.itrust.model.old.dao.mysql.PatientDAO;
+import edu.ncsu.csc.itrust.server.PatientSearcher;
+import junit.framework.TestCase;
+
+public class PatientSearcherTest extends TestCase {
+	private PatientDAO patientDAO;
+	private DAOFactory factory;
+
+	@Override
+	protected void setUp() throws Exception {
+		patientDAO = mock(PatientDAO.class);
+		factory = mock(DAOFactory.class);
+		when(factory.getPatientDAO()).thenReturn(patientDAO);
+		when(patientDAO.fuzzySearchForPatientsWithName(anyString(), anyString()))
+				.thenReturn(new ArrayList<PatientBean>());
+	}
+
+	private static List<PatientBean> patients(long first, long count) {
+		List<PatientBean> patients = new ArrayList<PatientBean>();
+		for (long mid = first; mid < first + count; mid++) {
+			PatientBean p = new PatientBean();
+			p.setMID(mid);
+			patients.add(p);
+		}
+		return patients;
+	}
+
+	public void testCachedPerRole() throws Exception {
+		when(patientDAO.fuzzySearchForPatientsWithName("andy", "")).thenReturn(patients(2, 1));
+		PatientSearcher searcher = new PatientSearcher(factory, 60000, 10);
+		assertEquals(Arrays.asList(2L), searcher.search("hcp", "andy", false).page(0, 10));
+		assertEquals(Arrays.asList(2L), searcher.search("hcp", "ANDY", false).page(0, 10));
+		verify(patientDAO, times(1)).fuzzySearchForPatientsWithName("andy", "");
+		searcher.search("uap", "andy", false);
+		verify(patientDAO, times(2)).fuzzySearchForPatientsWithName("andy", "");
+		searcher.clear();
+		searcher.search("hcp", "andy", false);
+		verify(patientDAO, times(3)).fuzzySearchForPatientsWithName("andy", "");
+	}
+
+	public void testExpires() throws Exception {
+		PatientSearcher searcher = new PatientSearcher(factory, 0, 10);
+		searcher.search("hcp", "andy", false);
+		searcher.search("hcp", "andy", false);
+		verify(patientDAO, times(2)).fuzzySearchForPatientsWithName("andy", "");
+	}
+
+	public void testTruncatedAndPaged() throws Exception {
+		when(patientDAO.fuzzySearchForPatientsWithName("a", "")).thenReturn(patients(1, 1500));
+		PatientSearcher.Matches matches = new PatientSearcher(factory, 60000, 10).search("hcp", "a", false);
+		assertEquals(1500, matches.getTotal());
+		assertEquals(PatientSearcher.MAX_MATCHES, matches.getKept());
+		assertTrue(matches.isTruncated());
+		assertEquals(Arrays.asList(1L, 2L, 3L), matches.page(0, 3));
+		assertEquals(Arrays.asList(11L, 12L), matches.page(10, 2));
+		assertEquals(10, matches.offsetAfter(10L));
+		assertEquals(0, matches.page(5000, 10).size());
+	}
+
+	public void testSameSearchRunsOnce() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(patientDAO.fuzzySearchForPatientsWithName("slow", "")).thenAnswer(new Answer<List<PatientBean>>() {
+			@Override
+			public List<PatientBean> answer(InvocationOnMock invocation) throws Throwable {
+				started.countDown();
+				release.await();
+				return patients(7, 1);
+			}
+		});
+		final PatientSearcher searcher = new PatientSearcher(factory, 0, 10);
+		final PatientSearcher.Matches[] found = new PatientSearcher.Matches[2];
+		Thread first = new Thread() {
+			@Override
+			public void run() {
+				found[0] = searcher.search("hcp", "slow", false);
+			}
+		};
+		first.start();
+		started.await();
+		Thread second = new Thread() {
+			@Override
+			public void run() {
+				found[1] = searcher.search("hcp", "slow", false);
+			}
+		};
+		second.start();
+		Thread.sleep(100);
+		release.countDown();
+		first.join();
+		second.join();
+		assertSame(found[0], found[1]);
+		verify(patientDAO, times(1)).fuzzySearchForPatientsWithName("slow", "");
+	}
+}